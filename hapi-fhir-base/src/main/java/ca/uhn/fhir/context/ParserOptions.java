@@ -37,6 +37,7 @@ public class ParserOptions {
 	private boolean myStripVersionsFromReferences = true;
 	private Set<String> myDontStripVersionsFromReferencesAtPaths = Collections.emptySet();
 	private boolean myOverrideResourceIdWithBundleEntryFullUrl = true;
+	private boolean myUseStreamingJsonParser = false;
 
 	/**
 	 * If supplied value(s), any resource references at the specified paths will have their
@@ -166,4 +167,34 @@ public class ParserOptions {
 		return this;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will read resources directly
+	 * from the stream of JSON tokens instead of first loading the entire document into a JSON tree. This
+	 * reduces the memory needed to parse large resources such as transaction Bundles, since only the
+	 * resulting model is held in memory while the content is parsed. The resulting resources are the
+	 * same in either mode, although if the content has several problems, the
+	 * {@link ca.uhn.fhir.parser.IParserErrorHandler error handler} may be notified of them in a different order.
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isUseStreamingJsonParser() {
+		return myUseStreamingJsonParser;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will read resources directly
+	 * from the stream of JSON tokens instead of first loading the entire document into a JSON tree. This
+	 * reduces the memory needed to parse large resources such as transaction Bundles, since only the
+	 * resulting model is held in memory while the content is parsed. The resulting resources are the
+	 * same in either mode, although if the content has several problems, the
+	 * {@link ca.uhn.fhir.parser.IParserErrorHandler error handler} may be notified of them in a different order.
+	 *
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 * @since 5.4.0
+	 */
+	public ParserOptions setUseStreamingJsonParser(boolean theUseStreamingJsonParser) {
+		myUseStreamingJsonParser = theUseStreamingJsonParser;
+		return this;
+	}
+
 }
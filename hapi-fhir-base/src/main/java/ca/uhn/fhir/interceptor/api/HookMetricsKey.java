@@ -0,0 +1,95 @@
+package ca.uhn.fhir.interceptor.api;
+
+
+/*-
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.Objects;
+
+/**
+ * Identifies a single hook method (a pointcut, an interceptor class, and a method on that class)
+ * for the purposes of {@link IInterceptorMetrics}
+ *
+ * @since 5.4.0
+ */
+public final class HookMetricsKey {
+
+	private final IPointcut myPointcut;
+	private final String myInterceptorClassName;
+	private final String myMethodName;
+	private final int myHashCode;
+
+	/**
+	 * Constructor
+	 */
+	public HookMetricsKey(IPointcut thePointcut, String theInterceptorClassName, String theMethodName) {
+		Validate.notNull(thePointcut);
+		Validate.notBlank(theInterceptorClassName);
+		Validate.notBlank(theMethodName);
+		myPointcut = thePointcut;
+		myInterceptorClassName = theInterceptorClassName;
+		myMethodName = theMethodName;
+		myHashCode = Objects.hash(thePointcut.name(), theInterceptorClassName, theMethodName);
+	}
+
+	public IPointcut getPointcut() {
+		return myPointcut;
+	}
+
+	public String getInterceptorClassName() {
+		return myInterceptorClassName;
+	}
+
+	public String getMethodName() {
+		return myMethodName;
+	}
+
+	@Override
+	public boolean equals(Object theO) {
+		if (this == theO) {
+			return true;
+		}
+		if (!(theO instanceof HookMetricsKey)) {
+			return false;
+		}
+		HookMetricsKey that = (HookMetricsKey) theO;
+		return myPointcut.name().equals(that.myPointcut.name()) &&
+			myInterceptorClassName.equals(that.myInterceptorClassName) &&
+			myMethodName.equals(that.myMethodName);
+	}
+
+	@Override
+	public int hashCode() {
+		return myHashCode;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+			.append("pointcut", myPointcut.name())
+			.append("interceptor", myInterceptorClassName)
+			.append("method", myMethodName)
+			.toString();
+	}
+}
@@ -0,0 +1,50 @@
+package ca.uhn.fhir.interceptor.api;
+
+
+/*-
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives timing information about every interceptor hook method that is invoked by an
+ * interceptor service. An implementation can be supplied to
+ * {@link ca.uhn.fhir.interceptor.executor.BaseInterceptorService#setInterceptorMetrics(IInterceptorMetrics)}
+ * in order to find out which hooks are contributing to request latency.
+ * <p>
+ * Implementations are called on the thread that invoked the hooks, so they must be thread safe
+ * and should be as cheap as possible.
+ * </p>
+ *
+ * @see ca.uhn.fhir.interceptor.executor.InMemoryInterceptorMetrics
+ * @since 5.4.0
+ */
+public interface IInterceptorMetrics {
+
+	/**
+	 * Called after a hook method has been invoked
+	 *
+	 * @param theHook          Identifies the hook method that was invoked. The same instance is passed
+	 *                         every time a given hook method is invoked, so it is suitable as a map key.
+	 * @param theElapsedNanos  The time taken by the hook method, in nanoseconds
+	 * @param theThrewException Did the hook method throw an exception (including exceptions that were
+	 *                         logged and swallowed)
+	 */
+	void recordHookInvocation(HookMetricsKey theHook, long theElapsedNanos, boolean theThrewException);
+
+}
@@ -20,9 +20,11 @@ package ca.uhn.fhir.interceptor.executor;
  * #L%
  */
 
+import ca.uhn.fhir.interceptor.api.HookMetricsKey;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IBaseInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.IBaseInterceptorService;
+import ca.uhn.fhir.interceptor.api.IInterceptorMetrics;
 import ca.uhn.fhir.interceptor.api.IPointcut;
 import ca.uhn.fhir.interceptor.api.Interceptor;
 import ca.uhn.fhir.interceptor.api.Pointcut;
@@ -32,6 +34,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -42,9 +45,12 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AnnotatedElement;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -55,6 +61,7 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -66,9 +73,16 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 	private final ListMultimap<POINTCUT, BaseInvoker> myAnonymousInvokers = ArrayListMultimap.create();
 	private final Object myRegistryMutex = new Object();
 	private final ThreadLocal<ListMultimap<POINTCUT, BaseInvoker>> myThreadlocalInvokers = new ThreadLocal<>();
+	/**
+	 * Sorted global and anonymous invokers for each pointcut that has any. This map and its lists are
+	 * never modified: they are replaced (while holding {@link #myRegistryMutex}) whenever an interceptor
+	 * is registered or unregistered, so that hooks can be invoked without taking any lock.
+	 */
+	private volatile Map<POINTCUT, List<BaseInvoker>> myInvokerSnapshot = Collections.emptyMap();
 	private String myName;
 	private boolean myThreadlocalInvokersEnabled = true;
 	private boolean myWarnOnInterceptorWithNoHooks = true;
+	private volatile IInterceptorMetrics myInterceptorMetrics;
 
 	/**
 	 * Constructor which uses a default name of "default"
@@ -94,6 +108,29 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 		myWarnOnInterceptorWithNoHooks = theWarnOnInterceptorWithNoHooks;
 	}
 
+	/**
+	 * Returns the metrics collector that is notified of every hook method invocation, or
+	 * <code>null</code> if hook invocations are not being measured (which is the default)
+	 *
+	 * @since 5.4.0
+	 */
+	@Nullable
+	public IInterceptorMetrics getInterceptorMetrics() {
+		return myInterceptorMetrics;
+	}
+
+	/**
+	 * Supplies a metrics collector that will be notified of every hook method invocation,
+	 * including the time it took and whether it threw an exception. Set to <code>null</code>
+	 * (which is the default) to stop measuring hook invocations.
+	 *
+	 * @see InMemoryInterceptorMetrics
+	 * @since 5.4.0
+	 */
+	public void setInterceptorMetrics(@Nullable IInterceptorMetrics theInterceptorMetrics) {
+		myInterceptorMetrics = theInterceptorMetrics;
+	}
+
 	/**
 	 * Are threadlocal interceptors enabled on this registry (defaults to true)
 	 */
@@ -126,6 +163,7 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 			if (!isInterceptorAlreadyRegistered(theInterceptor)) {
 				myInterceptors.add(theInterceptor);
 			}
+			rebuildInvokerSnapshot();
 		}
 	}
 
@@ -145,6 +183,7 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 			myAnonymousInvokers.clear();
 			myGlobalInvokers.clear();
 			myInterceptors.clear();
+			rebuildInvokerSnapshot();
 		}
 	}
 
@@ -164,8 +203,11 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 
 	@Override
 	public void unregisterInterceptorsIf(Predicate<Object> theShouldUnregisterFunction) {
-		unregisterInterceptorsIf(theShouldUnregisterFunction, myGlobalInvokers);
-		unregisterInterceptorsIf(theShouldUnregisterFunction, myAnonymousInvokers);
+		synchronized (myRegistryMutex) {
+			unregisterInterceptorsIf(theShouldUnregisterFunction, myGlobalInvokers);
+			unregisterInterceptorsIf(theShouldUnregisterFunction, myAnonymousInvokers);
+			rebuildInvokerSnapshot();
+		}
 	}
 
 	private void unregisterInterceptorsIf(Predicate<Object> theShouldUnregisterFunction, ListMultimap<POINTCUT, BaseInvoker> theGlobalInvokers) {
@@ -222,6 +264,7 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 			// Add to the global list
 			myInterceptors.add(theInterceptor);
 			sortByOrderAnnotation(myInterceptors);
+			rebuildInvokerSnapshot();
 
 			return true;
 		}
@@ -242,10 +285,28 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 			boolean removed = myInterceptors.removeIf(t -> t == theInterceptor);
 			removed |= myGlobalInvokers.entries().removeIf(t -> t.getValue().getInterceptor() == theInterceptor);
 			removed |= myAnonymousInvokers.entries().removeIf(t -> t.getValue().getInterceptor() == theInterceptor);
+			if (removed) {
+				rebuildInvokerSnapshot();
+			}
 			return removed;
 		}
 	}
 
+	/**
+	 * Must be called while holding {@link #myRegistryMutex}, after any change to the global or
+	 * anonymous invokers
+	 */
+	private void rebuildInvokerSnapshot() {
+		Map<POINTCUT, List<BaseInvoker>> snapshot = new HashMap<>();
+		for (POINTCUT nextPointcut : Sets.union(myGlobalInvokers.keySet(), myAnonymousInvokers.keySet())) {
+			List<BaseInvoker> invokers = union(myGlobalInvokers.get(nextPointcut), myAnonymousInvokers.get(nextPointcut));
+			if (!invokers.isEmpty()) {
+				snapshot.put(nextPointcut, Collections.unmodifiableList(new ArrayList<>(invokers)));
+			}
+		}
+		myInvokerSnapshot = snapshot;
+	}
+
 	private void sortByOrderAnnotation(List<Object> theObjects) {
 		IdentityHashMap<Object, Integer> interceptorToOrder = new IdentityHashMap<>();
 		for (Object next : theObjects) {
@@ -271,8 +332,7 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 
 	@Override
 	public boolean hasHooks(POINTCUT thePointcut) {
-		return myGlobalInvokers.containsKey(thePointcut)
-			|| myAnonymousInvokers.containsKey(thePointcut)
+		return myInvokerSnapshot.containsKey(thePointcut)
 			|| hasThreadLocalHooks(thePointcut);
 	}
 
@@ -292,13 +352,17 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 
 	private Object doCallHooks(POINTCUT thePointcut, HookParams theParams, Object theRetVal) {
 		List<BaseInvoker> invokers = getInvokersForPointcut(thePointcut);
+		if (invokers.isEmpty()) {
+			return theRetVal;
+		}
 
 		/*
 		 * Call each hook in order
 		 */
+		Class<?> pointcutReturnType = thePointcut.getReturnType();
+		IInterceptorMetrics metrics = myInterceptorMetrics;
 		for (BaseInvoker nextInvoker : invokers) {
-			Object nextOutcome = nextInvoker.invoke(theParams);
-			Class<?> pointcutReturnType = thePointcut.getReturnType();
+			Object nextOutcome = nextInvoker.invoke(theParams, metrics);
 			if (pointcutReturnType.equals(boolean.class)) {
 				Boolean nextOutcomeAsBoolean = (Boolean) nextOutcome;
 				if (Boolean.FALSE.equals(nextOutcomeAsBoolean)) {
@@ -327,29 +391,28 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 
 	/**
 	 * Returns an ordered list of invokers for the given pointcut. Note that
-	 * a new and stable list is returned to.. do whatever you want with it.
+	 * the returned list is stable (it won't change if interceptors are registered
+	 * or unregistered while it is being iterated), but it must not be modified.
 	 */
 	private List<BaseInvoker> getInvokersForPointcut(POINTCUT thePointcut) {
-		List<BaseInvoker> invokers;
+		List<BaseInvoker> invokers = myInvokerSnapshot.getOrDefault(thePointcut, Collections.emptyList());
 
-		synchronized (myRegistryMutex) {
-			List<BaseInvoker> globalInvokers = myGlobalInvokers.get(thePointcut);
-			List<BaseInvoker> anonymousInvokers = myAnonymousInvokers.get(thePointcut);
-			List<BaseInvoker> threadLocalInvokers = null;
-			if (myThreadlocalInvokersEnabled) {
-				ListMultimap<POINTCUT, BaseInvoker> pointcutToInvokers = myThreadlocalInvokers.get();
-				if (pointcutToInvokers != null) {
-					threadLocalInvokers = pointcutToInvokers.get(thePointcut);
+		if (myThreadlocalInvokersEnabled) {
+			ListMultimap<POINTCUT, BaseInvoker> pointcutToInvokers = myThreadlocalInvokers.get();
+			if (pointcutToInvokers != null) {
+				List<BaseInvoker> threadLocalInvokers = pointcutToInvokers.get(thePointcut);
+				if (!threadLocalInvokers.isEmpty()) {
+					invokers = union(invokers, threadLocalInvokers);
 				}
 			}
-			invokers = union(globalInvokers, anonymousInvokers, threadLocalInvokers);
 		}
 
 		return invokers;
 	}
 
 	/**
-	 * First argument must be the global invoker list!!
+	 * First argument must be a list that is already sorted (i.e. the global invoker
+	 * list, or a snapshot list)!! It may be returned as-is.
 	 */
 	@SafeVarargs
 	private final List<BaseInvoker> union(List<BaseInvoker>... theInvokersLists) {
@@ -488,6 +551,27 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 
 		abstract Object invoke(HookParams theParams);
 
+		abstract HookMetricsKey getMetricsKey();
+
+		/**
+		 * Invokes the hook, and reports the invocation to the given metrics collector if one is supplied
+		 */
+		Object invoke(HookParams theParams, @Nullable IInterceptorMetrics theMetrics) {
+			if (theMetrics == null) {
+				return invoke(theParams);
+			}
+
+			long start = System.nanoTime();
+			boolean threwException = true;
+			try {
+				Object retVal = invoke(theParams);
+				threwException = false;
+				return retVal;
+			} finally {
+				theMetrics.recordHookInvocation(getMetricsKey(), System.nanoTime() - start, threwException);
+			}
+		}
+
 		@Override
 		public int compareTo(BaseInvoker theInvoker) {
 			return myOrder - theInvoker.myOrder;
@@ -497,9 +581,12 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 	private static class HookInvoker extends BaseInvoker {
 
 		private final Method myMethod;
+		private final MethodHandle myMethodHandle;
+		private final MethodHandle mySpreadingMethodHandle;
 		private final Class<?>[] myParameterTypes;
 		private final int[] myParameterIndexes;
 		private final IPointcut myPointcut;
+		private final HookMetricsKey myMetricsKey;
 
 		/**
 		 * Constructor
@@ -507,6 +594,7 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 		private HookInvoker(HookDescriptor theHook, @Nonnull Object theInterceptor, @Nonnull Method theHookMethod, int theOrder) {
 			super(theInterceptor, theOrder);
 			myPointcut = theHook.getPointcut();
+			myMetricsKey = new HookMetricsKey(myPointcut, theInterceptor.getClass().getName(), theHookMethod.getName());
 			myParameterTypes = theHookMethod.getParameterTypes();
 			myMethod = theHookMethod;
 
@@ -527,6 +615,23 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 			}
 
 			myMethod.setAccessible(true);
+
+			/*
+			 * The hook method is invoked through a method handle bound to the interceptor, which
+			 * is much cheaper to call than Method#invoke. Hooks with only a few parameters (which
+			 * is almost all of them) are called without allocating an argument array.
+			 */
+			MethodHandle methodHandle;
+			try {
+				methodHandle = MethodHandles.lookup().unreflect(theHookMethod);
+			} catch (IllegalAccessException e) {
+				throw new InternalErrorException("Unable to access hook method " + theHookMethod, e);
+			}
+			if (!Modifier.isStatic(theHookMethod.getModifiers())) {
+				methodHandle = methodHandle.bindTo(theInterceptor);
+			}
+			myMethodHandle = methodHandle.asType(MethodType.genericMethodType(myParameterTypes.length));
+			mySpreadingMethodHandle = myMethodHandle.asSpreader(Object[].class, myParameterTypes.length);
 		}
 
 		@Override
@@ -540,43 +645,73 @@ public abstract class BaseInterceptorService<POINTCUT extends IPointcut> impleme
 			return myPointcut;
 		}
 
+		@Override
+		HookMetricsKey getMetricsKey() {
+			return myMetricsKey;
+		}
+
 		/**
 		 * @return Returns true/false if the hook method returns a boolean, returns true otherwise
 		 */
 		@Override
 		Object invoke(HookParams theParams) {
+			return invoke(theParams, null);
+		}
 
-			Object[] args = new Object[myParameterTypes.length];
-			for (int i = 0; i < myParameterTypes.length; i++) {
-				Class<?> nextParamType = myParameterTypes[i];
-				if (nextParamType.equals(Pointcut.class)) {
-					args[i] = myPointcut;
-				} else {
-					int nextParamIndex = myParameterIndexes[i];
-					Object nextParamValue = theParams.get(nextParamType, nextParamIndex);
-					args[i] = nextParamValue;
+		@Override
+		Object invoke(HookParams theParams, @Nullable IInterceptorMetrics theMetrics) {
+			long start = theMetrics != null ? System.nanoTime() : 0;
+			try {
+				Object retVal = invokeHookMethod(theParams);
+				if (theMetrics != null) {
+					theMetrics.recordHookInvocation(myMetricsKey, System.nanoTime() - start, false);
+				}
+				return retVal;
+			} catch (Throwable e) {
+				if (theMetrics != null) {
+					theMetrics.recordHookInvocation(myMetricsKey, System.nanoTime() - start, true);
 				}
-			}
 
-			// Invoke the method
-			try {
-				return myMethod.invoke(getInterceptor(), args);
-			} catch (InvocationTargetException e) {
-				Throwable targetException = e.getTargetException();
-				if (myPointcut.isShouldLogAndSwallowException(targetException)) {
-					ourLog.error("Exception thrown by interceptor: " + targetException.toString(), targetException);
+				if (myPointcut.isShouldLogAndSwallowException(e)) {
+					ourLog.error("Exception thrown by interceptor: " + e.toString(), e);
 					return null;
 				}
 
-				if (targetException instanceof RuntimeException) {
-					throw ((RuntimeException) targetException);
+				if (e instanceof RuntimeException) {
+					throw ((RuntimeException) e);
 				} else {
-					throw new InternalErrorException("Failure invoking interceptor for pointcut(s) " + getPointcut(), targetException);
+					throw new InternalErrorException("Failure invoking interceptor for pointcut(s) " + getPointcut(), e);
 				}
-			} catch (Exception e) {
-				throw new InternalErrorException(e);
 			}
+		}
+
+		private Object invokeHookMethod(HookParams theParams) throws Throwable {
+			switch (myParameterTypes.length) {
+				case 0:
+					return (Object) myMethodHandle.invokeExact();
+				case 1:
+					return (Object) myMethodHandle.invokeExact(getArgument(theParams, 0));
+				case 2:
+					return (Object) myMethodHandle.invokeExact(getArgument(theParams, 0), getArgument(theParams, 1));
+				case 3:
+					return (Object) myMethodHandle.invokeExact(getArgument(theParams, 0), getArgument(theParams, 1), getArgument(theParams, 2));
+				case 4:
+					return (Object) myMethodHandle.invokeExact(getArgument(theParams, 0), getArgument(theParams, 1), getArgument(theParams, 2), getArgument(theParams, 3));
+				default:
+					Object[] args = new Object[myParameterTypes.length];
+					for (int i = 0; i < myParameterTypes.length; i++) {
+						args[i] = getArgument(theParams, i);
+					}
+					return (Object) mySpreadingMethodHandle.invokeExact(args);
+			}
+		}
 
+		private Object getArgument(HookParams theParams, int theIndex) {
+			Class<?> paramType = myParameterTypes[theIndex];
+			if (paramType.equals(Pointcut.class)) {
+				return myPointcut;
+			}
+			return theParams.get(paramType, myParameterIndexes[theIndex]);
 		}
 
 	}
@@ -0,0 +1,203 @@
+package ca.uhn.fhir.interceptor.executor;
+
+
+/*-
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.interceptor.api.HookMetricsKey;
+import ca.uhn.fhir.interceptor.api.IInterceptorMetrics;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link IInterceptorMetrics} implementation that keeps running totals and a latency
+ * histogram for each hook method in memory. The collected values can be read using
+ * {@link #getStatistics()}, e.g. by the <code>$interceptor-stats</code> operation.
+ * <p>
+ * Recording an invocation doesn't allocate or lock. Percentiles are estimated from a
+ * histogram whose buckets are no more than 12.5% wide, so they are accurate to within
+ * that margin.
+ * </p>
+ * <p>
+ * A single instance may be shared by several interceptor services (e.g. the one belonging
+ * to a RestfulServer and the one belonging to a JPA server) in order to collect statistics
+ * for all of them in one place.
+ * </p>
+ *
+ * @since 5.4.0
+ */
+public class InMemoryInterceptorMetrics implements IInterceptorMetrics {
+
+	private final ConcurrentHashMap<HookMetricsKey, HookStatistics> myStatistics = new ConcurrentHashMap<>();
+
+	@Override
+	public void recordHookInvocation(HookMetricsKey theHook, long theElapsedNanos, boolean theThrewException) {
+		HookStatistics statistics = myStatistics.get(theHook);
+		if (statistics == null) {
+			statistics = myStatistics.computeIfAbsent(theHook, HookStatistics::new);
+		}
+		statistics.record(theElapsedNanos, theThrewException);
+	}
+
+	/**
+	 * Returns the statistics for every hook method that has been invoked since this object was
+	 * created (or since {@link #clear()} was last called), with the hooks that have taken
+	 * the most time in total first
+	 */
+	public List<HookStatistics> getStatistics() {
+		List<HookStatistics> retVal = new ArrayList<>(myStatistics.values());
+		retVal.sort(Comparator.comparing(HookStatistics::getTotalNanos).reversed());
+		return retVal;
+	}
+
+	/**
+	 * Discards all collected statistics
+	 */
+	public void clear() {
+		myStatistics.clear();
+	}
+
+	/**
+	 * Invocation statistics for a single hook method. Values are updated while they
+	 * are being read, so the individual values may not be exactly consistent with
+	 * each other.
+	 */
+	public static class HookStatistics {
+
+		/*
+		 * Durations of less than LINEAR_BUCKET_COUNT nanos each get their own bucket. Larger
+		 * durations are grouped by their highest set bit, and each of those groups is split
+		 * into SUB_BUCKET_COUNT equal buckets.
+		 */
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+		private static final int LINEAR_BUCKET_COUNT = SUB_BUCKET_COUNT * 2;
+		private static final int LINEAR_BUCKET_BITS = SUB_BUCKET_BITS + 1;
+		private static final int BUCKET_COUNT = LINEAR_BUCKET_COUNT + (63 - LINEAR_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+		private final HookMetricsKey myKey;
+		private final LongAdder myInvocationCount = new LongAdder();
+		private final LongAdder myExceptionCount = new LongAdder();
+		private final LongAdder myTotalNanos = new LongAdder();
+		private final LongAccumulator myMaxNanos = new LongAccumulator(Math::max, 0);
+		private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+		HookStatistics(HookMetricsKey theKey) {
+			myKey = theKey;
+		}
+
+		void record(long theElapsedNanos, boolean theThrewException) {
+			long elapsedNanos = Math.max(theElapsedNanos, 0);
+			myInvocationCount.increment();
+			if (theThrewException) {
+				myExceptionCount.increment();
+			}
+			myTotalNanos.add(elapsedNanos);
+			myMaxNanos.accumulate(elapsedNanos);
+			myBuckets.incrementAndGet(toBucketIndex(elapsedNanos));
+		}
+
+		public HookMetricsKey getKey() {
+			return myKey;
+		}
+
+		public long getInvocationCount() {
+			return myInvocationCount.sum();
+		}
+
+		public long getExceptionCount() {
+			return myExceptionCount.sum();
+		}
+
+		public long getTotalNanos() {
+			return myTotalNanos.sum();
+		}
+
+		public long getMaxNanos() {
+			return myMaxNanos.get();
+		}
+
+		public long getMeanNanos() {
+			long count = getInvocationCount();
+			return count > 0 ? getTotalNanos() / count : 0;
+		}
+
+		/**
+		 * Returns an estimate of the given latency percentile, in nanoseconds. The returned
+		 * value is the upper bound of the histogram bucket containing the percentile, and is
+		 * never more than the largest recorded value.
+		 *
+		 * @param thePercentile The percentile, e.g. <code>99.0</code>
+		 */
+		public long getPercentileNanos(double thePercentile) {
+			Validate.isTrue(thePercentile > 0 && thePercentile <= 100, "Percentile must be greater than 0 and no more than 100");
+
+			long[] counts = new long[BUCKET_COUNT];
+			long total = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				counts[i] = myBuckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long wanted = (long) Math.ceil(total * (thePercentile / 100.0));
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				seen += counts[i];
+				if (seen >= wanted) {
+					return Math.min(toBucketUpperBound(i), getMaxNanos());
+				}
+			}
+			return getMaxNanos();
+		}
+
+		static int toBucketIndex(long theNanos) {
+			if (theNanos < LINEAR_BUCKET_COUNT) {
+				return (int) theNanos;
+			}
+			int highestBit = 63 - Long.numberOfLeadingZeros(theNanos);
+			int shift = highestBit - SUB_BUCKET_BITS;
+			int subBucket = (int) (theNanos >>> shift) & (SUB_BUCKET_COUNT - 1);
+			return LINEAR_BUCKET_COUNT + (highestBit - LINEAR_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+		}
+
+		static long toBucketUpperBound(int theBucketIndex) {
+			if (theBucketIndex < LINEAR_BUCKET_COUNT) {
+				return theBucketIndex;
+			}
+			int highestBit = (theBucketIndex - LINEAR_BUCKET_COUNT) / SUB_BUCKET_COUNT + LINEAR_BUCKET_BITS;
+			int subBucket = (theBucketIndex - LINEAR_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+			int shift = highestBit - SUB_BUCKET_BITS;
+			long lowerBound = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+			return lowerBound + (1L << shift) - 1;
+		}
+
+	}
+
+}
@@ -21,6 +21,7 @@ package ca.uhn.fhir.interceptor.executor;
  */
 
 import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.HookMetricsKey;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
@@ -75,11 +76,13 @@ public class InterceptorService extends BaseInterceptorService<Pointcut> impleme
 	private class AnonymousLambdaInvoker extends BaseInvoker {
 		private final IAnonymousInterceptor myHook;
 		private final Pointcut myPointcut;
+		private final HookMetricsKey myMetricsKey;
 
 		public AnonymousLambdaInvoker(Pointcut thePointcut, IAnonymousInterceptor theHook, int theOrder) {
 			super(theHook, theOrder);
 			myHook = theHook;
 			myPointcut = thePointcut;
+			myMetricsKey = new HookMetricsKey(thePointcut, theHook.getClass().getName(), "invoke");
 		}
 
 		@Override
@@ -87,6 +90,11 @@ public class InterceptorService extends BaseInterceptorService<Pointcut> impleme
 			myHook.invoke(myPointcut, theParams);
 			return true;
 		}
+
+		@Override
+		HookMetricsKey getMetricsKey() {
+			return myMetricsKey;
+		}
 	}
 
 
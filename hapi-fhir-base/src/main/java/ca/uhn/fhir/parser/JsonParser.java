@@ -191,6 +191,10 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
+		if (myContext.getParserOptions().isUseStreamingJsonParser()) {
+			return new JsonStreamingReader(this, myContext, getErrorHandler(), theReader).parse(theResourceType);
+		}
+
 		JsonLikeStructure jsonStructure = new JacksonStructure();
 		jsonStructure.load(theReader);
 
@@ -907,7 +911,11 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 	}
 
 	private JsonLikeArray grabJsonArray(JsonLikeObject theObject, String nextName, String thePosition) {
-		JsonLikeValue object = theObject.get(nextName);
+		return asJsonArray(theObject.get(nextName), thePosition);
+	}
+
+	JsonLikeArray asJsonArray(JsonLikeValue theValue, String thePosition) {
+		JsonLikeValue object = theValue;
 		if (object == null || object.isNull()) {
 			return null;
 		}
@@ -948,7 +956,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 	// return object;
 	// }
 
-	private void parseAlternates(JsonLikeValue theAlternateVal, ParserState<?> theState, String theElementName, String theAlternateName) {
+	void parseAlternates(JsonLikeValue theAlternateVal, ParserState<?> theState, String theElementName, String theAlternateName) {
 		if (theAlternateVal == null || theAlternateVal.isNull()) {
 			return;
 		}
@@ -994,7 +1002,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseChildren(JsonLikeObject theObject, ParserState<?> theState) {
+	void parseChildren(JsonLikeObject theObject, ParserState<?> theState) {
 		Set<String> keySet = theObject.keySet();
 
 		int allUnderscoreNames = 0;
@@ -1067,7 +1075,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	}
 
-	private void parseChildren(ParserState<?> theState, String theName, JsonLikeValue theJsonVal, JsonLikeValue theAlternateVal, String theAlternateName, boolean theInArray) {
+	void parseChildren(ParserState<?> theState, String theName, JsonLikeValue theJsonVal, JsonLikeValue theAlternateVal, String theAlternateName, boolean theInArray) {
 		if (theName.equals("id")) {
 			if (!theJsonVal.isString()) {
 				getErrorHandler().incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, theJsonVal.getJsonType(), theJsonVal.getDataType());
@@ -1128,7 +1136,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseExtension(ParserState<?> theState, JsonLikeArray theValues, boolean theIsModifier) {
+	void parseExtension(ParserState<?> theState, JsonLikeArray theValues, boolean theIsModifier) {
 		int allUnderscoreNames = 0;
 		int handledUnderscoreNames = 0;
 
@@ -1201,7 +1209,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseFhirComments(JsonLikeValue theObject, ParserState<?> theState) {
+	void parseFhirComments(JsonLikeValue theObject, ParserState<?> theState) {
 		if (theObject.isArray()) {
 			JsonLikeArray comments = theObject.getAsArray();
 			for (int i = 0; i < comments.size(); i++) {
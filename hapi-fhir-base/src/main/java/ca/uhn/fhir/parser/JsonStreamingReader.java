@@ -0,0 +1,417 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.json.JsonLikeArray;
+import ca.uhn.fhir.parser.json.JsonLikeObject;
+import ca.uhn.fhir.parser.json.JsonLikeValue;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
+import ca.uhn.fhir.parser.json.jackson.JacksonStructure;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Parses a JSON resource by feeding the Jackson token stream directly into a {@link ParserState},
+ * instead of first loading the whole document into a tree. This is used by {@link JsonParser}
+ * when {@link ca.uhn.fhir.context.ParserOptions#setUseStreamingJsonParser(boolean)} is enabled.
+ * <p>
+ * Objects (composite datatypes, backbone elements and resources, including Bundle entries and
+ * contained resources) are streamed as they are read. Primitive values and their <code>_name</code>
+ * alternates are small, and the alternate may appear either before or after its value, so these
+ * are read as small trees and applied when the enclosing object ends. The alternate of an object
+ * valued element is applied when the element starts if it has already been read, or to the finished
+ * element when the enclosing object ends otherwise. Extensions are also read as
+ * small trees. Both are handed to the same code that the tree based parse uses, so that the two
+ * modes produce the same result and report the same errors.
+ * </p>
+ * <p>
+ * If <code>resourceType</code> is not the first property of a resource, the rest of that resource
+ * is read as a tree, since its type needs to be known before any of its children can be parsed.
+ * </p>
+ */
+class JsonStreamingReader {
+
+	private static final String MISSING_RESOURCE_TYPE_ROOT = "Invalid JSON content detected, missing required element: 'resourceType'";
+	private static final String MISSING_RESOURCE_TYPE_NESTED = "Missing required element 'resourceType' from JSON resource object, unable to parse";
+
+	private final JsonParser myParser;
+	private final FhirContext myContext;
+	private final IParserErrorHandler myErrorHandler;
+	private final com.fasterxml.jackson.core.JsonParser myTokens;
+
+	JsonStreamingReader(JsonParser theParser, FhirContext theContext, IParserErrorHandler theErrorHandler, Reader theReader) {
+		myParser = theParser;
+		myContext = theContext;
+		myErrorHandler = theErrorHandler;
+		myTokens = JacksonStructure.createStreamingParser(theReader);
+	}
+
+	<T extends IBaseResource> T parse(Class<T> theResourceType) {
+		try {
+			myTokens.nextToken();
+
+			T retVal;
+			String resourceType = readResourceType(MISSING_RESOURCE_TYPE_ROOT);
+			if (resourceType == null) {
+				JacksonStructure structure = new JacksonStructure();
+				structure.setNativeObject(readRemainingObject());
+				retVal = myParser.doParseResource(theResourceType, structure);
+			} else {
+				ParserState<? extends IBaseResource> state = ParserState.getPreResourceInstance(myParser, theResourceType, myContext, true, myErrorHandler);
+				state.enteringNewElement(null, resourceType);
+				parseObjectProperties(state);
+				state.endingElement();
+				state.endingElement();
+
+				@SuppressWarnings("unchecked")
+				T object = (T) state.getObject();
+				retVal = object;
+			}
+
+			JsonToken trailingToken = myTokens.nextToken();
+			if (trailingToken != null) {
+				throw new DataFormatException("Failed to parse JSON encoded FHIR content: Trailing token (of type " + trailingToken + ") found after the resource");
+			}
+
+			return retVal;
+		} catch (IOException e) {
+			throw JacksonStructure.toDataFormatException(e);
+		} finally {
+			try {
+				myTokens.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Parses the properties of the current object, up to and including its closing token
+	 */
+	private void parseObjectProperties(ParserState<?> theState) throws IOException {
+		Map<String, JsonNode> primitives = null;
+		Map<String, JsonNode> alternates = null;
+		Set<String> objectNames = null;
+		Set<String> objectArrayNames = null;
+		Map<String, List<IBase>> objectsWithoutAlternates = null;
+
+		while (myTokens.nextToken() == JsonToken.FIELD_NAME) {
+			String name = myTokens.getCurrentName();
+			JsonToken token = myTokens.nextToken();
+
+			if ("resourceType".equals(name)) {
+				myTokens.skipChildren();
+			} else if ("extension".equals(name) || "modifierExtension".equals(name)) {
+				JsonLikeArray array = myParser.asJsonArray(JacksonStructure.toJsonLikeValue(readValue()), name);
+				if (array != null) {
+					myParser.parseExtension(theState, array, "modifierExtension".equals(name));
+				}
+			} else if ("fhir_comments".equals(name)) {
+				myParser.parseFhirComments(JacksonStructure.toJsonLikeValue(readValue()), theState);
+			} else if (name.startsWith("_")) {
+				if (alternates == null) {
+					alternates = new LinkedHashMap<>();
+				}
+				alternates.put(name, readValue());
+			} else if (token == JsonToken.START_OBJECT) {
+				objectNames = addName(objectNames, name);
+				JsonNode alternate = getAlternate(alternates, name);
+				IBase object = parseObject(theState, name, alternate, false);
+				if (alternate == null) {
+					objectsWithoutAlternates = addObjects(objectsWithoutAlternates, name, Collections.singletonList(object));
+				}
+			} else if (token == JsonToken.START_ARRAY && myTokens.nextToken() == JsonToken.START_OBJECT) {
+				objectNames = addName(objectNames, name);
+				objectArrayNames = addName(objectArrayNames, name);
+				JsonNode alternate = getAlternate(alternates, name);
+				List<IBase> objects = parseObjectArray(theState, name, alternate);
+				if (alternate == null) {
+					objectsWithoutAlternates = addObjects(objectsWithoutAlternates, name, objects);
+				}
+			} else {
+				if (primitives == null) {
+					primitives = new LinkedHashMap<>();
+				}
+				if (token == JsonToken.START_ARRAY) {
+					primitives.put(name, readRemainingArray());
+				} else {
+					primitives.put(name, readValue());
+				}
+			}
+		}
+
+		int handledAlternates = 0;
+		if (primitives != null) {
+			for (Map.Entry<String, JsonNode> next : primitives.entrySet()) {
+				String alternateName = '_' + next.getKey();
+				JsonNode alternate = getAlternate(alternates, next.getKey());
+				if (alternate != null) {
+					handledAlternates++;
+				}
+				myParser.parseChildren(theState, next.getKey(), JacksonStructure.toJsonLikeValue(next.getValue()), JacksonStructure.toJsonLikeValue(alternate), alternateName, false);
+			}
+		}
+
+		/*
+		 * An alternate which came after its object valued element, e.g. an "_item"
+		 * element after an "item" element
+		 */
+		if (alternates != null && objectsWithoutAlternates != null) {
+			for (Map.Entry<String, List<IBase>> next : objectsWithoutAlternates.entrySet()) {
+				JsonNode alternate = getAlternate(alternates, next.getKey());
+				if (alternate != null) {
+					boolean array = objectArrayNames != null && objectArrayNames.contains(next.getKey());
+					parseLateAlternates(theState, next.getKey(), next.getValue(), alternate, array);
+				}
+			}
+		}
+
+		/*
+		 * An alternate without a corresponding value, e.g. a "_status" element
+		 * with an extension but no "status" element
+		 */
+		if (alternates != null) {
+			if (objectNames != null) {
+				for (String next : objectNames) {
+					if (alternates.containsKey('_' + next)) {
+						handledAlternates++;
+					}
+				}
+			}
+			if (alternates.size() > handledAlternates) {
+				for (Map.Entry<String, JsonNode> next : alternates.entrySet()) {
+					String alternateName = next.getKey();
+					if (alternateName.length() > 1) {
+						JsonLikeValue nextValue = JacksonStructure.toJsonLikeValue(next.getValue());
+						if (nextValue.isObject()) {
+							String nextName = alternateName.substring(1);
+							boolean hasValue = (primitives != null && primitives.containsKey(nextName)) || (objectNames != null && objectNames.contains(nextName));
+							if (!hasValue) {
+								theState.enteringNewElement(null, nextName);
+								myParser.parseAlternates(nextValue, theState, alternateName, alternateName);
+								theState.endingElement();
+							}
+						} else {
+							myErrorHandler.incorrectJsonType(null, alternateName, ValueType.OBJECT, null, nextValue.getJsonType(), null);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the alternate of an object valued element (or of each value of an array) to elements which
+	 * have already been parsed, because the alternate came after the element
+	 */
+	private void parseLateAlternates(ParserState<?> theState, String theName, List<IBase> theObjects, JsonNode theAlternate, boolean theArray) {
+		String alternateName = '_' + theName;
+		if (theArray && !theAlternate.isArray()) {
+			myErrorHandler.incorrectJsonType(null, alternateName, ValueType.ARRAY, null, JacksonStructure.toJsonLikeValue(theAlternate).getJsonType(), null);
+			return;
+		}
+
+		for (int i = 0; i < theObjects.size(); i++) {
+			IBase nextObject = theObjects.get(i);
+			JsonNode nextAlternate = theArray ? theAlternate.get(i) : theAlternate;
+			if (nextObject != null && nextAlternate != null) {
+				theState.reenteringElement(theName, nextObject);
+				myParser.parseAlternates(JacksonStructure.toJsonLikeValue(nextAlternate), theState, alternateName, alternateName);
+				theState.endingElement();
+			}
+		}
+	}
+
+	/**
+	 * Parses an object valued element, starting at its opening token
+	 *
+	 * @return The parsed element, or <code>null</code> if it is not a composite element which can have alternates added
+	 * to it later (e.g. because it is a resource, or an unknown element which was swallowed)
+	 */
+	private IBase parseObject(ParserState<?> theState, String theName, JsonNode theAlternate, boolean theInArray) throws IOException {
+		if ("id".equals(theName)) {
+			myErrorHandler.incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, ValueType.OBJECT, null);
+		}
+		if (!theInArray && theState.elementIsRepeating(theName)) {
+			myErrorHandler.incorrectJsonType(null, theName, ValueType.ARRAY, null, ValueType.OBJECT, null);
+		}
+
+		String alternateName = '_' + theName;
+		theState.enteringNewElement(null, theName);
+		myParser.parseAlternates(JacksonStructure.toJsonLikeValue(theAlternate), theState, alternateName, alternateName);
+		if (theState.isPreResource()) {
+			parseResource(theState);
+			theState.endingElement();
+			return null;
+		}
+
+		parseObjectProperties(theState);
+		theState.endingElement();
+		return theState.getPreviousCompositeElement();
+	}
+
+	/**
+	 * Parses an array whose first value is an object, starting at the opening token of the first value
+	 *
+	 * @return The parsed elements, by index in the array (see {@link #parseObject(ParserState, String, JsonNode, boolean)})
+	 */
+	private List<IBase> parseObjectArray(ParserState<?> theState, String theName, JsonNode theAlternate) throws IOException {
+		String alternateName = '_' + theName;
+		if ("id".equals(theName)) {
+			myErrorHandler.incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, ValueType.ARRAY, null);
+		}
+
+		JsonNode alternate = theAlternate;
+		if (alternate != null && !alternate.isArray()) {
+			myErrorHandler.incorrectJsonType(null, alternateName, ValueType.ARRAY, null, JacksonStructure.toJsonLikeValue(alternate).getJsonType(), null);
+			alternate = null;
+		}
+
+		List<IBase> retVal = new ArrayList<>();
+		int index = 0;
+		for (JsonToken token = myTokens.currentToken(); token != JsonToken.END_ARRAY; token = myTokens.nextToken(), index++) {
+			JsonNode nextAlternate = alternate != null ? alternate.get(index) : null;
+			if (token == JsonToken.START_OBJECT) {
+				retVal.add(parseObject(theState, theName, nextAlternate, true));
+			} else {
+				myParser.parseChildren(theState, theName, JacksonStructure.toJsonLikeValue(readValue()), JacksonStructure.toJsonLikeValue(nextAlternate), alternateName, true);
+				retVal.add(null);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Parses a resource (e.g. a contained resource or a Bundle entry resource), starting at its opening token
+	 */
+	private void parseResource(ParserState<?> theState) throws IOException {
+		String resourceType = readResourceType(MISSING_RESOURCE_TYPE_NESTED);
+		if (resourceType == null) {
+			JacksonStructure structure = new JacksonStructure();
+			structure.setNativeObject(readRemainingObject());
+			JsonLikeObject object = structure.getRootObject();
+			JsonLikeValue resType = object.get("resourceType");
+			if (resType == null || !resType.isString()) {
+				throw new DataFormatException(MISSING_RESOURCE_TYPE_NESTED);
+			}
+			theState.enteringNewElement(null, resType.getAsString());
+			myParser.parseChildren(object, theState);
+		} else {
+			theState.enteringNewElement(null, resourceType);
+			parseObjectProperties(theState);
+		}
+		theState.endingElement();
+	}
+
+	/**
+	 * Reads the resource type if it is the first property of the current object
+	 *
+	 * @return The resource type, or <code>null</code> if the first property is something else, in which
+	 * case the parser is left on the name of that property
+	 */
+	private String readResourceType(String theMissingMessage) throws IOException {
+		if (myTokens.nextToken() == JsonToken.FIELD_NAME && "resourceType".equals(myTokens.getCurrentName())) {
+			myTokens.nextToken();
+			JsonNode value = readValue();
+			if (!value.isTextual() || isBlank(value.asText())) {
+				throw new DataFormatException(theMissingMessage);
+			}
+			return value.asText();
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the value at the current token as a tree
+	 */
+	private JsonNode readValue() throws IOException {
+		return myTokens.readValueAsTree();
+	}
+
+	/**
+	 * Reads the remaining values of an array as a tree, starting at the current token
+	 */
+	private JsonNode readRemainingArray() throws IOException {
+		ArrayNode retVal = (ArrayNode) myTokens.getCodec().createArrayNode();
+		for (JsonToken token = myTokens.currentToken(); token != JsonToken.END_ARRAY; token = myTokens.nextToken()) {
+			retVal.add(readValue());
+		}
+		return retVal;
+	}
+
+	/**
+	 * Reads the remaining properties of an object as a tree, starting at the current token
+	 */
+	private ObjectNode readRemainingObject() throws IOException {
+		ObjectNode retVal = (ObjectNode) myTokens.getCodec().createObjectNode();
+		for (JsonToken token = myTokens.currentToken(); token == JsonToken.FIELD_NAME; token = myTokens.nextToken()) {
+			String name = myTokens.getCurrentName();
+			myTokens.nextToken();
+			retVal.set(name, readValue());
+		}
+		return retVal;
+	}
+
+	private static JsonNode getAlternate(Map<String, JsonNode> theAlternates, String theName) {
+		if (theAlternates == null) {
+			return null;
+		}
+		return theAlternates.get('_' + theName);
+	}
+
+	private static Map<String, List<IBase>> addObjects(Map<String, List<IBase>> theObjects, String theName, List<IBase> theValues) {
+		Map<String, List<IBase>> retVal = theObjects;
+		if (retVal == null) {
+			retVal = new HashMap<>();
+		}
+		retVal.put(theName, theValues);
+		return retVal;
+	}
+
+	private static Set<String> addName(Set<String> theNames, String theName) {
+		Set<String> retVal = theNames;
+		if (retVal == null) {
+			retVal = new HashSet<>();
+		}
+		retVal.add(theName);
+		return retVal;
+	}
+
+}
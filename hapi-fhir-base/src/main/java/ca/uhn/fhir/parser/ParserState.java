@@ -96,6 +96,7 @@ class ParserState<T> {
 	private List<String> myComments = new ArrayList<String>(2);
 	private T myObject;
 	private IBase myPreviousElement;
+	private BaseState myPreviousState;
 	private BaseState myState;
 	private List<IBaseResource> myGlobalResources = new ArrayList<>();
 	private List<IBaseReference> myGlobalReferences = new ArrayList<>();
@@ -136,6 +137,17 @@ class ParserState<T> {
 		myState.enteringNewElement(theNamespaceUri, theName);
 	}
 
+	/**
+	 * Enters a composite element which has already been parsed and added to the current element, so that
+	 * properties which were not known when it was parsed can be added to it. This is used by the
+	 * streaming JSON parser when a <code>_name</code> alternate appears after its element. Must be
+	 * followed by a call to {@link #endingElement()}.
+	 */
+	void reenteringElement(String theName, IBase theElement) {
+		BaseRuntimeElementCompositeDefinition<?> def = (BaseRuntimeElementCompositeDefinition<?>) myContext.getElementDefinition(theElement.getClass());
+		push(new ElementCompositeState(myState.getPreResourceState(), theName, def, theElement));
+	}
+
 	void enteringNewElementExtension(StartElement theElem, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
 		myState.enteringNewElementExtension(theElem, theUrlAttr, theIsModifier, baseServerUrl);
 	}
@@ -144,6 +156,17 @@ class ParserState<T> {
 		return myObject;
 	}
 
+	/**
+	 * Returns the element which was most recently finished if it was a composite element (i.e. one
+	 * which can be passed to {@link #reenteringElement(String, IBase)}), or <code>null</code> otherwise
+	 */
+	IBase getPreviousCompositeElement() {
+		if (myPreviousState instanceof ParserState.ElementCompositeState) {
+			return myPreviousState.getCurrentElement();
+		}
+		return null;
+	}
+
 	boolean isPreResource() {
 		return myState.isPreResource();
 	}
@@ -155,6 +178,7 @@ class ParserState<T> {
 	@SuppressWarnings("unchecked")
 	private void pop() {
 		myPreviousElement = myState.getCurrentElement();
+		myPreviousState = myState;
 		if (myState.myStack != null) {
 			myState = myState.myStack;
 			myState.wereBack();
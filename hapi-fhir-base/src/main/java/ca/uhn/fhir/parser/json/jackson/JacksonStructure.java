@@ -31,6 +31,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.DecimalNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -53,6 +54,8 @@ import java.util.stream.StreamSupport;
 public class JacksonStructure implements JsonLikeStructure {
 
 	private static final ObjectMapper OBJECT_MAPPER = createObjectMapper();
+	// Values read from a streaming parser are followed by the rest of the document
+	private static final ObjectReader STREAMING_VALUE_READER = OBJECT_MAPPER.reader().without(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
 	private JacksonWriter jacksonWriter;
 	private ROOT_TYPE rootType = null;
 	private JsonNode nativeRoot = null;
@@ -81,41 +84,80 @@ public class JacksonStructure implements JsonLikeStructure {
 	@Override
 	public void load(Reader theReader, boolean allowArray) throws DataFormatException {
 		PushbackReader pbr = new PushbackReader(theReader);
-		int nextInt;
 		try {
-			while (true) {
-				nextInt = pbr.read();
-				if (nextInt == -1) {
-					throw new DataFormatException("Did not find any content to parse");
-				}
-				if (nextInt == '{') {
-					pbr.unread(nextInt);
-					break;
-				}
-				if (Character.isWhitespace(nextInt)) {
-					continue;
-				}
-				if (allowArray) {
-					if (nextInt == '[') {
-						pbr.unread(nextInt);
-						break;
-					}
-					throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{' or '[')");
-				}
-				throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{')");
-			}
-
+			int nextInt = readToContentStart(pbr, allowArray);
 			if (nextInt == '{') {
 				setNativeObject((ObjectNode) OBJECT_MAPPER.readTree(pbr));
 			} else {
 				setNativeArray((ArrayNode) OBJECT_MAPPER.readTree(pbr));
 			}
 		} catch (Exception e) {
-			if (e.getMessage().startsWith("Unexpected char 39")) {
-				throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage() + " - " +
-					"This may indicate that single quotes are being used as JSON escapes where double quotes are required", e);
+			throw toDataFormatException(e);
+		}
+	}
+
+	/**
+	 * Creates a Jackson streaming parser for the given content, using the same settings
+	 * that {@link #load(Reader)} uses to build a tree. The content must be a JSON object,
+	 * and the returned parser is positioned before its first token. Values can be read
+	 * from the parser as trees using {@link JsonParser#readValueAsTree()}.
+	 */
+	public static JsonParser createStreamingParser(Reader theReader) throws DataFormatException {
+		PushbackReader pbr = new PushbackReader(theReader);
+		try {
+			readToContentStart(pbr, false);
+			JsonParser retVal = OBJECT_MAPPER.getFactory().createParser(pbr);
+			retVal.setCodec(STREAMING_VALUE_READER);
+			return retVal;
+		} catch (Exception e) {
+			throw toDataFormatException(e);
+		}
+	}
+
+	/**
+	 * Wraps a tree node that was read from a {@link #createStreamingParser(Reader) streaming parser}
+	 *
+	 * @return The wrapped value, or <code>null</code> if the node is <code>null</code>
+	 */
+	public static JsonLikeValue toJsonLikeValue(JsonNode theNode) {
+		if (theNode == null) {
+			return null;
+		}
+		return new JacksonJsonValue(theNode);
+	}
+
+	/**
+	 * Converts a failure reading JSON content into the exception thrown by {@link #load(Reader)}
+	 */
+	public static DataFormatException toDataFormatException(Exception theException) {
+		if (theException.getMessage().startsWith("Unexpected char 39")) {
+			return new DataFormatException("Failed to parse JSON encoded FHIR content: " + theException.getMessage() + " - " +
+				"This may indicate that single quotes are being used as JSON escapes where double quotes are required", theException);
+		}
+		return new DataFormatException("Failed to parse JSON encoded FHIR content: " + theException.getMessage(), theException);
+	}
+
+	private static int readToContentStart(PushbackReader theReader, boolean theAllowArray) throws IOException {
+		while (true) {
+			int nextInt = theReader.read();
+			if (nextInt == -1) {
+				throw new DataFormatException("Did not find any content to parse");
+			}
+			if (nextInt == '{') {
+				theReader.unread(nextInt);
+				return nextInt;
+			}
+			if (Character.isWhitespace(nextInt)) {
+				continue;
+			}
+			if (theAllowArray) {
+				if (nextInt == '[') {
+					theReader.unread(nextInt);
+					return nextInt;
+				}
+				throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{' or '[')");
 			}
-			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+			throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{')");
 		}
 	}
 
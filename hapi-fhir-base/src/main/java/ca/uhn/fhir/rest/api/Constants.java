@@ -266,6 +266,16 @@ public class Constants {
 	 * key will be of type {@link ca.uhn.fhir.interceptor.model.RequestPartitionId}.
 	 */
 	public static final String RESOURCE_PARTITION_ID = Constants.class.getName() + "_RESOURCE_PARTITION_ID";
+	/**
+	 * {@link org.hl7.fhir.instance.model.api.IBaseResource#getUserData(String) User metadata key} used
+	 * to store a complete JSON encoding of the given resource, which the server may send to the
+	 * client as-is instead of encoding the resource itself. Value for this key will be of type
+	 * {@link String}. Resources carrying this key may be placeholders whose only populated elements
+	 * are the ID and the metadata.
+	 *
+	 * @since 5.4.0
+	 */
+	public static final String RESOURCE_PRE_ENCODED_JSON = Constants.class.getName() + "_RESOURCE_PRE_ENCODED_JSON";
 	public static final String CT_APPLICATION_GZIP = "application/gzip";
 
 	static {
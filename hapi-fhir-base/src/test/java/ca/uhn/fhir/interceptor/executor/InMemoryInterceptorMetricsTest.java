@@ -0,0 +1,67 @@
+package ca.uhn.fhir.interceptor.executor;
+
+import ca.uhn.fhir.interceptor.api.HookMetricsKey;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InMemoryInterceptorMetricsTest {
+
+	private static final HookMetricsKey KEY_A = new HookMetricsKey(Pointcut.TEST_RB, "com.example.InterceptorA", "hook");
+	private static final HookMetricsKey KEY_B = new HookMetricsKey(Pointcut.TEST_RB, "com.example.InterceptorB", "hook");
+
+	@Test
+	public void testBucketBoundaries() {
+		for (long nanos : new long[]{0, 1, 15, 16, 17, 18, 1000, 123456789, Long.MAX_VALUE}) {
+			int index = InMemoryInterceptorMetrics.HookStatistics.toBucketIndex(nanos);
+			long upperBound = InMemoryInterceptorMetrics.HookStatistics.toBucketUpperBound(index);
+			assertTrue(upperBound >= nanos, "Bucket for " + nanos + " ends at " + upperBound);
+			assertTrue(upperBound - nanos <= nanos / 8, "Bucket for " + nanos + " ends at " + upperBound);
+			if (index > 0) {
+				long previousUpperBound = InMemoryInterceptorMetrics.HookStatistics.toBucketUpperBound(index - 1);
+				assertTrue(previousUpperBound < nanos, "Previous bucket for " + nanos + " ends at " + previousUpperBound);
+			}
+		}
+	}
+
+	@Test
+	public void testStatistics() {
+		InMemoryInterceptorMetrics metrics = new InMemoryInterceptorMetrics();
+		for (int i = 1; i <= 100; i++) {
+			metrics.recordHookInvocation(KEY_A, i * 1000L, i == 100);
+		}
+		metrics.recordHookInvocation(KEY_B, 1000L, false);
+		metrics.recordHookInvocation(new HookMetricsKey(Pointcut.TEST_RB, "com.example.InterceptorB", "hook"), 1000L, false);
+
+		List<InMemoryInterceptorMetrics.HookStatistics> statistics = metrics.getStatistics();
+		assertEquals(2, statistics.size());
+
+		// Sorted by total time
+		InMemoryInterceptorMetrics.HookStatistics statsA = statistics.get(0);
+		assertEquals(KEY_A, statsA.getKey());
+		assertEquals(100, statsA.getInvocationCount());
+		assertEquals(1, statsA.getExceptionCount());
+		assertEquals(5050000L, statsA.getTotalNanos());
+		assertEquals(50500L, statsA.getMeanNanos());
+		assertEquals(100000L, statsA.getMaxNanos());
+		assertPercentile(50000L, statsA.getPercentileNanos(50));
+		assertPercentile(95000L, statsA.getPercentileNanos(95));
+		assertEquals(100000L, statsA.getPercentileNanos(100));
+
+		InMemoryInterceptorMetrics.HookStatistics statsB = statistics.get(1);
+		assertEquals(KEY_B, statsB.getKey());
+		assertEquals(2, statsB.getInvocationCount());
+
+		metrics.clear();
+		assertEquals(0, metrics.getStatistics().size());
+	}
+
+	private static void assertPercentile(long theExpected, long theActual) {
+		assertTrue(theActual >= theExpected && theActual <= theExpected + theExpected / 8, "Expected about " + theExpected + " but was " + theActual);
+	}
+
+}
@@ -537,6 +537,95 @@ public class InterceptorServiceTest {
 	 *    ThreadLocalEnabled=false - Performed 1000000 loops in 7046.0ms - 0.007ms / loop
 	 * </pre>
 	 */
+	@Test
+	public void testUnregisterInterceptorDuringInvocation() {
+		InterceptorService svc = new InterceptorService();
+
+		@Interceptor(order = 200)
+		class SecondInterceptor {
+			@Hook(Pointcut.TEST_RB)
+			public void testRb(String theString0, String theString1) {
+				myInvocations.add("second:" + theString0);
+			}
+		}
+		SecondInterceptor second = new SecondInterceptor();
+
+		@Interceptor(order = 100)
+		class FirstInterceptor {
+			@Hook(Pointcut.TEST_RB)
+			public void testRb(String theString0, String theString1) {
+				myInvocations.add("first:" + theString0);
+				svc.unregisterInterceptor(second);
+			}
+		}
+
+		svc.registerInterceptor(new FirstInterceptor());
+		svc.registerInterceptor(second);
+
+		// The interceptors that were registered when the hooks were fired are all invoked
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		assertThat(myInvocations, contains("first:A", "second:A"));
+
+		myInvocations.clear();
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("C", "D"));
+		assertThat(myInvocations, contains("first:C"));
+	}
+
+	@Test
+	public void testInvokeHookWithManyParameters() {
+		InterceptorService svc = new InterceptorService();
+
+		class ManyParamsInterceptor {
+			@Hook(Pointcut.TEST_RB)
+			public boolean testRb(String theString0, Pointcut thePointcut0, String theString1, Pointcut thePointcut1, Pointcut thePointcut2) {
+				myInvocations.add(theString0 + theString1 + thePointcut0 + thePointcut1 + thePointcut2);
+				return false;
+			}
+		}
+		svc.registerInterceptor(new ManyParamsInterceptor());
+
+		assertFalse(svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B")));
+		assertThat(myInvocations, contains("ABTEST_RBTEST_RBTEST_RB"));
+	}
+
+	@Test
+	public void testInterceptorMetrics() {
+		InterceptorService svc = new InterceptorService();
+		InMemoryInterceptorMetrics metrics = new InMemoryInterceptorMetrics();
+		svc.setInterceptorMetrics(metrics);
+
+		class MyInterceptor {
+			@Hook(Pointcut.TEST_RB)
+			public void testRb(String theString0, String theString1) {
+				if (theString0.equals("FAIL")) {
+					// This exception is logged and swallowed for this pointcut
+					throw new IllegalStateException();
+				}
+			}
+		}
+		svc.registerInterceptor(new MyInterceptor());
+
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("FAIL", "B"));
+
+		List<InMemoryInterceptorMetrics.HookStatistics> statistics = metrics.getStatistics();
+		assertEquals(1, statistics.size());
+		InMemoryInterceptorMetrics.HookStatistics hookStatistics = statistics.get(0);
+		assertEquals(Pointcut.TEST_RB, hookStatistics.getKey().getPointcut());
+		assertEquals(MyInterceptor.class.getName(), hookStatistics.getKey().getInterceptorClassName());
+		assertEquals("testRb", hookStatistics.getKey().getMethodName());
+		assertEquals(3, hookStatistics.getInvocationCount());
+		assertEquals(1, hookStatistics.getExceptionCount());
+		assertTrue(hookStatistics.getTotalNanos() > 0);
+		assertTrue(hookStatistics.getPercentileNanos(99) <= hookStatistics.getMaxNanos());
+
+		// Metrics are not collected once the collector has been removed
+		svc.setInterceptorMetrics(null);
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		assertEquals(3, hookStatistics.getInvocationCount());
+	}
+
 	@Test
 	@Disabled("Performance test - Not needed normally")
 	public void testThreadLocalHookInterceptorMicroBenchmark() {
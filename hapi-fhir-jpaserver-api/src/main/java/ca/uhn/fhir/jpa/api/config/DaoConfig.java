@@ -1,5 +1,6 @@
 package ca.uhn.fhir.jpa.api.config;
 
+import ca.uhn.fhir.jpa.api.model.MemoryCacheSettings;
 import ca.uhn.fhir.jpa.api.model.WarmCacheEntry;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
@@ -17,7 +18,9 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -73,6 +76,18 @@ public class DaoConfig {
 	)));
 	// update setter javadoc if default changes
 	public static final int DEFAULT_MAX_EXPANSION_SIZE = 1000;
+	/**
+	 * Default value for {@link #setReindexBatchSize(int)}
+	 *
+	 * @since 5.4.0
+	 */
+	public static final int DEFAULT_REINDEX_BATCH_SIZE = 50;
+	/**
+	 * Default value for {@link #setBulkExportFileMaximumSize(long)}
+	 *
+	 * @since 5.4.0
+	 */
+	public static final long DEFAULT_BULK_EXPORT_FILE_MAXIMUM_SIZE = 100 * 1024 * 1024;
 	/**
 	 * Default value for {@link #setMaximumSearchResultCountInTransaction(Integer)}
 	 *
@@ -204,6 +219,58 @@ public class DaoConfig {
 	 * @since 5.2.0
 	 */
 	private boolean myUseLegacySearchBuilder = false;
+	/**
+	 * @since 5.4.0
+	 */
+	private boolean myReencodeResourceBodiesDuringReindexing = false;
+	/**
+	 * @since 5.4.0
+	 */
+	private int mySearchResourceParsingThreadCount = 0;
+	/**
+	 * @since 5.4.0
+	 */
+	private Map<String, MemoryCacheSettings> myMemoryCacheSettings = new HashMap<>();
+	/**
+	 * @since 5.4.0
+	 */
+	private boolean myBulkSubscriptionTriggeringEnabled = false;
+	/**
+	 * @since 5.4.0
+	 */
+	private boolean myPreEncodedReadResponsesEnabled = false;
+	/**
+	 * @since 5.4.0
+	 */
+	private int myReindexBatchSize = DEFAULT_REINDEX_BATCH_SIZE;
+	/**
+	 * @since 5.4.0
+	 */
+	private boolean myBulkExportBinaryStorageEnabled = false;
+	/**
+	 * @since 5.4.0
+	 */
+	private boolean myBulkExportGzipEnabled = false;
+	/**
+	 * @since 5.4.0
+	 */
+	private long myBulkExportFileMaximumSize = DEFAULT_BULK_EXPORT_FILE_MAXIMUM_SIZE;
+	/**
+	 * @since 5.4.0
+	 */
+	private int myBulkExportPartitionsPerResourceType = 1;
+	/**
+	 * @since 5.4.0
+	 */
+	private int myBulkExportThreadCount = 1;
+	/**
+	 * @since 5.4.0
+	 */
+	private String myBulkImportDirectory;
+	/**
+	 * @since 5.4.0
+	 */
+	private int myBulkImportThreadCount;
 
 	/**
 	 * Constructor
@@ -215,6 +282,7 @@ public class DaoConfig {
 		setMarkResourcesForReindexingUponSearchParameterChange(true);
 		setReindexThreadCount(Runtime.getRuntime().availableProcessors());
 		setExpungeThreadCount(Runtime.getRuntime().availableProcessors());
+		setBulkImportThreadCount(Runtime.getRuntime().availableProcessors());
 		setBundleTypesAllowedForStorage(DEFAULT_BUNDLE_TYPES_ALLOWED_FOR_STORAGE);
 
 		if ("true".equalsIgnoreCase(System.getProperty(DISABLE_STATUS_BASED_REINDEX))) {
@@ -315,6 +383,41 @@ public class DaoConfig {
 		myDefaultTotalMode = theDefaultTotalMode;
 	}
 
+	/**
+	 * Returns the size and expiry policy for the given in-memory cache. If no settings have been
+	 * supplied for the cache, default settings are returned (10000 entries, expiring 1 minute after
+	 * they are written).
+	 *
+	 * @param theCacheName The cache name, which is the name of a constant in
+	 *                     <code>ca.uhn.fhir.jpa.util.MemoryCacheService.CacheEnum</code> (e.g. <code>"FORCED_ID"</code>)
+	 * @since 5.4.0
+	 */
+	public MemoryCacheSettings getMemoryCacheSettings(String theCacheName) {
+		MemoryCacheSettings retVal = myMemoryCacheSettings.get(theCacheName);
+		if (retVal == null) {
+			retVal = new MemoryCacheSettings();
+		}
+		return retVal;
+	}
+
+	/**
+	 * Supplies the size and expiry policy for the given in-memory cache. Settings are applied when
+	 * the caches are created at startup.
+	 *
+	 * @param theCacheName The cache name, which is the name of a constant in
+	 *                     <code>ca.uhn.fhir.jpa.util.MemoryCacheService.CacheEnum</code> (e.g. <code>"FORCED_ID"</code>)
+	 * @param theSettings  The settings, or <code>null</code> to restore the defaults
+	 * @since 5.4.0
+	 */
+	public void setMemoryCacheSettings(String theCacheName, MemoryCacheSettings theSettings) {
+		Validate.notBlank(theCacheName, "theCacheName must not be blank");
+		if (theSettings == null) {
+			myMemoryCacheSettings.remove(theCacheName);
+		} else {
+			myMemoryCacheSettings.put(theCacheName, theSettings);
+		}
+	}
+
 	/**
 	 * Returns a set of searches that should be kept "warm", meaning that
 	 * searches will periodically be performed in the background to
@@ -740,6 +843,41 @@ public class DaoConfig {
 		myReindexThreadCount = Math.max(myReindexThreadCount, 1); // Minimum of 1
 	}
 
+	/**
+	 * This setting controls the number of threads used to decompress and parse stored resource
+	 * bodies when loading a page of search results. When set to a value greater than 1, the
+	 * resources of each chunk loaded from the database are parsed on a shared pool of this size
+	 * while the next chunk is being fetched, so large pages (particularly pages with
+	 * <code>_include</code>) are assembled faster.
+	 * <p>
+	 * The default value is <code>0</code>, meaning that resources are parsed on the
+	 * request thread.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public int getSearchResourceParsingThreadCount() {
+		return mySearchResourceParsingThreadCount;
+	}
+
+	/**
+	 * This setting controls the number of threads used to decompress and parse stored resource
+	 * bodies when loading a page of search results. When set to a value greater than 1, the
+	 * resources of each chunk loaded from the database are parsed on a shared pool of this size
+	 * while the next chunk is being fetched, so large pages (particularly pages with
+	 * <code>_include</code>) are assembled faster.
+	 * <p>
+	 * The default value is <code>0</code>, meaning that resources are parsed on the
+	 * request thread. Note that the pool is created using this value the first time it is
+	 * needed, so changing the value after that point only enables or disables its use.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setSearchResourceParsingThreadCount(int theSearchResourceParsingThreadCount) {
+		mySearchResourceParsingThreadCount = Math.max(theSearchResourceParsingThreadCount, 0);
+	}
+
 	/**
 	 * This setting controls the number of threads allocated to the expunge operation
 	 * <p>
@@ -773,6 +911,34 @@ public class DaoConfig {
 		myResourceEncoding = theResourceEncoding;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the reindexing job will also rewrite the
+	 * stored body of every version of each resource it reindexes if that body is not already stored using
+	 * the encoding specified in {@link #getResourceEncoding()}. This can be used together with
+	 * <code>$mark-all-resources-for-reindexing</code> to migrate existing rows to a new encoding
+	 * (e.g. from {@link ResourceEncodingEnum#JSONC} to {@link ResourceEncodingEnum#JSOND}) in the background.
+	 * Rows are always readable regardless of their encoding, so this migration is optional.
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isReencodeResourceBodiesDuringReindexing() {
+		return myReencodeResourceBodiesDuringReindexing;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the reindexing job will also rewrite the
+	 * stored body of every version of each resource it reindexes if that body is not already stored using
+	 * the encoding specified in {@link #getResourceEncoding()}. This can be used together with
+	 * <code>$mark-all-resources-for-reindexing</code> to migrate existing rows to a new encoding
+	 * (e.g. from {@link ResourceEncodingEnum#JSONC} to {@link ResourceEncodingEnum#JSOND}) in the background.
+	 * Rows are always readable regardless of their encoding, so this migration is optional.
+	 *
+	 * @since 5.4.0
+	 */
+	public void setReencodeResourceBodiesDuringReindexing(boolean theReencodeResourceBodiesDuringReindexing) {
+		myReencodeResourceBodiesDuringReindexing = theReencodeResourceBodiesDuringReindexing;
+	}
+
 	/**
 	 * If set, an individual resource will not be allowed to have more than the
 	 * given number of tags, profiles, and security labels (the limit is for the combined
@@ -1762,6 +1928,313 @@ public class DaoConfig {
 		myEnableInMemorySubscriptionMatching = theEnableInMemorySubscriptionMatching;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), when the <code>$trigger-subscription</code>
+	 * operation is invoked for a specific subscription with a search URL, the
+	 * subscription criteria are added to the search, so that only resources which match the criteria are
+	 * loaded and submitted for delivery. When this is disabled, every resource returned by the search is
+	 * loaded and submitted to the subscription matcher individually.
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isBulkSubscriptionTriggeringEnabled() {
+		return myBulkSubscriptionTriggeringEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), when the <code>$trigger-subscription</code>
+	 * operation is invoked for a specific subscription with a search URL, the
+	 * subscription criteria are added to the search, so that only resources which match the criteria are
+	 * loaded and submitted for delivery. When this is disabled, every resource returned by the search is
+	 * loaded and submitted to the subscription matcher individually.
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkSubscriptionTriggeringEnabled(boolean theBulkSubscriptionTriggeringEnabled) {
+		myBulkSubscriptionTriggeringEnabled = theBulkSubscriptionTriggeringEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), plain <code>read</code> and <code>vread</code>
+	 * operations that are answered with JSON will send the stored resource body to the client without
+	 * parsing it and encoding it again. Only the resource ID and metadata are spliced into the stored body.
+	 * <p>
+	 * This is only done when the response would be identical to the normal one: the request must not use
+	 * <code>_summary</code>, <code>_elements</code> or pretty printing, no narrative generator may be configured,
+	 * and no interceptor may be registered for
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES},
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES} or
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}. Otherwise the resource is
+	 * parsed as usual.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isPreEncodedReadResponsesEnabled() {
+		return myPreEncodedReadResponsesEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), plain <code>read</code> and <code>vread</code>
+	 * operations that are answered with JSON will send the stored resource body to the client without
+	 * parsing it and encoding it again. Only the resource ID and metadata are spliced into the stored body.
+	 * <p>
+	 * This is only done when the response would be identical to the normal one: the request must not use
+	 * <code>_summary</code>, <code>_elements</code> or pretty printing, no narrative generator may be configured,
+	 * and no interceptor may be registered for
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES},
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES} or
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}. Otherwise the resource is
+	 * parsed as usual.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setPreEncodedReadResponsesEnabled(boolean thePreEncodedReadResponsesEnabled) {
+		myPreEncodedReadResponsesEnabled = thePreEncodedReadResponsesEnabled;
+	}
+
+	/**
+	 * This setting controls the maximum number of resources that a single reindexing thread
+	 * will reindex within one database transaction. Grouping resources this way lets the
+	 * index rows of many resources be flushed together using JDBC batching instead of paying
+	 * for a separate transaction per resource. If any resource in a group fails to reindex,
+	 * the group is rolled back and its resources are reindexed one at a time.
+	 * <p>
+	 * The default value is {@value #DEFAULT_REINDEX_BATCH_SIZE}. Set this to <code>1</code> to
+	 * reindex every resource in its own transaction.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public int getReindexBatchSize() {
+		return myReindexBatchSize;
+	}
+
+	/**
+	 * This setting controls the maximum number of resources that a single reindexing thread
+	 * will reindex within one database transaction. Grouping resources this way lets the
+	 * index rows of many resources be flushed together using JDBC batching instead of paying
+	 * for a separate transaction per resource. If any resource in a group fails to reindex,
+	 * the group is rolled back and its resources are reindexed one at a time.
+	 * <p>
+	 * The default value is {@value #DEFAULT_REINDEX_BATCH_SIZE}. Set this to <code>1</code> to
+	 * reindex every resource in its own transaction.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setReindexBatchSize(int theReindexBatchSize) {
+		Validate.isTrue(theReindexBatchSize > 0, "theReindexBatchSize must be > 0");
+		myReindexBatchSize = theReindexBatchSize;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) and an {@literal IBinaryStorageSvc} is
+	 * configured, bulk export files are written directly to binary storage instead of being stored
+	 * as the content of a <code>Binary</code> resource in the database. The file contents are streamed
+	 * to the storage service, so exports of any size are written without holding the file in memory.
+	 * The generated <code>Binary</code> resources reference the stored content using the same extension
+	 * as the {@literal BinaryStorageInterceptor}, which should also be registered so that the content is
+	 * returned when the files are read and removed when they are expunged.
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isBulkExportBinaryStorageEnabled() {
+		return myBulkExportBinaryStorageEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) and an {@literal IBinaryStorageSvc} is
+	 * configured, bulk export files are written directly to binary storage instead of being stored
+	 * as the content of a <code>Binary</code> resource in the database. The file contents are streamed
+	 * to the storage service, so exports of any size are written without holding the file in memory.
+	 * The generated <code>Binary</code> resources reference the stored content using the same extension
+	 * as the {@literal BinaryStorageInterceptor}, which should also be registered so that the content is
+	 * returned when the files are read and removed when they are expunged.
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkExportBinaryStorageEnabled(boolean theBulkExportBinaryStorageEnabled) {
+		myBulkExportBinaryStorageEnabled = theBulkExportBinaryStorageEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) bulk export files are gzip compressed.
+	 * Compressed files are stored with a content type of <code>application/gzip</code> instead of
+	 * <code>application/fhir+ndjson</code>.
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isBulkExportGzipEnabled() {
+		return myBulkExportGzipEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) bulk export files are gzip compressed.
+	 * Compressed files are stored with a content type of <code>application/gzip</code> instead of
+	 * <code>application/fhir+ndjson</code>.
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkExportGzipEnabled(boolean theBulkExportGzipEnabled) {
+		myBulkExportGzipEnabled = theBulkExportGzipEnabled;
+	}
+
+	/**
+	 * Bulk export writes one file for each chunk of resources that it loads. If the NDJSON written
+	 * for a chunk grows beyond this number of bytes (measured before any compression), the file is
+	 * closed and the remaining resources of the chunk are written to a new file.
+	 * <p>
+	 * The default value is {@value #DEFAULT_BULK_EXPORT_FILE_MAXIMUM_SIZE} (100 MB).
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public long getBulkExportFileMaximumSize() {
+		return myBulkExportFileMaximumSize;
+	}
+
+	/**
+	 * Bulk export writes one file for each chunk of resources that it loads. If the NDJSON written
+	 * for a chunk grows beyond this number of bytes (measured before any compression), the file is
+	 * closed and the remaining resources of the chunk are written to a new file.
+	 * <p>
+	 * The default value is {@value #DEFAULT_BULK_EXPORT_FILE_MAXIMUM_SIZE} (100 MB).
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkExportFileMaximumSize(long theBulkExportFileMaximumSize) {
+		Validate.isTrue(theBulkExportFileMaximumSize > 0, "theBulkExportFileMaximumSize must be > 0");
+		myBulkExportFileMaximumSize = theBulkExportFileMaximumSize;
+	}
+
+	/**
+	 * The number of partitions that the resources of each resource type are split into when
+	 * generating the files for a (non-group) bulk export. Each partition covers one range of
+	 * resource IDs and produces its own files, and partitions are processed in parallel using
+	 * up to {@link #getBulkExportThreadCount()} threads. Default is <code>1</code>, meaning that
+	 * each resource type is exported by a single partition.
+	 *
+	 * @since 5.4.0
+	 */
+	public int getBulkExportPartitionsPerResourceType() {
+		return myBulkExportPartitionsPerResourceType;
+	}
+
+	/**
+	 * The number of partitions that the resources of each resource type are split into when
+	 * generating the files for a (non-group) bulk export. Each partition covers one range of
+	 * resource IDs and produces its own files, and partitions are processed in parallel using
+	 * up to {@link #getBulkExportThreadCount()} threads. Default is <code>1</code>, meaning that
+	 * each resource type is exported by a single partition.
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkExportPartitionsPerResourceType(int theBulkExportPartitionsPerResourceType) {
+		Validate.isTrue(theBulkExportPartitionsPerResourceType > 0, "theBulkExportPartitionsPerResourceType must be > 0");
+		myBulkExportPartitionsPerResourceType = theBulkExportPartitionsPerResourceType;
+	}
+
+	/**
+	 * This is the maximum number of threads that will be used to generate bulk export files. Each
+	 * resource type (or range of a resource type, see {@link #getBulkExportPartitionsPerResourceType()})
+	 * is processed on its own thread. The default value is <code>1</code>, meaning that partitions are
+	 * processed one at a time. Value will be forced to 1 if it is less than 1.
+	 * <p>
+	 * Values greater than 1 should only be used if the Spring Batch job repository supports concurrent
+	 * step executions. The default in-memory job repository is not safe for use by concurrent partitions.
+	 * </p>
+	 * <p>
+	 * This setting is read when the bulk export job configuration is created, so changes made
+	 * after the server has started have no effect.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public int getBulkExportThreadCount() {
+		return myBulkExportThreadCount;
+	}
+
+	/**
+	 * This is the maximum number of threads that will be used to generate bulk export files. Each
+	 * resource type (or range of a resource type, see {@link #getBulkExportPartitionsPerResourceType()})
+	 * is processed on its own thread. The default value is <code>1</code>, meaning that partitions are
+	 * processed one at a time. Value will be forced to 1 if it is less than 1.
+	 * <p>
+	 * Values greater than 1 should only be used if the Spring Batch job repository supports concurrent
+	 * step executions. The default in-memory job repository is not safe for use by concurrent partitions.
+	 * </p>
+	 * <p>
+	 * This setting is read when the bulk export job configuration is created, so changes made
+	 * after the server has started have no effect.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkExportThreadCount(int theBulkExportThreadCount) {
+		myBulkExportThreadCount = Math.max(theBulkExportThreadCount, 1); // Minimum of 1
+	}
+
+	/**
+	 * The local directory that NDJSON files are read from by the <code>$import</code> operation.
+	 * Files named in an import request are resolved relative to this directory, and files outside
+	 * of it can not be imported. If this is <code>null</code> (which is the default), bulk import
+	 * is disabled.
+	 *
+	 * @since 5.4.0
+	 */
+	public String getBulkImportDirectory() {
+		return myBulkImportDirectory;
+	}
+
+	/**
+	 * The local directory that NDJSON files are read from by the <code>$import</code> operation.
+	 * Files named in an import request are resolved relative to this directory, and files outside
+	 * of it can not be imported. If this is <code>null</code> (which is the default), bulk import
+	 * is disabled.
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkImportDirectory(String theBulkImportDirectory) {
+		myBulkImportDirectory = theBulkImportDirectory;
+	}
+
+	/**
+	 * This is the maximum number of threads that will be used to import files using the
+	 * <code>$import</code> operation. Each file is read, parsed and stored on its own thread.
+	 * The default value is the number of CPUs available to the JVM
+	 * (via <code>Runtime.getRuntime().availableProcessors()</code>). Value will be forced to 1 if it
+	 * is less than 1.
+	 * <p>
+	 * This setting is read when the bulk import job configuration is created, so changes made
+	 * after the server has started have no effect.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public int getBulkImportThreadCount() {
+		return myBulkImportThreadCount;
+	}
+
+	/**
+	 * This is the maximum number of threads that will be used to import files using the
+	 * <code>$import</code> operation. Each file is read, parsed and stored on its own thread.
+	 * The default value is the number of CPUs available to the JVM
+	 * (via <code>Runtime.getRuntime().availableProcessors()</code>). Value will be forced to 1 if it
+	 * is less than 1.
+	 * <p>
+	 * This setting is read when the bulk import job configuration is created, so changes made
+	 * after the server has started have no effect.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setBulkImportThreadCount(int theBulkImportThreadCount) {
+		myBulkImportThreadCount = Math.max(theBulkImportThreadCount, 1); // Minimum of 1
+	}
+
 	public ModelConfig getModelConfig() {
 		return myModelConfig;
 	}
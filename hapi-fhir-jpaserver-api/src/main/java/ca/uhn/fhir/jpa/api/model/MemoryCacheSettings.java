@@ -0,0 +1,74 @@
+package ca.uhn.fhir.jpa.api.model;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA API
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Sizing and expiry policy for one of the in-memory caches used by the JPA server.
+ *
+ * @see ca.uhn.fhir.jpa.api.config.DaoConfig#setMemoryCacheSettings(String, MemoryCacheSettings)
+ * @since 5.4.0
+ */
+public class MemoryCacheSettings {
+
+	public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+	public static final long DEFAULT_EXPIRE_AFTER_WRITE_MILLIS = 60 * 1000L;
+
+	private long myMaximumSize = DEFAULT_MAXIMUM_SIZE;
+	private long myExpireAfterWriteMillis = DEFAULT_EXPIRE_AFTER_WRITE_MILLIS;
+
+	/**
+	 * The maximum number of entries held in the cache (default is {@value #DEFAULT_MAXIMUM_SIZE})
+	 */
+	public long getMaximumSize() {
+		return myMaximumSize;
+	}
+
+	/**
+	 * The maximum number of entries held in the cache (default is {@value #DEFAULT_MAXIMUM_SIZE})
+	 */
+	public MemoryCacheSettings setMaximumSize(long theMaximumSize) {
+		Validate.isTrue(theMaximumSize >= 0, "Maximum size must not be negative");
+		myMaximumSize = theMaximumSize;
+		return this;
+	}
+
+	/**
+	 * Entries are removed from the cache this many milliseconds after they are written
+	 * (default is {@value #DEFAULT_EXPIRE_AFTER_WRITE_MILLIS})
+	 */
+	public long getExpireAfterWriteMillis() {
+		return myExpireAfterWriteMillis;
+	}
+
+	/**
+	 * Entries are removed from the cache this many milliseconds after they are written
+	 * (default is {@value #DEFAULT_EXPIRE_AFTER_WRITE_MILLIS})
+	 */
+	public MemoryCacheSettings setExpireAfterWriteMillis(long theExpireAfterWriteMillis) {
+		Validate.isTrue(theExpireAfterWriteMillis > 0, "Expiry must be positive");
+		myExpireAfterWriteMillis = theExpireAfterWriteMillis;
+		return this;
+	}
+
+}
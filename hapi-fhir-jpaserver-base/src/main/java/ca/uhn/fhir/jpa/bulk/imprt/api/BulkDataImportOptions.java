@@ -0,0 +1,50 @@
+package ca.uhn.fhir.jpa.bulk.imprt.api;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+public class BulkDataImportOptions {
+	private final List<String> myFileNames;
+	private final boolean myDeferInterceptorBroadcasts;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theFileNames                  The names of the NDJSON files to import, relative to the bulk import directory
+	 * @param theDeferInterceptorBroadcasts If <code>true</code>, the pre-commit interceptor hooks for the stored resources
+	 *                                      (which are used to trigger subscription delivery, among other things) are invoked
+	 *                                      once each chunk of resources has been stored, instead of as each resource is stored
+	 */
+	public BulkDataImportOptions(List<String> theFileNames, boolean theDeferInterceptorBroadcasts) {
+		myFileNames = theFileNames;
+		myDeferInterceptorBroadcasts = theDeferInterceptorBroadcasts;
+	}
+
+	public List<String> getFileNames() {
+		return myFileNames;
+	}
+
+	public boolean isDeferInterceptorBroadcasts() {
+		return myDeferInterceptorBroadcasts;
+	}
+}
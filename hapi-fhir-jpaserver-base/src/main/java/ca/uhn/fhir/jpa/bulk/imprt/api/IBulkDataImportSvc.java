@@ -0,0 +1,96 @@
+package ca.uhn.fhir.jpa.bulk.imprt.api;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
+
+import java.util.Date;
+
+public interface IBulkDataImportSvc {
+
+	JobInfo submitJob(BulkDataImportOptions theBulkDataImportOptions);
+
+	/**
+	 * Returns the status of a job. Job status is held in memory by the batch job repository, so jobs
+	 * are only known to the server that is running them, until that server is restarted.
+	 *
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException If the job is not known
+	 */
+	JobInfo getJobInfoOrThrowResourceNotFound(String theJobId);
+
+	class JobInfo {
+		private String myJobId;
+		private BulkJobStatusEnum myStatus;
+		private Date myStatusTime;
+		private String myStatusMessage;
+		private long myResourceCount;
+
+		public String getJobId() {
+			return myJobId;
+		}
+
+		public JobInfo setJobId(String theJobId) {
+			myJobId = theJobId;
+			return this;
+		}
+
+		public BulkJobStatusEnum getStatus() {
+			return myStatus;
+		}
+
+		public JobInfo setStatus(BulkJobStatusEnum theStatus) {
+			myStatus = theStatus;
+			return this;
+		}
+
+		public Date getStatusTime() {
+			return myStatusTime;
+		}
+
+		public JobInfo setStatusTime(Date theStatusTime) {
+			myStatusTime = theStatusTime;
+			return this;
+		}
+
+		public String getStatusMessage() {
+			return myStatusMessage;
+		}
+
+		public JobInfo setStatusMessage(String theStatusMessage) {
+			myStatusMessage = theStatusMessage;
+			return this;
+		}
+
+		/**
+		 * The number of resources that have been stored so far
+		 */
+		public long getResourceCount() {
+			return myResourceCount;
+		}
+
+		public JobInfo setResourceCount(long theResourceCount) {
+			myResourceCount = theResourceCount;
+			return this;
+		}
+	}
+
+}
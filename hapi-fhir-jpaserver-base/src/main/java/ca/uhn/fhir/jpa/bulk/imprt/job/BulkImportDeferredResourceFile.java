@@ -0,0 +1,102 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A temporary NDJSON file holding imported resources that could not be stored yet, because
+ * they reference resources that have not been stored yet. These are stored by the
+ * {@link BulkImportDeferredResourceTasklet} once all of the files have been processed.
+ */
+class BulkImportDeferredResourceFile {
+	private static final Logger ourLog = getLogger(BulkImportDeferredResourceFile.class);
+
+	private final File myFile;
+	private Writer myWriter;
+	private long myCount;
+
+	BulkImportDeferredResourceFile() {
+		try {
+			myFile = Files.createTempFile("hapi-fhir-bulk-import-deferred-", ".ndjson").toFile();
+			myWriter = Files.newBufferedWriter(myFile.toPath(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to create file for deferred bulk import resources", e);
+		}
+	}
+
+	void add(IParser theParser, List<IBaseResource> theResources) {
+		try {
+			for (IBaseResource next : theResources) {
+				myWriter.write(theParser.encodeResourceToString(next));
+				myWriter.write('\n');
+			}
+			// The file is read by a later step, so it needs to be complete once each chunk is committed
+			myWriter.flush();
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to write deferred bulk import resources", e);
+		}
+		myCount += theResources.size();
+	}
+
+	/**
+	 * The number of resources that have been added to the file
+	 */
+	long getCount() {
+		return myCount;
+	}
+
+	String getPath() {
+		return myFile.getPath();
+	}
+
+	void close() {
+		if (myWriter != null) {
+			try {
+				myWriter.close();
+			} catch (IOException e) {
+				ourLog.warn("Failed to close deferred bulk import file {}: {}", myFile, e.toString());
+			}
+			myWriter = null;
+		}
+	}
+
+	static void delete(String thePath) {
+		File file = new File(thePath);
+		if (file.exists() && !file.delete()) {
+			ourLog.warn("Failed to delete deferred bulk import file {}", thePath);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.batch.log.Logs;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Stores the resources that the {@link BulkImportResourceWriter} deferred because they referenced
+ * resources that had not been stored yet. Each call to {@link #execute(StepContribution, ChunkContext)}
+ * stores up to {@link BulkImportJobConfig#CHUNK_SIZE} resources in its own transaction.
+ * <p>
+ * Deferred resources are processed in rounds. Resources that still can't be stored are deferred
+ * again to the next round, as long as the round stored at least one resource. Once a round makes
+ * no progress, the remaining resources are stored regardless, so that any references which still
+ * can't be resolved are handled the same way as for any other write (e.g. rejected if referential
+ * integrity is enforced).
+ * </p>
+ */
+public class BulkImportDeferredResourceTasklet implements Tasklet, StepExecutionListener {
+	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
+
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private BulkImportResourceWriter myResourceWriter;
+
+	private final Deque<String> myPendingFiles = new ArrayDeque<>();
+	private String myCurrentFile;
+	private BufferedReader myCurrentReader;
+	private BulkImportDeferredResourceFile myNextRoundFile;
+	private IParser myParser;
+	private long myStoredInRound;
+	private boolean myFinalRound;
+
+	@Override
+	public void beforeStep(StepExecution theStepExecution) {
+		for (StepExecution next : theStepExecution.getJobExecution().getStepExecutions()) {
+			if (next.getStepName().startsWith(BulkImportJobConfig.PROCESS_FILES_STEP_NAME) && next.getExecutionContext().containsKey(BulkImportJobConfig.DEFERRED_FILE_CONTEXT_KEY)) {
+				myPendingFiles.add(next.getExecutionContext().getString(BulkImportJobConfig.DEFERRED_FILE_CONTEXT_KEY));
+			}
+		}
+		myParser = myFhirContext.newJsonParser();
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution theContribution, ChunkContext theChunkContext) throws IOException {
+		List<IBaseResource> resources = readNextChunk();
+
+		if (resources.isEmpty()) {
+			if (myNextRoundFile == null) {
+				return RepeatStatus.FINISHED;
+			}
+
+			myNextRoundFile.close();
+			myPendingFiles.add(myNextRoundFile.getPath());
+			if (myStoredInRound == 0) {
+				myFinalRound = true;
+			}
+			ourLog.info("Bulk import is retrying {} deferred resources (final attempt: {})", myNextRoundFile.getCount(), myFinalRound);
+			myNextRoundFile = null;
+			myStoredInRound = 0;
+			return RepeatStatus.CONTINUABLE;
+		}
+
+		List<IBaseResource> deferred = myResourceWriter.storeResources(resources, !myFinalRound);
+		theContribution.incrementWriteCount(resources.size() - deferred.size());
+		myStoredInRound += resources.size() - deferred.size();
+
+		if (!deferred.isEmpty()) {
+			if (myNextRoundFile == null) {
+				myNextRoundFile = new BulkImportDeferredResourceFile();
+			}
+			myNextRoundFile.add(myParser, deferred);
+		}
+
+		return RepeatStatus.CONTINUABLE;
+	}
+
+	private List<IBaseResource> readNextChunk() throws IOException {
+		List<IBaseResource> retVal = new ArrayList<>();
+		while (retVal.size() < BulkImportJobConfig.CHUNK_SIZE) {
+			if (myCurrentReader == null) {
+				if (myPendingFiles.isEmpty()) {
+					break;
+				}
+				myCurrentFile = myPendingFiles.removeFirst();
+				myCurrentReader = Files.newBufferedReader(Paths.get(myCurrentFile), StandardCharsets.UTF_8);
+			}
+
+			String nextLine = myCurrentReader.readLine();
+			if (nextLine == null) {
+				closeCurrentFile();
+			} else if (!isBlank(nextLine)) {
+				retVal.add(myParser.parseResource(nextLine));
+			}
+		}
+		return retVal;
+	}
+
+	private void closeCurrentFile() throws IOException {
+		if (myCurrentReader != null) {
+			myCurrentReader.close();
+			myCurrentReader = null;
+			BulkImportDeferredResourceFile.delete(myCurrentFile);
+			myCurrentFile = null;
+		}
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution theStepExecution) {
+		try {
+			closeCurrentFile();
+		} catch (IOException e) {
+			ourLog.warn("Failed to close deferred bulk import file: {}", e.toString());
+		}
+		if (myNextRoundFile != null) {
+			myNextRoundFile.close();
+			myPendingFiles.add(myNextRoundFile.getPath());
+			myNextRoundFile = null;
+		}
+		myPendingFiles.forEach(BulkImportDeferredResourceFile::delete);
+		myPendingFiles.clear();
+		return null;
+	}
+
+}
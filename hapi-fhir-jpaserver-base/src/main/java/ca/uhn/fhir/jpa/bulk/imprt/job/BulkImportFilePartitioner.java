@@ -0,0 +1,65 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Creates one partition for each file in the bulk import job
+ */
+public class BulkImportFilePartitioner implements Partitioner {
+	private static final Logger ourLog = getLogger(BulkImportFilePartitioner.class);
+
+	@Value("#{jobParameters['" + BulkImportJobConfig.JOB_UUID_PARAMETER + "']}")
+	private String myJobUUID;
+
+	@Value("#{jobParameters['" + BulkImportJobConfig.FILE_NAMES_PARAMETER + "']}")
+	private String myFileNames;
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		Map<String, ExecutionContext> partitionContextMap = new HashMap<>();
+
+		String[] fileNames = myFileNames.split("\n");
+		for (int i = 0; i < fileNames.length; i++) {
+			String fileName = fileNames[i];
+			ourLog.debug("Creating a partition step for bulk import job [{}] processing file [{}]", myJobUUID, fileName);
+
+			ExecutionContext context = new ExecutionContext();
+			context.putString(BulkImportJobConfig.FILE_NAME_CONTEXT_KEY, fileName);
+
+			// The same file could be listed more than once, so the partition name includes the index
+			partitionContextMap.put("file" + i, context);
+		}
+
+		return partitionContextMap;
+	}
+
+}
@@ -0,0 +1,192 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.batch.BatchJobsConfig;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.mapping.PassThroughLineMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Spring batch Job configuration file. Contains all necessary plumbing to run a
+ * Bulk Import job.
+ * <p>
+ * Each NDJSON file is processed by its own partition, and partitions are run in parallel.
+ * Within a partition, the file is streamed one line at a time, and each chunk of
+ * {@link #CHUNK_SIZE} resources is parsed and then stored in a single database transaction.
+ * Resources that reference resources which haven't been stored yet are deferred, and are
+ * stored by a final step once all of the files have been processed.
+ * </p>
+ */
+@Configuration
+public class BulkImportJobConfig {
+
+	public static final String JOB_UUID_PARAMETER = "jobUUID";
+	public static final String FILE_NAMES_PARAMETER = "fileNames";
+	public static final String DEFER_INTERCEPTOR_BROADCASTS_PARAMETER = "deferInterceptorBroadcasts";
+	public static final String FILE_NAME_CONTEXT_KEY = "fileName";
+	public static final String PROCESS_FILES_STEP_NAME = "bulkImportProcessFilesStep";
+	public static final String DEFERRED_RESOURCES_STEP_NAME = "bulkImportDeferredResourcesStep";
+	public static final String DEFERRED_FILE_CONTEXT_KEY = "deferredFileName";
+	public static final String DEFERRED_COUNT_CONTEXT_KEY = "deferredCount";
+	public static final String BULK_IMPORT_TASK_EXECUTOR = "bulkImportTaskExecutor";
+	public static final int CHUNK_SIZE = 500;
+
+	@Autowired
+	private StepBuilderFactory myStepBuilderFactory;
+
+	@Autowired
+	private JobBuilderFactory myJobBuilderFactory;
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	@Bean
+	@Lazy
+	public Job bulkImportJob() {
+		return myJobBuilderFactory.get(BatchJobsConfig.BULK_IMPORT_JOB_NAME)
+			.start(bulkImportPartitionStep())
+			.next(bulkImportDeferredResourcesStep())
+			.listener(bulkImportDeferredFileCleaner())
+			.build();
+	}
+
+	@Bean
+	public Step bulkImportPartitionStep() {
+		return myStepBuilderFactory.get("bulkImportPartitionStep")
+			.partitioner(PROCESS_FILES_STEP_NAME, bulkImportFilePartitioner())
+			.step(bulkImportProcessFilesStep())
+			.taskExecutor(bulkImportTaskExecutor())
+			.build();
+	}
+
+	@Bean
+	public Step bulkImportProcessFilesStep() {
+		return myStepBuilderFactory.get(PROCESS_FILES_STEP_NAME)
+			.<String, IBaseResource>chunk(CHUNK_SIZE)
+			.reader(bulkImportFileReader(null))
+			.processor(bulkImportParseProcessor())
+			.writer(bulkImportResourceWriter())
+			.build();
+	}
+
+	@Bean
+	public Step bulkImportDeferredResourcesStep() {
+		return myStepBuilderFactory.get(DEFERRED_RESOURCES_STEP_NAME)
+			.tasklet(bulkImportDeferredResourceTasklet())
+			.listener(bulkImportDeferredResourceTasklet())
+			.build();
+	}
+
+	@Bean
+	@StepScope
+	public BulkImportDeferredResourceTasklet bulkImportDeferredResourceTasklet() {
+		return new BulkImportDeferredResourceTasklet();
+	}
+
+	/**
+	 * Deletes any deferred resource files that are left behind if the job fails
+	 */
+	@Bean
+	public JobExecutionListener bulkImportDeferredFileCleaner() {
+		return new JobExecutionListenerSupport() {
+			@Override
+			public void afterJob(JobExecution theJobExecution) {
+				for (StepExecution next : theJobExecution.getStepExecutions()) {
+					if (next.getExecutionContext().containsKey(DEFERRED_FILE_CONTEXT_KEY)) {
+						BulkImportDeferredResourceFile.delete(next.getExecutionContext().getString(DEFERRED_FILE_CONTEXT_KEY));
+					}
+				}
+			}
+		};
+	}
+
+	@Bean
+	@JobScope
+	public BulkImportFilePartitioner bulkImportFilePartitioner() {
+		return new BulkImportFilePartitioner();
+	}
+
+	/**
+	 * Streams the lines of the file being processed by the current partition. Batch job state is not
+	 * persisted, so the reader doesn't record its position (a job can't be restarted).
+	 */
+	@Bean
+	@StepScope
+	public FlatFileItemReader<String> bulkImportFileReader(@Value("#{stepExecutionContext['" + FILE_NAME_CONTEXT_KEY + "']}") String theFileName) {
+		return new FlatFileItemReaderBuilder<String>()
+			.name("bulkImportFileReader")
+			.resource(new FileSystemResource(theFileName))
+			.encoding(StandardCharsets.UTF_8.name())
+			.lineMapper(new PassThroughLineMapper())
+			.saveState(false)
+			.build();
+	}
+
+	@Bean
+	@StepScope
+	public BulkImportParseProcessor bulkImportParseProcessor() {
+		return new BulkImportParseProcessor();
+	}
+
+	@Bean
+	@StepScope
+	public BulkImportResourceWriter bulkImportResourceWriter() {
+		return new BulkImportResourceWriter();
+	}
+
+	/**
+	 * Executes the partitions of the import job, so that files are imported in parallel
+	 */
+	@Bean(name = BULK_IMPORT_TASK_EXECUTOR)
+	public TaskExecutor bulkImportTaskExecutor() {
+		ThreadPoolTaskExecutor retVal = new ThreadPoolTaskExecutor();
+		retVal.setCorePoolSize(myDaoConfig.getBulkImportThreadCount());
+		retVal.setMaxPoolSize(myDaoConfig.getBulkImportThreadCount());
+		retVal.setThreadNamePrefix("BulkImport-");
+		retVal.initialize();
+		return retVal;
+	}
+
+}
@@ -0,0 +1,53 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Parses one line of an NDJSON file into a resource. Blank lines are skipped.
+ */
+public class BulkImportParseProcessor implements ItemProcessor<String, IBaseResource> {
+
+	@Autowired
+	private FhirContext myFhirContext;
+
+	private IParser myParser;
+
+	@Override
+	public IBaseResource process(String theLine) {
+		if (isBlank(theLine)) {
+			return null;
+		}
+		if (myParser == null) {
+			myParser = myFhirContext.newJsonParser();
+		}
+		return myParser.parseResource(theLine);
+	}
+
+}
@@ -0,0 +1,288 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
+import ca.uhn.fhir.jpa.batch.log.Logs;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.cross.IResourceLookup;
+import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.ResourceReferenceInfo;
+import com.google.common.collect.ListMultimap;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores a chunk of imported resources. The chunk is written in a single database transaction (the
+ * transaction of the chunk step), so that the rows for all of the resources are flushed together
+ * using JDBC batch inserts. Resources with an ID are stored using an update (i.e. they are created
+ * with that ID if they don't already exist), and resources without an ID are created.
+ * <p>
+ * Before anything is stored, all of the references in the chunk are resolved using a small
+ * number of queries, instead of being looked up one at a time as each resource is indexed.
+ * Resources in the chunk are stored in an order that allows them to reference each other. Since
+ * files are imported in parallel, a resource can also reference a resource that hasn't been
+ * stored yet because it is in another file (or further along in the same file). These resources
+ * are written to a {@link BulkImportDeferredResourceFile deferred resource file} instead, and
+ * are stored by the {@link BulkImportDeferredResourceTasklet} once all of the files have been
+ * processed.
+ * </p>
+ */
+public class BulkImportResourceWriter implements ItemWriter<IBaseResource>, ItemStream {
+	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
+
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private IdHelperService myIdHelperService;
+	@Autowired
+	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
+
+	@Value("#{jobParameters['" + BulkImportJobConfig.DEFER_INTERCEPTOR_BROADCASTS_PARAMETER + "']}")
+	private String myDeferInterceptorBroadcasts;
+
+	private BulkImportDeferredResourceFile myDeferredResourceFile;
+	private ExecutionContext myExecutionContext;
+
+	@Override
+	public void write(List<? extends IBaseResource> theResources) {
+		List<IBaseResource> deferred = storeResources(theResources, true);
+		if (!deferred.isEmpty()) {
+			/*
+			 * The deferred resources are only written once the chunk is committed. If the chunk
+			 * is rolled back, nothing from it is stored, and the chunk's resources will be
+			 * written again if it is retried.
+			 */
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						addDeferredResources(deferred);
+					}
+				});
+			} else {
+				addDeferredResources(deferred);
+			}
+		}
+	}
+
+	private void addDeferredResources(List<IBaseResource> theResources) {
+		if (myDeferredResourceFile == null) {
+			myDeferredResourceFile = new BulkImportDeferredResourceFile();
+		}
+		myDeferredResourceFile.add(myFhirContext.newJsonParser(), theResources);
+		ourLog.debug("Deferred {} imported resources which reference resources that have not been stored yet", theResources.size());
+
+		// The step saves its execution context once more when it finishes, which picks this up
+		if (myExecutionContext != null) {
+			update(myExecutionContext);
+		}
+	}
+
+	/**
+	 * Stores the given resources in the current transaction.
+	 *
+	 * @param theDeferUnresolvable If <code>true</code>, resources which reference resources that don't exist yet are
+	 *                             not stored. If <code>false</code>, every resource is stored, so any missing reference
+	 *                             targets are handled in the same way as for any other write.
+	 * @return Returns the resources that were not stored
+	 */
+	public List<IBaseResource> storeResources(List<? extends IBaseResource> theResources, boolean theDeferUnresolvable) {
+		TransactionDetails transactionDetails = new TransactionDetails();
+		boolean deferInterceptorBroadcasts = Boolean.parseBoolean(myDeferInterceptorBroadcasts);
+		if (deferInterceptorBroadcasts) {
+			transactionDetails.beginAcceptingDeferredInterceptorBroadcasts(
+				Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED,
+				Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED
+			);
+		}
+		try {
+
+			FhirTerser terser = myFhirContext.newTerser();
+			Map<IBaseResource, Set<String>> resourceToReferenceTargets = new IdentityHashMap<>();
+			Map<String, IIdType> referenceTargets = new HashMap<>();
+			Map<String, IIdType> resourceIds = new HashMap<>();
+			for (IBaseResource nextResource : theResources) {
+				Set<String> nextReferenceTargets = new HashSet<>();
+				for (ResourceReferenceInfo nextReference : terser.getAllResourceReferences(nextResource)) {
+					IIdType target = nextReference.getResourceReference().getReferenceElement();
+					if (target.hasResourceType() && target.hasIdPart() && !target.hasBaseUrl() && !target.isLocal() && !target.getValue().contains("?")) {
+						target = target.toUnqualifiedVersionless();
+						referenceTargets.put(target.getValue(), target);
+						nextReferenceTargets.add(target.getValue());
+					}
+				}
+				if (nextResource.getIdElement().hasIdPart()) {
+					IIdType resourceId = nextResource.getIdElement().toUnqualifiedVersionless().withResourceType(myFhirContext.getResourceType(nextResource));
+					resourceIds.put(resourceId.getValue(), resourceId);
+					// A resource can reference itself
+					nextReferenceTargets.remove(resourceId.getValue());
+				}
+				resourceToReferenceTargets.put(nextResource, nextReferenceTargets);
+			}
+
+			Set<String> storedIds = preResolveIds(referenceTargets, resourceIds, transactionDetails);
+
+			// Store resources once everything they reference exists, until no more can be stored
+			List<IBaseResource> remaining = new ArrayList<>(theResources);
+			boolean progress = true;
+			while (progress && !remaining.isEmpty()) {
+				progress = false;
+				for (Iterator<IBaseResource> iter = remaining.iterator(); iter.hasNext(); ) {
+					IBaseResource next = iter.next();
+					if (storedIds.containsAll(resourceToReferenceTargets.get(next))) {
+						storeResource(next, transactionDetails, storedIds);
+						iter.remove();
+						progress = true;
+					}
+				}
+			}
+
+			if (!theDeferUnresolvable) {
+				for (IBaseResource next : remaining) {
+					storeResource(next, transactionDetails, storedIds);
+				}
+				remaining.clear();
+			}
+
+			if (deferInterceptorBroadcasts) {
+				ListMultimap<Pointcut, HookParams> deferredBroadcastEvents = transactionDetails.endAcceptingDeferredInterceptorBroadcasts();
+				for (Map.Entry<Pointcut, HookParams> nextEntry : deferredBroadcastEvents.entries()) {
+					JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, null, nextEntry.getKey(), nextEntry.getValue());
+				}
+			}
+
+			ourLog.debug("Stored {} imported resources", theResources.size() - remaining.size());
+			return remaining;
+
+		} finally {
+			if (transactionDetails.isAcceptingDeferredInterceptorBroadcasts()) {
+				transactionDetails.endAcceptingDeferredInterceptorBroadcasts();
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void storeResource(IBaseResource theResource, TransactionDetails theTransactionDetails, Set<String> theStoredIds) {
+		String resourceType = myFhirContext.getResourceType(theResource);
+		IFhirResourceDao<IBaseResource> dao = myDaoRegistry.getResourceDao(resourceType);
+
+		DaoMethodOutcome outcome;
+		if (theResource.getIdElement().hasIdPart()) {
+			theResource.setId(theResource.getIdElement().toUnqualifiedVersionless().withResourceType(resourceType));
+			outcome = dao.update(theResource, null, true, false, null, theTransactionDetails);
+		} else {
+			outcome = dao.create(theResource, null, true, theTransactionDetails, null);
+		}
+
+		// Later resources in the chunk can link to this one without looking it up
+		IIdType id = outcome.getId().toUnqualifiedVersionless();
+		theStoredIds.add(id.getValue());
+		if (outcome.getEntity() != null) {
+			theTransactionDetails.addResolvedResourceId(id, outcome.getEntity().getPersistentId());
+		}
+	}
+
+	/**
+	 * Resolves every local reference in the chunk (e.g. <code>Patient/123</code>), as well as the IDs of the
+	 * resources in the chunk, with one query per resource type. If partitioning is disabled, the IDs that exist
+	 * are recorded in the transaction details, so that the indexing of each resource doesn't need to look up its
+	 * references again, and an update doesn't need to look up the resource it is replacing.
+	 *
+	 * @return Returns the reference targets that exist
+	 */
+	private Set<String> preResolveIds(Map<String, IIdType> theReferenceTargets, Map<String, IIdType> theResourceIds, TransactionDetails theTransactionDetails) {
+		Map<String, IIdType> idsToResolve = new HashMap<>(theReferenceTargets);
+		idsToResolve.putAll(theResourceIds);
+		Map<String, IResourceLookup> resolved = myIdHelperService.resolveResourceIdentities(RequestPartitionId.allPartitions(), idsToResolve.values());
+
+		// Resolved IDs aren't specific to a partition, so they need to be looked up one at a time
+		boolean recordResolvedIds = !myPartitionSettings.isPartitioningEnabled();
+
+		Set<String> retVal = new HashSet<>();
+		for (Map.Entry<String, IIdType> nextEntry : idsToResolve.entrySet()) {
+			IResourceLookup lookup = resolved.get(nextEntry.getKey());
+			if (lookup != null && lookup.getDeleted() == null) {
+				if (theReferenceTargets.containsKey(nextEntry.getKey())) {
+					retVal.add(nextEntry.getKey());
+				}
+				if (recordResolvedIds) {
+					theTransactionDetails.addResolvedResourceId(nextEntry.getValue(), new ResourcePersistentId(lookup.getResourceId()));
+				}
+			}
+		}
+		return retVal;
+	}
+
+	@Override
+	public void open(ExecutionContext theExecutionContext) {
+		myExecutionContext = theExecutionContext;
+	}
+
+	@Override
+	public void update(ExecutionContext theExecutionContext) {
+		if (myDeferredResourceFile != null) {
+			theExecutionContext.putString(BulkImportJobConfig.DEFERRED_FILE_CONTEXT_KEY, myDeferredResourceFile.getPath());
+			theExecutionContext.putLong(BulkImportJobConfig.DEFERRED_COUNT_CONTEXT_KEY, myDeferredResourceFile.getCount());
+		}
+	}
+
+	@Override
+	public void close() {
+		if (myDeferredResourceFile != null) {
+			myDeferredResourceFile.close();
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package ca.uhn.fhir.jpa.bulk.imprt.svc;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.batch.BatchJobsConfig;
+import ca.uhn.fhir.jpa.batch.api.IBatchJobSubmitter;
+import ca.uhn.fhir.jpa.bulk.imprt.api.BulkDataImportOptions;
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.job.BulkImportJobConfig;
+import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import org.slf4j.Logger;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.slf4j.LoggerFactory.getLogger;
+
+public class BulkDataImportSvcImpl implements IBulkDataImportSvc {
+	private static final Logger ourLog = getLogger(BulkDataImportSvcImpl.class);
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	@Autowired
+	private IBatchJobSubmitter myJobSubmitter;
+
+	@Autowired
+	private JobExplorer myJobExplorer;
+
+	@Autowired
+	@Qualifier(BatchJobsConfig.BULK_IMPORT_JOB_NAME)
+	private Job myBulkImportJob;
+
+	@Override
+	public JobInfo submitJob(BulkDataImportOptions theBulkDataImportOptions) {
+		String directory = myDaoConfig.getBulkImportDirectory();
+		if (isBlank(directory)) {
+			throw new InvalidRequestException("Bulk import is not enabled on this server");
+		}
+		if (theBulkDataImportOptions.getFileNames() == null || theBulkDataImportOptions.getFileNames().isEmpty()) {
+			throw new InvalidRequestException("No files were specified for bulk import");
+		}
+
+		List<String> files = new ArrayList<>();
+		try {
+			File importDirectory = new File(directory).getCanonicalFile();
+			for (String nextFileName : theBulkDataImportOptions.getFileNames()) {
+				File nextFile = new File(importDirectory, nextFileName).getCanonicalFile();
+				if (!nextFile.toPath().startsWith(importDirectory.toPath()) || nextFile.getPath().contains("\n")) {
+					throw new InvalidRequestException("Invalid bulk import file name: " + nextFileName);
+				}
+				if (!nextFile.isFile() || !nextFile.canRead()) {
+					throw new InvalidRequestException("Unable to read bulk import file: " + nextFileName);
+				}
+				files.add(nextFile.getPath());
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException(e);
+		}
+
+		String jobUuid = UUID.randomUUID().toString();
+		JobParameters parameters = new JobParametersBuilder()
+			.addString(BulkImportJobConfig.JOB_UUID_PARAMETER, jobUuid)
+			.addString(BulkImportJobConfig.FILE_NAMES_PARAMETER, String.join("\n", files))
+			.addString(BulkImportJobConfig.DEFER_INTERCEPTOR_BROADCASTS_PARAMETER, Boolean.toString(theBulkDataImportOptions.isDeferInterceptorBroadcasts()))
+			.toJobParameters();
+
+		ourLog.info("Submitting bulk import job {} for {} file(s)", jobUuid, files.size());
+		JobExecution jobExecution;
+		try {
+			jobExecution = myJobSubmitter.runJob(myBulkImportJob, parameters);
+		} catch (JobParametersInvalidException e) {
+			throw new InternalErrorException(e);
+		}
+
+		return toJobInfo(jobExecution);
+	}
+
+	@Override
+	public JobInfo getJobInfoOrThrowResourceNotFound(String theJobId) {
+		JobExecution jobExecution = null;
+		try {
+			jobExecution = myJobExplorer.getJobExecution(Long.parseLong(theJobId));
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		if (jobExecution == null || !BatchJobsConfig.BULK_IMPORT_JOB_NAME.equals(jobExecution.getJobInstance().getJobName())) {
+			throw new ResourceNotFoundException("Unknown job: " + theJobId);
+		}
+		return toJobInfo(jobExecution);
+	}
+
+	private JobInfo toJobInfo(JobExecution theJobExecution) {
+		JobInfo retVal = new JobInfo();
+		retVal.setJobId(Long.toString(theJobExecution.getId()));
+		retVal.setStatusTime(theJobExecution.getLastUpdated() != null ? theJobExecution.getLastUpdated() : theJobExecution.getCreateTime());
+
+		switch (theJobExecution.getStatus()) {
+			case STARTING:
+				retVal.setStatus(BulkJobStatusEnum.SUBMITTED);
+				break;
+			case STARTED:
+			case STOPPING:
+				retVal.setStatus(BulkJobStatusEnum.BUILDING);
+				break;
+			case COMPLETED:
+				retVal.setStatus(BulkJobStatusEnum.COMPLETE);
+				break;
+			default:
+				retVal.setStatus(BulkJobStatusEnum.ERROR);
+				break;
+		}
+
+		long resourceCount = 0;
+		for (StepExecution nextStepExecution : theJobExecution.getStepExecutions()) {
+			if (nextStepExecution.getStepName().startsWith(BulkImportJobConfig.PROCESS_FILES_STEP_NAME)) {
+				// Resources that were deferred are counted once they're stored by the deferred resources step
+				resourceCount += nextStepExecution.getWriteCount() - nextStepExecution.getExecutionContext().getLong(BulkImportJobConfig.DEFERRED_COUNT_CONTEXT_KEY, 0);
+			} else if (nextStepExecution.getStepName().equals(BulkImportJobConfig.DEFERRED_RESOURCES_STEP_NAME)) {
+				resourceCount += nextStepExecution.getWriteCount();
+			}
+			if (retVal.getStatus() == BulkJobStatusEnum.ERROR && retVal.getStatusMessage() == null && !nextStepExecution.getFailureExceptions().isEmpty()) {
+				retVal.setStatusMessage(nextStepExecution.getFailureExceptions().get(0).getMessage());
+			}
+		}
+		retVal.setResourceCount(resourceCount);
+
+		if (retVal.getStatus() == BulkJobStatusEnum.ERROR && retVal.getStatusMessage() == null) {
+			retVal.setStatusMessage(theJobExecution.getExitStatus().getExitDescription());
+		}
+
+		return retVal;
+	}
+
+}
@@ -59,14 +59,21 @@ public abstract class BaseBulkItemReader implements ItemReader<List<ResourcePers
 	 */
 	protected ISearchBuilder getSearchBuilderForLocalResourceType() {
 		if (mySearchBuilder == null) {
-			IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(myResourceType);
-			RuntimeResourceDefinition def = myContext.getResourceDefinition(myResourceType);
-			Class<? extends IBaseResource> nextTypeClass = def.getImplementingClass();
-			mySearchBuilder = mySearchBuilderFactory.newSearchBuilder(dao, myResourceType, nextTypeClass);
+			mySearchBuilder = newSearchBuilderForLocalResourceType();
 		}
 		return mySearchBuilder;
 	}
 
+	/**
+	 * Create a new ISearchBuilder for the given resource type this partition is responsible for.
+	 */
+	protected ISearchBuilder newSearchBuilderForLocalResourceType() {
+		IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(myResourceType);
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(myResourceType);
+		Class<? extends IBaseResource> nextTypeClass = def.getImplementingClass();
+		return mySearchBuilderFactory.newSearchBuilder(dao, myResourceType, nextTypeClass);
+	}
+
 	/**
 	 * Generate the list of pids of all resources of the given myResourceType, which reference any group member of the given myGroupId.
 	 * Store them in a member iterator.
@@ -20,6 +20,7 @@ package ca.uhn.fhir.jpa.bulk.job;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.batch.BatchJobsConfig;
 import ca.uhn.fhir.jpa.batch.processors.PidToIBaseResourceProcessor;
 import ca.uhn.fhir.jpa.bulk.svc.BulkExportDaoSvc;
@@ -38,6 +39,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.List;
 
@@ -54,6 +57,7 @@ public class BulkExportJobConfig {
 	public static final String GROUP_ID_PARAMETER = "groupId";
 	public static final String RESOURCE_TYPES_PARAMETER = "resourceTypes";
 	public static final int CHUNK_SIZE = 100;
+	public static final String BULK_EXPORT_TASK_EXECUTOR = "bulkExportTaskExecutor";
 
 	@Autowired
 	private StepBuilderFactory myStepBuilderFactory;
@@ -64,6 +68,9 @@ public class BulkExportJobConfig {
 	@Autowired
 	private PidToIBaseResourceProcessor myPidToIBaseResourceProcessor;
 
+	@Autowired
+	private DaoConfig myDaoConfig;
+
 	@Bean
 	public BulkExportDaoSvc bulkExportDaoSvc() {
 		return new BulkExportDaoSvc();
@@ -164,7 +171,7 @@ public class BulkExportJobConfig {
 	}
 
 	@Bean
-	@JobScope
+	@StepScope
 	public BulkExportGenerateResourceFilesStepListener bulkExportGenrateResourceFilesStepListener() {
 		return new BulkExportGenerateResourceFilesStepListener();
 	}
@@ -175,13 +182,15 @@ public class BulkExportJobConfig {
 		return myStepBuilderFactory.get("partitionStep")
 			.partitioner("groupBulkExportGenerateResourceFilesStep", bulkExportResourceTypePartitioner())
 			.step(groupBulkExportGenerateResourceFilesStep())
+			.taskExecutor(bulkExportTaskExecutor())
 			.build();
 	}
 	@Bean
 	public Step partitionStep() {
 		return myStepBuilderFactory.get("partitionStep")
-			.partitioner("bulkExportGenerateResourceFilesStep", bulkExportResourceTypePartitioner())
+			.partitioner("bulkExportGenerateResourceFilesStep", bulkExportResourceTypeAndPidRangePartitioner())
 			.step(bulkExportGenerateResourceFilesStep())
+			.taskExecutor(bulkExportTaskExecutor())
 			.build();
 	}
 
@@ -197,6 +206,25 @@ public class BulkExportJobConfig {
 		return new ResourceTypePartitioner();
 	}
 
+	@Bean
+	@JobScope
+	public ResourceTypePartitioner bulkExportResourceTypeAndPidRangePartitioner() {
+		return new ResourceTypePartitioner(true);
+	}
+
+	/**
+	 * Executes the partitions of the file generation steps, so that resource types
+	 * (and ranges of resource types) are exported in parallel
+	 */
+	@Bean(name = BULK_EXPORT_TASK_EXECUTOR)
+	public TaskExecutor bulkExportTaskExecutor() {
+		ThreadPoolTaskExecutor retVal = new ThreadPoolTaskExecutor();
+		retVal.setCorePoolSize(myDaoConfig.getBulkExportThreadCount());
+		retVal.setMaxPoolSize(myDaoConfig.getBulkExportThreadCount());
+		retVal.setThreadNamePrefix("BulkExport-");
+		return retVal;
+	}
+
 	@Bean
 	@StepScope
 	public ItemWriter<List<IBaseResource>> resourceToFileWriter() {
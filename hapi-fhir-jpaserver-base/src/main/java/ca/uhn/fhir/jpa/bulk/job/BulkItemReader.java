@@ -20,53 +20,111 @@ package ca.uhn.fhir.jpa.bulk.job;
  * #L%
  */
 
-import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
-import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.batch.log.Logs;
 import ca.uhn.fhir.jpa.dao.IResultIterator;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
-import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
-import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
-import ca.uhn.fhir.jpa.model.util.JpaConstants;
-import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
-import ca.uhn.fhir.rest.param.DateRangeParam;
-import ca.uhn.fhir.util.UrlUtil;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import org.slf4j.Logger;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.NoSuchElementException;
 
 /**
  * Basic Bulk Export implementation which simply reads all type filters and applies them, along with the _since param
  * on a given resource type.
+ * <p>
+ * Resource PIDs are read in windows of {@link #PID_WINDOW_SIZE} using keyset pagination (each window is a query for
+ * the next PIDs after the last one that was read), so memory use doesn't grow with the number of resources being
+ * exported.
+ * </p>
+ * <p>
+ * If the step partition covers a range of resource IDs (see {@link ResourceTypePartitioner}), only
+ * resources within that range are read.
+ * </p>
  */
 public class BulkItemReader extends BaseBulkItemReader {
+	static final int PID_WINDOW_SIZE = 10000;
 	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
 
+	@Value("#{stepExecutionContext['" + ResourceTypePartitioner.PID_RANGE_LOW + "']}")
+	private Long myPidRangeLow;
+	@Value("#{stepExecutionContext['" + ResourceTypePartitioner.PID_RANGE_HIGH + "']}")
+	private Long myPidRangeHigh;
+
+	private Long myLastPid;
 
 	@Override
 	Iterator<ResourcePersistentId> getResourcePidIterator() {
 		ourLog.info("Bulk export assembling export of type {} for job {}", myResourceType, myJobUUID);
+		return new KeysetPidIterator();
+	}
 
-
+	private List<ResourcePersistentId> fetchNextPidWindow() {
 		SearchParameterMap map = createSearchParameterMapForJob();
-		ISearchBuilder sb = getSearchBuilderForLocalResourceType();
-		IResultIterator myResultIterator = sb.createQuery(map, new SearchRuntimeDetails(null, myJobUUID), null, RequestPartitionId.allPartitions());
 
-		List<ResourcePersistentId> myReadPids = new ArrayList<>();
-		while (myResultIterator.hasNext()) {
-			myReadPids.add(myResultIterator.next());
+		// Each window uses a new search builder, since a search builder remembers every PID it has returned
+		ISearchBuilder sb = newSearchBuilderForLocalResourceType();
+		sb.setMaxResultsToFetch(PID_WINDOW_SIZE);
+		sb.setKeysetPaginationAfterPid(getKeysetPaginationAfterPid());
+		sb.setKeysetPaginationUpToPid(myPidRangeHigh);
+
+		List<ResourcePersistentId> retVal = new ArrayList<>();
+		try (IResultIterator resultIterator = sb.createQuery(map, new SearchRuntimeDetails(null, myJobUUID), null, RequestPartitionId.allPartitions())) {
+			while (resultIterator.hasNext()) {
+				retVal.add(resultIterator.next());
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException(e);
+		}
+
+		ourLog.debug("Bulk export job {} loaded {} PIDs of type {} after PID {}", myJobUUID, retVal.size(), myResourceType, myLastPid);
+		return retVal;
+	}
+
+	private long getKeysetPaginationAfterPid() {
+		if (myLastPid != null) {
+			return myLastPid;
+		}
+		if (myPidRangeLow != null) {
+			return myPidRangeLow - 1;
+		}
+		return Long.MIN_VALUE;
+	}
+
+	private class KeysetPidIterator implements Iterator<ResourcePersistentId> {
+		private Iterator<ResourcePersistentId> myWindow = Collections.emptyIterator();
+		private boolean myExhausted;
+
+		@Override
+		public boolean hasNext() {
+			if (!myWindow.hasNext() && !myExhausted) {
+				List<ResourcePersistentId> window = fetchNextPidWindow();
+				// A window can come back short when a query matches a resource more than once, so we
+				// only stop once a window comes back empty
+				myExhausted = window.isEmpty();
+				myWindow = window.iterator();
+			}
+			return myWindow.hasNext();
+		}
+
+		@Override
+		public ResourcePersistentId next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ResourcePersistentId retVal = myWindow.next();
+			myLastPid = retVal.getIdAsLong();
+			return retVal;
 		}
-		return myReadPids.iterator();
 	}
 
 }
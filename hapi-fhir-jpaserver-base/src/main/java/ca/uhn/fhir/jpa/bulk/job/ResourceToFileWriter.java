@@ -21,31 +21,52 @@ package ca.uhn.fhir.jpa.bulk.job;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.batch.log.Logs;
+import ca.uhn.fhir.jpa.binstore.IBinaryStorageSvc;
 import ca.uhn.fhir.jpa.bulk.svc.BulkExportDaoSvc;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionFileEntity;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.util.BinaryUtil;
+import ca.uhn.fhir.util.HapiExtensions;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseExtension;
+import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.slf4j.Logger;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
-import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
+	/**
+	 * Files are buffered in memory up to this size, after which they are spooled to a temporary file
+	 */
+	private static final int IN_MEMORY_THRESHOLD = (int) FileUtils.ONE_MB;
 
 	@Autowired
 	private FhirContext myFhirContext;
@@ -53,11 +74,15 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	@Autowired
 	private DaoRegistry myDaoRegistry;
 
+	@Autowired
+	private DaoConfig myDaoConfig;
+
 	@Autowired
 	private BulkExportDaoSvc myBulkExportDaoSvc;
 
-	private ByteArrayOutputStream myOutputStream;
-	private OutputStreamWriter myWriter;
+	@Autowired(required = false)
+	private IBinaryStorageSvc myBinaryStorageSvc;
+
 	private IParser myParser;
 
 	@Value("#{stepExecutionContext['bulkExportCollectionEntityId']}")
@@ -68,42 +93,103 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 
 	private IFhirResourceDao<IBaseBinary> myBinaryDao;
 
-
-	public ResourceToFileWriter() {
-		myOutputStream = new ByteArrayOutputStream();
-		myWriter = new OutputStreamWriter(myOutputStream, Constants.CHARSET_UTF8);
-	}
-
 	@PostConstruct
 	public void start() {
 		myParser = myFhirContext.newJsonParser().setPrettyPrint(false);
 		myBinaryDao = getBinaryDao();
 	}
 
-	private Optional<IIdType> flushToFiles() {
-		if (myOutputStream.size() > 0) {
-			IIdType createdId = createBinaryFromOutputStream();
+	private void flushToFile(ExportFile theFile) throws IOException {
+		try {
+			theFile.close();
+
+			IIdType createdId;
+			if (isWriteToBinaryStorage()) {
+				createdId = createBinaryInBinaryStorage(theFile);
+			} else {
+				createdId = createBinaryFromFile(theFile);
+			}
+
 			BulkExportCollectionFileEntity file = new BulkExportCollectionFileEntity();
 			file.setResource(createdId.getIdPart());
-
 			myBulkExportDaoSvc.addFileToCollectionWithId(myBulkExportCollectionEntityId, file);
 
-			myOutputStream.reset();
-
-			return Optional.of(createdId);
+			ourLog.info("Created bulk export file {} containing {} resources of type {}", createdId.toUnqualifiedVersionless().getValue(), theFile.getResourceCount(), myResourceType);
+		} finally {
+			theFile.delete();
 		}
+	}
+
+	private boolean isWriteToBinaryStorage() {
+		return myDaoConfig.isBulkExportBinaryStorageEnabled() && myBinaryStorageSvc != null;
+	}
 
-		return Optional.empty();
+	private String getContentType() {
+		return myDaoConfig.isBulkExportGzipEnabled() ? Constants.CT_APPLICATION_GZIP : Constants.CT_FHIR_NDJSON;
 	}
 
-	private IIdType createBinaryFromOutputStream() {
+	private IIdType createBinaryFromFile(ExportFile theFile) throws IOException {
 		IBaseBinary binary = BinaryUtil.newBinary(myFhirContext);
-		binary.setContentType(Constants.CT_FHIR_NDJSON);
-		binary.setContent(myOutputStream.toByteArray());
+		binary.setContentType(getContentType());
+		binary.setContent(theFile.toByteArray());
 		DaoMethodOutcome outcome = myBinaryDao.create(binary);
 		return outcome.getResource().getIdElement();
 	}
 
+	/**
+	 * Creates a Binary resource whose content is stored in the binary storage service, in
+	 * the same way that the BinaryStorageInterceptor externalizes large binaries.
+	 * <p>
+	 * Blobs are keyed by the ID of the resource which owns them, so the Binary is inserted first
+	 * and the blob is stored before the chunk transaction commits. If the transaction does not
+	 * commit, the Binary is rolled back and the blob is deleted again, so that neither is left
+	 * without the other.
+	 * </p>
+	 */
+	@SuppressWarnings("unchecked")
+	private IIdType createBinaryInBinaryStorage(ExportFile theFile) throws IOException {
+		String contentType = getContentType();
+		String blobId = myBinaryStorageSvc.newBlobId();
+
+		IBaseBinary binary = BinaryUtil.newBinary(myFhirContext);
+		binary.setContentType(contentType);
+		IBaseHasExtensions data = (IBaseHasExtensions) BinaryUtil.getOrCreateData(myFhirContext, binary);
+		IBaseExtension<?, ?> ext = data.addExtension();
+		ext.setUrl(HapiExtensions.EXT_EXTERNALIZED_BINARY_ID);
+		ext.setUserData(JpaConstants.EXTENSION_EXT_SYSTEMDEFINED, Boolean.TRUE);
+		IPrimitiveType<String> blobIdString = (IPrimitiveType<String>) myFhirContext.getElementDefinition("string").newInstance();
+		blobIdString.setValueAsString(blobId);
+		ext.setValue(blobIdString);
+		DaoMethodOutcome outcome = myBinaryDao.create(binary);
+		IIdType createdId = outcome.getResource().getIdElement();
+		IIdType blobResourceId = createdId.toUnqualifiedVersionless();
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int theStatus) {
+					if (theStatus != STATUS_COMMITTED) {
+						expungeBlobAfterRollback(blobResourceId, blobId);
+					}
+				}
+			});
+		}
+
+		try (InputStream inputStream = theFile.openInputStream()) {
+			myBinaryStorageSvc.storeBlob(blobResourceId, blobId, contentType, inputStream);
+		}
+		return createdId;
+	}
+
+	private void expungeBlobAfterRollback(IIdType theResourceId, String theBlobId) {
+		try {
+			ourLog.info("Bulk export file {} was not committed, deleting blob {}", theResourceId.getValue(), theBlobId);
+			myBinaryStorageSvc.expungeBlob(theResourceId, theBlobId);
+		} catch (Exception e) {
+			ourLog.error("Failed to delete blob {} of uncommitted bulk export file {}", theBlobId, theResourceId.getValue(), e);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private IFhirResourceDao<IBaseBinary> getBinaryDao() {
 		return myDaoRegistry.getResourceDao("Binary");
@@ -112,18 +198,106 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	@Override
 	public void write(List<? extends List<IBaseResource>> theList) throws Exception {
 
-		int count = 0;
-		for (List<IBaseResource> resourceList : theList) {
-			for (IBaseResource nextFileResource : resourceList) {
-				myParser.encodeResourceToWriter(nextFileResource, myWriter);
-				myWriter.append("\n");
-				count++;
+		long maximumFileSize = myDaoConfig.getBulkExportFileMaximumSize();
+		ExportFile file = null;
+		try {
+			for (List<IBaseResource> resourceList : theList) {
+				for (IBaseResource nextFileResource : resourceList) {
+					if (file == null) {
+						file = new ExportFile(myDaoConfig.isBulkExportGzipEnabled());
+					}
+					file.append(myParser, nextFileResource);
+
+					if (file.getSize() >= maximumFileSize) {
+						ExportFile fullFile = file;
+						file = null;
+						flushToFile(fullFile);
+					}
+				}
+			}
+
+			if (file != null) {
+				ExportFile lastFile = file;
+				file = null;
+				flushToFile(lastFile);
+			}
+		} finally {
+			if (file != null) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * A single NDJSON file being written. The content is held in memory until it reaches
+	 * {@link #IN_MEMORY_THRESHOLD} bytes, after which it is spooled to a temporary file so that
+	 * large files don't need to fit in memory.
+	 */
+	private static class ExportFile {
+		private final DeferredFileOutputStream mySpool;
+		private final CountingOutputStream myCountingStream;
+		private final Writer myWriter;
+		private int myResourceCount;
+		private boolean myClosed;
+
+		ExportFile(boolean theGzip) throws IOException {
+			mySpool = new DeferredFileOutputStream(IN_MEMORY_THRESHOLD, "bulk-export-", ".ndjson", null);
+			OutputStream outputStream = mySpool;
+			if (theGzip) {
+				outputStream = new GZIPOutputStream(outputStream);
+			}
+			myCountingStream = new CountingOutputStream(outputStream);
+			myWriter = new OutputStreamWriter(myCountingStream, Constants.CHARSET_UTF8);
+		}
+
+		void append(IParser theParser, IBaseResource theResource) throws IOException {
+			theParser.encodeResourceToWriter(theResource, myWriter);
+			myWriter.append("\n");
+			myWriter.flush();
+			myResourceCount++;
+		}
+
+		/**
+		 * @return The number of uncompressed bytes written so far
+		 */
+		long getSize() {
+			return myCountingStream.getByteCount();
+		}
+
+		int getResourceCount() {
+			return myResourceCount;
+		}
+
+		void close() throws IOException {
+			if (!myClosed) {
+				myClosed = true;
+				myWriter.close();
 			}
 		}
 
-		Optional<IIdType> createdId = flushToFiles();
-		if (createdId.isPresent()) {
-			ourLog.info("Created {} resources for bulk export file containing {} resources of type {} ", count, createdId.get().toUnqualifiedVersionless().getValue(), myResourceType);
+		byte[] toByteArray() throws IOException {
+			if (mySpool.isInMemory()) {
+				return mySpool.getData();
+			}
+			return FileUtils.readFileToByteArray(mySpool.getFile());
+		}
+
+		InputStream openInputStream() throws IOException {
+			if (mySpool.isInMemory()) {
+				return new ByteArrayInputStream(mySpool.getData());
+			}
+			return new FileInputStream(mySpool.getFile());
+		}
+
+		void delete() {
+			try {
+				close();
+			} catch (IOException e) {
+				ourLog.warn("Failed to close bulk export file: {}", e.toString());
+			}
+			if (!mySpool.isInMemory()) {
+				FileUtils.deleteQuietly(mySpool.getFile());
+			}
 		}
 	}
 }
@@ -20,7 +20,9 @@ package ca.uhn.fhir.jpa.bulk.job;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.bulk.svc.BulkExportDaoSvc;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.item.ExecutionContext;
@@ -32,9 +34,18 @@ import java.util.Map;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Creates one partition for each resource type in the bulk export job. If range partitioning is
+ * enabled and {@link DaoConfig#getBulkExportPartitionsPerResourceType()} is greater than one, the
+ * resource ID space of each type is additionally split into that many ranges, each of which is
+ * processed as its own partition.
+ */
 public class ResourceTypePartitioner implements Partitioner {
+	public static final String PID_RANGE_LOW = "pidRangeLow";
+	public static final String PID_RANGE_HIGH = "pidRangeHigh";
 	private static final Logger ourLog = getLogger(ResourceTypePartitioner.class);
 
+	private final boolean myPartitionByPidRange;
 
 	@Value("#{jobExecutionContext['jobUUID']}")
 	private String myJobUUID;
@@ -42,6 +53,26 @@ public class ResourceTypePartitioner implements Partitioner {
 	@Autowired
 	private BulkExportDaoSvc myBulkExportDaoSvc;
 
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	/**
+	 * Constructor - Creates a partitioner that only partitions by resource type
+	 */
+	public ResourceTypePartitioner() {
+		this(false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param thePartitionByPidRange Should each resource type be split into ranges of resource IDs? The reader
+	 *                               of the partitioned step must honour {@link #PID_RANGE_LOW} and {@link #PID_RANGE_HIGH}.
+	 */
+	public ResourceTypePartitioner(boolean thePartitionByPidRange) {
+		myPartitionByPidRange = thePartitionByPidRange;
+	}
+
 	@Override
 	public Map<String, ExecutionContext> partition(int gridSize) {
 		Map<String, ExecutionContext> partitionContextMap = new HashMap<>();
@@ -52,24 +83,50 @@ public class ResourceTypePartitioner implements Partitioner {
 			.forEach(entry -> {
 				String resourceType = entry.getValue();
 				Long collectionEntityId = entry.getKey();
-				ourLog.debug("Creating a partition step for CollectionEntity: [{}] processing resource type [{}]", collectionEntityId, resourceType);
 
-				ExecutionContext context = new ExecutionContext();
-				//The worker step needs to know what resource type it is looking for.
-				context.putString("resourceType", resourceType);
+				int rangeCount = myPartitionByPidRange ? myDaoConfig.getBulkExportPartitionsPerResourceType() : 1;
+				Pair<Long, Long> pidRange = rangeCount > 1 ? myBulkExportDaoSvc.getResourcePidRange(resourceType) : null;
+				if (pidRange == null) {
+					ourLog.debug("Creating a partition step for CollectionEntity: [{}] processing resource type [{}]", collectionEntityId, resourceType);
+
+					// Name the partition based on the resource type
+					partitionContextMap.put(resourceType, createContext(resourceType, collectionEntityId));
+					return;
+				}
+
+				long low = pidRange.getLeft();
+				long high = pidRange.getRight();
+				long rangeSize = Math.max((high - low) / rangeCount + 1, 1);
+				int index = 0;
+				for (long rangeLow = low; rangeLow <= high; rangeLow += rangeSize) {
+					long rangeHigh = Math.min(rangeLow + rangeSize - 1, high);
+					ourLog.debug("Creating a partition step for CollectionEntity: [{}] processing resource type [{}] with PIDs {} - {}", collectionEntityId, resourceType, rangeLow, rangeHigh);
 
-				// The worker step needs to know which parent job it is processing for, and which collection entity it will be
-				// attaching its results to.
-				context.putString(BulkExportJobConfig.JOB_UUID_PARAMETER, myJobUUID);
-				context.putLong("bulkExportCollectionEntityId", collectionEntityId);
+					ExecutionContext context = createContext(resourceType, collectionEntityId);
+					context.putLong(PID_RANGE_LOW, rangeLow);
+					context.putLong(PID_RANGE_HIGH, rangeHigh);
 
-				// Name the partition based on the resource type
-				partitionContextMap.put(resourceType, context);
-				});
+					// Name the partition based on the resource type and range
+					partitionContextMap.put(resourceType + "-" + index, context);
+					index++;
+				}
+			});
 
 
 		return partitionContextMap;
 	}
 
+	private ExecutionContext createContext(String theResourceType, Long theCollectionEntityId) {
+		ExecutionContext context = new ExecutionContext();
+		//The worker step needs to know what resource type it is looking for.
+		context.putString("resourceType", theResourceType);
+
+		// The worker step needs to know which parent job it is processing for, and which collection entity it will be
+		// attaching its results to.
+		context.putString(BulkExportJobConfig.JOB_UUID_PARAMETER, myJobUUID);
+		context.putLong("bulkExportCollectionEntityId", theCollectionEntityId);
+		return context;
+	}
+
 
 }
@@ -26,9 +26,11 @@ import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionFileDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionEntity;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionFileEntity;
 import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -50,19 +52,34 @@ public class BulkExportDaoSvc {
 	IBulkExportCollectionDao myBulkExportCollectionDao;
 	@Autowired
 	IBulkExportCollectionFileDao myBulkExportCollectionFileDao;
+	@Autowired
+	IResourceTableDao myResourceTableDao;
 
 	@Transactional
 	public void addFileToCollectionWithId(Long theCollectionEntityId, BulkExportCollectionFileEntity theFile) {
 		Optional<BulkExportCollectionEntity> byId = myBulkExportCollectionDao.findById(theCollectionEntityId);
 		if (byId.isPresent()) {
+			// Files are linked to the collection from the file side only, so that partitions writing files for the
+			// same collection in parallel don't conflict on the collection's version
 			BulkExportCollectionEntity exportCollectionEntity = byId.get();
 			theFile.setCollection(exportCollectionEntity);
-			exportCollectionEntity.getFiles().add(theFile);
 			myBulkExportCollectionFileDao.saveAndFlush(theFile);
-			myBulkExportCollectionDao.saveAndFlush(exportCollectionEntity);
 		}
 	}
 
+	/**
+	 * @return Returns the lowest and highest resource PIDs of the given type, or <code>null</code> if no resources of the type exist
+	 */
+	@Transactional
+	public Pair<Long, Long> getResourcePidRange(String theResourceType) {
+		Long low = myResourceTableDao.findLowestIdForResourceType(theResourceType);
+		Long high = myResourceTableDao.findHighestIdForResourceType(theResourceType);
+		if (low == null || high == null) {
+			return null;
+		}
+		return Pair.of(low, high);
+	}
+
 	@Transactional
 	public Map<Long, String> getBulkJobCollectionIdToResourceTypeMap(String theJobUUID) {
 		BulkExportJobEntity bulkExportJobEntity = loadJob(theJobUUID);
@@ -22,11 +22,13 @@ package ca.uhn.fhir.jpa.cache;
 
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
 import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.QueryChunker;
 import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import org.hibernate.dialect.Dialect;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -46,6 +48,8 @@ public class ResourceVersionSvcDaoImpl implements IResourceVersionSvc {
 	DaoRegistry myDaoRegistry;
 	@Autowired
 	IResourceTableDao myResourceTableDao;
+	@Autowired(required = false)
+	HibernatePropertiesProvider myDialectProvider;
 
 	@Override
 	@Nonnull
@@ -57,7 +61,8 @@ public class ResourceVersionSvcDaoImpl implements IResourceVersionSvc {
 			.collect(Collectors.toList());
 
 		List<ResourceTable> allById = new ArrayList<>();
-		new QueryChunker<Long>().chunk(matchingIds, t -> {
+		Dialect dialect = myDialectProvider != null ? myDialectProvider.getDialect() : null;
+		new QueryChunker<Long>().chunk(matchingIds, dialect, t -> {
 			List<ResourceTable> nextBatch = myResourceTableDao.findAllById(t);
 			allById.addAll(nextBatch);
 		});
@@ -78,6 +78,7 @@ import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
@@ -115,6 +116,7 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -222,6 +224,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 	@Autowired
 	private SearchParamWithInlineReferencesExtractor mySearchParamWithInlineReferencesExtractor;
 	@Autowired
+	private MatchResourceUrlService myMatchResourceUrlService;
+	@Autowired
 	private DaoSearchParamSynchronizer myDaoSearchParamSynchronizer;
 	@Autowired
 	private SearchBuilderFactory mySearchBuilderFactory;
@@ -849,8 +853,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		} else if (theEntity instanceof ResourceTable) {
 			ResourceTable resource = (ResourceTable) theEntity;
 			version = theEntity.getVersion();
-			ResourceHistoryTable history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(theEntity.getId(), version);
-			((ResourceTable) theEntity).setCurrentVersionEntity(history);
+			ResourceHistoryTable history = resource.getCurrentVersionEntity();
+			if (history == null || history.getVersion() != version) {
+				history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(theEntity.getId(), version);
+				resource.setCurrentVersionEntity(history);
+			}
 
 			while (history == null) {
 				if (version > 1L) {
@@ -952,14 +959,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		}
 
 		// 6. Handle source (provenance)
-		if (isNotBlank(provenanceRequestId) || isNotBlank(provenanceSourceUri)) {
-			String sourceString = cleanProvenanceSourceUri(provenanceSourceUri)
-				+ (isNotBlank(provenanceRequestId) ? "#" : "")
-				+ defaultString(provenanceRequestId);
-
-			MetaUtil.setSource(myContext, retVal, sourceString);
-
-		}
+		populateResourceSource(retVal, provenanceSourceUri, provenanceRequestId);
 
 		// 7. Add partition information
 		if (myPartitionSettings.isPartitioningEnabled()) {
@@ -975,6 +975,93 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		return retVal;
 	}
 
+	private void populateResourceSource(IBaseResource theResource, String theProvenanceSourceUri, String theProvenanceRequestId) {
+		if (isNotBlank(theProvenanceRequestId) || isNotBlank(theProvenanceSourceUri)) {
+			String sourceString = cleanProvenanceSourceUri(theProvenanceSourceUri)
+				+ (isNotBlank(theProvenanceRequestId) ? "#" : "")
+				+ defaultString(theProvenanceRequestId);
+
+			MetaUtil.setSource(myContext, theResource, sourceString);
+
+		}
+	}
+
+	/**
+	 * Creates a placeholder resource for the given entity, in which only the ID and the
+	 * metadata are populated. The complete JSON encoding of the resource is attached
+	 * to it as {@link Constants#RESOURCE_PRE_ENCODED_JSON user data}. This is built by
+	 * splicing the encoded ID and metadata into the stored resource body, so the stored
+	 * body never needs to be parsed.
+	 * <p>
+	 * The result is only suitable for sending straight back to a client, since nothing
+	 * other than the ID and metadata can be read from it. Bodies which the response parser
+	 * would rewrite for the server base URL of the given request are not used.
+	 * </p>
+	 *
+	 * @return Returns <code>null</code> if the stored body can't be used this way, in which case
+	 * the caller should use {@link #toResource(Class, IBaseResourceEntity, Collection, boolean)}
+	 */
+	@SuppressWarnings("unchecked")
+	@Nullable
+	protected <R extends IBaseResource> R toPreEncodedResource(Class<R> theResourceType, BaseHasResource theEntity, RequestDetails theRequest) {
+		if (myContext.hasDefaultTypeForProfile() || myPartitionSettings.isPartitioningEnabled() || theEntity.getDeleted() != null) {
+			return null;
+		}
+
+		ResourceHistoryTable history;
+		Collection<? extends BaseTag> tagList;
+		if (theEntity instanceof ResourceHistoryTable) {
+			history = (ResourceHistoryTable) theEntity;
+			tagList = history.isHasTags() ? history.getTags() : Collections.emptyList();
+		} else if (theEntity instanceof ResourceTable) {
+			ResourceTable resource = (ResourceTable) theEntity;
+			history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(resource.getId(), resource.getVersion());
+			tagList = resource.isHasTags() ? resource.getTags() : Collections.emptyList();
+		} else {
+			return null;
+		}
+		if (history == null || history.getEncoding() == ResourceEncodingEnum.DEL || history.getResource() == null) {
+			return null;
+		}
+
+		/*
+		 * The stored body is always encoded without the ID and metadata, so it starts with the
+		 * resource type followed by either the next element or the end of the object.
+		 */
+		String body = decodeResource(history.getResource(), history.getEncoding());
+		String prefix = "{\"resourceType\":\"" + theEntity.getResourceType() + "\"";
+		if (!body.startsWith(prefix) || body.length() == prefix.length()) {
+			return null;
+		}
+		String remainder = body.substring(prefix.length());
+		if (remainder.startsWith(",\"id\":") || remainder.startsWith(",\"meta\":")) {
+			return null;
+		}
+
+		R retVal = (R) myContext.getResourceDefinition(theEntity.getResourceType()).newInstance();
+		if (retVal instanceof IResource) {
+			retVal = populateResourceMetadataHapi(theResourceType, theEntity, tagList, false, (IResource) retVal, history.getVersion());
+		} else {
+			retVal = populateResourceMetadataRi(theResourceType, theEntity, tagList, false, (IAnyResource) retVal, history.getVersion());
+		}
+		if (history.getProvenance() != null) {
+			populateResourceSource(retVal, history.getProvenance().getSourceUri(), history.getProvenance().getRequestId());
+		}
+
+		String encodedIdAndMeta = myContext.newJsonParser().encodeResourceToString(retVal);
+		String encoded;
+		if (remainder.charAt(0) == '}') {
+			encoded = encodedIdAndMeta;
+		} else {
+			encoded = encodedIdAndMeta.substring(0, encodedIdAndMeta.length() - 1) + remainder;
+		}
+		if (theRequest != null && RestfulServerUtils.isPreEncodedJsonAffectedByServerBaseUrl(encoded, theRequest)) {
+			return null;
+		}
+		retVal.setUserData(Constants.RESOURCE_PRE_ENCODED_JSON, encoded);
+		return retVal;
+	}
+
 	public String toResourceName(Class<? extends IBaseResource> theResourceType) {
 		return myContext.getResourceType(theResourceType);
 	}
@@ -1225,6 +1312,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			}
 		}
 
+		/*
+		 * Discard any match URLs resolved ahead of time in this transaction that this write
+		 * could affect
+		 */
+		if (thePerformIndexing || theDeletedTimestampOrNull != null) {
+			myMatchResourceUrlService.invalidateResolvedMatchUrls(theTransactionDetails, entity.getId(), newParams != null ? newParams.myTokenParams : null);
+		}
+
 		if (theResource != null) {
 			updateResourceMetadata(entity, theResource);
 		}
@@ -1498,6 +1593,9 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			case JSONC:
 				resourceText = GZipUtil.decompress(theResourceBytes);
 				break;
+			case JSOND:
+				resourceText = DeflateUtil.decompress(theResourceBytes);
+				break;
 			case DEL:
 				break;
 		}
@@ -1505,26 +1603,33 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 	}
 
 	public static byte[] encodeResource(IBaseResource theResource, ResourceEncodingEnum theEncoding, Set<String> theExcludeElements, FhirContext theContext) {
-		byte[] bytes;
 		IParser parser = theEncoding.newParser(theContext);
 		parser.setDontEncodeElements(theExcludeElements);
 		String encoded = parser.encodeResourceToString(theResource);
 
+		byte[] bytes = encodeResourceText(encoded, theEncoding);
 
+		ourLog.debug("Encoded {} chars of resource body as {} bytes", encoded.length(), bytes.length);
+		return bytes;
+	}
+
+	public static byte[] encodeResourceText(String theEncoded, ResourceEncodingEnum theEncoding) {
+		byte[] bytes;
 		switch (theEncoding) {
 			case JSON:
-				bytes = encoded.getBytes(Charsets.UTF_8);
+				bytes = theEncoded.getBytes(Charsets.UTF_8);
 				break;
 			case JSONC:
-				bytes = GZipUtil.compress(encoded);
+				bytes = GZipUtil.compress(theEncoded);
+				break;
+			case JSOND:
+				bytes = DeflateUtil.compress(theEncoded);
 				break;
 			default:
 			case DEL:
 				bytes = new byte[0];
 				break;
 		}
-
-		ourLog.debug("Encoded {} chars of resource body as {} bytes", encoded.length(), bytes.length);
 		return bytes;
 	}
 
@@ -36,6 +36,7 @@ import ca.uhn.fhir.jpa.api.model.ExpungeOutcome;
 import ca.uhn.fhir.jpa.dao.expunge.DeleteExpungeService;
 import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
 import ca.uhn.fhir.jpa.delete.DeleteConflictService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.model.entity.BaseTag;
 import ca.uhn.fhir.jpa.model.entity.ForcedId;
@@ -86,6 +87,7 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.rest.server.servlet.ServletSubRequestDetails;
 import ca.uhn.fhir.util.ObjectUtil;
 import ca.uhn.fhir.util.OperationOutcomeUtil;
 import ca.uhn.fhir.util.ReflectionUtil;
@@ -163,6 +165,8 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 	private MatchUrlService myMatchUrlService;
 	@Autowired
 	private DeleteExpungeService myDeleteExpungeService;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
 
 	private IInstanceValidatorModule myInstanceValidator;
 	private String myResourceName;
@@ -269,7 +273,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		entity.setPartitionId(theRequestPartitionId);
 
 		if (isNotBlank(theIfNoneExist)) {
-			Set<ResourcePersistentId> match = myMatchResourceUrlService.processMatchUrl(theIfNoneExist, myResourceType, theRequest);
+			Set<ResourcePersistentId> match = myMatchResourceUrlService.processMatchUrl(theIfNoneExist, myResourceType, theTransactionDetails, theRequest);
 			if (match.size() > 1) {
 				String msg = getContext().getLocalizer().getMessageSanitized(BaseHapiFhirDao.class, "transactionOperationWithMultipleMatchFailure", "CREATE", theIfNoneExist, match.size());
 				throw new PreconditionFailedException(msg);
@@ -1090,7 +1094,13 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		BaseHasResource entity = readEntity(theId, theRequest);
 		validateResourceType(entity);
 
-		T retVal = toResource(myResourceType, entity, null, false);
+		T retVal = null;
+		if (isPreEncodedReadResponseApplicable(theId, theRequest, entity)) {
+			retVal = toPreEncodedResource(myResourceType, entity, theRequest);
+		}
+		if (retVal == null) {
+			retVal = toResource(myResourceType, entity, null, false);
+		}
 
 		if (theDeletedOk == false) {
 			if (entity.getDeleted() != null) {
@@ -1127,6 +1137,39 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return retVal;
 	}
 
+	/**
+	 * Returns <code>true</code> if this read is being performed to answer a client's plain read/vread
+	 * of the given resource, and the client will be sent the resource exactly as it is stored
+	 *
+	 * @see DaoConfig#isPreEncodedReadResponsesEnabled()
+	 */
+	private boolean isPreEncodedReadResponseApplicable(IIdType theId, RequestDetails theRequest, BaseHasResource theEntity) {
+		if (!myDaoConfig.isPreEncodedReadResponsesEnabled()) {
+			return false;
+		}
+
+		// Sub-requests (e.g. transaction entries) don't send their resources straight to the client
+		if (!(theRequest instanceof ServletRequestDetails) || theRequest instanceof ServletSubRequestDetails) {
+			return false;
+		}
+		if (theRequest.getRestOperationType() != RestOperationTypeEnum.READ && theRequest.getRestOperationType() != RestOperationTypeEnum.VREAD) {
+			return false;
+		}
+		if (!getResourceName().equals(theRequest.getResourceName()) || theRequest.getId() == null || !theId.getIdPart().equals(theRequest.getId().getIdPart())) {
+			return false;
+		}
+
+		if (theEntity.getDeleted() != null) {
+			return false;
+		}
+		if (JpaInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PREACCESS_RESOURCES, myInterceptorBroadcaster, theRequest) ||
+			JpaInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES, myInterceptorBroadcaster, theRequest)) {
+			return false;
+		}
+
+		return RestfulServerUtils.isPreEncodedJsonResponsePermitted(theRequest);
+	}
+
 	@Override
 	@Transactional
 	public BaseHasResource readEntity(IIdType theId, RequestDetails theRequest) {
@@ -1208,9 +1251,26 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 	@Nonnull
 	private ResourceTable readEntityLatestVersion(IIdType theId, @Nullable RequestPartitionId theRequestPartitionId) {
+		return readEntityLatestVersion(theId, theRequestPartitionId, null);
+	}
+
+	/**
+	 * @param theTransactionDetails If the transaction details already hold the storage ID of the resource (i.e. it has
+	 *                              been resolved earlier in the same transaction, so it is known to exist), it isn't
+	 *                              looked up again. This is only done if partitioning is disabled, since the resolved
+	 *                              IDs aren't specific to a partition.
+	 */
+	@Nonnull
+	private ResourceTable readEntityLatestVersion(IIdType theId, @Nullable RequestPartitionId theRequestPartitionId, @Nullable TransactionDetails theTransactionDetails) {
 		validateResourceTypeAndThrowInvalidRequestException(theId);
 
-		ResourcePersistentId persistentId = myIdHelperService.resolveResourcePersistentIds(theRequestPartitionId, getResourceName(), theId.getIdPart());
+		ResourcePersistentId persistentId = null;
+		if (theTransactionDetails != null && !myPartitionSettings.isPartitioningEnabled()) {
+			persistentId = theTransactionDetails.getResolvedResourceId(theId.withResourceType(getResourceName()));
+		}
+		if (persistentId == null) {
+			persistentId = myIdHelperService.resolveResourcePersistentIds(theRequestPartitionId, getResourceName(), theId.getIdPart());
+		}
 		ResourceTable entity = myEntityManager.find(ResourceTable.class, persistentId.getId());
 		if (entity == null) {
 			throw new ResourceNotFoundException(theId);
@@ -1502,7 +1562,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 		IIdType resourceId;
 		if (isNotBlank(theMatchUrl)) {
-			Set<ResourcePersistentId> match = myMatchResourceUrlService.processMatchUrl(theMatchUrl, myResourceType, theRequest);
+			Set<ResourcePersistentId> match = myMatchResourceUrlService.processMatchUrl(theMatchUrl, myResourceType, theTransactionDetails, theRequest);
 			if (match.size() > 1) {
 				String msg = getContext().getLocalizer().getMessageSanitized(BaseHapiFhirDao.class, "transactionOperationWithMultipleMatchFailure", "UPDATE", theMatchUrl, match.size());
 				throw new PreconditionFailedException(msg);
@@ -1525,7 +1585,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 			RequestPartitionId requestPartitionId = myRequestPartitionHelperService.determineReadPartitionForRequest(theRequest, getResourceName());
 			try {
-				entity = readEntityLatestVersion(resourceId, requestPartitionId);
+				entity = readEntityLatestVersion(resourceId, requestPartitionId, theTransactionDetails);
 			} catch (ResourceNotFoundException e) {
 				requestPartitionId = myRequestPartitionHelperService.determineCreatePartitionForRequest(theRequest, theResource, getResourceName());
 				return doCreateForPostOrPut(resource, null, thePerformIndexing, theTransactionDetails, theRequest, requestPartitionId);
@@ -25,6 +25,7 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
@@ -33,13 +34,20 @@ import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.api.model.DeleteConflict;
 import ca.uhn.fhir.jpa.api.model.DeleteConflictList;
 import ca.uhn.fhir.jpa.api.model.DeleteMethodOutcome;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
 import ca.uhn.fhir.jpa.delete.DeleteConflictService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.cross.IBasePersistedResource;
+import ca.uhn.fhir.jpa.model.cross.IResourceLookup;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.QueryChunker;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
@@ -106,6 +114,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import static ca.uhn.fhir.util.StringUtil.toUtf8String;
 import static org.apache.commons.lang3.StringUtils.defaultString;
@@ -135,6 +144,14 @@ public abstract class BaseTransactionProcessor {
 	private DaoConfig myDaoConfig;
 	@Autowired
 	private ModelConfig myModelConfig;
+	@Autowired
+	private IdHelperService myIdHelperService;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
+	private IResourceHistoryTableDao myResourceHistoryTableDao;
 
 	@PostConstruct
 	public void start() {
@@ -630,6 +647,11 @@ public abstract class BaseTransactionProcessor {
 				}
 			}
 
+			/*
+			 * Resolve conditional URLs and references in bulk before
+			 * processing any entries
+			 */
+			preResolveMatchUrlsAndReferences(theTransactionDetails, theEntries);
 
 			/*
 			 * Loop through the request and process any entries of type
@@ -981,13 +1003,24 @@ public abstract class BaseTransactionProcessor {
 			}
 
 			/*
-			 * Double check we didn't allow any duplicates we shouldn't have
+			 * Double check we didn't allow any duplicates we shouldn't have. The
+			 * match URLs are resolved against the flushed state in bulk first.
 			 */
+			TransactionDetails conflictCheckDetails = new TransactionDetails(theTransactionDetails.getTransactionDate());
+			Set<String> conflictCheckUrls = new HashSet<>();
+			for (Map.Entry<String, Class<? extends IBaseResource>> nextEntry : conditionalRequestUrls.entrySet()) {
+				String matchUrl = nextEntry.getKey();
+				if (isNotBlank(matchUrl)) {
+					conflictCheckUrls.add(toResourceName(nextEntry.getValue()) + "?" + matchUrl.substring(matchUrl.indexOf('?') + 1));
+				}
+			}
+			myMatchResourceUrlService.preResolveMatchUrls(conflictCheckUrls, conflictCheckDetails);
+
 			for (Map.Entry<String, Class<? extends IBaseResource>> nextEntry : conditionalRequestUrls.entrySet()) {
 				String matchUrl = nextEntry.getKey();
 				Class<? extends IBaseResource> resType = nextEntry.getValue();
 				if (isNotBlank(matchUrl)) {
-					Set<ResourcePersistentId> val = myMatchResourceUrlService.processMatchUrl(matchUrl, resType, theRequest);
+					Set<ResourcePersistentId> val = myMatchResourceUrlService.processMatchUrl(matchUrl, resType, conflictCheckDetails, theRequest);
 					if (val.size() > 1) {
 						throw new InvalidRequestException(
 							"Unable to process " + theActionName + " - Request would cause multiple resources to match URL: \"" + matchUrl + "\". Does transaction request contain duplicates?");
@@ -1033,6 +1066,117 @@ public abstract class BaseTransactionProcessor {
 		}
 	}
 
+	/**
+	 * Collects the conditional match URLs (conditional creates, conditional updates and inline
+	 * match URL references) and the literal references found in the transaction, and resolves
+	 * as many of them as possible using a small number of set-based queries. The outcomes are
+	 * stored in the {@link TransactionDetails} so that processing the individual entries
+	 * doesn't need one or more database round trips per entry.
+	 */
+	private void preResolveMatchUrlsAndReferences(TransactionDetails theTransactionDetails, List<IBase> theEntries) {
+		if (myPartitionSettings.isPartitioningEnabled()) {
+			return;
+		}
+
+		Set<String> matchUrls = new HashSet<>();
+		Set<String> entryIds = new HashSet<>();
+		Set<String> conditionalDeleteResourceTypes = new HashSet<>();
+		List<IBaseResource> resourcesToScan = new ArrayList<>();
+		for (IBase nextEntry : theEntries) {
+			String verb = myVersionAdapter.getEntryRequestVerb(myContext, nextEntry);
+			String requestUrl = myVersionAdapter.getEntryRequestUrl(nextEntry);
+			String fullUrl = myVersionAdapter.getFullUrl(nextEntry);
+			IBaseResource resource = myVersionAdapter.getResource(nextEntry);
+
+			if (isNotBlank(fullUrl)) {
+				entryIds.add(newIdType(fullUrl).toUnqualifiedVersionless().getValue());
+			}
+			if (resource != null && resource.getIdElement().hasIdPart()) {
+				entryIds.add(myContext.getResourceType(resource) + "/" + resource.getIdElement().getIdPart());
+			}
+
+			UrlUtil.UrlParts parts = isNotBlank(requestUrl) ? UrlUtil.parseUrl(requestUrl) : null;
+			if (parts != null && parts.getResourceType() != null) {
+				if (isNotBlank(parts.getResourceId())) {
+					entryIds.add(parts.getResourceType() + "/" + parts.getResourceId());
+				} else if ("DELETE".equals(verb)) {
+					conditionalDeleteResourceTypes.add(parts.getResourceType());
+				}
+			}
+
+			if (resource == null || !("POST".equals(verb) || "PUT".equals(verb))) {
+				continue;
+			}
+			resourcesToScan.add(resource);
+
+			String resourceType = myContext.getResourceType(resource);
+			if ("POST".equals(verb)) {
+				String ifNoneExist = myVersionAdapter.getEntryRequestIfNoneExist(nextEntry);
+				if (isNotBlank(ifNoneExist) && !ifNoneExist.contains(URN_PREFIX)) {
+					int questionMarkIndex = ifNoneExist.indexOf('?');
+					matchUrls.add(resourceType + "?" + ifNoneExist.substring(questionMarkIndex + 1));
+				}
+			} else if (parts != null && isBlank(parts.getResourceId()) && isNotBlank(parts.getParams()) && !parts.getParams().contains(URN_PREFIX)) {
+				matchUrls.add(resourceType + "?" + parts.getParams());
+			}
+		}
+
+		FhirTerser terser = myContext.newTerser();
+		Set<IIdType> idsToResolve = new HashSet<>();
+		for (IBaseResource nextResource : resourcesToScan) {
+			for (ResourceReferenceInfo nextReference : terser.getAllResourceReferences(nextResource)) {
+				IIdType nextId = nextReference.getResourceReference().getReferenceElement();
+				String nextIdValue = nextId.getValue();
+				if (isBlank(nextIdValue) || nextIdValue.startsWith("#") || nextIdValue.startsWith(URN_PREFIX)) {
+					continue;
+				}
+
+				int questionMarkIndex = nextIdValue.indexOf('?');
+				if (questionMarkIndex != -1) {
+					if (myDaoConfig.isAllowInlineMatchUrlReferences() && myContext.getResourceTypes().contains(nextIdValue.substring(0, questionMarkIndex))) {
+						matchUrls.add(nextIdValue);
+					}
+					continue;
+				}
+
+				if (nextId.hasBaseUrl() || !nextId.hasResourceType() || !nextId.hasIdPart()) {
+					continue;
+				}
+				IIdType nextUnqualifiedId = nextId.toUnqualifiedVersionless();
+				if (!entryIds.contains(nextUnqualifiedId.getValue()) && !conditionalDeleteResourceTypes.contains(nextUnqualifiedId.getResourceType())) {
+					idsToResolve.add(nextUnqualifiedId);
+				}
+			}
+		}
+
+		Set<Long> matchedPids = myMatchResourceUrlService.preResolveMatchUrls(matchUrls, theTransactionDetails);
+		if (!matchedPids.isEmpty()) {
+			// Load the matched resources into the session so that they don't need to be fetched one at a time
+			new QueryChunker<Long>().chunk(new ArrayList<>(matchedPids), t -> {
+				Map<Long, ResourceTable> entities = new HashMap<>();
+				for (ResourceTable next : myResourceTableDao.findByIdsAndFetchForcedId(t)) {
+					entities.put(next.getId(), next);
+				}
+				Set<Long> versions = entities.values().stream().map(ResourceTable::getVersion).collect(Collectors.toSet());
+				for (ResourceHistoryTable next : myResourceHistoryTableDao.findForIdsAndVersionsAndFetchProvenance(entities.keySet(), versions)) {
+					ResourceTable entity = entities.get(next.getResourceId());
+					if (entity != null && entity.getVersion() == next.getVersion()) {
+						entity.setCurrentVersionEntity(next);
+					}
+				}
+			});
+		}
+
+		if (!idsToResolve.isEmpty()) {
+			Map<String, IResourceLookup> resolvedIds = myIdHelperService.resolveResourceIdentities(RequestPartitionId.allPartitions(), idsToResolve);
+			for (Map.Entry<String, IResourceLookup> nextResolved : resolvedIds.entrySet()) {
+				if (nextResolved.getValue().getDeleted() == null) {
+					theTransactionDetails.addResolvedResourceId(newIdType(nextResolved.getKey()), new ResourcePersistentId(nextResolved.getValue().getResourceId()));
+				}
+			}
+		}
+	}
+
 	private IIdType newIdType(String theResourceType, String theResourceId, String theVersion) {
 		org.hl7.fhir.r4.model.IdType id = new org.hl7.fhir.r4.model.IdType(theResourceType, theResourceId, theVersion);
 		return myContext.getVersion().newIdType().setValue(id.getValue());
@@ -0,0 +1,123 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.parser.DataFormatException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses resource bodies using zlib DEFLATE with a preset dictionary containing
+ * fragments that appear in almost every FHIR JSON resource. Because resource bodies
+ * are small, a dictionary gives a noticeably better ratio than plain GZip, and it
+ * allows decompression to start with a populated window.
+ * <p>
+ * Deflaters and inflaters are reused per thread, so no native zlib stream needs to be
+ * allocated for each resource.
+ * </p>
+ *
+ * @see ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum#JSOND
+ */
+public class DeflateUtil {
+
+	/**
+	 * The contents of this dictionary are part of the stored format of every row
+	 * written using {@link ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum#JSOND}.
+	 * It must never be changed! (zlib verifies the dictionary checksum when
+	 * inflating, so a changed dictionary would make existing rows unreadable)
+	 * <p>
+	 * Zlib prefers matches that are closest to the data, so the most frequently
+	 * used fragments are at the end.
+	 * </p>
+	 */
+	static final byte[] DICTIONARY = ("" +
+		"\"valueQuantity\":{\"value\":\"unit\":\"\"system\":\"http://unitsofmeasure.org\"," +
+		"\"effectiveDateTime\":\"\"issued\":\"\"performer\":[{\"subject\":{" +
+		"\"encounter\":{\"category\":[{\"status\":\"final\"\"active\":true," +
+		"\"identifier\":[{\"use\":\"official\",\"type\":{\"period\":{\"start\":\"\"end\":\"" +
+		"\"name\":[{\"family\":\"\"given\":[\"\"gender\":\"\"birthDate\":\"" +
+		"\"telecom\":[{\"address\":[{\"line\":[\"\"city\":\"\"postalCode\":\"\"country\":\"" +
+		"\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/" +
+		"\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">" +
+		"\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"\"display\":\"" +
+		"\"reference\":\"Patient/\"reference\":\"\"value\":\"\"system\":\"http://\"code\":\"" +
+		"{\"resourceType\":\"").getBytes(StandardCharsets.UTF_8);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final ThreadLocal<Deflater> ourDeflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION));
+	private static final ThreadLocal<Inflater> ourInflater = ThreadLocal.withInitial(Inflater::new);
+
+	/**
+	 * Non instantiable
+	 */
+	private DeflateUtil() {
+		// nothing
+	}
+
+	public static String decompress(byte[] theResource) {
+		Inflater inflater = ourInflater.get();
+		inflater.reset();
+		inflater.setInput(theResource);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream(theResource.length * 4);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0) {
+					if (inflater.needsDictionary()) {
+						inflater.setDictionary(DICTIONARY);
+					} else if (inflater.needsInput()) {
+						throw new DataFormatException("Failed to decompress contents: Unexpected end of compressed data");
+					}
+				}
+				os.write(buffer, 0, count);
+			}
+		} catch (java.util.zip.DataFormatException e) {
+			throw new DataFormatException("Failed to decompress contents", e);
+		}
+
+		return new String(os.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public static byte[] compress(String theEncoded) {
+		byte[] input = theEncoded.getBytes(StandardCharsets.UTF_8);
+
+		Deflater deflater = ourDeflater.get();
+		deflater.reset();
+		deflater.setDictionary(DICTIONARY);
+		deflater.setInput(input);
+		deflater.finish();
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (!deflater.finished()) {
+			int count = deflater.deflate(buffer);
+			os.write(buffer, 0, count);
+		}
+		return os.toByteArray();
+	}
+
+}
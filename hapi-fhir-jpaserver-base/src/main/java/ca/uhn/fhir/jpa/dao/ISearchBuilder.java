@@ -57,4 +57,26 @@ public interface ISearchBuilder {
 
 	void setPreviouslyAddedResourcePids(List<ResourcePersistentId> thePreviouslyAddedResourcePids);
 
+	/**
+	 * If set, queries created by this builder only return resources whose PID is greater than the
+	 * given value, ordered by PID (any <code>_sort</code> in the parameters is ignored). Combined with
+	 * {@link #setMaxResultsToFetch(Integer)} this allows very large result sets to be read in bounded
+	 * windows using keyset pagination, by passing the last PID of each window as the starting point
+	 * for the next one.
+	 *
+	 * @param theAfterPid The PID to start after (exclusive), or <code>null</code> to disable keyset pagination
+	 * @since 5.4.0
+	 */
+	void setKeysetPaginationAfterPid(Long theAfterPid);
+
+	/**
+	 * If set, queries created by this builder only return resources whose PID is less than or equal
+	 * to the given value. This is used together with {@link #setKeysetPaginationAfterPid(Long)} to read
+	 * one range of the PID space.
+	 *
+	 * @param theUpToPid The last PID to include (inclusive), or <code>null</code> for no upper bound
+	 * @since 5.4.0
+	 */
+	void setKeysetPaginationUpToPid(Long theUpToPid);
+
 }
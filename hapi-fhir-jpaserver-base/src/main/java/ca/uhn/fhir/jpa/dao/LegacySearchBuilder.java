@@ -163,6 +163,8 @@ public class LegacySearchBuilder implements ISearchBuilder {
 	private String mySearchUuid;
 	private int myFetchSize;
 	private Integer myMaxResultsToFetch;
+	private Long myKeysetPaginationAfterPid;
+	private Long myKeysetPaginationUpToPid;
 	private Set<ResourcePersistentId> myPidSet;
 	private PredicateBuilder myPredicateBuilder;
 	private RequestPartitionId myRequestPartitionId;
@@ -183,6 +185,16 @@ public class LegacySearchBuilder implements ISearchBuilder {
 		myMaxResultsToFetch = theMaxResultsToFetch;
 	}
 
+	@Override
+	public void setKeysetPaginationAfterPid(Long theAfterPid) {
+		myKeysetPaginationAfterPid = theAfterPid;
+	}
+
+	@Override
+	public void setKeysetPaginationUpToPid(Long theUpToPid) {
+		myKeysetPaginationUpToPid = theUpToPid;
+	}
+
 	private void searchForIdsWithAndOr(String theResourceName, String theNextParamName, List<List<IQueryParameterType>> theAndOrParams, RequestDetails theRequest) {
 		myPredicateBuilder.searchForIdsWithAndOr(theResourceName, theNextParamName, theAndOrParams, theRequest, myRequestPartitionId);
 	}
@@ -345,7 +357,12 @@ public class LegacySearchBuilder implements ISearchBuilder {
 		 * If we have a sort, we wrap the criteria search (the search that actually
 		 * finds the appropriate resources) in an outer search which is then sorted
 		 */
-		if (sort != null) {
+		if (myKeysetPaginationAfterPid != null && !theCount) {
+
+			myQueryStack.pushResourceTableQuery();
+			myQueryStack.orderBy(Collections.singletonList(myCriteriaBuilder.asc(myQueryStack.get("myId"))));
+
+		} else if (sort != null) {
 			assert !theCount;
 
 			myQueryStack.pushResourceTableQuery();
@@ -398,6 +415,14 @@ public class LegacySearchBuilder implements ISearchBuilder {
 		List<Predicate> lastUpdatedPredicates = createLastUpdatedPredicates(lu, myCriteriaBuilder);
 		myQueryStack.addPredicates(lastUpdatedPredicates);
 
+		// Keyset pagination
+		if (myKeysetPaginationAfterPid != null) {
+			myQueryStack.addPredicate(myCriteriaBuilder.greaterThan(myQueryStack.get("myId").as(Long.class), myKeysetPaginationAfterPid));
+		}
+		if (myKeysetPaginationUpToPid != null) {
+			myQueryStack.addPredicate(myCriteriaBuilder.lessThanOrEqualTo(myQueryStack.get("myId").as(Long.class), myKeysetPaginationUpToPid));
+		}
+
 		/*
 		 * Now perform the search
 		 */
@@ -22,29 +22,57 @@ package ca.uhn.fhir.jpa.dao;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
+import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamTokenDao;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.QueryChunker;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.hibernate.dialect.Dialect;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
 @Service
 public class MatchResourceUrlService {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(MatchResourceUrlService.class);
+	private static final String RESOLVED_MATCH_URLS_KEY = MatchResourceUrlService.class.getName() + "_RESOLVED_MATCH_URLS";
+
 	@Autowired
 	private DaoRegistry myDaoRegistry;
 	@Autowired
@@ -53,8 +81,28 @@ public class MatchResourceUrlService {
 	private MatchUrlService myMatchUrlService;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
+	@Autowired
+	private IResourceIndexedSearchParamTokenDao myResourceIndexedSearchParamTokenDao;
+	@Autowired(required = false)
+	private HibernatePropertiesProvider myDialectProvider;
 
 	public <R extends IBaseResource> Set<ResourcePersistentId> processMatchUrl(String theMatchUrl, Class<R> theResourceType, RequestDetails theRequest) {
+		return processMatchUrl(theMatchUrl, theResourceType, null, theRequest);
+	}
+
+	/**
+	 * Resolves a match URL (e.g. <code>Patient?identifier=foo|bar</code>). If the match URL was resolved
+	 * ahead of time using {@link #preResolveMatchUrls(Collection, TransactionDetails)}, and nothing written
+	 * in the current transaction since then could have changed the outcome, the previously resolved
+	 * result is returned without searching.
+	 *
+	 * @since 5.4.0
+	 */
+	public <R extends IBaseResource> Set<ResourcePersistentId> processMatchUrl(String theMatchUrl, Class<R> theResourceType, @Nullable TransactionDetails theTransactionDetails, RequestDetails theRequest) {
 		RuntimeResourceDefinition resourceDef = myContext.getResourceDefinition(theResourceType);
 		SearchParameterMap paramMap = myMatchUrlService.translateMatchUrl(theMatchUrl, resourceDef);
 		if (paramMap.isEmpty() && paramMap.getLastUpdated() == null) {
@@ -62,6 +110,18 @@ public class MatchResourceUrlService {
 		}
 		paramMap.setLoadSynchronous(true);
 
+		if (theTransactionDetails != null) {
+			ResolvedMatchUrls resolvedMatchUrls = theTransactionDetails.getUserData(RESOLVED_MATCH_URLS_KEY);
+			if (resolvedMatchUrls != null) {
+				String key = toTokenHashKey(resourceDef.getName(), paramMap);
+				Set<ResourcePersistentId> resolved = key != null ? resolvedMatchUrls.get(key) : null;
+				if (resolved != null) {
+					ourLog.trace("Using pre-resolved outcome for match URL[{}]: {}", theMatchUrl, resolved);
+					return new HashSet<>(resolved);
+				}
+			}
+		}
+
 		return search(paramMap, theResourceType, theRequest);
 	}
 
@@ -87,5 +147,203 @@ public class MatchResourceUrlService {
 		return retVal;
 	}
 
+	/**
+	 * Resolves a collection of match URLs in the form <code>[resourceType]?[params]</code> using as few
+	 * queries as possible, and stores the outcome in the given {@link TransactionDetails} so that subsequent
+	 * calls to {@link #processMatchUrl(String, Class, TransactionDetails, RequestDetails)} within the same
+	 * transaction don't need to search.
+	 * <p>
+	 * Only match URLs consisting of a single token parameter with a single value (e.g.
+	 * <code>Patient?identifier=http://foo|123</code>) are resolved. These are resolved directly against the token
+	 * index hashes, in one query per chunk of values. Any other match URLs are ignored and will be searched
+	 * as usual. Pre-resolution is not supported when partitioning is enabled.
+	 * </p>
+	 *
+	 * @return The PIDs of any resources that were matched
+	 * @since 5.4.0
+	 */
+	public Set<Long> preResolveMatchUrls(Collection<String> theMatchUrls, TransactionDetails theTransactionDetails) {
+		Set<Long> retVal = new HashSet<>();
+		if (myPartitionSettings.isPartitioningEnabled() || theMatchUrls.isEmpty()) {
+			return retVal;
+		}
+
+		Set<Long> hashSystemAndValues = new HashSet<>();
+		Set<Long> hashValues = new HashSet<>();
+		for (String nextMatchUrl : theMatchUrls) {
+			int questionMarkIndex = nextMatchUrl.indexOf('?');
+			if (questionMarkIndex < 1) {
+				continue;
+			}
+			String resourceType = nextMatchUrl.substring(0, questionMarkIndex);
+			if (!myContext.getResourceTypes().contains(resourceType)) {
+				continue;
+			}
+
+			SearchParameterMap paramMap;
+			try {
+				paramMap = myMatchUrlService.translateMatchUrl(nextMatchUrl, myContext.getResourceDefinition(resourceType));
+			} catch (InvalidRequestException e) {
+				// This will be reported when the match URL is actually processed
+				continue;
+			}
+
+			String key = toTokenHashKey(resourceType, paramMap);
+			if (key != null) {
+				if (isHashSystemAndValueKey(key)) {
+					hashSystemAndValues.add(toHash(key));
+				} else {
+					hashValues.add(toHash(key));
+				}
+			}
+		}
+
+		if (hashSystemAndValues.isEmpty() && hashValues.isEmpty()) {
+			return retVal;
+		}
+
+		StopWatch sw = new StopWatch();
+		ResolvedMatchUrls resolvedMatchUrls = theTransactionDetails.getOrCreateUserData(RESOLVED_MATCH_URLS_KEY, ResolvedMatchUrls::new);
+		Dialect dialect = myDialectProvider != null ? myDialectProvider.getDialect() : null;
+
+		new QueryChunker<Long>().chunk(new ArrayList<>(hashSystemAndValues), dialect, t -> {
+			Map<String, Set<Long>> matches = new HashMap<>();
+			t.forEach(hash -> matches.put(toHashSystemAndValueKey(hash), new HashSet<>()));
+			for (Object[] next : myResourceIndexedSearchParamTokenDao.findResourcePidsByHashSystemAndValue(t)) {
+				matches.get(toHashSystemAndValueKey((Long) next[0])).add((Long) next[1]);
+				retVal.add((Long) next[1]);
+			}
+			matches.forEach(resolvedMatchUrls::put);
+		});
+
+		new QueryChunker<Long>().chunk(new ArrayList<>(hashValues), dialect, t -> {
+			Map<String, Set<Long>> matches = new HashMap<>();
+			t.forEach(hash -> matches.put(toHashValueKey(hash), new HashSet<>()));
+			for (Object[] next : myResourceIndexedSearchParamTokenDao.findResourcePidsByHashValue(t)) {
+				matches.get(toHashValueKey((Long) next[0])).add((Long) next[1]);
+				retVal.add((Long) next[1]);
+			}
+			matches.forEach(resolvedMatchUrls::put);
+		});
+
+		ourLog.debug("Pre-resolved {} match URL(s) in {}", hashSystemAndValues.size() + hashValues.size(), sw);
+		return retVal;
+	}
+
+	/**
+	 * This should be called whenever a resource is stored or deleted. Any match URLs that were resolved using
+	 * {@link #preResolveMatchUrls(Collection, TransactionDetails)} and whose outcome might be affected by the
+	 * change are discarded, so that they will be searched again if they are used.
+	 *
+	 * @param theResourcePid The PID of the resource being written
+	 * @param theTokens      The token indexes that are being stored for the resource, or <code>null</code> if none are being stored
+	 * @since 5.4.0
+	 */
+	public void invalidateResolvedMatchUrls(TransactionDetails theTransactionDetails, Long theResourcePid, @Nullable Collection<ResourceIndexedSearchParamToken> theTokens) {
+		if (theTransactionDetails == null) {
+			return;
+		}
+		ResolvedMatchUrls resolvedMatchUrls = theTransactionDetails.getUserData(RESOLVED_MATCH_URLS_KEY);
+		if (resolvedMatchUrls == null) {
+			return;
+		}
+
+		resolvedMatchUrls.removeResource(theResourcePid);
+		if (theTokens != null) {
+			RequestPartitionId partitionId = RequestPartitionId.allPartitions();
+			for (ResourceIndexedSearchParamToken next : theTokens) {
+				resolvedMatchUrls.remove(toHashSystemAndValueKey(ResourceIndexedSearchParamToken.calculateHashSystemAndValue(myPartitionSettings, partitionId, next.getResourceType(), next.getParamName(), next.getSystem(), next.getValue())));
+				resolvedMatchUrls.remove(toHashValueKey(ResourceIndexedSearchParamToken.calculateHashValue(myPartitionSettings, partitionId, next.getResourceType(), next.getParamName(), next.getValue())));
+			}
+		}
+	}
+
+	/**
+	 * If the given parameter map is a search for a single token value, returns a key representing the token
+	 * index hash that would be used to search for it. Otherwise returns <code>null</code>.
+	 */
+	@Nullable
+	private String toTokenHashKey(String theResourceType, SearchParameterMap theParamMap) {
+		if (theParamMap.size() != 1 || theParamMap.getLastUpdated() != null || !theParamMap.getIncludes().isEmpty() || !theParamMap.getRevIncludes().isEmpty()) {
+			return null;
+		}
+
+		String paramName = theParamMap.keySet().iterator().next();
+		if (paramName.startsWith("_")) {
+			return null;
+		}
+		RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(theResourceType, paramName);
+		if (searchParam == null || searchParam.getParamType() != RestSearchParameterTypeEnum.TOKEN) {
+			return null;
+		}
+
+		List<List<IQueryParameterType>> andList = theParamMap.get(paramName);
+		if (andList.size() != 1 || andList.get(0).size() != 1 || !(andList.get(0).get(0) instanceof TokenParam)) {
+			return null;
+		}
+
+		TokenParam token = (TokenParam) andList.get(0).get(0);
+		if (token.getModifier() != null || token.getMissing() != null || isBlank(token.getValue())) {
+			return null;
+		}
+
+		RequestPartitionId partitionId = RequestPartitionId.allPartitions();
+		if (token.getSystem() == null) {
+			return toHashValueKey(ResourceIndexedSearchParamToken.calculateHashValue(myPartitionSettings, partitionId, theResourceType, paramName, token.getValue()));
+		} else if (isBlank(token.getSystem())) {
+			return null;
+		}
+		return toHashSystemAndValueKey(ResourceIndexedSearchParamToken.calculateHashSystemAndValue(myPartitionSettings, partitionId, theResourceType, paramName, token.getSystem(), token.getValue()));
+	}
+
+	private static String toHashSystemAndValueKey(long theHash) {
+		return "SV" + theHash;
+	}
+
+	private static String toHashValueKey(long theHash) {
+		return "V" + theHash;
+	}
+
+	private static boolean isHashSystemAndValueKey(String theKey) {
+		return theKey.startsWith("SV");
+	}
+
+	private static long toHash(String theKey) {
+		return Long.parseLong(theKey.substring(isHashSystemAndValueKey(theKey) ? 2 : 1));
+	}
+
+	/**
+	 * Match URL outcomes that were resolved ahead of time, keyed by token index hash
+	 */
+	private static class ResolvedMatchUrls {
+
+		private final Map<String, Set<ResourcePersistentId>> myKeyToResourcePids = new HashMap<>();
+		private final SetMultimap<Long, String> myResourcePidToKeys = HashMultimap.create();
+
+		@Nullable
+		Set<ResourcePersistentId> get(String theKey) {
+			return myKeyToResourcePids.get(theKey);
+		}
+
+		void put(String theKey, Set<Long> theResourcePids) {
+			Set<ResourcePersistentId> resourcePids = new HashSet<>();
+			for (Long next : theResourcePids) {
+				resourcePids.add(new ResourcePersistentId(next));
+				myResourcePidToKeys.put(next, theKey);
+			}
+			myKeyToResourcePids.put(theKey, Collections.unmodifiableSet(resourcePids));
+		}
+
+		void remove(String theKey) {
+			myKeyToResourcePids.remove(theKey);
+		}
+
+		void removeResource(Long theResourcePid) {
+			for (String next : myResourcePidToKeys.removeAll(theResourcePid)) {
+				myKeyToResourcePids.remove(next);
+			}
+		}
+
+	}
 
 }
@@ -26,6 +26,9 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface IResourceIndexedSearchParamTokenDao extends JpaRepository<ResourceIndexedSearchParamToken, Long> {
 
 	@Query("select count(*) from ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :resid")
@@ -34,4 +37,10 @@ public interface IResourceIndexedSearchParamTokenDao extends JpaRepository<Resou
 	@Modifying
 	@Query("delete from ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :resid")
 	void deleteByResourceId(@Param("resid") Long theResourcePid);
+
+	@Query("SELECT t.myHashSystemAndValue, t.myResourcePid FROM ResourceIndexedSearchParamToken t WHERE t.myHashSystemAndValue IN (:hashes)")
+	List<Object[]> findResourcePidsByHashSystemAndValue(@Param("hashes") Collection<Long> theHashes);
+
+	@Query("SELECT t.myHashValue, t.myResourcePid FROM ResourceIndexedSearchParamToken t WHERE t.myHashValue IN (:hashes)")
+	List<Object[]> findResourcePidsByHashValue(@Param("hashes") Collection<Long> theHashes);
 }
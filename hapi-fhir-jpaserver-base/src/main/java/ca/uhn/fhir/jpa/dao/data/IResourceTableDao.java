@@ -44,6 +44,12 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myId = :resid AND t.myResourceType = :restype AND t.myDeleted IS NOT NULL")
 	Slice<Long> findIdsOfDeletedResourcesOfType(Pageable thePageable, @Param("resid") Long theResourceId, @Param("restype") String theResourceName);
 
+	@Query("SELECT MIN(t.myId) FROM ResourceTable t WHERE t.myResourceType = :restype")
+	Long findLowestIdForResourceType(@Param("restype") String theResourceType);
+
+	@Query("SELECT MAX(t.myId) FROM ResourceTable t WHERE t.myResourceType = :restype")
+	Long findHighestIdForResourceType(@Param("restype") String theResourceType);
+
 	@Query("SELECT t.myResourceType as type, COUNT(t.myResourceType) as count FROM ResourceTable t GROUP BY t.myResourceType")
 	List<Map<?, ?>> getResourceCounts();
 
@@ -68,6 +74,9 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	 * This method returns a Collection where each row is an element in the collection. Each element in the collection
 	 * is an object array, where the order matters (the array represents columns returned by the query). Be careful if you change this query in any way.
 	 */
+	@Query("SELECT t FROM ResourceTable t LEFT OUTER JOIN FETCH t.myForcedId WHERE t.myId IN (:pids)")
+	List<ResourceTable> findByIdsAndFetchForcedId(@Param("pids") Collection<Long> thePids);
+
 	@Query("SELECT t.myResourceType, t.myId, t.myDeleted FROM ResourceTable t WHERE t.myId IN (:pid)")
 	Collection<Object[]> findLookupFieldsByResourcePid(@Param("pid") List<Long> thePids);
 
@@ -0,0 +1,47 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public interface ISearchResultBlockDao extends JpaRepository<SearchResultBlock, Long> {
+
+	@Query("SELECT b FROM SearchResultBlock b WHERE b.mySearchPid = :search AND b.myBlockIndex >= :fromBlock AND b.myBlockIndex <= :toBlock ORDER BY b.myBlockIndex ASC")
+	List<SearchResultBlock> findBlocks(@Param("search") Long theSearchPid, @Param("fromBlock") int theFromBlockIndex, @Param("toBlock") int theToBlockIndex);
+
+	@Query("SELECT b FROM SearchResultBlock b WHERE b.mySearchPid = :search ORDER BY b.myBlockIndex ASC")
+	List<SearchResultBlock> findAllBlocks(@Param("search") Long theSearchPid);
+
+	@Query("SELECT b FROM SearchResultBlock b WHERE b.mySearchPid = :search AND b.myBlockIndex = :block")
+	Optional<SearchResultBlock> findBlock(@Param("search") Long theSearchPid, @Param("block") int theBlockIndex);
+
+	@Modifying
+	@Query("DELETE FROM SearchResultBlock b WHERE b.mySearchPid = :search")
+	void deleteForSearch(@Param("search") Long theSearchPid);
+
+}
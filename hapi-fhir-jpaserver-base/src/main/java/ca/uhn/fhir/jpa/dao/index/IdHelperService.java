@@ -23,6 +23,7 @@ package ca.uhn.fhir.jpa.dao.index;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
 import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.model.cross.IResourceLookup;
@@ -39,6 +40,7 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.hibernate.dialect.Dialect;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -53,6 +55,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -93,6 +96,8 @@ public class IdHelperService {
 	private FhirContext myFhirCtx;
 	@Autowired
 	private MemoryCacheService myMemoryCacheService;
+	@Autowired(required = false)
+	private HibernatePropertiesProvider myDialectProvider;
 
 	public void delete(ForcedId forcedId) {
 		myForcedIdDao.deleteByPid(forcedId.getId());
@@ -304,20 +309,8 @@ public class IdHelperService {
 			}
 
 			if (nextIds.size() > 0) {
-				Collection<Object[]> views;
 				assert isNotBlank(nextResourceType);
-
-				if (theRequestPartitionId.isAllPartitions()) {
-					views = myForcedIdDao.findAndResolveByForcedIdWithNoType(nextResourceType, nextIds);
-				} else {
-					if (theRequestPartitionId.isDefaultPartition()) {
-						views = myForcedIdDao.findAndResolveByForcedIdWithNoTypeInPartitionNull(nextResourceType, nextIds);
-					} else if (theRequestPartitionId.hasDefaultPartitionId()) {
-						views = myForcedIdDao.findAndResolveByForcedIdWithNoTypeInPartitionIdOrNullPartitionId(nextResourceType, nextIds, theRequestPartitionId.getPartitionIdsWithoutDefault());
-					} else {
-						views = myForcedIdDao.findAndResolveByForcedIdWithNoTypeInPartition(nextResourceType, nextIds, theRequestPartitionId.getPartitionIds());
-					}
-				}
+				Collection<Object[]> views = findAndResolveByForcedIds(theRequestPartitionId, nextResourceType, nextIds);
 
 				for (Object[] next : views) {
 					String resourceType = (String) next[0];
@@ -339,6 +332,97 @@ public class IdHelperService {
 		return retVal;
 	}
 
+	/**
+	 * Returns the resource type, PID, forced ID and deleted date of each resource with the given type and forced ID
+	 */
+	private Collection<Object[]> findAndResolveByForcedIds(@Nonnull RequestPartitionId theRequestPartitionId, String theResourceType, Collection<String> theForcedIds) {
+		if (theRequestPartitionId.isAllPartitions()) {
+			return myForcedIdDao.findAndResolveByForcedIdWithNoType(theResourceType, theForcedIds);
+		} else if (theRequestPartitionId.isDefaultPartition()) {
+			return myForcedIdDao.findAndResolveByForcedIdWithNoTypeInPartitionNull(theResourceType, theForcedIds);
+		} else if (theRequestPartitionId.hasDefaultPartitionId()) {
+			return myForcedIdDao.findAndResolveByForcedIdWithNoTypeInPartitionIdOrNullPartitionId(theResourceType, theForcedIds, theRequestPartitionId.getPartitionIdsWithoutDefault());
+		} else {
+			return myForcedIdDao.findAndResolveByForcedIdWithNoTypeInPartition(theResourceType, theForcedIds, theRequestPartitionId.getPartitionIds());
+		}
+	}
+
+	/**
+	 * Given a collection of resource IDs (resource type + id), resolves the resources that exist using
+	 * one query per resource type (plus one for any numeric IDs), instead of one query per ID. This is
+	 * useful when many IDs need to be resolved at once, e.g. all of the references in a batch of
+	 * resources that is about to be stored.
+	 * <p>
+	 * IDs without a resource type, and IDs that can't be resolved, are not included in the results.
+	 * Deleted resources are included, and can be recognized using {@link IResourceLookup#getDeleted()}.
+	 * </p>
+	 *
+	 * @return A map where the keys are the resolved IDs in the form <code>[type]/[id]</code> (e.g. <code>Patient/ABC</code>)
+	 * @since 5.4.0
+	 */
+	@Nonnull
+	public Map<String, IResourceLookup> resolveResourceIdentities(@Nonnull RequestPartitionId theRequestPartitionId, Collection<IIdType> theIds) {
+		Map<String, IResourceLookup> retVal = new HashMap<>();
+		List<IIdType> ids = theIds
+			.stream()
+			.filter(t -> t.hasResourceType() && t.hasIdPart())
+			.collect(Collectors.toList());
+		if (ids.isEmpty()) {
+			return retVal;
+		}
+
+		Dialect dialect = myDialectProvider != null ? myDialectProvider.getDialect() : null;
+
+		if (myDaoConfig.getResourceClientIdStrategy() != DaoConfig.ClientIdStrategyEnum.ANY) {
+			List<Long> pids = ids
+				.stream()
+				.filter(IdHelperService::isValidPid)
+				.map(IIdType::getIdPartAsLong)
+				.distinct()
+				.collect(Collectors.toList());
+			new QueryChunker<Long>().chunk(pids, dialect, t -> {
+				List<IResourceLookup> lookups = new ArrayList<>();
+				resolvePids(theRequestPartitionId, new ArrayList<>(t), lookups);
+				for (IResourceLookup next : lookups) {
+					retVal.put(next.getResourceType() + "/" + next.getResourceId(), next);
+				}
+			});
+		}
+
+		ListMultimap<String, String> typeToIds = organizeIdsByResourceType(ids);
+		for (Map.Entry<String, Collection<String>> nextEntry : typeToIds.asMap().entrySet()) {
+			String nextResourceType = nextEntry.getKey();
+			List<String> nextIds = new ArrayList<>();
+			for (String nextId : new LinkedHashSet<>(nextEntry.getValue())) {
+				if (!myDaoConfig.isDeleteEnabled()) {
+					String key = RequestPartitionId.stringifyForKey(theRequestPartitionId) + "/" + nextResourceType + "/" + nextId;
+					Long cachedPid = myMemoryCacheService.getIfPresent(MemoryCacheService.CacheEnum.PERSISTENT_ID, key);
+					if (cachedPid != null) {
+						retVal.put(nextResourceType + "/" + nextId, new ResourceLookup(nextResourceType, cachedPid, null));
+						continue;
+					}
+				}
+				nextIds.add(nextId);
+			}
+
+			new QueryChunker<String>().chunk(nextIds, dialect, t -> {
+				for (Object[] next : findAndResolveByForcedIds(theRequestPartitionId, nextResourceType, t)) {
+					String resourceType = (String) next[0];
+					Long resourcePid = (Long) next[1];
+					String forcedId = (String) next[2];
+					Date deletedAt = (Date) next[3];
+					retVal.put(resourceType + "/" + forcedId, new ResourceLookup(resourceType, resourcePid, deletedAt));
+					if (!myDaoConfig.isDeleteEnabled() && deletedAt == null) {
+						String key = RequestPartitionId.stringifyForKey(theRequestPartitionId) + "/" + resourceType + "/" + forcedId;
+						myMemoryCacheService.put(MemoryCacheService.CacheEnum.PERSISTENT_ID, key, resourcePid);
+					}
+				}
+			});
+		}
+
+		return retVal;
+	}
+
 	private void resolvePids(@Nonnull RequestPartitionId theRequestPartitionId, List<Long> thePidsToResolve, List<IResourceLookup> theTarget) {
 
 		if (!myDaoConfig.isDeleteEnabled()) {
@@ -388,7 +472,8 @@ public class IdHelperService {
 			.filter(t -> !retVal.containsKey(t))
 			.collect(Collectors.toList());
 
-		new QueryChunker<Long>().chunk(remainingPids, t -> {
+		Dialect dialect = myDialectProvider != null ? myDialectProvider.getDialect() : null;
+		new QueryChunker<Long>().chunk(remainingPids, dialect, t -> {
 			List<ForcedId> forcedIds = myForcedIdDao.findAllByResourcePid(t);
 
 			for (ForcedId forcedId : forcedIds) {
@@ -96,7 +96,7 @@ public class SearchParamWithInlineReferencesExtractor {
 	private PartitionSettings myPartitionSettings;
 
 	public void populateFromResource(ResourceIndexedSearchParams theParams, TransactionDetails theTransactionDetails, ResourceTable theEntity, IBaseResource theResource, ResourceIndexedSearchParams theExistingParams, RequestDetails theRequest) {
-		extractInlineReferences(theResource, theRequest);
+		extractInlineReferences(theResource, theTransactionDetails, theRequest);
 
 		RequestPartitionId partitionId;
 		if (myPartitionSettings.isPartitioningEnabled()) {
@@ -218,7 +218,7 @@ public class SearchParamWithInlineReferencesExtractor {
 	 * Handle references within the resource that are match URLs, for example references like "Patient?identifier=foo". These match URLs are resolved and replaced with the ID of the
 	 * matching resource.
 	 */
-	public void extractInlineReferences(IBaseResource theResource, RequestDetails theRequest) {
+	public void extractInlineReferences(IBaseResource theResource, TransactionDetails theTransactionDetails, RequestDetails theRequest) {
 		if (!myDaoConfig.isAllowInlineMatchUrlReferences()) {
 			return;
 		}
@@ -249,7 +249,7 @@ public class SearchParamWithInlineReferencesExtractor {
 					throw new InvalidRequestException(msg);
 				}
 				Class<? extends IBaseResource> matchResourceType = matchResourceDef.getImplementingClass();
-				Set<ResourcePersistentId> matches = myMatchResourceUrlService.processMatchUrl(nextIdText, matchResourceType, theRequest);
+				Set<ResourcePersistentId> matches = myMatchResourceUrlService.processMatchUrl(nextIdText, matchResourceType, theTransactionDetails, theRequest);
 
 				ResourcePersistentId match;
 				if (matches.isEmpty()) {
@@ -139,6 +139,9 @@ public class ResourceReindexJobEntity implements Serializable {
 			.append("resourceType", myResourceType)
 			.append("thresholdLow", myThresholdLow)
 			.append("thresholdHigh", myThresholdHigh);
+		if (myReindexCount != null) {
+			b.append("reindexCount", myReindexCount);
+		}
 		if (myDeleted) {
 			b.append("deleted", myDeleted);
 		}
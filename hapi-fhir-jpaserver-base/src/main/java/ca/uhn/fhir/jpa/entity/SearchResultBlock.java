@@ -0,0 +1,119 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.hibernate.annotations.OptimisticLock;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.io.Serializable;
+
+/**
+ * Stores a block of consecutive search results as a single compressed blob. This is
+ * used by {@link ca.uhn.fhir.jpa.search.cache.BlockSearchResultCacheSvcImpl} as a
+ * compact alternative to storing one {@link SearchResult} row per result.
+ */
+@Entity
+@Table(name = "HFJ_SEARCH_RESULT_BLK", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_SEARCHRESBLK_IDX", columnNames = {"SEARCH_PID", "BLOCK_IDX"})
+})
+public class SearchResultBlock implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SEARCH_RES_BLK")
+	@SequenceGenerator(name = "SEQ_SEARCH_RES_BLK", sequenceName = "SEQ_SEARCH_RES_BLK")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+	@Column(name = "SEARCH_PID", insertable = true, updatable = false, nullable = false)
+	private Long mySearchPid;
+	@Column(name = "BLOCK_IDX", insertable = true, updatable = false, nullable = false)
+	private int myBlockIndex;
+	@Column(name = "RESULT_COUNT", nullable = false)
+	private int myResultCount;
+	@Column(name = "PIDS_DATA", length = Integer.MAX_VALUE - 1, nullable = false)
+	@Lob()
+	@OptimisticLock(excluded = true)
+	private byte[] myPidsData;
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultBlock() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultBlock(Search theSearch, int theBlockIndex) {
+		Validate.notNull(theSearch.getId());
+		mySearchPid = theSearch.getId();
+		myBlockIndex = theBlockIndex;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public Long getSearchPid() {
+		return mySearchPid;
+	}
+
+	public int getBlockIndex() {
+		return myBlockIndex;
+	}
+
+	public int getResultCount() {
+		return myResultCount;
+	}
+
+	public void setResultCount(int theResultCount) {
+		myResultCount = theResultCount;
+	}
+
+	public byte[] getPidsData() {
+		return myPidsData;
+	}
+
+	public void setPidsData(byte[] thePidsData) {
+		myPidsData = thePidsData;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+			.append("search", mySearchPid)
+			.append("blockIndex", myBlockIndex)
+			.append("resultCount", myResultCount)
+			.toString();
+	}
+}
@@ -46,6 +46,8 @@ import ca.uhn.fhir.jpa.search.cache.SearchCacheStatusEnum;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.InterceptorUtil;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.LongArrayList;
+import ca.uhn.fhir.jpa.util.ResourcePersistentIdSet;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
@@ -103,11 +105,9 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -521,16 +521,14 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			 * On the other hand for async queries we load includes/revincludes
 			 * individually for pages as we return them to clients
 			 */
-			final Set<ResourcePersistentId> includedPids = new HashSet<>();
+			final ResourcePersistentIdSet includedPids = new ResourcePersistentIdSet();
 			if (theParams.getEverythingMode() == null) {
 				includedPids.addAll(theSb.loadIncludes(myContext, myEntityManager, pids, theParams.getIncludes(), false, theParams.getLastUpdated(), "(synchronous)", theRequestDetails));
 			}
 			includedPids.addAll(theSb.loadIncludes(myContext, myEntityManager, pids, theParams.getRevIncludes(), true, theParams.getLastUpdated(), "(synchronous)", theRequestDetails));
 
-			List<ResourcePersistentId> includedPidsList = new ArrayList<>(includedPids);
-
 			List<IBaseResource> resources = new ArrayList<>();
-			theSb.loadResourcesByPid(pids, includedPidsList, resources, false, theRequestDetails);
+			theSb.loadResourcesByPid(pids, includedPids, resources, false, theRequestDetails);
 
 			// Hook: STORAGE_PRESHOW_RESOURCES
 			resources = InterceptorUtil.fireStoragePreshowResource(resources, theRequestDetails, myInterceptorBroadcaster);
@@ -677,7 +675,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		private final SearchParameterMap myParams;
 		private final IDao myCallingDao;
 		private final String myResourceType;
-		private final ArrayList<ResourcePersistentId> mySyncedPids = new ArrayList<>();
+		private final LongArrayList mySyncedPids = new LongArrayList();
 		private final CountDownLatch myInitialCollectionLatch = new CountDownLatch(1);
 		private final CountDownLatch myCompletionLatch;
 		private final ArrayList<ResourcePersistentId> myUnsyncedPids = new ArrayList<>();
@@ -798,7 +796,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 					toIndex = mySyncedPids.size();
 				}
 				for (int i = theFromIndex; i < toIndex; i++) {
-					retVal.add(mySyncedPids.get(i));
+					retVal.add(new ResourcePersistentId(mySyncedPids.get(i)));
 				}
 			}
 
@@ -856,7 +854,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 					// Actually store the results in the query cache storage
 					myCountSavedTotal += unsyncedPids.size();
 					myCountSavedThisPass += unsyncedPids.size();
-					mySearchResultCacheSvc.storeResults(mySearch, mySyncedPids, unsyncedPids);
+					mySearchResultCacheSvc.storeResults(mySearch, mySyncedPids.asPersistentIdList(), unsyncedPids);
 
 					synchronized (mySyncedPids) {
 						int numSyncedThisPass = unsyncedPids.size();
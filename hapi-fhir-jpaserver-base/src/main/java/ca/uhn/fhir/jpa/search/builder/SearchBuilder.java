@@ -29,15 +29,14 @@ import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.DaoConfig;
-import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IDao;
-import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.config.HapiFhirLocalContainerEntityManagerFactoryBean;
 import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
 import ca.uhn.fhir.jpa.dao.BaseHapiFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.IFulltextSearchSvc;
 import ca.uhn.fhir.jpa.dao.IResultIterator;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceSearchViewDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTagDao;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
@@ -46,6 +45,7 @@ import ca.uhn.fhir.jpa.interceptor.JpaPreResourceAccessDetails;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.entity.IBaseResourceEntity;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTag;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
@@ -63,7 +63,9 @@ import ca.uhn.fhir.jpa.searchparam.util.LastNParameterHelper;
 import ca.uhn.fhir.jpa.util.BaseIterator;
 import ca.uhn.fhir.jpa.util.CurrentThreadCaptureQueriesListener;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.LongIntHashMap;
 import ca.uhn.fhir.jpa.util.QueryChunker;
+import ca.uhn.fhir.jpa.util.ResourcePersistentIdSet;
 import ca.uhn.fhir.jpa.util.SqlQueryList;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.api.IResource;
@@ -89,6 +91,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.healthmarketscience.sqlbuilder.Condition;
 import org.apache.commons.lang3.Validate;
+import org.hibernate.dialect.PostgreSQL81Dialect;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.IdType;
@@ -119,6 +122,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -152,10 +156,12 @@ public class SearchBuilder implements ISearchBuilder {
 	@Autowired
 	private DaoConfig myDaoConfig;
 	@Autowired
-	private DaoRegistry myDaoRegistry;
-	@Autowired
 	private IResourceSearchViewDao myResourceSearchViewDao;
 	@Autowired
+	private IResourceHistoryTableDao myResourceHistoryTableDao;
+	@Autowired
+	private SearchResourceParsingExecutor mySearchResourceParsingExecutor;
+	@Autowired
 	private FhirContext myContext;
 	@Autowired
 	private IdHelperService myIdHelperService;
@@ -171,7 +177,9 @@ public class SearchBuilder implements ISearchBuilder {
 	private String mySearchUuid;
 	private int myFetchSize;
 	private Integer myMaxResultsToFetch;
-	private Set<ResourcePersistentId> myPidSet;
+	private Long myKeysetPaginationAfterPid;
+	private Long myKeysetPaginationUpToPid;
+	private ResourcePersistentIdSet myPidSet;
 	private RequestPartitionId myRequestPartitionId;
 	@Autowired
 	private PartitionSettings myPartitionSettings;
@@ -200,6 +208,16 @@ public class SearchBuilder implements ISearchBuilder {
 		myMaxResultsToFetch = theMaxResultsToFetch;
 	}
 
+	@Override
+	public void setKeysetPaginationAfterPid(Long theAfterPid) {
+		myKeysetPaginationAfterPid = theAfterPid;
+	}
+
+	@Override
+	public void setKeysetPaginationUpToPid(Long theUpToPid) {
+		myKeysetPaginationUpToPid = theUpToPid;
+	}
+
 	private void searchForIdsWithAndOr(SearchQueryBuilder theSearchSqlBuilder, QueryStack theQueryStack, @Nonnull SearchParameterMap theParams, RequestDetails theRequest) {
 		myParams = theParams;
 
@@ -260,7 +278,7 @@ public class SearchBuilder implements ISearchBuilder {
 	 */
 	@Override
 	public void setPreviouslyAddedResourcePids(@Nonnull List<ResourcePersistentId> thePidSet) {
-		myPidSet = new HashSet<>(thePidSet);
+		myPidSet = new ResourcePersistentIdSet(thePidSet);
 	}
 
 	@SuppressWarnings("ConstantConditions")
@@ -272,7 +290,7 @@ public class SearchBuilder implements ISearchBuilder {
 		init(theParams, theSearchRuntimeDetails.getSearchUuid(), theRequestPartitionId);
 
 		if (myPidSet == null) {
-			myPidSet = new HashSet<>();
+			myPidSet = new ResourcePersistentIdSet();
 		}
 
 		return new QueryIterator(theSearchRuntimeDetails, theRequest);
@@ -338,7 +356,7 @@ public class SearchBuilder implements ISearchBuilder {
 		ArrayList<SearchQueryExecutor> queries = new ArrayList<>();
 
 		if (!pids.isEmpty()) {
-			new QueryChunker<Long>().chunk(ResourcePersistentId.toLongList(pids), t -> doCreateChunkedQueries(theParams, t, theOffset, sort, theCount, theRequest, queries));
+			new QueryChunker<Long>().chunk(ResourcePersistentId.toLongList(pids), getMaximumPidsPerQuery(), t -> doCreateChunkedQueries(theParams, t, theOffset, sort, theCount, theRequest, queries));
 		} else {
 			Optional<SearchQueryExecutor> query = createChunkedQuery(theParams, sort, theOffset, theMaximumResults, theCount, theRequest, null);
 			query.ifPresent(t -> queries.add(t));
@@ -348,7 +366,9 @@ public class SearchBuilder implements ISearchBuilder {
 	}
 
 	private void doCreateChunkedQueries(SearchParameterMap theParams, List<Long> thePids, Integer theOffset, SortSpec sort, boolean theCount, RequestDetails theRequest, ArrayList<SearchQueryExecutor> theQueries) {
-		if (thePids.size() < getMaximumPageSize()) {
+		// Postgres binds the IDs as a single array parameter (see SearchQueryBuilder), so padding isn't needed
+		boolean isPostgres = myDialectProvider != null && myDialectProvider.getDialect() instanceof PostgreSQL81Dialect;
+		if (thePids.size() < getMaximumPidsPerQuery() && !isPostgres) {
 			normalizeIdListForLastNInClause(thePids);
 		}
 		Optional<SearchQueryExecutor> query = createChunkedQuery(theParams, sort, theOffset, thePids.size(), theCount, theRequest, thePids);
@@ -439,13 +459,25 @@ public class SearchBuilder implements ISearchBuilder {
 		if (hasNextIteratorQuery)
 			sqlBuilder.excludeResourceIdsPredicate(myPidSet);
 
+		// Keyset pagination
+		if (myKeysetPaginationAfterPid != null) {
+			sqlBuilder.addResourceIdGreaterThanPredicate(myKeysetPaginationAfterPid);
+		}
+		if (myKeysetPaginationUpToPid != null) {
+			sqlBuilder.addResourceIdLessThanOrEqualPredicate(myKeysetPaginationUpToPid);
+		}
+
 		/*
 		 * Sort
 		 *
 		 * If we have a sort, we wrap the criteria search (the search that actually
 		 * finds the appropriate resources) in an outer search which is then sorted
 		 */
-		if (sort != null) {
+		if (myKeysetPaginationAfterPid != null) {
+			if (!theCount) {
+				sqlBuilder.addSortNumeric(sqlBuilder.getOrCreateFirstPredicateBuilder().getResourceIdColumn(), true);
+			}
+		} else if (sort != null) {
 			assert !theCount;
 
 			createSort(queryStack3, sort);
@@ -463,7 +495,8 @@ public class SearchBuilder implements ISearchBuilder {
 		return Optional.of(executor);
 	}
 
-	private List<Long> normalizeIdListForLastNInClause(List<Long> lastnResourceIds) {
+	@VisibleForTesting
+	static List<Long> normalizeIdListForLastNInClause(List<Long> lastnResourceIds) {
 		/*
 			The following is a workaround to a known issue involving Hibernate. If queries are used with "in" clauses with large and varying
 			numbers of parameters, this can overwhelm Hibernate's QueryPlanCache and deplete heap space. See the following link for more info:
@@ -486,12 +519,15 @@ public class SearchBuilder implements ISearchBuilder {
 			padIdListWithPlaceholders(lastnResourceIds, 500);
 		} else if (listSize > 500 && listSize < 800) {
 			padIdListWithPlaceholders(lastnResourceIds, 800);
+		} else if (listSize > 800 && listSize % 1000 != 0) {
+			// Dialects that allow larger IN clauses (see QueryChunker) are padded to a multiple of 1000
+			padIdListWithPlaceholders(lastnResourceIds, ((listSize / 1000) + 1) * 1000);
 		}
 
 		return lastnResourceIds;
 	}
 
-	private void padIdListWithPlaceholders(List<Long> theIdList, int preferredListSize) {
+	private static void padIdListWithPlaceholders(List<Long> theIdList, int preferredListSize) {
 		while (theIdList.size() < preferredListSize) {
 			theIdList.add(-1L);
 		}
@@ -601,7 +637,7 @@ public class SearchBuilder implements ISearchBuilder {
 	}
 
 	private void doLoadPids(Collection<ResourcePersistentId> thePids, Collection<ResourcePersistentId> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation,
-									Map<ResourcePersistentId, Integer> thePosition) {
+									PidPositions thePosition, List<Future<?>> theParsingTasks) {
 
 		Map<Long, Long> resourcePidToVersion = null;
 		for (ResourcePersistentId next : thePids) {
@@ -614,7 +650,7 @@ public class SearchBuilder implements ISearchBuilder {
 		}
 
 		List<Long> versionlessPids = ResourcePersistentId.toLongList(thePids);
-		if (versionlessPids.size() < getMaximumPageSize()) {
+		if (versionlessPids.size() < getMaximumPidsPerQuery()) {
 			versionlessPids = normalizeIdListForLastNInClause(versionlessPids);
 		}
 
@@ -624,62 +660,111 @@ public class SearchBuilder implements ISearchBuilder {
 		//-- preload all tags with tag definition if any
 		Map<Long, Collection<ResourceTag>> tagMap = getResourceTagMap(resourceSearchViewList);
 
-		for (IBaseResourceEntity next : resourceSearchViewList) {
-			if (next.getDeleted() != null) {
+		/*
+		 * If a specific version is requested via an include, we'll replace the current version
+		 * with the specific desired version. All of the desired versions for this chunk are
+		 * loaded using a single query.
+		 */
+		Map<Long, ResourceHistoryTable> resourcePidToRequestedVersion = Collections.emptyMap();
+		if (resourcePidToVersion != null) {
+			resourcePidToRequestedVersion = loadRequestedVersions(resourceSearchViewList, resourcePidToVersion);
+		}
+
+		for (ResourceSearchView nextView : resourceSearchViewList) {
+			if (nextView.getDeleted() != null) {
 				continue;
 			}
 
-			Class<? extends IBaseResource> resourceType = myContext.getResourceDefinition(next.getResourceType()).getImplementingClass();
+			Class<? extends IBaseResource> resourceType = myContext.getResourceDefinition(nextView.getResourceType()).getImplementingClass();
 
-			ResourcePersistentId resourceId = new ResourcePersistentId(next.getResourceId());
+			ResourcePersistentId resourceId = new ResourcePersistentId(nextView.getResourceId());
 
-			/*
-			 * If a specific version is requested via an include, we'll replace the current version
-			 * with the specific desired version. This is not the most efficient thing, given that
-			 * we're loading the current version and then turning around and throwing it away again.
-			 * This could be optimized and probably should be, but it's not critical given that
-			 * this only applies to includes, which don't tend to be massive in numbers.
-			 */
+			IBaseResourceEntity next = nextView;
 			if (resourcePidToVersion != null) {
-				Long version = resourcePidToVersion.get(next.getResourceId());
-				if (version != null && !version.equals(next.getVersion())) {
+				Long version = resourcePidToVersion.get(nextView.getResourceId());
+				if (version != null && !version.equals(nextView.getVersion())) {
 					resourceId.setVersion(version);
-					IFhirResourceDao<? extends IBaseResource> dao = myDaoRegistry.getResourceDao(resourceType);
-					next = dao.readEntity(next.getIdDt().withVersion(Long.toString(version)), null);
+					next = resourcePidToRequestedVersion.get(nextView.getResourceId());
+					if (next == null) {
+						ourLog.warn("Unable to find resource {}/{}/_history/{} in database", nextView.getResourceType(), nextView.getIdDt().getIdPart(), version);
+						continue;
+					}
 				}
 			}
 
-			IBaseResource resource = null;
-			if (next != null) {
-				resource = myCallingDao.toResource(resourceType, next, tagMap.get(next.getId()), theForHistoryOperation);
-			}
-			if (resource == null) {
-				ourLog.warn("Unable to find resource {}/{}/_history/{} in database", next.getResourceType(), next.getIdDt().getIdPart(), next.getVersion());
+			int index = thePosition.get(resourceId);
+			if (index == -1) {
+				ourLog.warn("Got back unexpected resource PID {}", resourceId);
 				continue;
 			}
 
-			Integer index = thePosition.get(resourceId);
-			if (index == null) {
-				ourLog.warn("Got back unexpected resource PID {}", resourceId);
-				continue;
+			boolean include = theIncludedPids.contains(resourceId);
+			IBaseResourceEntity entity = next;
+			Runnable parseTask = () -> parseResourceAndPopulateList(resourceType, entity, tagMap.get(entity.getId()), theForHistoryOperation, include, index, theResourceListToPopulate);
+
+			/*
+			 * Search view rows are fully loaded so they can be parsed on the parsing pool while the
+			 * next chunk is fetched. History rows have lazy associations (tags), so they are always
+			 * parsed on this thread.
+			 */
+			if (theParsingTasks != null && entity instanceof ResourceSearchView) {
+				theParsingTasks.add(mySearchResourceParsingExecutor.submit(parseTask));
+			} else {
+				parseTask.run();
 			}
+		}
+	}
 
-			if (resource instanceof IResource) {
-				if (theIncludedPids.contains(resourceId)) {
-					ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IResource) resource, BundleEntrySearchModeEnum.INCLUDE);
-				} else {
-					ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IResource) resource, BundleEntrySearchModeEnum.MATCH);
-				}
+	private void parseResourceAndPopulateList(Class<? extends IBaseResource> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTags, boolean theForHistoryOperation, boolean theInclude, int theIndex, List<IBaseResource> theResourceListToPopulate) {
+		IBaseResource resource = myCallingDao.toResource(theResourceType, theEntity, theTags, theForHistoryOperation);
+		if (resource == null) {
+			ourLog.warn("Unable to find resource {}/{}/_history/{} in database", theEntity.getResourceType(), theEntity.getIdDt().getIdPart(), theEntity.getVersion());
+			return;
+		}
+
+		if (resource instanceof IResource) {
+			if (theInclude) {
+				ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IResource) resource, BundleEntrySearchModeEnum.INCLUDE);
 			} else {
-				if (theIncludedPids.contains(resourceId)) {
-					ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IAnyResource) resource, BundleEntrySearchModeEnum.INCLUDE.getCode());
-				} else {
-					ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IAnyResource) resource, BundleEntrySearchModeEnum.MATCH.getCode());
-				}
+				ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IResource) resource, BundleEntrySearchModeEnum.MATCH);
+			}
+		} else {
+			if (theInclude) {
+				ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IAnyResource) resource, BundleEntrySearchModeEnum.INCLUDE.getCode());
+			} else {
+				ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put((IAnyResource) resource, BundleEntrySearchModeEnum.MATCH.getCode());
 			}
+		}
+
+		// Each task writes to a distinct, pre-allocated slot so no locking is needed here
+		theResourceListToPopulate.set(theIndex, resource);
+	}
 
-			theResourceListToPopulate.set(index, resource);
+	/**
+	 * Loads the specific versions requested by versioned includes for the given chunk using a
+	 * single query, instead of reading each one individually
+	 */
+	private Map<Long, ResourceHistoryTable> loadRequestedVersions(Collection<ResourceSearchView> theResourceSearchViewList, Map<Long, Long> theResourcePidToVersion) {
+		Set<Long> pids = new HashSet<>();
+		Set<Long> versions = new HashSet<>();
+		for (ResourceSearchView next : theResourceSearchViewList) {
+			Long version = theResourcePidToVersion.get(next.getResourceId());
+			if (version != null && !version.equals(next.getVersion())) {
+				pids.add(next.getResourceId());
+				versions.add(version);
+			}
 		}
+		if (pids.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		Map<Long, ResourceHistoryTable> retVal = new HashMap<>();
+		for (ResourceHistoryTable next : myResourceHistoryTableDao.findForIdsAndVersionsAndFetchProvenance(pids, versions)) {
+			if (next.getVersion() == theResourcePidToVersion.get(next.getResourceId())) {
+				retVal.put(next.getResourceId(), next);
+			}
+		}
+		return retVal;
 	}
 
 	private Map<Long, Collection<ResourceTag>> getResourceTagMap(Collection<? extends IBaseResourceEntity> theResourceSearchViewList) {
@@ -731,29 +816,43 @@ public class SearchBuilder implements ISearchBuilder {
 		// when running asserts
 		assert new HashSet<>(thePids).size() == thePids.size() : "PID list contains duplicates: " + thePids;
 
-		Map<ResourcePersistentId, Integer> position = new HashMap<>();
+		PidPositions position = new PidPositions(thePids.size());
 		for (ResourcePersistentId next : thePids) {
 			position.put(next, theResourceListToPopulate.size());
 			theResourceListToPopulate.add(null);
 		}
 
+		/*
+		 * If parallel parsing is enabled, each chunk is parsed on the parsing pool while the
+		 * next chunk is being fetched from the database
+		 */
+		List<Future<?>> parsingTasks = null;
+		if (mySearchResourceParsingExecutor != null && mySearchResourceParsingExecutor.isEnabled()) {
+			parsingTasks = new ArrayList<>();
+		}
+
 		List<ResourcePersistentId> pids = new ArrayList<>(thePids);
-		new QueryChunker<ResourcePersistentId>().chunk(pids, t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position));
+		List<Future<?>> finalParsingTasks = parsingTasks;
+		new QueryChunker<ResourcePersistentId>().chunk(pids, getMaximumPidsPerQuery(), t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position, finalParsingTasks));
+
+		if (parsingTasks != null) {
+			mySearchResourceParsingExecutor.awaitAll(parsingTasks);
+		}
 
 	}
 
 	/**
-	 * THIS SHOULD RETURN HASHSET and not just Set because we add to it later
+	 * THIS SHOULD RETURN A MUTABLE SET and not just Set because we add to it later
 	 * so it can't be Collections.emptySet() or some such thing
 	 */
 	@Override
-	public HashSet<ResourcePersistentId> loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<ResourcePersistentId> theMatches, Set<Include> theRevIncludes,
+	public ResourcePersistentIdSet loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<ResourcePersistentId> theMatches, Set<Include> theRevIncludes,
 																	  boolean theReverseMode, DateRangeParam theLastUpdated, String theSearchIdOrDescription, RequestDetails theRequest) {
 		if (theMatches.size() == 0) {
-			return new HashSet<>();
+			return new ResourcePersistentIdSet();
 		}
 		if (theRevIncludes == null || theRevIncludes.isEmpty()) {
-			return new HashSet<>();
+			return new ResourcePersistentIdSet();
 		}
 		String searchPidFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
 		String findPidFieldName = theReverseMode ? "mySourceResourcePid" : "myTargetResourcePid";
@@ -763,8 +862,8 @@ public class SearchBuilder implements ISearchBuilder {
 		}
 
 		List<ResourcePersistentId> nextRoundMatches = new ArrayList<>(theMatches);
-		HashSet<ResourcePersistentId> allAdded = new HashSet<>();
-		HashSet<ResourcePersistentId> original = new HashSet<>(theMatches);
+		ResourcePersistentIdSet allAdded = new ResourcePersistentIdSet();
+		ResourcePersistentIdSet original = new ResourcePersistentIdSet(theMatches);
 		ArrayList<Include> includes = new ArrayList<>(theRevIncludes);
 
 		int roundCounts = 0;
@@ -774,7 +873,7 @@ public class SearchBuilder implements ISearchBuilder {
 		do {
 			roundCounts++;
 
-			HashSet<ResourcePersistentId> pidsToInclude = new HashSet<>();
+			ResourcePersistentIdSet pidsToInclude = new ResourcePersistentIdSet();
 
 			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
 				Include nextInclude = iter.next();
@@ -793,7 +892,7 @@ public class SearchBuilder implements ISearchBuilder {
 					sqlBuilder.append(searchPidFieldName);
 					sqlBuilder.append(" IN (:target_pids)");
 					String sql = sqlBuilder.toString();
-					List<Collection<ResourcePersistentId>> partitions = partition(nextRoundMatches, getMaximumPageSize());
+					List<Collection<ResourcePersistentId>> partitions = partition(nextRoundMatches, getMaximumPidsPerQuery());
 					for (Collection<ResourcePersistentId> nextPartition : partitions) {
 						TypedQuery<?> q = theEntityManager.createQuery(sql, Object[].class);
 						q.setParameter("target_pids", ResourcePersistentId.toLongList(nextPartition));
@@ -805,16 +904,13 @@ public class SearchBuilder implements ISearchBuilder {
 								continue;
 							}
 
-							Long resourceLink;
-							Long version = null;
 							if (findVersionFieldName != null) {
-								resourceLink = (Long) ((Object[]) nextRow)[0];
-								version = (Long) ((Object[]) nextRow)[1];
+								Long resourceLink = (Long) ((Object[]) nextRow)[0];
+								Long version = (Long) ((Object[]) nextRow)[1];
+								pidsToInclude.add(new ResourcePersistentId(resourceLink, version));
 							} else {
-								resourceLink = (Long)nextRow;
+								pidsToInclude.add(((Long) nextRow).longValue());
 							}
-
-							pidsToInclude.add(new ResourcePersistentId(resourceLink, version));
 						}
 					}
 				} else {
@@ -862,7 +958,7 @@ public class SearchBuilder implements ISearchBuilder {
 							sql = "SELECT " + fieldsToLoad + " FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchPidFieldName + " IN (:target_pids)";
 						}
 
-						List<Collection<ResourcePersistentId>> partitions = partition(nextRoundMatches, getMaximumPageSize());
+						List<Collection<ResourcePersistentId>> partitions = partition(nextRoundMatches, getMaximumPidsPerQuery());
 						for (Collection<ResourcePersistentId> nextPartition : partitions) {
 							TypedQuery<?> q = theEntityManager.createQuery(sql, Object[].class);
 							q.setParameter("src_path", nextPath);
@@ -875,15 +971,14 @@ public class SearchBuilder implements ISearchBuilder {
 							List<?> results = q.getResultList();
 							for (Object resourceLink : results) {
 								if (resourceLink != null) {
-									ResourcePersistentId persistentId;
 									if (findVersionFieldName != null) {
-										persistentId = new ResourcePersistentId(((Object[])resourceLink)[0]);
+										ResourcePersistentId persistentId = new ResourcePersistentId(((Object[])resourceLink)[0]);
 										persistentId.setVersion((Long) ((Object[])resourceLink)[1]);
+										assert persistentId.getId() instanceof Long;
+										pidsToInclude.add(persistentId);
 									} else {
-										persistentId = new ResourcePersistentId(resourceLink);
+										pidsToInclude.add(((Long) resourceLink).longValue());
 									}
-									assert persistentId.getId() instanceof Long;
-									pidsToInclude.add(persistentId);
 								}
 							}
 						}
@@ -893,19 +988,21 @@ public class SearchBuilder implements ISearchBuilder {
 
 			if (theReverseMode) {
 				if (theLastUpdated != null && (theLastUpdated.getLowerBoundAsInstant() != null || theLastUpdated.getUpperBoundAsInstant() != null)) {
-					pidsToInclude = new HashSet<>(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
+					pidsToInclude = new ResourcePersistentIdSet(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
 				}
 			}
 
 			nextRoundMatches.clear();
+			addedSomeThisRound = false;
 			for (ResourcePersistentId next : pidsToInclude) {
-				if (original.contains(next) == false && allAdded.contains(next) == false) {
-					theMatches.add(next);
-					nextRoundMatches.add(next);
+				if (allAdded.add(next)) {
+					addedSomeThisRound = true;
+					if (original.contains(next) == false) {
+						theMatches.add(next);
+						nextRoundMatches.add(next);
+					}
 				}
 			}
-
-			addedSomeThisRound = allAdded.addAll(pidsToInclude);
 		} while (includes.size() > 0 && nextRoundMatches.size() > 0 && addedSomeThisRound);
 
 		allAdded.removeAll(original);
@@ -929,11 +1026,10 @@ public class SearchBuilder implements ISearchBuilder {
 					ResourcePersistentId value = includedPidList.remove(i);
 					if (value != null) {
 						theMatches.remove(value);
+						allAdded.remove(value);
 					}
 				}
 			}
-
-			allAdded = new HashSet<>(includedPidList);
 		}
 
 		return allAdded;
@@ -1070,15 +1166,52 @@ public class SearchBuilder implements ISearchBuilder {
 		myDaoConfig = theDaoConfig;
 	}
 
+	/**
+	 * The index of each PID in the list of loaded resources. Versionless PIDs are kept in a primitive
+	 * map, since there can be a very large number of them when loading includes.
+	 */
+	private static class PidPositions {
+		private final LongIntHashMap myPositions;
+		private Map<ResourcePersistentId, Integer> myVersionedPositions;
+
+		PidPositions(int theExpectedSize) {
+			myPositions = new LongIntHashMap(theExpectedSize);
+		}
+
+		void put(ResourcePersistentId thePid, int thePosition) {
+			if (thePid.getVersion() == null) {
+				myPositions.put(thePid.getIdAsLong(), thePosition);
+			} else {
+				if (myVersionedPositions == null) {
+					myVersionedPositions = new HashMap<>();
+				}
+				myVersionedPositions.put(thePid, thePosition);
+			}
+		}
+
+		/**
+		 * @return Returns the position, or -1 if the PID is unknown
+		 */
+		int get(ResourcePersistentId thePid) {
+			if (thePid.getVersion() == null) {
+				return myPositions.get(thePid.getIdAsLong(), -1);
+			}
+			if (myVersionedPositions == null) {
+				return -1;
+			}
+			return myVersionedPositions.getOrDefault(thePid, -1);
+		}
+	}
+
 	public class IncludesIterator extends BaseIterator<ResourcePersistentId> implements Iterator<ResourcePersistentId> {
 
 		private final RequestDetails myRequest;
-		private final Set<ResourcePersistentId> myCurrentPids;
+		private final ResourcePersistentIdSet myCurrentPids;
 		private Iterator<ResourcePersistentId> myCurrentIterator;
 		private ResourcePersistentId myNext;
 
-		IncludesIterator(Set<ResourcePersistentId> thePidSet, RequestDetails theRequest) {
-			myCurrentPids = new HashSet<>(thePidSet);
+		IncludesIterator(ResourcePersistentIdSet thePidSet, RequestDetails theRequest) {
+			myCurrentPids = new ResourcePersistentIdSet(thePidSet);
 			myCurrentIterator = null;
 			myRequest = theRequest;
 		}
@@ -1201,9 +1334,8 @@ public class SearchBuilder implements ISearchBuilder {
 							}
 
 							if (nextLong != null) {
-								ResourcePersistentId next = new ResourcePersistentId(nextLong);
-								if (myPidSet.add(next)) {
-									myNext = next;
+								if (myPidSet.add(nextLong.longValue())) {
+									myNext = new ResourcePersistentId(nextLong);
 									myNonSkipCount++;
 									break;
 								} else {
@@ -1362,6 +1494,14 @@ public class SearchBuilder implements ISearchBuilder {
 
 	}
 
+	/**
+	 * Returns the maximum number of PIDs to pass to a single query, which depends on
+	 * the database in use (see {@link QueryChunker#getMaximumChunkSize(org.hibernate.dialect.Dialect)})
+	 */
+	private int getMaximumPidsPerQuery() {
+		return QueryChunker.getMaximumChunkSize(myDialectProvider != null ? myDialectProvider.getDialect() : null);
+	}
+
 	public static int getMaximumPageSize() {
 		if (myUseMaxPageSize50ForTest) {
 			return MAXIMUM_PAGE_SIZE_FOR_TESTING;
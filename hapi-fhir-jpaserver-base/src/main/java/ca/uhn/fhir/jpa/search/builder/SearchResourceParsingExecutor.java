@@ -0,0 +1,115 @@
+package ca.uhn.fhir.jpa.search.builder;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded thread pool used by {@link SearchBuilder#loadResourcesByPid} to decompress and
+ * parse resource bodies in parallel while the calling thread fetches the next chunk of
+ * resources from the database.
+ * <p>
+ * The pool is only used if {@link DaoConfig#getSearchResourceParsingThreadCount()} is greater
+ * than 1. It is created the first time it is needed. If the queue is full, the calling thread
+ * parses the resource itself, which throttles the producer without blocking it.
+ * </p>
+ */
+public class SearchResourceParsingExecutor {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchResourceParsingExecutor.class);
+	private static final int QUEUE_SIZE_PER_THREAD = 100;
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private ThreadPoolExecutor myExecutor;
+
+	/**
+	 * Returns <code>true</code> if resources should be parsed in parallel
+	 */
+	public boolean isEnabled() {
+		return myDaoConfig.getSearchResourceParsingThreadCount() > 1;
+	}
+
+	public Future<?> submit(Runnable theTask) {
+		return getExecutor().submit(theTask);
+	}
+
+	/**
+	 * Blocks until all of the given tasks have completed, rethrowing the first failure
+	 */
+	public void awaitAll(List<Future<?>> theFutures) {
+		for (Future<?> next : theFutures) {
+			try {
+				next.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException("Interrupted while loading resources", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new InternalErrorException("Failed to load resources: " + e.getCause(), e.getCause());
+			}
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (myExecutor == null) {
+			int threadCount = myDaoConfig.getSearchResourceParsingThreadCount();
+			ourLog.info("Starting search resource parsing pool with {} threads", threadCount);
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("search_parse-%d")
+				.daemon(true)
+				.build();
+			myExecutor = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(threadCount * QUEUE_SIZE_PER_THREAD),
+				threadFactory,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return myExecutor;
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myExecutor != null) {
+			myExecutor.shutdownNow();
+			myExecutor = null;
+		}
+	}
+
+}
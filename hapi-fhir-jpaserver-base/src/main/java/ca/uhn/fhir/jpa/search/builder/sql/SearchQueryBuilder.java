@@ -49,8 +49,10 @@ import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import com.healthmarketscience.sqlbuilder.BinaryCondition;
 import com.healthmarketscience.sqlbuilder.ComboCondition;
 import com.healthmarketscience.sqlbuilder.Condition;
+import com.healthmarketscience.sqlbuilder.CustomSql;
 import com.healthmarketscience.sqlbuilder.FunctionCall;
 import com.healthmarketscience.sqlbuilder.InCondition;
+import com.healthmarketscience.sqlbuilder.NotCondition;
 import com.healthmarketscience.sqlbuilder.OrderObject;
 import com.healthmarketscience.sqlbuilder.SelectQuery;
 import com.healthmarketscience.sqlbuilder.dbspec.Join;
@@ -61,6 +63,7 @@ import com.healthmarketscience.sqlbuilder.dbspec.basic.DbSpec;
 import com.healthmarketscience.sqlbuilder.dbspec.basic.DbTable;
 import org.apache.commons.lang3.Validate;
 import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
 import org.hibernate.dialect.SQLServerDialect;
 import org.hibernate.dialect.pagination.AbstractLimitHandler;
 import org.hibernate.engine.spi.RowSelection;
@@ -101,6 +104,7 @@ public class SearchQueryBuilder {
 	private BaseJoiningPredicateBuilder myFirstPredicateBuilder;
 	private boolean dialectIsMsSql;
 	private boolean dialectIsMySql;
+	private boolean dialectIsPostgres;
 
 	/**
 	 * Constructor
@@ -127,6 +131,9 @@ public class SearchQueryBuilder {
 		if (myDialect instanceof org.hibernate.dialect.SQLServerDialect){
 			dialectIsMsSql = true;
 		}
+		if (myDialect instanceof PostgreSQL81Dialect) {
+			dialectIsPostgres = true;
+		}
 
 
 		mySpec = new DbSpec();
@@ -541,7 +548,41 @@ public class SearchQueryBuilder {
 
 	public void addResourceIdsPredicate(List<Long> thePidList) {
 		DbColumn resourceIdColumn = getOrCreateFirstPredicateBuilder().getResourceIdColumn();
-		InCondition predicate = new InCondition(resourceIdColumn, generatePlaceholders(thePidList));
+		Condition predicate = createResourceIdsCondition(resourceIdColumn, thePidList, false);
+		addPredicate(predicate);
+	}
+
+	/**
+	 * On Postgres the IDs are bound as a single array parameter (<code>= ANY(?)</code>), so the statement
+	 * is the same no matter how many IDs there are and the number of bind parameters doesn't grow with the
+	 * list. Other databases use an <code>IN</code> clause with one bind parameter per ID.
+	 */
+	private Condition createResourceIdsCondition(DbColumn theResourceIdColumn, List<Long> thePidList, boolean theNegate) {
+		if (dialectIsPostgres) {
+			String arrayLiteral = thePidList
+				.stream()
+				.map(t -> Long.toString(t))
+				.collect(Collectors.joining(",", "{", "}"));
+			// The placeholder is quoted like a string value so that generate() replaces it with a bind variable
+			String arrayPlaceholder = "'" + generatePlaceholder(arrayLiteral) + "'";
+			Condition predicate = BinaryCondition.equalTo(theResourceIdColumn, new CustomSql("ANY(CAST(" + arrayPlaceholder + " AS BIGINT[]))"));
+			return theNegate ? new NotCondition(predicate) : predicate;
+		}
+
+		InCondition predicate = new InCondition(theResourceIdColumn, generatePlaceholders(thePidList));
+		predicate.setNegate(theNegate);
+		return predicate;
+	}
+
+	public void addResourceIdGreaterThanPredicate(long thePid) {
+		DbColumn resourceIdColumn = getOrCreateFirstPredicateBuilder().getResourceIdColumn();
+		BinaryCondition predicate = BinaryCondition.greaterThan(resourceIdColumn, generatePlaceholder(thePid));
+		addPredicate(predicate);
+	}
+
+	public void addResourceIdLessThanOrEqualPredicate(long thePid) {
+		DbColumn resourceIdColumn = getOrCreateFirstPredicateBuilder().getResourceIdColumn();
+		BinaryCondition predicate = BinaryCondition.lessThanOrEq(resourceIdColumn, generatePlaceholder(thePid));
 		addPredicate(predicate);
 	}
 
@@ -556,8 +597,7 @@ public class SearchQueryBuilder {
 		ourLog.trace("excludePids = " + excludePids);
 		
 		DbColumn resourceIdColumn = getOrCreateFirstPredicateBuilder().getResourceIdColumn();
-		InCondition predicate = new InCondition(resourceIdColumn, generatePlaceholders(excludePids));
-		predicate.setNegate(true);
+		Condition predicate = createResourceIdsCondition(resourceIdColumn, excludePids, true);
 		addPredicate(predicate);
 	}
 
@@ -0,0 +1,197 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
+import ca.uhn.fhir.jpa.util.LongArrayList;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An alternative to {@link DatabaseSearchResultCacheSvcImpl} which stores search results in
+ * blocks of {@link #BLOCK_SIZE} consecutive results, with each block stored as a single row
+ * in the <code>HFJ_SEARCH_RESULT_BLK</code> table. The resource PIDs in a block are delta
+ * encoded and written as variable-length integers, so a block typically needs only a few
+ * bytes per result. This greatly reduces the number of rows written and read for searches
+ * with large numbers of results.
+ * <p>
+ * To use this implementation, create a <code>@Primary @Bean</code> of type {@link ISearchResultCacheSvc}
+ * which returns an instance of this class.
+ * </p>
+ */
+public class BlockSearchResultCacheSvcImpl implements ISearchResultCacheSvc {
+	public static final int BLOCK_SIZE = 1000;
+	private static final Logger ourLog = LoggerFactory.getLogger(BlockSearchResultCacheSvcImpl.class);
+
+	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public List<ResourcePersistentId> fetchResultPids(Search theSearch, int theFrom, int theTo) {
+		if (theTo <= theFrom) {
+			return Collections.emptyList();
+		}
+
+		int fromBlock = theFrom / BLOCK_SIZE;
+		int toBlock = (theTo - 1) / BLOCK_SIZE;
+		List<SearchResultBlock> blocks = mySearchResultBlockDao.findBlocks(theSearch.getId(), fromBlock, toBlock);
+
+		List<ResourcePersistentId> retVal = new ArrayList<>(theTo - theFrom);
+		for (SearchResultBlock nextBlock : blocks) {
+			long[] pids = decode(nextBlock.getPidsData(), nextBlock.getResultCount());
+			int blockStart = nextBlock.getBlockIndex() * BLOCK_SIZE;
+			int from = Math.max(theFrom - blockStart, 0);
+			int to = Math.min(theTo - blockStart, pids.length);
+			for (int i = from; i < to; i++) {
+				retVal.add(new ResourcePersistentId(pids[i]));
+			}
+		}
+
+		ourLog.debug("fetchResultPids for range {}-{} returned {} pids from {} blocks", theFrom, theTo, retVal.size(), blocks.size());
+
+		return retVal;
+	}
+
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public List<ResourcePersistentId> fetchAllResultPids(Search theSearch) {
+		List<SearchResultBlock> blocks = mySearchResultBlockDao.findAllBlocks(theSearch.getId());
+		LongArrayList pids = new LongArrayList(blocks.size() * BLOCK_SIZE);
+		for (SearchResultBlock nextBlock : blocks) {
+			long[] nextPids = decode(nextBlock.getPidsData(), nextBlock.getResultCount());
+			pids.addAll(nextPids, 0, nextPids.length);
+		}
+		ourLog.trace("fetchAllResultPids returned {} pids", pids.size());
+		return new ArrayList<>(pids.asPersistentIdList());
+	}
+
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public void storeResults(Search theSearch, List<ResourcePersistentId> thePreviouslyStoredResourcePids, List<ResourcePersistentId> theNewResourcePids) {
+		if (theNewResourcePids.isEmpty()) {
+			return;
+		}
+
+		ourLog.trace("Storing {} results with {} previous for search", theNewResourcePids.size(), thePreviouslyStoredResourcePids.size());
+
+		int order = thePreviouslyStoredResourcePids.size();
+		int newIndex = 0;
+		List<SearchResultBlock> blocksToSave = new ArrayList<>();
+		while (newIndex < theNewResourcePids.size()) {
+			int blockIndex = order / BLOCK_SIZE;
+			int offsetInBlock = order % BLOCK_SIZE;
+
+			SearchResultBlock block;
+			LongArrayList pids = new LongArrayList(BLOCK_SIZE);
+			if (offsetInBlock > 0) {
+				// The last block written by a previous pass is only partly full, so append to it
+				Optional<SearchResultBlock> existing = mySearchResultBlockDao.findBlock(theSearch.getId(), blockIndex);
+				if (!existing.isPresent() || existing.get().getResultCount() != offsetInBlock) {
+					throw new InternalErrorException("Search result block " + blockIndex + " for search " + theSearch.getId() + " is missing or does not contain " + offsetInBlock + " results");
+				}
+				block = existing.get();
+				long[] existingPids = decode(block.getPidsData(), block.getResultCount());
+				pids.addAll(existingPids, 0, existingPids.length);
+			} else {
+				block = new SearchResultBlock(theSearch, blockIndex);
+			}
+
+			while (pids.size() < BLOCK_SIZE && newIndex < theNewResourcePids.size()) {
+				pids.add(theNewResourcePids.get(newIndex++).getIdAsLong());
+				order++;
+			}
+
+			block.setResultCount(pids.size());
+			block.setPidsData(encode(pids.toArray()));
+			blocksToSave.add(block);
+		}
+
+		mySearchResultBlockDao.saveAll(blocksToSave);
+	}
+
+	/**
+	 * Each PID is stored as the difference from the previous PID (the first is stored as-is),
+	 * zig-zag encoded so that negative differences stay small, and written as a variable-length
+	 * integer using 7 bits per byte.
+	 */
+	@VisibleForTesting
+	static byte[] encode(long[] thePids) {
+		byte[] buffer = new byte[thePids.length * 10];
+		int position = 0;
+		long previous = 0;
+		for (long next : thePids) {
+			long delta = next - previous;
+			long value = (delta << 1) ^ (delta >> 63);
+			while ((value & ~0x7FL) != 0) {
+				buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[position++] = (byte) value;
+			previous = next;
+		}
+		byte[] retVal = new byte[position];
+		System.arraycopy(buffer, 0, retVal, 0, position);
+		return retVal;
+	}
+
+	@VisibleForTesting
+	static long[] decode(byte[] theData, int theCount) {
+		long[] retVal = new long[theCount];
+		int position = 0;
+		long previous = 0;
+		for (int i = 0; i < theCount; i++) {
+			long value = 0;
+			int shift = 0;
+			byte next;
+			do {
+				if (position >= theData.length) {
+					throw new InternalErrorException("Search result block is truncated, expected " + theCount + " results but found " + i);
+				}
+				next = theData[position++];
+				value |= (long) (next & 0x7F) << shift;
+				shift += 7;
+			} while ((next & 0x80) != 0);
+			long delta = (value >>> 1) ^ -(value & 1);
+			previous = previous + delta;
+			retVal[i] = previous;
+		}
+		return retVal;
+	}
+
+	@VisibleForTesting
+	void setSearchResultBlockDaoForUnitTest(ISearchResultBlockDao theSearchResultBlockDao) {
+		mySearchResultBlockDao = theSearchResultBlockDao;
+	}
+
+}
@@ -24,6 +24,7 @@ import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchInclude;
@@ -77,6 +78,8 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 	@Autowired
 	private ISearchIncludeDao mySearchIncludeDao;
 	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+	@Autowired
 	private PlatformTransactionManager myTxManager;
 	@Autowired
 	private DaoConfig myDaoConfig;
@@ -218,6 +221,7 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 	private void deleteSearch(final Long theSearchPid) {
 		mySearchDao.findById(theSearchPid).ifPresent(searchToDelete -> {
 			mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
+			mySearchResultBlockDao.deleteForSearch(searchToDelete.getId());
 
 			/*
 			 * Note, we're only deleting up to 500 results in an individual search here. This
@@ -20,6 +20,9 @@ package ca.uhn.fhir.jpa.search.reindex;
  * #L%
  */
 
+import java.util.Date;
+import java.util.List;
+
 public interface IResourceReindexingSvc {
 
 	/**
@@ -55,4 +58,89 @@ public interface IResourceReindexingSvc {
 	void cancelAndPurgeAllJobs();
 
 	int countReindexJobs();
+
+	/**
+	 * Returns all of the reindexing jobs that have not yet completed. Each job reports the
+	 * number of resources it has reindexed so far ({@link JobInfo#getReindexCount()})
+	 * and the last-updated time it has progressed up to ({@link JobInfo#getThresholdLow()}),
+	 * so this can be used to monitor the progress of a long running reindex.
+	 *
+	 * @since 5.4.0
+	 */
+	List<JobInfo> getActiveReindexJobs();
+
+	class JobInfo {
+		private Long myJobId;
+		private String myResourceType;
+		private Date myThresholdLow;
+		private Date myThresholdHigh;
+		private int myReindexCount;
+		private Date mySuspendedUntil;
+
+		public Long getJobId() {
+			return myJobId;
+		}
+
+		public JobInfo setJobId(Long theJobId) {
+			myJobId = theJobId;
+			return this;
+		}
+
+		/**
+		 * The resource type being reindexed, or <code>null</code> if all resource types are being reindexed
+		 */
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		public JobInfo setResourceType(String theResourceType) {
+			myResourceType = theResourceType;
+			return this;
+		}
+
+		/**
+		 * The last-updated time that the job has progressed up to, or <code>null</code> if it has not started
+		 */
+		public Date getThresholdLow() {
+			return myThresholdLow;
+		}
+
+		public JobInfo setThresholdLow(Date theThresholdLow) {
+			myThresholdLow = theThresholdLow;
+			return this;
+		}
+
+		/**
+		 * Resources last updated after this time are not reindexed by the job
+		 */
+		public Date getThresholdHigh() {
+			return myThresholdHigh;
+		}
+
+		public JobInfo setThresholdHigh(Date theThresholdHigh) {
+			myThresholdHigh = theThresholdHigh;
+			return this;
+		}
+
+		/**
+		 * The number of resources that have been reindexed so far
+		 */
+		public int getReindexCount() {
+			return myReindexCount;
+		}
+
+		public JobInfo setReindexCount(int theReindexCount) {
+			myReindexCount = theReindexCount;
+			return this;
+		}
+
+		public Date getSuspendedUntil() {
+			return mySuspendedUntil;
+		}
+
+		public JobInfo setSuspendedUntil(Date theSuspendedUntil) {
+			mySuspendedUntil = theSuspendedUntil;
+			return this;
+		}
+	}
 }
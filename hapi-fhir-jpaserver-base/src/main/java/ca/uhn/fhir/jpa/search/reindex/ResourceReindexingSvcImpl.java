@@ -32,6 +32,8 @@ import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
 import ca.uhn.fhir.jpa.model.entity.ForcedId;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.sched.HapiJob;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
@@ -43,6 +45,7 @@ import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.util.StopWatch;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.DateUtils;
@@ -53,6 +56,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -79,6 +83,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -149,6 +154,11 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 		myContext = theContext;
 	}
 
+	@VisibleForTesting
+	void setEntityManagerForUnitTest(EntityManager theEntityManager) {
+		myEntityManager = theEntityManager;
+	}
+
 	@VisibleForTesting
 	void setSchedulerServiceForUnitTest(ISchedulerService theSchedulerService) {
 		mySchedulerService = theSchedulerService;
@@ -330,6 +340,22 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 		return getResourceReindexJobEntities().size();
 	}
 
+	@Override
+	public List<JobInfo> getActiveReindexJobs() {
+		List<ResourceReindexJobEntity> jobs = myTxTemplate.execute(t -> myReindexJobDao.findAll(Pageable.unpaged(), false));
+		assert jobs != null;
+		return jobs
+			.stream()
+			.map(t -> new JobInfo()
+				.setJobId(t.getId())
+				.setResourceType(t.getResourceType())
+				.setThresholdLow(t.getThresholdLow())
+				.setThresholdHigh(t.getThresholdHigh())
+				.setReindexCount(defaultIfNull(t.getReindexCount(), 0))
+				.setSuspendedUntil(t.getSuspendedUntil()))
+			.collect(Collectors.toList());
+	}
+
 	private Collection<ResourceReindexJobEntity> getResourceReindexJobEntities() {
 		Collection<ResourceReindexJobEntity> jobs = myTxTemplate.execute(t -> myReindexJobDao.findAll(PageRequest.of(0, 10), false));
 		assert jobs != null;
@@ -394,10 +420,10 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 			return 0;
 		}
 
-		// Submit each resource requiring reindexing
-		List<Future<Date>> futures = range
+		// Split the resources requiring reindexing into work units and submit each one
+		List<Future<Date>> futures = Lists.partition(range.getContent(), getWorkUnitSize(count))
 			.stream()
-			.map(t -> myTaskExecutor.submit(new ResourceReindexingTask(t, counter)))
+			.map(t -> myTaskExecutor.submit(new ResourceReindexingWorkUnitTask(t, counter)))
 			.collect(Collectors.toList());
 
 		Date latestDate = null;
@@ -449,6 +475,16 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 		return counter.get();
 	}
 
+	/**
+	 * Work units are sized so that every reindexing thread gets some of the pass, but
+	 * never exceed {@link DaoConfig#getReindexBatchSize()} resources
+	 */
+	private int getWorkUnitSize(int theCount) {
+		int threadCount = myDaoConfig.getReindexThreadCount();
+		int perThread = (theCount + threadCount - 1) / threadCount;
+		return Math.max(1, Math.min(myDaoConfig.getReindexBatchSize(), perThread));
+	}
+
 	private void expungeJobsMarkedAsDeleted() {
 		myTxTemplate.execute(t -> {
 			Collection<ResourceReindexJobEntity> toDelete = myReindexJobDao.findAll(PageRequest.of(0, 10), true);
@@ -516,71 +552,189 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 		});
 	}
 
-	private class ResourceReindexingTask implements Callable<Date> {
-		private final Long myNextId;
+	/**
+	 * Rewrites the stored body of every version of the given resource using the encoding
+	 * currently configured in {@link DaoConfig#getResourceEncoding()}. The stored text is
+	 * simply transcoded, it is not parsed.
+	 */
+	private void reencodeResourceBodies(ResourceTable theResourceTable) {
+		ResourceEncodingEnum targetEncoding = myDaoConfig.getResourceEncoding();
+		if (targetEncoding == ResourceEncodingEnum.DEL) {
+			return;
+		}
+
+		reencodeResourceBody(myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(theResourceTable.getId(), theResourceTable.getVersion()), targetEncoding);
+
+		Pageable page = PageRequest.of(0, 100);
+		while (page != null) {
+			Slice<Long> previousVersionIds = myResourceHistoryTableDao.findForResourceId(page, theResourceTable.getId(), theResourceTable.getVersion());
+			for (ResourceHistoryTable nextHistory : myResourceHistoryTableDao.findAllById(previousVersionIds.getContent())) {
+				reencodeResourceBody(nextHistory, targetEncoding);
+			}
+			page = previousVersionIds.hasNext() ? previousVersionIds.nextPageable() : null;
+		}
+	}
+
+	private void reencodeResourceBody(ResourceHistoryTable theHistory, ResourceEncodingEnum theTargetEncoding) {
+		if (theHistory == null || theHistory.getResource() == null) {
+			return;
+		}
+		ResourceEncodingEnum currentEncoding = theHistory.getEncoding();
+		if (currentEncoding == ResourceEncodingEnum.DEL || currentEncoding == theTargetEncoding) {
+			return;
+		}
+
+		String resourceText = BaseHapiFhirDao.decodeResource(theHistory.getResource(), currentEncoding);
+		theHistory.setResource(BaseHapiFhirDao.encodeResourceText(resourceText, theTargetEncoding));
+		theHistory.setEncoding(theTargetEncoding);
+		myResourceHistoryTableDao.save(theHistory);
+		ourLog.debug("Re-encoded resource {} version {} from {} to {}", theHistory.getIdDt().toUnqualifiedVersionless().getValue(), theHistory.getVersion(), currentEncoding, theTargetEncoding);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends IBaseResource> void doReindex(ResourceTable theResourceTable, T theResource) {
+		RuntimeResourceDefinition resourceDefinition = myContext.getResourceDefinition(theResource.getClass());
+		Class<T> resourceClass = (Class<T>) resourceDefinition.getImplementingClass();
+		final IFhirResourceDao<T> dao = myDaoRegistry.getResourceDao(resourceClass);
+		dao.reindex(theResource, theResourceTable);
+	}
+
+	/**
+	 * Reindexes a single resource. This must be called inside a transaction, which the caller
+	 * should roll back if this method returns a failure. The caller is responsible for logging
+	 * the failure.
+	 *
+	 * @return Returns the failure if the resource could not be reindexed, or <code>null</code> if it succeeded
+	 */
+	private Exception reindexResource(ResourceTable theResourceTable) {
+		try {
+			/*
+			 * This part is because from HAPI 1.5 - 1.6 we changed the format of forced ID to be "type/id" instead of just "id"
+			 */
+			ForcedId forcedId = theResourceTable.getForcedId();
+			if (forcedId != null) {
+				if (isBlank(forcedId.getResourceType())) {
+					ourLog.info("Updating resource {} forcedId type to {}", forcedId.getForcedId(), theResourceTable.getResourceType());
+					forcedId.setResourceType(theResourceTable.getResourceType());
+					myForcedIdDao.save(forcedId);
+				}
+			}
+
+			IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(theResourceTable.getResourceType());
+			long expectedVersion = theResourceTable.getVersion();
+			IBaseResource resource = dao.read(theResourceTable.getIdDt().toVersionless(), null, true);
+			if (resource == null) {
+				throw new InternalErrorException("Could not find resource version " + theResourceTable.getIdDt().toUnqualified().getValue() + " in database");
+			}
+
+			Long actualVersion = resource.getIdElement().getVersionIdPartAsLong();
+			if (actualVersion < expectedVersion) {
+				ourLog.warn("Resource {} version {} does not exist, renumbering version {}", resource.getIdElement().toUnqualifiedVersionless().getValue(), resource.getIdElement().getVersionIdPart(), expectedVersion);
+				myResourceHistoryTableDao.updateVersion(theResourceTable.getId(), actualVersion, expectedVersion);
+			}
+
+			doReindex(theResourceTable, resource);
+
+			if (myDaoConfig.isReencodeResourceBodiesDuringReindexing()) {
+				reencodeResourceBodies(theResourceTable);
+			}
+
+			return null;
+
+		} catch (Exception e) {
+			return e;
+		}
+	}
+
+	private static Date latest(Date theFirst, Date theSecond) {
+		if (theFirst == null || (theSecond != null && theSecond.getTime() > theFirst.getTime())) {
+			return theSecond;
+		}
+		return theFirst;
+	}
+
+	/**
+	 * Reindexes a group of resources inside a single transaction. If any of them fails, the
+	 * transaction is rolled back and each resource is retried in its own transaction using
+	 * {@link ResourceReindexingTask} so that only the failing resource gets marked as failed.
+	 */
+	private class ResourceReindexingWorkUnitTask implements Callable<Date> {
+		private final List<Long> myIds;
 		private final AtomicInteger myCounter;
 		private Date myUpdated;
 
-		ResourceReindexingTask(Long theNextId, AtomicInteger theCounter) {
-			myNextId = theNextId;
+		ResourceReindexingWorkUnitTask(List<Long> theIds, AtomicInteger theCounter) {
+			myIds = theIds;
 			myCounter = theCounter;
 		}
 
+		@Override
+		public Date call() {
+			if (myIds.size() == 1) {
+				return new ResourceReindexingTask(myIds.get(0), myCounter).call();
+			}
 
-		@SuppressWarnings("unchecked")
-		private <T extends IBaseResource> void doReindex(ResourceTable theResourceTable, T theResource) {
-			RuntimeResourceDefinition resourceDefinition = myContext.getResourceDefinition(theResource.getClass());
-			Class<T> resourceClass = (Class<T>) resourceDefinition.getImplementingClass();
-			final IFhirResourceDao<T> dao = myDaoRegistry.getResourceDao(resourceClass);
-			dao.reindex(theResource, theResourceTable);
+			Boolean succeeded;
+			try {
+				succeeded = myTxTemplate.execute(t -> {
+					for (Long nextId : myIds) {
+						ResourceTable resourceTable = myResourceTableDao.findById(nextId).orElseThrow(IllegalStateException::new);
+						myUpdated = latest(myUpdated, resourceTable.getUpdatedDate());
+						Exception failure = reindexResource(resourceTable);
+						if (failure != null) {
+							// The individual retry below logs the failure in full
+							ourLog.warn("Failed to reindex resource {} in a work unit of {} resources, retrying them individually: {}", resourceTable.getIdDt().toUnqualifiedVersionless().getValue(), myIds.size(), failure.toString());
+							t.setRollbackOnly();
+							return false;
+						}
+					}
+					return true;
+				});
+			} catch (ResourceVersionConflictException e) {
+				ourLog.warn("Failed to reindex a work unit of {} resources because of a version conflict, retrying them individually: {}", myIds.size(), e.getMessage());
+				succeeded = false;
+			}
 
-			myCounter.incrementAndGet();
+			if (Boolean.TRUE.equals(succeeded)) {
+				myCounter.addAndGet(myIds.size());
+				return myUpdated;
+			}
+
+			Date retVal = null;
+			for (Long nextId : myIds) {
+				retVal = latest(retVal, new ResourceReindexingTask(nextId, myCounter).call());
+			}
+			return retVal;
+		}
+	}
+
+	private class ResourceReindexingTask implements Callable<Date> {
+		private final Long myNextId;
+		private final AtomicInteger myCounter;
+		private Date myUpdated;
+
+		ResourceReindexingTask(Long theNextId, AtomicInteger theCounter) {
+			myNextId = theNextId;
+			myCounter = theCounter;
 		}
 
 		@Override
 		public Date call() {
-			Throwable reindexFailure;
+			Exception reindexFailure;
+			boolean reindexed;
 			try {
 				reindexFailure = myTxTemplate.execute(t -> {
 					ResourceTable resourceTable = myResourceTableDao.findById(myNextId).orElseThrow(IllegalStateException::new);
 					myUpdated = resourceTable.getUpdatedDate();
 
-					try {
-						/*
-						 * This part is because from HAPI 1.5 - 1.6 we changed the format of forced ID to be "type/id" instead of just "id"
-						 */
-						ForcedId forcedId = resourceTable.getForcedId();
-						if (forcedId != null) {
-							if (isBlank(forcedId.getResourceType())) {
-								ourLog.info("Updating resource {} forcedId type to {}", forcedId.getForcedId(), resourceTable.getResourceType());
-								forcedId.setResourceType(resourceTable.getResourceType());
-								myForcedIdDao.save(forcedId);
-							}
-						}
-
-						IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(resourceTable.getResourceType());
-						long expectedVersion = resourceTable.getVersion();
-						IBaseResource resource = dao.read(resourceTable.getIdDt().toVersionless(), null, true);
-						if (resource == null) {
-							throw new InternalErrorException("Could not find resource version " + resourceTable.getIdDt().toUnqualified().getValue() + " in database");
-						}
-
-						Long actualVersion = resource.getIdElement().getVersionIdPartAsLong();
-						if (actualVersion < expectedVersion) {
-							ourLog.warn("Resource {} version {} does not exist, renumbering version {}", resource.getIdElement().toUnqualifiedVersionless().getValue(), resource.getIdElement().getVersionIdPart(), expectedVersion);
-							myResourceHistoryTableDao.updateVersion(resourceTable.getId(), actualVersion, expectedVersion);
-						}
-
-						doReindex(resourceTable, resource);
-
-						return null;
-
-					} catch (Exception e) {
-						ourLog.error("Failed to index resource {}: {}", resourceTable.getIdDt(), e.toString(), e);
+					Exception failure = reindexResource(resourceTable);
+					if (failure != null) {
+						ourLog.error("Failed to index resource {}: {}", resourceTable.getIdDt(), failure.toString(), failure);
 						t.setRollbackOnly();
-						return e;
 					}
+					return failure;
 				});
+				reindexed = reindexFailure == null;
 
 			} catch (ResourceVersionConflictException e) {
 				/*
@@ -592,11 +746,14 @@ public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
 				 */
 				ourLog.info("Failed to reindex because of a version conflict. Leaving in unindexed state: {}", e.getMessage());
 				reindexFailure = null;
+				reindexed = false;
 			}
 
 			if (reindexFailure != null) {
 				ourLog.info("Setting resource PID[{}] status to ERRORED", myNextId);
 				markResourceAsIndexingFailed(myNextId);
+			} else if (reindexed) {
+				myCounter.incrementAndGet();
 			}
 
 			return myUpdated;
@@ -0,0 +1,46 @@
+package ca.uhn.fhir.jpa.util;
+
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+/**
+ * If a bean of this type is present in the application context, it is used by
+ * {@link MemoryCacheService} to create the statistics recorder for each cache. This
+ * can be used to publish cache hits, misses, evictions and load times to an
+ * external metrics registry (e.g. Micrometer's <code>CaffeineStatsCounter</code>).
+ * <p>
+ * If no bean is present, statistics are still recorded and can be read using
+ * {@link MemoryCacheService#getStats(MemoryCacheService.CacheEnum)}.
+ * </p>
+ *
+ * @since 5.4.0
+ */
+public interface IMemoryCacheStatsCounterFactory {
+
+	/**
+	 * Creates the statistics recorder for the given cache. Implementations
+	 * must be thread safe.
+	 */
+	StatsCounter newStatsCounter(MemoryCacheService.CacheEnum theCache);
+
+}
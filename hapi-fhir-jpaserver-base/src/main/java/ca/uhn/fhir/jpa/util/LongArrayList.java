@@ -0,0 +1,128 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A growable list of primitive <code>long</code> values. This is used to hold large numbers
+ * of resource PIDs without allocating a boxed {@link Long} and a {@link ResourcePersistentId}
+ * for each one.
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class LongArrayList {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] myValues;
+	private int mySize;
+
+	/**
+	 * Constructor
+	 */
+	public LongArrayList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public LongArrayList(int theInitialCapacity) {
+		myValues = new long[Math.max(theInitialCapacity, 1)];
+	}
+
+	public void add(long theValue) {
+		ensureCapacity(mySize + 1);
+		myValues[mySize++] = theValue;
+	}
+
+	public void addAll(long[] theValues, int theOffset, int theLength) {
+		ensureCapacity(mySize + theLength);
+		System.arraycopy(theValues, theOffset, myValues, mySize, theLength);
+		mySize += theLength;
+	}
+
+	/**
+	 * Adds the {@link ResourcePersistentId#getIdAsLong() ID} of each of the given PIDs
+	 */
+	public void addAll(Collection<ResourcePersistentId> thePids) {
+		ensureCapacity(mySize + thePids.size());
+		for (ResourcePersistentId next : thePids) {
+			myValues[mySize++] = next.getIdAsLong();
+		}
+	}
+
+	public long get(int theIndex) {
+		if (theIndex < 0 || theIndex >= mySize) {
+			throw new IndexOutOfBoundsException("Index: " + theIndex + ", Size: " + mySize);
+		}
+		return myValues[theIndex];
+	}
+
+	public int size() {
+		return mySize;
+	}
+
+	public boolean isEmpty() {
+		return mySize == 0;
+	}
+
+	public void clear() {
+		mySize = 0;
+	}
+
+	public long[] toArray() {
+		return Arrays.copyOf(myValues, mySize);
+	}
+
+	/**
+	 * Returns a read-only view of this list. A new {@link ResourcePersistentId} is created
+	 * each time an element is accessed, but calling {@link List#size()} is free.
+	 */
+	public List<ResourcePersistentId> asPersistentIdList() {
+		return new AbstractList<ResourcePersistentId>() {
+			@Override
+			public ResourcePersistentId get(int theIndex) {
+				return new ResourcePersistentId(LongArrayList.this.get(theIndex));
+			}
+
+			@Override
+			public int size() {
+				return mySize;
+			}
+		};
+	}
+
+	private void ensureCapacity(int theCapacity) {
+		if (theCapacity > myValues.length) {
+			int newCapacity = Math.max(theCapacity, myValues.length + (myValues.length >> 1));
+			myValues = Arrays.copyOf(myValues, newCapacity);
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A hash set of primitive <code>long</code> values, using open addressing with linear probing.
+ * This is used to hold large numbers of resource PIDs without allocating a boxed {@link Long}
+ * and a hash table node for each one.
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @since 5.4.0
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = 0L;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] myKeys;
+	private int myMask;
+	private int mySize;
+	private boolean myContainsEmptyKey;
+
+	/**
+	 * Constructor
+	 */
+	public LongHashSet() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theExpectedSize The number of values this set can hold before needing to grow
+	 */
+	public LongHashSet(int theExpectedSize) {
+		allocate(capacityFor(theExpectedSize));
+	}
+
+	/**
+	 * Copy constructor
+	 */
+	public LongHashSet(LongHashSet theSet) {
+		myKeys = theSet.myKeys.clone();
+		myMask = theSet.myMask;
+		mySize = theSet.mySize;
+		myContainsEmptyKey = theSet.myContainsEmptyKey;
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the value was not already in the set
+	 */
+	public boolean add(long theValue) {
+		if (theValue == EMPTY) {
+			boolean retVal = !myContainsEmptyKey;
+			myContainsEmptyKey = true;
+			return retVal;
+		}
+
+		int index = slot(theValue, myMask);
+		while (myKeys[index] != EMPTY) {
+			if (myKeys[index] == theValue) {
+				return false;
+			}
+			index = (index + 1) & myMask;
+		}
+		myKeys[index] = theValue;
+		mySize++;
+		if (mySize * 2 > myKeys.length) {
+			rehash(myKeys.length * 2);
+		}
+		return true;
+	}
+
+	public boolean contains(long theValue) {
+		if (theValue == EMPTY) {
+			return myContainsEmptyKey;
+		}
+		return indexOf(theValue) != -1;
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the value was in the set
+	 */
+	public boolean remove(long theValue) {
+		if (theValue == EMPTY) {
+			boolean retVal = myContainsEmptyKey;
+			myContainsEmptyKey = false;
+			return retVal;
+		}
+
+		int gap = indexOf(theValue);
+		if (gap == -1) {
+			return false;
+		}
+
+		// Shift back any following entries that would no longer be reachable across the gap
+		int index = (gap + 1) & myMask;
+		while (myKeys[index] != EMPTY) {
+			int preferred = slot(myKeys[index], myMask);
+			if (((index - preferred) & myMask) >= ((index - gap) & myMask)) {
+				myKeys[gap] = myKeys[index];
+				gap = index;
+			}
+			index = (index + 1) & myMask;
+		}
+		myKeys[gap] = EMPTY;
+		mySize--;
+		return true;
+	}
+
+	public int size() {
+		return myContainsEmptyKey ? mySize + 1 : mySize;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(myKeys, EMPTY);
+		mySize = 0;
+		myContainsEmptyKey = false;
+	}
+
+	public void forEach(LongConsumer theConsumer) {
+		if (myContainsEmptyKey) {
+			theConsumer.accept(EMPTY);
+		}
+		for (long next : myKeys) {
+			if (next != EMPTY) {
+				theConsumer.accept(next);
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the values in this set, in no particular order
+	 */
+	public long[] toArray() {
+		long[] retVal = new long[size()];
+		int index = 0;
+		if (myContainsEmptyKey) {
+			retVal[index++] = EMPTY;
+		}
+		for (long next : myKeys) {
+			if (next != EMPTY) {
+				retVal[index++] = next;
+			}
+		}
+		return retVal;
+	}
+
+	private int indexOf(long theValue) {
+		int index = slot(theValue, myMask);
+		while (myKeys[index] != EMPTY) {
+			if (myKeys[index] == theValue) {
+				return index;
+			}
+			index = (index + 1) & myMask;
+		}
+		return -1;
+	}
+
+	private void rehash(int theCapacity) {
+		long[] oldKeys = myKeys;
+		allocate(theCapacity);
+		for (long next : oldKeys) {
+			if (next != EMPTY) {
+				int index = slot(next, myMask);
+				while (myKeys[index] != EMPTY) {
+					index = (index + 1) & myMask;
+				}
+				myKeys[index] = next;
+			}
+		}
+	}
+
+	private void allocate(int theCapacity) {
+		myKeys = new long[theCapacity];
+		myMask = theCapacity - 1;
+	}
+
+	/**
+	 * @return A power of two that keeps the table at most half full when holding the given number of values
+	 */
+	static int capacityFor(int theExpectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < theExpectedSize * 2L) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * PIDs are usually sequential, so the bits are mixed before masking to avoid long probe chains
+	 */
+	static int slot(long theValue, int theMask) {
+		long hash = theValue * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & theMask;
+	}
+
+}
@@ -0,0 +1,182 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive <code>long</code> keys to primitive <code>int</code> values, using
+ * open addressing with linear probing. This is used to hold large numbers of resource PIDs
+ * without allocating boxed values and a hash table node for each one.
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @since 5.4.0
+ */
+public class LongIntHashMap {
+
+	private static final long EMPTY = 0L;
+
+	private long[] myKeys;
+	private int[] myValues;
+	private int myMask;
+	private int mySize;
+	private boolean myContainsEmptyKey;
+	private int myEmptyKeyValue;
+
+	/**
+	 * Constructor
+	 */
+	public LongIntHashMap() {
+		this(8);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theExpectedSize The number of entries this map can hold before needing to grow
+	 */
+	public LongIntHashMap(int theExpectedSize) {
+		allocate(LongHashSet.capacityFor(theExpectedSize));
+	}
+
+	public void put(long theKey, int theValue) {
+		if (theKey == EMPTY) {
+			myContainsEmptyKey = true;
+			myEmptyKeyValue = theValue;
+			return;
+		}
+
+		int index = LongHashSet.slot(theKey, myMask);
+		while (myKeys[index] != EMPTY) {
+			if (myKeys[index] == theKey) {
+				myValues[index] = theValue;
+				return;
+			}
+			index = (index + 1) & myMask;
+		}
+		myKeys[index] = theKey;
+		myValues[index] = theValue;
+		mySize++;
+		if (mySize * 2 > myKeys.length) {
+			rehash(myKeys.length * 2);
+		}
+	}
+
+	/**
+	 * @return Returns the value for the given key, or <code>theDefaultValue</code> if the key is not in the map
+	 */
+	public int get(long theKey, int theDefaultValue) {
+		if (theKey == EMPTY) {
+			return myContainsEmptyKey ? myEmptyKeyValue : theDefaultValue;
+		}
+
+		int index = indexOf(theKey);
+		return index != -1 ? myValues[index] : theDefaultValue;
+	}
+
+	public boolean containsKey(long theKey) {
+		if (theKey == EMPTY) {
+			return myContainsEmptyKey;
+		}
+		return indexOf(theKey) != -1;
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the key was in the map
+	 */
+	public boolean remove(long theKey) {
+		if (theKey == EMPTY) {
+			boolean retVal = myContainsEmptyKey;
+			myContainsEmptyKey = false;
+			return retVal;
+		}
+
+		int gap = indexOf(theKey);
+		if (gap == -1) {
+			return false;
+		}
+
+		// Shift back any following entries that would no longer be reachable across the gap
+		int index = (gap + 1) & myMask;
+		while (myKeys[index] != EMPTY) {
+			int preferred = LongHashSet.slot(myKeys[index], myMask);
+			if (((index - preferred) & myMask) >= ((index - gap) & myMask)) {
+				myKeys[gap] = myKeys[index];
+				myValues[gap] = myValues[index];
+				gap = index;
+			}
+			index = (index + 1) & myMask;
+		}
+		myKeys[gap] = EMPTY;
+		mySize--;
+		return true;
+	}
+
+	public int size() {
+		return myContainsEmptyKey ? mySize + 1 : mySize;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(myKeys, EMPTY);
+		mySize = 0;
+		myContainsEmptyKey = false;
+	}
+
+	private int indexOf(long theKey) {
+		int index = LongHashSet.slot(theKey, myMask);
+		while (myKeys[index] != EMPTY) {
+			if (myKeys[index] == theKey) {
+				return index;
+			}
+			index = (index + 1) & myMask;
+		}
+		return -1;
+	}
+
+	private void rehash(int theCapacity) {
+		long[] oldKeys = myKeys;
+		int[] oldValues = myValues;
+		allocate(theCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int index = LongHashSet.slot(oldKeys[i], myMask);
+				while (myKeys[index] != EMPTY) {
+					index = (index + 1) & myMask;
+				}
+				myKeys[index] = oldKeys[i];
+				myValues[index] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int theCapacity) {
+		myKeys = new long[theCapacity];
+		myValues = new int[theCapacity];
+		myMask = theCapacity - 1;
+	}
+
+}
@@ -20,34 +20,62 @@ package ca.uhn.fhir.jpa.util;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.api.model.MemoryCacheSettings;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
 import java.util.EnumMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
  * This class acts as a central spot for all of the many Caffeine caches we use in HAPI FHIR.
  * <p>
- * The API is super simplistic, and caches are all 1-minute, max 10000 entries for starters. We could definitely add nuance to this,
- * which will be much easier now that this is being centralized. Some logging/monitoring would be good too.
+ * The size and expiry of each cache can be configured using
+ * {@link DaoConfig#setMemoryCacheSettings(String, MemoryCacheSettings)}. Statistics are recorded
+ * for every cache, and can be published to an external metrics registry by supplying an
+ * {@link IMemoryCacheStatsCounterFactory} bean.
  */
 public class MemoryCacheService {
 
+	private static final Logger ourLog = LoggerFactory.getLogger(MemoryCacheService.class);
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired(required = false)
+	private IMemoryCacheStatsCounterFactory myStatsCounterFactory;
+
 	private EnumMap<CacheEnum, Cache<?, ?>> myCaches;
 
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
 	@PostConstruct
 	public void start() {
 
 		myCaches = new EnumMap<>(CacheEnum.class);
 
 		for (CacheEnum next : CacheEnum.values()) {
-			Cache<Object, Object> nextCache = Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).maximumSize(10000).build();
+			MemoryCacheSettings settings = myDaoConfig.getMemoryCacheSettings(next.name());
+			ourLog.debug("Creating cache {} with maximum size {} and expiry {}ms", next, settings.getMaximumSize(), settings.getExpireAfterWriteMillis());
+
+			Cache<Object, Object> nextCache = Caffeine
+				.newBuilder()
+				.expireAfterWrite(settings.getExpireAfterWriteMillis(), TimeUnit.MILLISECONDS)
+				.maximumSize(settings.getMaximumSize())
+				.recordStats(() -> myStatsCounterFactory != null ? myStatsCounterFactory.newStatsCounter(next) : new ConcurrentStatsCounter())
+				.build();
 			myCaches.put(next, nextCache);
 		}
 
@@ -75,6 +103,20 @@ public class MemoryCacheService {
 		myCaches.values().forEach(t -> t.invalidateAll());
 	}
 
+	/**
+	 * Returns a snapshot of the hit, miss, eviction and load time statistics for the given cache
+	 */
+	public CacheStats getStats(CacheEnum theCache) {
+		return getCache(theCache).stats();
+	}
+
+	/**
+	 * Returns the approximate number of entries in the given cache
+	 */
+	public long getEstimatedSize(CacheEnum theCache) {
+		return getCache(theCache).estimatedSize();
+	}
+
 	private <K, T> Cache<K, T> getCache(CacheEnum theCache) {
 		return (Cache<K, T>) myCaches.get(theCache);
 	}
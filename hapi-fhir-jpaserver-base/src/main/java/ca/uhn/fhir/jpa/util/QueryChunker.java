@@ -22,7 +22,12 @@ package ca.uhn.fhir.jpa.util;
 
 import ca.uhn.fhir.jpa.dao.LegacySearchBuilder;
 import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.SQLServerDialect;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -31,13 +36,42 @@ import java.util.function.Consumer;
  * case it doesn't like more than ~1000 IDs in a single load, so we break this up
  * if it's lots of IDs. I suppose maybe we should be doing this as a join anyhow
  * but this should work too. Sigh.
+ * <p>
+ * Other databases are much more forgiving, so when the dialect is known we use
+ * the largest chunk size that is safe for it (see {@link #getMaximumChunkSize(Dialect)})
+ * so that most lists can be loaded using a single statement.
+ * </p>
  */
 public class QueryChunker<T> {
 
+	/**
+	 * Postgres and MySQL allow up to 32767 / 65535 bind parameters per statement. We stay
+	 * well under the limit to leave room for the other parameters in the statement.
+	 */
+	static final int MAXIMUM_CHUNK_SIZE_LARGE = 10000;
+
+	/**
+	 * SQL Server allows a maximum of 2100 bind parameters per statement. Chunks are padded up
+	 * to a multiple of 1000 by the search builder, and the rest of the statement also needs
+	 * bind parameters (resource type, partition IDs, search parameter hashes, etc.) so we
+	 * keep chunks to 1000 IDs in order to leave plenty of room.
+	 */
+	static final int MAXIMUM_CHUNK_SIZE_SQL_SERVER = 1000;
+
 	public void chunk(List<T> theInput, Consumer<List<T>> theBatchConsumer) {
 		chunk(theInput, SearchBuilder.getMaximumPageSize(), theBatchConsumer);
 	}
 
+	/**
+	 * Chunks the input using the largest chunk size supported by the given dialect
+	 *
+	 * @param theDialect The dialect, or <code>null</code> if it is not known (in which case the
+	 *                   conservative default chunk size is used)
+	 */
+	public void chunk(List<T> theInput, @Nullable Dialect theDialect, Consumer<List<T>> theBatchConsumer) {
+		chunk(theInput, getMaximumChunkSize(theDialect), theBatchConsumer);
+	}
+
 	public void chunk(List<T> theInput, int theChunkSize, Consumer<List<T>> theBatchConsumer ) {
 		for (int i = 0; i < theInput.size(); i += theChunkSize) {
 			int to = i + theChunkSize;
@@ -47,4 +81,23 @@ public class QueryChunker<T> {
 		}
 	}
 
+	/**
+	 * Returns the maximum number of IDs that should be passed in a single <code>IN</code>
+	 * clause for the given dialect
+	 */
+	public static int getMaximumChunkSize(@Nullable Dialect theDialect) {
+		int defaultSize = SearchBuilder.getMaximumPageSize();
+		if (defaultSize < SearchBuilder.MAXIMUM_PAGE_SIZE) {
+			// Unit tests use a small page size in order to exercise chunking
+			return defaultSize;
+		}
+		if (theDialect instanceof PostgreSQL81Dialect || theDialect instanceof MySQLDialect) {
+			return MAXIMUM_CHUNK_SIZE_LARGE;
+		}
+		if (theDialect instanceof SQLServerDialect) {
+			return MAXIMUM_CHUNK_SIZE_SQL_SERVER;
+		}
+		return defaultSize;
+	}
+
 }
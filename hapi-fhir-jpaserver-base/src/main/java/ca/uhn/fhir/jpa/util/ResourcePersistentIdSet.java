@@ -0,0 +1,219 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+
+import javax.annotation.Nonnull;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of resource PIDs that stores the (usual) versionless PIDs as primitive <code>long</code>
+ * values in a {@link LongHashSet}. PIDs with a specific version, which only come from versioned
+ * includes, are kept in a regular set alongside them. As with {@link ResourcePersistentId#equals(Object)},
+ * a versioned PID is not the same as the versionless PID with the same ID.
+ * <p>
+ * This can be passed anywhere a <code>Set&lt;ResourcePersistentId&gt;</code> is expected, but callers that
+ * already have the PID as a <code>long</code> should use {@link #add(long)} and {@link #contains(long)}
+ * to avoid allocating a {@link ResourcePersistentId}. The iterator creates a new {@link ResourcePersistentId}
+ * for each versionless PID and does not support removal.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @since 5.4.0
+ */
+public class ResourcePersistentIdSet extends AbstractSet<ResourcePersistentId> {
+
+	private final LongHashSet myPids;
+	private Set<ResourcePersistentId> myVersionedPids;
+
+	/**
+	 * Constructor
+	 */
+	public ResourcePersistentIdSet() {
+		myPids = new LongHashSet();
+	}
+
+	/**
+	 * Constructor
+	 */
+	public ResourcePersistentIdSet(Collection<ResourcePersistentId> thePids) {
+		myPids = new LongHashSet(thePids.size());
+		addAll(thePids);
+	}
+
+	/**
+	 * Copy constructor
+	 */
+	public ResourcePersistentIdSet(ResourcePersistentIdSet thePids) {
+		myPids = new LongHashSet(thePids.myPids);
+		if (thePids.myVersionedPids != null) {
+			myVersionedPids = new HashSet<>(thePids.myVersionedPids);
+		}
+	}
+
+	/**
+	 * Adds a versionless PID
+	 *
+	 * @return Returns <code>true</code> if the PID was not already in the set
+	 */
+	public boolean add(long thePid) {
+		return myPids.add(thePid);
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the versionless PID is in the set
+	 */
+	public boolean contains(long thePid) {
+		return myPids.contains(thePid);
+	}
+
+	@Override
+	public boolean add(ResourcePersistentId thePid) {
+		if (thePid.getVersion() == null) {
+			return myPids.add(thePid.getIdAsLong());
+		}
+		if (myVersionedPids == null) {
+			myVersionedPids = new HashSet<>();
+		}
+		return myVersionedPids.add(thePid);
+	}
+
+	@Override
+	public boolean contains(Object theObject) {
+		if (!(theObject instanceof ResourcePersistentId)) {
+			return false;
+		}
+		ResourcePersistentId pid = (ResourcePersistentId) theObject;
+		if (pid.getVersion() == null) {
+			return myPids.contains(pid.getIdAsLong());
+		}
+		return myVersionedPids != null && myVersionedPids.contains(pid);
+	}
+
+	@Override
+	public boolean remove(Object theObject) {
+		if (!(theObject instanceof ResourcePersistentId)) {
+			return false;
+		}
+		ResourcePersistentId pid = (ResourcePersistentId) theObject;
+		if (pid.getVersion() == null) {
+			return myPids.remove(pid.getIdAsLong());
+		}
+		return myVersionedPids != null && myVersionedPids.remove(pid);
+	}
+
+	/**
+	 * Adds all of the given PIDs. If the given collection is also a {@link ResourcePersistentIdSet},
+	 * this is done without allocating a {@link ResourcePersistentId} for each one.
+	 *
+	 * @return Returns <code>true</code> if this set changed
+	 */
+	@Override
+	public boolean addAll(Collection<? extends ResourcePersistentId> theCollection) {
+		if (!(theCollection instanceof ResourcePersistentIdSet)) {
+			return super.addAll(theCollection);
+		}
+		ResourcePersistentIdSet pids = (ResourcePersistentIdSet) theCollection;
+		int initialSize = size();
+		pids.myPids.forEach(myPids::add);
+		if (pids.myVersionedPids != null) {
+			if (myVersionedPids == null) {
+				myVersionedPids = new HashSet<>();
+			}
+			myVersionedPids.addAll(pids.myVersionedPids);
+		}
+		return size() != initialSize;
+	}
+
+	/**
+	 * Removes all of the PIDs in the given set, without allocating a {@link ResourcePersistentId} for each one
+	 *
+	 * @return Returns <code>true</code> if this set changed
+	 */
+	public boolean removeAll(ResourcePersistentIdSet thePids) {
+		int initialSize = size();
+		thePids.myPids.forEach(myPids::remove);
+		if (myVersionedPids != null && thePids.myVersionedPids != null) {
+			myVersionedPids.removeAll(thePids.myVersionedPids);
+		}
+		return size() != initialSize;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> theCollection) {
+		boolean retVal = false;
+		for (Object next : theCollection) {
+			retVal |= remove(next);
+		}
+		return retVal;
+	}
+
+	@Override
+	public int size() {
+		int retVal = myPids.size();
+		if (myVersionedPids != null) {
+			retVal += myVersionedPids.size();
+		}
+		return retVal;
+	}
+
+	@Override
+	public void clear() {
+		myPids.clear();
+		myVersionedPids = null;
+	}
+
+	@Nonnull
+	@Override
+	public Iterator<ResourcePersistentId> iterator() {
+		long[] pids = myPids.toArray();
+		Iterator<ResourcePersistentId> versionedPids = myVersionedPids != null ? myVersionedPids.iterator() : Collections.emptyIterator();
+		return new Iterator<ResourcePersistentId>() {
+			private int myIndex;
+
+			@Override
+			public boolean hasNext() {
+				return myIndex < pids.length || versionedPids.hasNext();
+			}
+
+			@Override
+			public ResourcePersistentId next() {
+				if (myIndex < pids.length) {
+					return new ResourcePersistentId(pids[myIndex++]);
+				}
+				if (!versionedPids.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return versionedPids.next();
+			}
+		};
+	}
+
+}
@@ -2,15 +2,21 @@ package ca.uhn.fhir.jpa.bulk;
 
 import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.batch.BatchJobsConfig;
 import ca.uhn.fhir.jpa.batch.api.IBatchJobSubmitter;
+import ca.uhn.fhir.jpa.binstore.IBinaryStorageSvc;
 import ca.uhn.fhir.jpa.bulk.api.BulkDataExportOptions;
 import ca.uhn.fhir.jpa.bulk.api.GroupBulkDataExportOptions;
 import ca.uhn.fhir.jpa.bulk.api.IBulkDataExportSvc;
 import ca.uhn.fhir.jpa.bulk.job.BulkExportJobParametersBuilder;
 import ca.uhn.fhir.jpa.bulk.job.GroupBulkExportJobParametersBuilder;
 import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
+import ca.uhn.fhir.jpa.dao.IResultIterator;
+import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionFileDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
@@ -19,13 +25,19 @@ import ca.uhn.fhir.jpa.entity.BulkExportCollectionEntity;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionFileEntity;
 import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
 import ca.uhn.fhir.jpa.entity.MdmLink;
+import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.mdm.api.MdmLinkSourceEnum;
 import ca.uhn.fhir.mdm.api.MdmMatchResultEnum;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.HapiExtensions;
 import ca.uhn.fhir.util.UrlUtil;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hamcrest.Matchers;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -39,7 +51,10 @@ import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Reference;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
@@ -52,6 +67,9 @@ import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -61,15 +79,19 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
@@ -88,6 +110,10 @@ public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
 	private IBatchJobSubmitter myBatchJobSubmitter;
 	@Autowired
 	private JobExplorer myJobExplorer;
+	@Autowired
+	private IBinaryStorageSvc myBinaryStorageSvc;
+	@Autowired
+	private SearchBuilderFactory mySearchBuilderFactory;
 
 	@Autowired
 	@Qualifier(BatchJobsConfig.BULK_EXPORT_JOB_NAME)
@@ -99,6 +125,15 @@ public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
 
 	private IIdType myPatientGroupId;
 
+	@AfterEach
+	public void afterResetDaoConfig() {
+		myDaoConfig.setBulkExportBinaryStorageEnabled(new DaoConfig().isBulkExportBinaryStorageEnabled());
+		myDaoConfig.setBulkExportGzipEnabled(new DaoConfig().isBulkExportGzipEnabled());
+		myDaoConfig.setBulkExportFileMaximumSize(new DaoConfig().getBulkExportFileMaximumSize());
+		myDaoConfig.setUseLegacySearchBuilder(new DaoConfig().isUseLegacySearchBuilder());
+		myDaoConfig.setBulkExportPartitionsPerResourceType(new DaoConfig().getBulkExportPartitionsPerResourceType());
+	}
+
 	@Test
 	public void testPurgeExpiredJobs() {
 
@@ -310,6 +345,89 @@ public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
 		assertEquals(2, status.getFiles().size());
 	}
 
+	@Test
+	public void testGenerateBulkExport_GzipFilesInBinaryStorage() throws IOException {
+		myDaoConfig.setBulkExportBinaryStorageEnabled(true);
+		myDaoConfig.setBulkExportGzipEnabled(true);
+		myDaoConfig.setBulkExportFileMaximumSize(1000);
+
+		// Create some resources to load
+		createResources();
+
+		// Create a bulk job
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(new BulkDataExportOptions(null, Sets.newHashSet("Observation"), null, null));
+		assertNotNull(jobDetails.getJobId());
+
+		// Run a scheduled pass to build the export
+		myBulkDataExportSvc.buildExportFiles();
+
+		awaitAllBulkJobCompletions();
+
+		// Fetch the job again
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+		assertThat(status.getFiles().size(), greaterThan(1));
+
+		// Each file should only contain a reference to the compressed content in binary storage
+		List<String> lines = new ArrayList<>();
+		for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+			Binary nextBinary = myBinaryDao.read(next.getResourceId());
+			assertEquals(Constants.CT_APPLICATION_GZIP, nextBinary.getContentType());
+			assertNull(nextBinary.getData());
+			String blobId = nextBinary.getDataElement().getExtensionByUrl(HapiExtensions.EXT_EXTERNALIZED_BINARY_ID).getValueAsPrimitive().getValueAsString();
+
+			byte[] compressed = myBinaryStorageSvc.fetchBlob(nextBinary.getIdElement(), blobId);
+			String nextContents = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(compressed)), Constants.CHARSET_UTF8);
+			lines.addAll(Arrays.asList(nextContents.split("\n")));
+		}
+
+		assertEquals(16, lines.size());
+		assertThat(lines.get(0), containsString("\"resourceType\":\"Observation\""));
+	}
+
+	@Test
+	public void testGenerateBulkExport_PartitionedByPidRange() {
+		myDaoConfig.setBulkExportPartitionsPerResourceType(3);
+
+		// Create some resources to load
+		createResources();
+
+		// Create a bulk job
+		BulkDataExportOptions options = new BulkDataExportOptions(null, Sets.newHashSet("Patient", "Observation"), null, null);
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(options);
+		assertNotNull(jobDetails.getJobId());
+
+		// Run a scheduled pass to build the export
+		myBulkDataExportSvc.buildExportFiles();
+
+		awaitAllBulkJobCompletions();
+
+		// Fetch the job again
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+
+		// Each range of each type writes its own file, and together they contain every resource exactly once
+		List<String> patientLines = new ArrayList<>();
+		List<String> observationLines = new ArrayList<>();
+		for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+			Binary nextBinary = myBinaryDao.read(next.getResourceId());
+			String nextContents = new String(nextBinary.getContent(), Constants.CHARSET_UTF8);
+			ourLog.info("Next contents for type {}:\n{}", next.getResourceType(), nextContents);
+			if ("Patient".equals(next.getResourceType())) {
+				patientLines.addAll(Arrays.asList(nextContents.split("\n")));
+			} else if ("Observation".equals(next.getResourceType())) {
+				observationLines.addAll(Arrays.asList(nextContents.split("\n")));
+			} else {
+				fail(next.getResourceType());
+			}
+		}
+		assertThat(status.getFiles().size(), greaterThan(2));
+		assertEquals(17, patientLines.size());
+		assertEquals(17, new HashSet<>(patientLines).size());
+		assertEquals(16, observationLines.size());
+		assertEquals(16, new HashSet<>(observationLines).size());
+	}
+
 	@Test
 	public void testGenerateBulkExport_WithoutSpecificResources() {
 
@@ -490,6 +608,50 @@ public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
 		assertThat(jobInfo.getFiles().size(), equalTo(2));
 	}
 
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	public void testSearchBuilderKeysetPagination(boolean theUseLegacySearchBuilder) {
+		myDaoConfig.setUseLegacySearchBuilder(theUseLegacySearchBuilder);
+
+		List<Long> expectedPids = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			DaoMethodOutcome outcome = createPatientWithIndex(i);
+			if (i % 2 == 1) {
+				expectedPids.add(myIdHelperService.getPidOrNull(outcome.getResource()));
+			}
+		}
+
+		// Read the female patients two at a time, the way the bulk export reader pages through PIDs
+		List<Long> actualPids = new ArrayList<>();
+		int windowCount = 0;
+		while (true) {
+			Long afterPid = actualPids.isEmpty() ? Long.MIN_VALUE : actualPids.get(actualPids.size() - 1);
+			List<Long> window = runInTransaction(() -> {
+				ISearchBuilder sb = mySearchBuilderFactory.newSearchBuilder(myPatientDao, "Patient", Patient.class);
+				sb.setMaxResultsToFetch(2);
+				sb.setKeysetPaginationAfterPid(afterPid);
+				SearchParameterMap map = new SearchParameterMap();
+				map.add(Patient.SP_GENDER, new TokenParam("female"));
+				List<Long> retVal = new ArrayList<>();
+				try (IResultIterator iter = sb.createQuery(map, new SearchRuntimeDetails(null, "FOO"), null, RequestPartitionId.allPartitions())) {
+					iter.forEachRemaining(t -> retVal.add(t.getIdAsLong()));
+				} catch (IOException e) {
+					throw new InternalErrorException(e);
+				}
+				return retVal;
+			});
+			if (window.isEmpty()) {
+				break;
+			}
+			assertThat(window.size(), lessThanOrEqualTo(2));
+			actualPids.addAll(window);
+			windowCount++;
+		}
+
+		assertEquals(expectedPids, actualPids);
+		assertEquals(3, windowCount);
+	}
+
 	public void awaitAllBulkJobCompletions() {
 		List<JobInstance> bulkExport = myJobExplorer.findJobInstancesByJobName(BatchJobsConfig.BULK_EXPORT_JOB_NAME, 0, 100);
 		bulkExport.addAll(myJobExplorer.findJobInstancesByJobName(BatchJobsConfig.GROUP_BULK_EXPORT_JOB_NAME, 0, 100));
@@ -0,0 +1,244 @@
+package ca.uhn.fhir.jpa.bulk;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.bulk.imprt.api.BulkDataImportOptions;
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class BulkDataImportSvcImplR4Test extends BaseJpaR4Test {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(BulkDataImportSvcImplR4Test.class);
+
+	@Autowired
+	private IBulkDataImportSvc myBulkDataImportSvc;
+
+	private File myImportDirectory;
+
+	@BeforeEach
+	public void beforeCreateImportDirectory() throws IOException {
+		myImportDirectory = Files.createTempDirectory("hapi-bulk-import").toFile();
+		myDaoConfig.setBulkImportDirectory(myImportDirectory.getAbsolutePath());
+	}
+
+	@AfterEach
+	public void afterResetDaoConfig() throws IOException {
+		myDaoConfig.setBulkImportDirectory(new DaoConfig().getBulkImportDirectory());
+		FileUtils.deleteDirectory(myImportDirectory);
+	}
+
+	@Test
+	public void testImportResources() throws IOException {
+		StringBuilder patientsAndObservations = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			Patient patient = new Patient();
+			patient.setId("Patient/PT" + i);
+			patient.setActive(true);
+			patientsAndObservations.append(myFhirCtx.newJsonParser().encodeResourceToString(patient)).append("\n");
+		}
+		patientsAndObservations.append("\n");
+		for (int i = 0; i < 10; i++) {
+			Observation observation = new Observation();
+			observation.setStatus(Observation.ObservationStatus.FINAL);
+			observation.getSubject().setReference("Patient/PT" + i);
+			patientsAndObservations.append(myFhirCtx.newJsonParser().encodeResourceToString(observation)).append("\n");
+		}
+		writeFile("patients-and-observations.ndjson", patientsAndObservations.toString());
+
+		Patient independentPatient = new Patient();
+		independentPatient.setActive(false);
+		writeFile("other.ndjson", myFhirCtx.newJsonParser().encodeResourceToString(independentPatient) + "\n");
+
+		IBulkDataImportSvc.JobInfo jobInfo = myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Arrays.asList("patients-and-observations.ndjson", "other.ndjson"), true));
+		IBulkDataImportSvc.JobInfo completedJobInfo = awaitJobCompletion(jobInfo.getJobId());
+
+		assertEquals(BulkJobStatusEnum.COMPLETE, completedJobInfo.getStatus());
+		assertEquals(21L, completedJobInfo.getResourceCount());
+
+		IBundleProvider patients = myPatientDao.search(SearchParameterMap.newSynchronous());
+		assertEquals(11, patients.sizeOrThrowNpe());
+		assertEquals("PT3", myPatientDao.read(new Patient().setId("Patient/PT3").getIdElement(), mySrd).getIdElement().getIdPart());
+
+		IBundleProvider observations = myObservationDao.search(SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam("Patient/PT3")));
+		assertEquals(1, observations.sizeOrThrowNpe());
+	}
+
+	@Test
+	public void testImportSeparateFilesPerResourceType() throws IOException {
+		// Files are listed with the referencing resources first
+		StringBuilder observations = new StringBuilder();
+		StringBuilder patients = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			Observation observation = new Observation();
+			observation.setStatus(Observation.ObservationStatus.FINAL);
+			observation.getSubject().setReference("Patient/PT" + i);
+			observations.append(myFhirCtx.newJsonParser().encodeResourceToString(observation)).append("\n");
+
+			Patient patient = new Patient();
+			patient.setId("Patient/PT" + i);
+			patient.getManagingOrganization().setReference("Organization/ORG");
+			patients.append(myFhirCtx.newJsonParser().encodeResourceToString(patient)).append("\n");
+		}
+		writeFile("Observation.ndjson", observations.toString());
+		writeFile("Patient.ndjson", patients.toString());
+
+		Organization organization = new Organization();
+		organization.setId("Organization/ORG");
+		organization.setName("ORG");
+		writeFile("Organization.ndjson", myFhirCtx.newJsonParser().encodeResourceToString(organization) + "\n");
+
+		IBulkDataImportSvc.JobInfo jobInfo = myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Arrays.asList("Observation.ndjson", "Patient.ndjson", "Organization.ndjson"), true));
+		IBulkDataImportSvc.JobInfo completedJobInfo = awaitJobCompletion(jobInfo.getJobId());
+
+		assertEquals(BulkJobStatusEnum.COMPLETE, completedJobInfo.getStatus(), completedJobInfo.getStatusMessage());
+		assertEquals(41L, completedJobInfo.getResourceCount());
+
+		IBundleProvider observationsOfPatient = myObservationDao.search(SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam("Patient/PT3")));
+		assertEquals(1, observationsOfPatient.sizeOrThrowNpe());
+		IBundleProvider patientsOfOrganization = myPatientDao.search(SearchParameterMap.newSynchronous(Patient.SP_ORGANIZATION, new ReferenceParam("Organization/ORG")));
+		assertEquals(20, patientsOfOrganization.sizeOrThrowNpe());
+	}
+
+	@Test
+	public void testImportUpdatesExistingResources() throws IOException {
+		for (int i = 0; i < 10; i++) {
+			Patient patient = new Patient();
+			patient.setId("Patient/PT" + i);
+			patient.setActive(false);
+			myPatientDao.update(patient, mySrd);
+		}
+
+		StringBuilder patients = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			Patient patient = new Patient();
+			patient.setId("Patient/PT" + i);
+			patient.setActive(true);
+			patients.append(myFhirCtx.newJsonParser().encodeResourceToString(patient)).append("\n");
+		}
+		writeFile("Patient.ndjson", patients.toString());
+
+		myCaptureQueriesListener.clear();
+		IBulkDataImportSvc.JobInfo jobInfo = myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Collections.singletonList("Patient.ndjson"), true));
+		IBulkDataImportSvc.JobInfo completedJobInfo = awaitJobCompletion(jobInfo.getJobId());
+
+		assertEquals(BulkJobStatusEnum.COMPLETE, completedJobInfo.getStatus(), completedJobInfo.getStatusMessage());
+		assertEquals(20L, completedJobInfo.getResourceCount());
+
+		// The IDs of the existing resources in the chunk are resolved by a single lookup, instead of once
+		// per update. The resources that don't exist yet are still looked up by their update.
+		long forcedIdSelects = myCaptureQueriesListener
+			.getSelectQueries()
+			.stream()
+			.filter(t -> t.getSql(false, false).toUpperCase().contains("FROM HFJ_FORCED_ID"))
+			.count();
+		assertEquals(11L, forcedIdSelects);
+
+		assertEquals("2", myPatientDao.read(new IdType("Patient/PT3"), mySrd).getIdElement().getVersionIdPart());
+		assertEquals("1", myPatientDao.read(new IdType("Patient/PT13"), mySrd).getIdElement().getVersionIdPart());
+		assertEquals(true, myPatientDao.read(new IdType("Patient/PT3"), mySrd).getActive());
+	}
+
+	@Test
+	public void testImportWithMissingReferenceTarget() throws IOException {
+		Patient patient = new Patient();
+		patient.setId("Patient/PT0");
+		Observation observation = new Observation();
+		observation.setStatus(Observation.ObservationStatus.FINAL);
+		observation.getSubject().setReference("Patient/MISSING");
+		writeFile("resources.ndjson", myFhirCtx.newJsonParser().encodeResourceToString(observation) + "\n" + myFhirCtx.newJsonParser().encodeResourceToString(patient) + "\n");
+
+		IBulkDataImportSvc.JobInfo jobInfo = myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Collections.singletonList("resources.ndjson"), true));
+		IBulkDataImportSvc.JobInfo completedJobInfo = awaitJobCompletion(jobInfo.getJobId());
+
+		// The observation is only rejected once nothing else can be stored
+		assertEquals(BulkJobStatusEnum.ERROR, completedJobInfo.getStatus());
+		assertThat(completedJobInfo.getStatusMessage(), containsString("Resource Patient/MISSING not found"));
+		assertEquals(1L, completedJobInfo.getResourceCount());
+		assertEquals("PT0", myPatientDao.read(new IdType("Patient/PT0"), mySrd).getIdElement().getIdPart());
+	}
+
+	@Test
+	public void testImportRejectsFileOutsideImportDirectory() {
+		try {
+			myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Collections.singletonList("../outside.ndjson"), true));
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("Invalid bulk import file name"));
+		}
+	}
+
+	@Test
+	public void testImportRejectsMissingFile() {
+		try {
+			myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Collections.singletonList("missing.ndjson"), true));
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("Unable to read bulk import file"));
+		}
+	}
+
+	@Test
+	public void testImportDisabled() {
+		myDaoConfig.setBulkImportDirectory(null);
+		try {
+			myBulkDataImportSvc.submitJob(new BulkDataImportOptions(Collections.singletonList("file.ndjson"), true));
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Bulk import is not enabled on this server", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testGetJobInfoForUnknownJob() {
+		try {
+			myBulkDataImportSvc.getJobInfoOrThrowResourceNotFound("FOO");
+			fail();
+		} catch (ResourceNotFoundException e) {
+			assertEquals("Unknown job: FOO", e.getMessage());
+		}
+	}
+
+	private void writeFile(String theFileName, String theContents) throws IOException {
+		FileUtils.writeStringToFile(new File(myImportDirectory, theFileName), theContents, StandardCharsets.UTF_8);
+	}
+
+	private IBulkDataImportSvc.JobInfo awaitJobCompletion(String theJobId) {
+		await().atMost(120, TimeUnit.SECONDS).until(() -> {
+			IBulkDataImportSvc.JobInfo jobInfo = myBulkDataImportSvc.getJobInfoOrThrowResourceNotFound(theJobId);
+			ourLog.info("Bulk import job {} currently has status: {}", theJobId, jobInfo.getStatus());
+			return jobInfo.getStatus() == BulkJobStatusEnum.COMPLETE || jobInfo.getStatus() == BulkJobStatusEnum.ERROR;
+		});
+		return myBulkDataImportSvc.getJobInfoOrThrowResourceNotFound(theJobId);
+	}
+
+}
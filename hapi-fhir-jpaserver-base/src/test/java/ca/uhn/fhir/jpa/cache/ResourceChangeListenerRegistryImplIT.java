@@ -2,6 +2,7 @@ package ca.uhn.fhir.jpa.cache;
 
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.param.DateRangeParam;
@@ -19,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -36,6 +38,8 @@ public class ResourceChangeListenerRegistryImplIT extends BaseJpaR4Test {
 	ResourceChangeListenerRegistryImpl myResourceChangeListenerRegistry;
 	@Autowired
 	ResourceChangeListenerCacheRefresherImpl myResourceChangeListenerCacheRefresher;
+	@Autowired
+	ResourceChangeListenerRegistryInterceptor myResourceChangeListenerRegistryInterceptor;
 
 	private final static String RESOURCE_NAME = "Patient";
 	private TestCallback myMaleTestCallback = new TestCallback("MALE");
@@ -48,6 +52,7 @@ public class ResourceChangeListenerRegistryImplIT extends BaseJpaR4Test {
 
 	@AfterEach
 	public void after() {
+		myModelConfig.setResourceChangeNotificationsEnabled(new ModelConfig().isResourceChangeNotificationsEnabled());
 		myResourceChangeListenerRegistry.clearListenersForUnitTest();
 		myResourceChangeListenerRegistry.clearCachesForUnitTest();
 	}
@@ -88,6 +93,48 @@ public class ResourceChangeListenerRegistryImplIT extends BaseJpaR4Test {
 		assertEquals(0, myResourceChangeListenerRegistry.getResourceVersionCacheSizeForUnitTest());
 	}
 
+	@Test
+	public void testChangeNotifications() throws InterruptedException {
+		myModelConfig.setResourceChangeNotificationsEnabled(true);
+		// Interceptors are unregistered after each test
+		myInterceptorRegistry.registerInterceptor(myResourceChangeListenerRegistryInterceptor);
+		IResourceChangeListenerCache cache = myResourceChangeListenerRegistry.registerResourceResourceChangeListener(RESOURCE_NAME, createSearchParameterMap(Enumerations.AdministrativeGender.MALE), myMaleTestCallback, TEST_REFRESH_INTERVAL);
+		Patient patient = createPatientWithInitLatch(Enumerations.AdministrativeGender.MALE, myMaleTestCallback);
+		IdDt patientId = new IdDt(patient.getIdElement().toUnqualifiedVersionless());
+		Instant nextRefreshTime = cache.getNextRefreshTime();
+
+		// Changes are delivered without refreshing the cache
+		myMaleTestCallback.setExpectedCount(1);
+		patient.setActive(false);
+		myPatientDao.update(patient);
+		myMaleTestCallback.awaitExpected();
+		assertEquals(2L, myMaleTestCallback.getUpdateResourceId().getVersionIdPartAsLong());
+
+		myMaleTestCallback.setExpectedCount(1);
+		Patient otherPatient = new Patient();
+		otherPatient.setGender(Enumerations.AdministrativeGender.MALE);
+		IIdType otherPatientId = myPatientDao.create(otherPatient).getId().toUnqualifiedVersionless();
+		myMaleTestCallback.awaitExpected();
+		assertThat(myMaleTestCallback.getResourceChangeEvent().getCreatedResourceIds(), hasSize(1));
+		assertEquals(otherPatientId.getValue(), myMaleTestCallback.getResourceChangeEvent().getCreatedResourceIds().get(0).toVersionless().getValue());
+		assertEquals(2, myResourceChangeListenerRegistry.getResourceVersionCacheSizeForUnitTest());
+
+		// Moving out of the search parameter map looks like a delete
+		myMaleTestCallback.setExpectedCount(1);
+		patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+		myPatientDao.update(patient);
+		myMaleTestCallback.awaitExpected();
+		assertEquals(patientId, myMaleTestCallback.getDeletedResourceId());
+
+		myMaleTestCallback.setExpectedCount(1);
+		myPatientDao.delete(otherPatientId);
+		myMaleTestCallback.awaitExpected();
+		assertEquals(otherPatientId.getValue(), myMaleTestCallback.getDeletedResourceId().getValue());
+		assertEquals(0, myResourceChangeListenerRegistry.getResourceVersionCacheSizeForUnitTest());
+
+		assertEquals(nextRefreshTime, cache.getNextRefreshTime());
+	}
+
 	@Test
 	public void testNonInMemorySearchParamCannotBeRegistered() {
 		try {
@@ -1,8 +1,10 @@
 package ca.uhn.fhir.jpa.dao;
 
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BaseHapiFhirDaoTest {
 
@@ -13,4 +15,19 @@ public class BaseHapiFhirDaoTest {
 		assertEquals("abc", BaseHapiFhirDao.cleanProvenanceSourceUri("abc#def"));
 		assertEquals("abc", BaseHapiFhirDao.cleanProvenanceSourceUri("abc#def#ghi"));
 	}
+
+	@Test
+	public void encodeAndDecodeResourceText() {
+		String text = "{\"resourceType\":\"Patient\",\"name\":[{\"family\":\"Smith\",\"given\":[\"Jörg\"]}],\"identifier\":[{\"system\":\"http://foo\",\"value\":\"123\"}]}";
+
+		for (ResourceEncodingEnum next : new ResourceEncodingEnum[]{ResourceEncodingEnum.JSON, ResourceEncodingEnum.JSONC, ResourceEncodingEnum.JSOND}) {
+			byte[] encoded = BaseHapiFhirDao.encodeResourceText(text, next);
+			assertEquals(text, BaseHapiFhirDao.decodeResource(encoded, next), next.name());
+		}
+
+		// The preset dictionary should beat plain GZip for small resources
+		byte[] gzip = BaseHapiFhirDao.encodeResourceText(text, ResourceEncodingEnum.JSONC);
+		byte[] deflate = BaseHapiFhirDao.encodeResourceText(text, ResourceEncodingEnum.JSOND);
+		assertTrue(deflate.length < gzip.length, "Expected " + deflate.length + " < " + gzip.length);
+	}
 }
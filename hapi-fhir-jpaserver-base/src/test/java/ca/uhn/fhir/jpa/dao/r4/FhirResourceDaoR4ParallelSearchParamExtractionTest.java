@@ -0,0 +1,140 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.NormalizedQuantitySearchLevel;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Questionnaire;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FhirResourceDaoR4ParallelSearchParamExtractionTest extends BaseJpaR4Test {
+
+	@Autowired
+	private SearchParamExtractorService mySearchParamExtractorService;
+
+	@AfterEach
+	public void after() {
+		myModelConfig.setSearchParamExtractionThreadCount(new ModelConfig().getSearchParamExtractionThreadCount());
+		myModelConfig.setNormalizedQuantitySearchLevel(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_SEARCH_NOT_SUPPORTED);
+	}
+
+	@Test
+	public void testParallelExtractionMatchesSerialExtraction() {
+		myModelConfig.setNormalizedQuantitySearchLevel(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_STORAGE_SUPPORTED);
+
+		Questionnaire questionnaire = new Questionnaire();
+		questionnaire.setUrl("http://example.com/Questionnaire/big");
+		questionnaire.setName("BIG");
+		questionnaire.setTitle("A Big Questionnaire");
+		questionnaire.addIdentifier().setSystem("http://foo").setValue("123");
+		questionnaire.getDateElement().setValueAsString("2021-02-03");
+		for (int i = 0; i < 200; i++) {
+			Questionnaire.QuestionnaireItemComponent item = questionnaire.addItem();
+			item.setLinkId("item" + i);
+			item.addCode().setSystem("http://loinc.org").setCode("CODE" + i).setDisplay("Display " + i);
+			item.addItem().setLinkId("item" + i + ".1").addCode().setSystem("http://snomed.info/sct").setCode("SUB" + i);
+		}
+
+		Organization org = new Organization();
+		org.setId("#org");
+		org.setName("ORG");
+		Patient patient = new Patient();
+		patient.getContained().add(org);
+		patient.setManagingOrganization(new Reference("#org"));
+		patient.addGeneralPractitioner(new Reference("Practitioner/123"));
+		patient.addName().setFamily("FAMILY").addGiven("GIVEN1").addGiven("GIVEN2");
+		patient.addAddress().addLine("123 Fake Street").setCity("Toronto").setCountry("CA");
+		patient.addTelecom().setValue("555-1234");
+		patient.getBirthDateElement().setValueAsString("1980-01-01");
+
+		Observation obs = new Observation();
+		obs.setSubject(new Reference("Patient/123"));
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		obs.setValue(new Quantity().setValue(123).setSystem("http://unitsofmeasure.org").setCode("mg"));
+		obs.getEffectiveDateTimeType().setValueAsString("2021-01-01T12:00:00Z");
+
+		Location location = new Location();
+		location.getPosition().setLatitude(43.6532).setLongitude(-79.3832);
+
+		for (IBaseResource next : new IBaseResource[]{questionnaire, patient, obs, location}) {
+			myModelConfig.setSearchParamExtractionThreadCount(0);
+			ResourceIndexedSearchParams expected = extract(next);
+			myModelConfig.setSearchParamExtractionThreadCount(4);
+			ResourceIndexedSearchParams actual = extract(next);
+
+			assertEquals(toStrings(expected.myStringParams), toStrings(actual.myStringParams));
+			assertEquals(toStrings(expected.myTokenParams), toStrings(actual.myTokenParams));
+			assertEquals(toStrings(expected.myNumberParams), toStrings(actual.myNumberParams));
+			assertEquals(toStrings(expected.myQuantityParams), toStrings(actual.myQuantityParams));
+			assertEquals(toStrings(expected.myQuantityNormalizedParams), toStrings(actual.myQuantityNormalizedParams));
+			assertEquals(toStrings(expected.myDateParams), toStrings(actual.myDateParams));
+			assertEquals(toStrings(expected.myUriParams), toStrings(actual.myUriParams));
+			assertEquals(toStrings(expected.myCoordsParams), toStrings(actual.myCoordsParams));
+			assertEquals(toStrings(expected.myLinks), toStrings(actual.myLinks));
+			assertEquals(expected.myPopulatedResourceLinkParameters, actual.myPopulatedResourceLinkParameters);
+		}
+	}
+
+	@Test
+	public void testCreateAndSearchWithParallelExtraction() {
+		myModelConfig.setSearchParamExtractionThreadCount(4);
+
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("http://foo").setValue("123");
+		IIdType patientId = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		Observation obs = new Observation();
+		obs.setSubject(new Reference(patientId));
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		IIdType obsId = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "1234-5"));
+		map.add(Observation.SP_SUBJECT, new ReferenceParam(patientId.getValue()));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map)), contains(obsId.getValue()));
+	}
+
+	private ResourceIndexedSearchParams extract(IBaseResource theResource) {
+		ResourceTable entity = new ResourceTable();
+		entity.setResourceType(myFhirCtx.getResourceType(theResource));
+		ResourceIndexedSearchParams retVal = new ResourceIndexedSearchParams();
+		mySearchParamExtractorService.extractFromResource(RequestPartitionId.allPartitions(), mySrd, retVal, entity, theResource, new TransactionDetails(), false);
+		return retVal;
+	}
+
+	private static List<String> toStrings(Collection<?> theParams) {
+		Stream<String> retVal = theParams.stream().map(Object::toString);
+		// The iteration order of a set isn't stable between two extractions even when done serially
+		if (theParams instanceof Set) {
+			retVal = retVal.sorted();
+		}
+		return retVal.collect(Collectors.toList());
+	}
+
+}
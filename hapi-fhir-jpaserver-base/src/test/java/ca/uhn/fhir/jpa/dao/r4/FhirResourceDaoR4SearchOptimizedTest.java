@@ -82,6 +82,7 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 		myDaoConfig.setSearchPreFetchThresholds(new DaoConfig().getSearchPreFetchThresholds());
 		myCaptureQueriesListener.setCaptureQueryStackTrace(false);
 		myDaoConfig.setIndexMissingFields(new DaoConfig().getIndexMissingFields());
+		myDaoConfig.setSearchResourceParsingThreadCount(new DaoConfig().getSearchResourceParsingThreadCount());
 	}
 
 	private void create200Patients() {
@@ -96,6 +97,21 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 		});
 	}
 
+	@Test
+	public void testFetchResourcesWithParallelParsing() {
+		create200Patients();
+		myDaoConfig.setSearchResourceParsingThreadCount(4);
+
+		SearchParameterMap params = new SearchParameterMap().setLoadSynchronous(true);
+		params.setSort(new SortSpec(Patient.SP_FAMILY));
+		IBundleProvider results = myPatientDao.search(params);
+		List<String> ids = toUnqualifiedVersionlessIdValues(results);
+		assertEquals(200, ids.size());
+		for (int i = 0; i < 200; i++) {
+			assertEquals("Patient/PT" + leftPad(Integer.toString(i), 5, '0'), ids.get(i));
+		}
+	}
+
 	@Test
 	public void testFetchCountOnly() {
 		create200Patients();
@@ -109,6 +109,8 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 	public void after() {
 		myDaoConfig.setAllowInlineMatchUrlReferences(false);
 		myDaoConfig.setAllowMultipleDelete(new DaoConfig().isAllowMultipleDelete());
+		myDaoConfig.setResourceEncoding(new DaoConfig().getResourceEncoding());
+		myDaoConfig.setReencodeResourceBodiesDuringReindexing(new DaoConfig().isReencodeResourceBodiesDuringReindexing());
         myModelConfig.setNormalizedQuantitySearchLevel(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_SEARCH_NOT_SUPPORTED);
     }
 
@@ -536,6 +538,30 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 		}
 	}
 
+	@Test
+	public void testReindexingReencodesResourceBodies() {
+		Patient p = new Patient();
+		p.setId("Patient/A");
+		for (int i = 0; i < 3; i++) {
+			p.addName().setFamily("family" + i);
+			myPatientDao.update(p, mySrd);
+		}
+
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSOND);
+		myDaoConfig.setReencodeResourceBodiesDuringReindexing(true);
+		myResourceReindexingSvc.markAllResourcesForReindexing("Patient");
+		myResourceReindexingSvc.forceReindexingPass();
+
+		runInTransaction(() -> {
+			List<ResourceHistoryTable> versions = myResourceHistoryTableDao.findAll();
+			assertEquals(3, versions.size());
+			for (ResourceHistoryTable next : versions) {
+				assertEquals(ResourceEncodingEnum.JSOND, next.getEncoding());
+			}
+		});
+		assertEquals("family1", myPatientDao.read(new IdType("Patient/A/_history/2"), mySrd).getName().get(1).getFamily());
+	}
+
 	@Test
 	public void testReindexing() throws InterruptedException {
 		Patient p = new Patient();
@@ -1889,6 +1915,97 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 
 	}
 
+	@Test
+	public void testTransactionDeleteAndConditionalCreateWithSameIdentifier() {
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:system").setValue("testTransactionDeleteAndConditionalCreateWithSameIdentifier");
+		IIdType id = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		Bundle request = new Bundle();
+		request.addEntry().getRequest().setMethod(HTTPVerb.DELETE).setUrl(id.getValue());
+		p = new Patient();
+		p.addIdentifier().setSystem("urn:system").setValue("testTransactionDeleteAndConditionalCreateWithSameIdentifier");
+		request.addEntry()
+			.setResource(p)
+			.getRequest()
+			.setMethod(HTTPVerb.POST)
+			.setUrl("Patient")
+			.setIfNoneExist("Patient?identifier=urn:system|testTransactionDeleteAndConditionalCreateWithSameIdentifier");
+
+		Bundle resp = mySystemDao.transaction(mySrd, request);
+		assertEquals(2, resp.getEntry().size());
+		assertEquals(Constants.STATUS_HTTP_204_NO_CONTENT + " No Content", resp.getEntry().get(0).getResponse().getStatus());
+		assertEquals("201 Created", resp.getEntry().get(1).getResponse().getStatus());
+		assertNotEquals(id.getIdPart(), new IdType(resp.getEntry().get(1).getResponse().getLocation()).getIdPart());
+	}
+
+	@Test
+	public void testTransactionUpdateOfPreResolvedReferenceTarget() {
+		Patient p = new Patient();
+		p.setId("Patient/PRE-RESOLVED");
+		p.setActive(false);
+		myPatientDao.update(p, mySrd);
+
+		Bundle request = new Bundle();
+		p = new Patient();
+		p.setId("Patient/PRE-RESOLVED");
+		p.setActive(true);
+		request.addEntry().setResource(p).getRequest().setMethod(HTTPVerb.PUT).setUrl("Patient/PRE-RESOLVED");
+		Observation o = new Observation();
+		o.setId("Observation/PRE-RESOLVED");
+		o.getSubject().setReference("Patient/PRE-RESOLVED");
+		request.addEntry().setResource(o).getRequest().setMethod(HTTPVerb.PUT).setUrl("Observation/PRE-RESOLVED");
+		p = new Patient();
+		p.setId("Patient/NOT-PRE-RESOLVED");
+		request.addEntry().setResource(p).getRequest().setMethod(HTTPVerb.PUT).setUrl("Patient/NOT-PRE-RESOLVED");
+		o = new Observation();
+		o.setId("Observation/NOT-PRE-RESOLVED");
+		o.getSubject().setReference("Patient/NOT-PRE-RESOLVED");
+		request.addEntry().setResource(o).getRequest().setMethod(HTTPVerb.PUT).setUrl("Observation/NOT-PRE-RESOLVED");
+
+		Bundle resp = mySystemDao.transaction(mySrd, request);
+		assertEquals("200 OK", resp.getEntry().get(0).getResponse().getStatus());
+		assertEquals("Patient/PRE-RESOLVED/_history/2", new IdType(resp.getEntry().get(0).getResponse().getLocation()).toUnqualified().getValue());
+		assertEquals("201 Created", resp.getEntry().get(2).getResponse().getStatus());
+
+		assertTrue(myPatientDao.read(new IdType("Patient/PRE-RESOLVED"), mySrd).getActive());
+		assertEquals("Patient/PRE-RESOLVED", myObservationDao.read(new IdType("Observation/PRE-RESOLVED"), mySrd).getSubject().getReference());
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam("Patient/PRE-RESOLVED"));
+		assertEquals(1, myObservationDao.search(map).sizeOrThrowNpe());
+		map = SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam("Patient/NOT-PRE-RESOLVED"));
+		assertEquals(1, myObservationDao.search(map).sizeOrThrowNpe());
+	}
+
+	@Test
+	public void testTransactionDeleteAndUpdateOfPreResolvedReferenceTarget() {
+		Patient p = new Patient();
+		p.setId("Patient/DELETED");
+		p.setActive(false);
+		myPatientDao.update(p, mySrd);
+
+		Bundle request = new Bundle();
+		request.addEntry().getRequest().setMethod(HTTPVerb.DELETE).setUrl("Patient/DELETED");
+		p = new Patient();
+		p.setId("Patient/DELETED");
+		p.setActive(true);
+		request.addEntry().setResource(p).getRequest().setMethod(HTTPVerb.PUT).setUrl("Patient/DELETED");
+		Observation o = new Observation();
+		o.setId("Observation/DELETED");
+		o.getSubject().setReference("Patient/DELETED");
+		request.addEntry().setResource(o).getRequest().setMethod(HTTPVerb.PUT).setUrl("Observation/DELETED");
+
+		Bundle resp = mySystemDao.transaction(mySrd, request);
+		assertEquals(Constants.STATUS_HTTP_204_NO_CONTENT + " No Content", resp.getEntry().get(0).getResponse().getStatus());
+		assertEquals("Patient/DELETED/_history/4", new IdType(resp.getEntry().get(1).getResponse().getLocation()).toUnqualified().getValue());
+
+		// The resolved ID of the deleted resource still refers to the same resource once it is recreated
+		Patient patient = myPatientDao.read(new IdType("Patient/DELETED"), mySrd);
+		assertTrue(patient.getActive());
+		assertEquals("4", patient.getIdElement().getVersionIdPart());
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Observation.SP_SUBJECT, new ReferenceParam("Patient/DELETED"));
+		assertEquals(1, myObservationDao.search(map).sizeOrThrowNpe());
+	}
+
 	@Test
 	public void testTransactionDeleteMatchUrlWithTwoMatch() {
 		myDaoConfig.setAllowMultipleDelete(false);
@@ -0,0 +1,144 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.narrative.DefaultThymeleafNarrativeGenerator;
+import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResourceProviderR4PreEncodedReadTest extends BaseResourceProviderR4Test {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(ResourceProviderR4PreEncodedReadTest.class);
+
+	@Override
+	@BeforeEach
+	public void before() throws Exception {
+		super.before();
+		// Any interceptor with an outgoing response hook (including the CORS interceptor) disables the pre-encoded responses
+		ourRestServer.getInterceptorService().unregisterAllInterceptors();
+		myFhirCtx.setNarrativeGenerator(null);
+	}
+
+	@Override
+	@AfterEach
+	public void after() throws Exception {
+		super.after();
+		myDaoConfig.setPreEncodedReadResponsesEnabled(new DaoConfig().isPreEncodedReadResponsesEnabled());
+		myDaoConfig.setAllowExternalReferences(new DaoConfig().isAllowExternalReferences());
+		myFhirCtx.setNarrativeGenerator(new DefaultThymeleafNarrativeGenerator());
+	}
+
+	@Test
+	public void testReadMatchesParsedResponse() throws IOException {
+		IIdType id = createPatient();
+		myDaoConfig.setPreEncodedReadResponsesEnabled(false);
+		String expected = fetch("/Patient/" + id.getIdPart() + "?_format=json");
+		String expectedVread = fetch("/Patient/" + id.getIdPart() + "/_history/2?_format=json");
+
+		myDaoConfig.setPreEncodedReadResponsesEnabled(true);
+		String actual = fetch("/Patient/" + id.getIdPart() + "?_format=json");
+		String actualVread = fetch("/Patient/" + id.getIdPart() + "/_history/2?_format=json");
+		ourLog.info("Response: {}", actual);
+
+		assertEquals(expected, actual);
+		assertEquals(expectedVread, actualVread);
+		assertThat(actual, containsString("\"versionId\":\"2\""));
+		assertThat(actual, containsString("\"family\":\"UPDATED\""));
+	}
+
+	@Test
+	public void testReadWithReferenceToServerBaseMatchesParsedResponse() throws IOException {
+		myDaoConfig.setAllowExternalReferences(true);
+		Patient patient = new Patient();
+		patient.getManagingOrganization().setReference(ourServerBase + "/Organization/ORG");
+		patient.addExtension().setUrl("/StructureDefinition/foo").setValue(new StringType("bar"));
+		IIdType id = myPatientDao.create(patient).getId().toUnqualifiedVersionless();
+
+		myDaoConfig.setPreEncodedReadResponsesEnabled(false);
+		String expected = fetch("/Patient/" + id.getIdPart() + "?_format=json");
+		assertThat(expected, containsString("\"reference\":\"Organization/ORG\""));
+
+		myDaoConfig.setPreEncodedReadResponsesEnabled(true);
+		String actual = fetch("/Patient/" + id.getIdPart() + "?_format=json");
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testReadWithPresentationParametersIsEncodedByParser() throws IOException {
+		IIdType id = createPatient();
+		myDaoConfig.setPreEncodedReadResponsesEnabled(true);
+
+		String summary = fetch("/Patient/" + id.getIdPart() + "?_format=json&_summary=true");
+		assertThat(summary, containsString("\"SUBSETTED\""));
+
+		String pretty = fetch("/Patient/" + id.getIdPart() + "?_format=json&_pretty=true");
+		assertThat(pretty, containsString("\n"));
+
+		String xml = fetch("/Patient/" + id.getIdPart() + "?_format=xml");
+		assertThat(xml, containsString("<Patient"));
+	}
+
+	@Test
+	public void testReadWithPreShowInterceptorIsEncodedByParser() throws IOException {
+		IIdType id = createPatient();
+		myDaoConfig.setPreEncodedReadResponsesEnabled(true);
+
+		Object interceptor = new Object() {
+			@Hook(Pointcut.STORAGE_PRESHOW_RESOURCES)
+			public void preShow(IPreResourceShowDetails theDetails) {
+				for (IBaseResource next : theDetails) {
+					((Patient) next).setGender(Enumerations.AdministrativeGender.FEMALE);
+				}
+			}
+		};
+		myInterceptorRegistry.registerInterceptor(interceptor);
+		try {
+			String actual = fetch("/Patient/" + id.getIdPart() + "?_format=json");
+			assertThat(actual, containsString("\"gender\":\"female\""));
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+	}
+
+	private IIdType createPatient() {
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("http://foo").setValue("123");
+		patient.addName().setFamily("FAMILY").addGiven("GIVEN");
+		patient.setGender(Enumerations.AdministrativeGender.MALE);
+		IIdType id = myPatientDao.create(patient).getId().toUnqualifiedVersionless();
+
+		patient.setId(id);
+		patient.getNameFirstRep().setFamily("UPDATED");
+		myPatientDao.update(patient);
+		return id;
+	}
+
+	private String fetch(String theUrl) throws IOException {
+		HttpGet get = new HttpGet(ourServerBase + theUrl);
+		try (CloseableHttpResponse resp = ourHttpClient.execute(get)) {
+			assertEquals(200, resp.getStatusLine().getStatusCode());
+			return IOUtils.toString(resp.getEntity().getContent(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package ca.uhn.fhir.jpa.search.builder;
+
+import ca.uhn.fhir.jpa.util.QueryChunker;
+import org.hibernate.dialect.PostgreSQL10Dialect;
+import org.hibernate.dialect.SQLServer2012Dialect;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SearchBuilderTest {
+
+	/**
+	 * SQL Server refuses statements with more than 2100 bind parameters, so a padded
+	 * chunk has to leave room for the other parameters in the search query
+	 */
+	@Test
+	public void testNormalizeIdListNeverExceedsChunkSizeForSqlServer() {
+		int chunkSize = QueryChunker.getMaximumChunkSize(new SQLServer2012Dialect());
+		assertThat(chunkSize, lessThanOrEqualTo(1000));
+
+		for (int size = chunkSize - 5; size <= chunkSize; size++) {
+			List<Long> pids = newPidList(size);
+			assertEquals(chunkSize, SearchBuilder.normalizeIdListForLastNInClause(pids).size());
+		}
+
+		// A chunk of 801 IDs is padded up to the chunk size
+		assertEquals(chunkSize, SearchBuilder.normalizeIdListForLastNInClause(newPidList(801)).size());
+	}
+
+	@Test
+	public void testNormalizeIdListNeverExceedsChunkSizeForPostgres() {
+		int chunkSize = QueryChunker.getMaximumChunkSize(new PostgreSQL10Dialect());
+
+		assertEquals(chunkSize, SearchBuilder.normalizeIdListForLastNInClause(newPidList(chunkSize - 1)).size());
+		assertEquals(2000, SearchBuilder.normalizeIdListForLastNInClause(newPidList(1001)).size());
+	}
+
+	private static List<Long> newPidList(int theSize) {
+		return LongStream.range(0, theSize).boxed().collect(Collectors.toCollection(ArrayList::new));
+	}
+
+}
@@ -7,7 +7,9 @@ import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.jpa.search.builder.predicate.ResourceTablePredicateBuilder;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.hibernate.dialect.DerbyTenSevenDialect;
 import org.hibernate.dialect.MariaDB103Dialect;
 import org.hibernate.dialect.MySQL8Dialect;
@@ -173,18 +175,18 @@ public class SearchQueryBuilderTest {
 
 		// No range
 		generated = builder.generate(null, null);
-		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) ))", generated.getSql());
-		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", 500L, 501L));
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID = ANY(CAST(? AS BIGINT[]))))", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500,501}"));
 
 		// Max only
 		generated = builder.generate(null, 10);
-		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) )) limit ?", generated.getSql());
-		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", 500L, 501L, 10));
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID = ANY(CAST(? AS BIGINT[])))) limit ?", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500,501}", 10));
 
 		// Range
 		generated = builder.generate(10, 5);
-		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) )) limit ? offset ?", generated.getSql());
-		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", 500L, 501L, 5, 10));
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID = ANY(CAST(? AS BIGINT[])))) limit ? offset ?", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500,501}", 5, 10));
 
 	}
 
@@ -200,18 +202,32 @@ public class SearchQueryBuilderTest {
 
 		// No range
 		generated = builder.generate(null, null);
-		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) )) ORDER BY t0.RES_UPDATED ASC NULLS LAST", generated.getSql());
-		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", 500L, 501L));
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID = ANY(CAST(? AS BIGINT[])))) ORDER BY t0.RES_UPDATED ASC NULLS LAST", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500,501}"));
 
 		// Max only
 		generated = builder.generate(null, 10);
-		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) )) ORDER BY t0.RES_UPDATED ASC NULLS LAST limit ?", generated.getSql());
-		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", 500L, 501L, 10));
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID = ANY(CAST(? AS BIGINT[])))) ORDER BY t0.RES_UPDATED ASC NULLS LAST limit ?", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500,501}", 10));
 
 		// Range
 		generated = builder.generate(10, 5);
-		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) )) ORDER BY t0.RES_UPDATED ASC NULLS LAST limit ? offset ?", generated.getSql());
-		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", 500L, 501L, 5, 10));
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID = ANY(CAST(? AS BIGINT[])))) ORDER BY t0.RES_UPDATED ASC NULLS LAST limit ? offset ?", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500,501}", 5, 10));
+
+	}
+
+	@Test
+	public void testExcludeResourceIdsPostgreSQL95() {
+
+		HibernatePropertiesProvider dialectProvider = new HibernatePropertiesProvider();
+		dialectProvider.setDialectForUnitTest(new PostgreSQL95Dialect());
+		SearchQueryBuilder builder = new SearchQueryBuilder(myFhirContext, myModelConfig, myPartitionSettings, myRequestPartitionId, "Patient", mySqlBuilderFactory, dialectProvider, false);
+		builder.excludeResourceIdsPredicate(Sets.newHashSet(new ResourcePersistentId(500L)));
+
+		GeneratedSql generated = builder.generate(null, null);
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (NOT (t0.RES_ID = ANY(CAST(? AS BIGINT[])))))", generated.getSql());
+		assertThat(generated.getBindVariables().toString(), generated.getBindVariables(), contains("Patient", "{500}"));
 
 	}
 
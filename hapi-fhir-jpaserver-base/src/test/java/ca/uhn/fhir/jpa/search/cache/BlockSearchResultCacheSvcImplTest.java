@@ -0,0 +1,88 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+public class BlockSearchResultCacheSvcImplTest {
+
+	private final TreeMap<Integer, SearchResultBlock> myBlocks = new TreeMap<>();
+	@Mock
+	private ISearchResultBlockDao mySearchResultBlockDao;
+	@Mock
+	private Search mySearch;
+	private BlockSearchResultCacheSvcImpl mySvc;
+
+	@BeforeEach
+	public void before() {
+		mySvc = new BlockSearchResultCacheSvcImpl();
+		mySvc.setSearchResultBlockDaoForUnitTest(mySearchResultBlockDao);
+
+		lenient().when(mySearch.getId()).thenReturn(123L);
+
+		lenient().when(mySearchResultBlockDao.saveAll(any())).thenAnswer(t -> {
+			Iterable<SearchResultBlock> blocks = t.getArgument(0);
+			blocks.forEach(b -> myBlocks.put(b.getBlockIndex(), b));
+			return blocks;
+		});
+		lenient().when(mySearchResultBlockDao.findBlock(anyLong(), anyInt())).thenAnswer(t -> Optional.ofNullable(myBlocks.get(t.getArgument(1, Integer.class))));
+		lenient().when(mySearchResultBlockDao.findAllBlocks(anyLong())).thenAnswer(t -> new ArrayList<>(myBlocks.values()));
+		lenient().when(mySearchResultBlockDao.findBlocks(anyLong(), anyInt(), anyInt())).thenAnswer(t -> new ArrayList<>(myBlocks.subMap(t.getArgument(1), true, t.getArgument(2), true).values()));
+	}
+
+	@Test
+	public void testEncodeAndDecode() {
+		long[] pids = new long[]{1L, 2L, 3L, 1000L, 5L, Long.MAX_VALUE, 0L, Long.MIN_VALUE, -1L};
+		byte[] encoded = BlockSearchResultCacheSvcImpl.encode(pids);
+		assertArrayEquals(pids, BlockSearchResultCacheSvcImpl.decode(encoded, pids.length));
+	}
+
+	@Test
+	public void testEncodingIsCompact() {
+		long[] pids = LongStream.range(1000000, 1001000).toArray();
+		byte[] encoded = BlockSearchResultCacheSvcImpl.encode(pids);
+		assertTrue(encoded.length < 1010, "Encoded length was " + encoded.length);
+	}
+
+	@Test
+	public void testStoreInSeveralPassesAndFetch() {
+		List<ResourcePersistentId> all = LongStream.range(0, 2500).map(t -> 5000 - t * 2).mapToObj(ResourcePersistentId::new).collect(Collectors.toList());
+
+		// Store in passes that don't line up with the block boundaries
+		mySvc.storeResults(mySearch, all.subList(0, 0), all.subList(0, 700));
+		mySvc.storeResults(mySearch, all.subList(0, 700), all.subList(700, 1700));
+		mySvc.storeResults(mySearch, all.subList(0, 1700), all.subList(1700, 2500));
+
+		assertEquals(3, myBlocks.size());
+		assertEquals(500, myBlocks.get(2).getResultCount());
+
+		assertEquals(all, mySvc.fetchAllResultPids(mySearch));
+		assertEquals(all.subList(0, 10), mySvc.fetchResultPids(mySearch, 0, 10));
+		assertEquals(all.subList(990, 2010), mySvc.fetchResultPids(mySearch, 990, 2010));
+		assertEquals(all.subList(2400, 2500), mySvc.fetchResultPids(mySearch, 2400, 2600));
+		assertEquals(0, mySvc.fetchResultPids(mySearch, 3000, 3010).size());
+	}
+
+}
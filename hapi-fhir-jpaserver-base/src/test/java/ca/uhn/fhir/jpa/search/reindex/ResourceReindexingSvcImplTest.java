@@ -14,6 +14,7 @@ import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -25,10 +26,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.SliceImpl;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -40,10 +44,14 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -306,6 +314,70 @@ public class ResourceReindexingSvcImplTest extends BaseJpaTest {
 		verify(myResourceTableDao, times(1)).updateIndexStatus(eq(0L), eq(BaseHapiFhirDao.INDEX_STATUS_INDEXING_FAILED));
 	}
 
+	@Test
+	public void testReindexWorkUnitFallsBackToIndividualTransactions() {
+		mockNothingToExpunge();
+		mockSingleReindexingJob(null);
+		mockFourResourcesNeedReindexing();
+		mockFetchFourResources();
+		EntityManager entityManager = mock(EntityManager.class);
+		when(entityManager.createQuery(any(String.class))).thenReturn(mock(Query.class));
+		mySvc.setEntityManagerForUnitTest(entityManager);
+		// Resource 1 can't be read, so the work unit containing it needs to be retried one resource at a time
+		doReturn(null).when(myResourceDao).read(argThat(t -> "1".equals(((IIdType) t).getIdPart())), any(), anyBoolean());
+
+		int count = mySvc.forceReindexingPass();
+		assertEquals(3, count);
+
+		verify(myResourceTableDao, times(1)).updateIndexStatus(eq(1L), eq(BaseHapiFhirDao.INDEX_STATUS_INDEXING_FAILED));
+		verify(myResourceTableDao, never()).updateIndexStatus(eq(0L), any());
+		verify(myTxStatus, times(2)).setRollbackOnly();
+
+		verify(myReindexJobDao, times(1)).setThresholdLow(eq(123L), eq(new Date(40 * DateUtils.MILLIS_PER_DAY)));
+		verify(myReindexJobDao, times(1)).setReindexCount(eq(123L), eq(3));
+	}
+
+	@Test
+	public void testReindexVersionConflictIsNotCounted() {
+		mockNothingToExpunge();
+		mockSingleReindexingJob(null);
+		mockFourResourcesNeedReindexing();
+		mockFetchFourResources();
+		EntityManager entityManager = mock(EntityManager.class);
+		when(entityManager.createQuery(any(String.class))).thenReturn(mock(Query.class));
+		mySvc.setEntityManagerForUnitTest(entityManager);
+		// Resource 1 conflicts both in its work unit and when it is retried on its own
+		doThrow(new ResourceVersionConflictException("CONFLICT")).when(myResourceTableDao).findById(eq(1L));
+
+		int count = mySvc.forceReindexingPass();
+		assertEquals(3, count);
+
+		// A version conflict leaves the resource to be reindexed again later, without counting it
+		verify(myResourceTableDao, never()).updateIndexStatus(any(), any());
+		verify(myReindexJobDao, times(1)).setReindexCount(eq(123L), eq(3));
+	}
+
+	@Test
+	public void testGetActiveReindexJobs() {
+		List<ResourceReindexJobEntity> entities = new ArrayList<>();
+		for (int i = 0; i < 15; i++) {
+			ResourceReindexJobEntity entity = new ResourceReindexJobEntity();
+			entity.setIdForUnitTest(i);
+			entity.setResourceType("Patient");
+			entity.setReindexCount(i * 100);
+			entities.add(entity);
+		}
+		when(myReindexJobDao.findAll(any(), eq(false))).thenReturn(entities);
+
+		List<IResourceReindexingSvc.JobInfo> jobs = mySvc.getActiveReindexJobs();
+		assertEquals(15, jobs.size());
+		assertEquals(14L, jobs.get(14).getJobId().longValue());
+		assertEquals("Patient", jobs.get(14).getResourceType());
+		assertEquals(1400, jobs.get(14).getReindexCount());
+
+		verify(myReindexJobDao, times(1)).findAll(eq(Pageable.unpaged()), eq(false));
+	}
+
 	@Test
 	public void testReindexThrowsError() {
 		mockNothingToExpunge();
@@ -101,6 +101,7 @@ public class SubscriptionTriggeringDstu3Test extends BaseResourceProviderDstu3Te
 		svc.setMaxSubmitPerPass(null);
 
 		myDaoConfig.setSearchPreFetchThresholds(new DaoConfig().getSearchPreFetchThresholds());
+		myDaoConfig.setBulkSubscriptionTriggeringEnabled(new DaoConfig().isBulkSubscriptionTriggeringEnabled());
 	}
 
 	@BeforeEach
@@ -399,6 +400,42 @@ public class SubscriptionTriggeringDstu3Test extends BaseResourceProviderDstu3Te
 
 	}
 
+	@Test
+	public void testTriggerUsingSearchWithBulkMatching() throws Exception {
+		myDaoConfig.setBulkSubscriptionTriggeringEnabled(true);
+
+		String payload = "application/fhir+json";
+		IdType subId = createSubscription("Observation?status=final", payload, ourListenerServerBase).getIdElement();
+
+		for (int i = 0; i < 20; i++) {
+			Observation o = new Observation();
+			o.setId("O" + i);
+			o.setStatus(i % 2 == 0 ? Observation.ObservationStatus.FINAL : Observation.ObservationStatus.PRELIMINARY);
+			o.getCode().setText("O" + i);
+			ourClient.update().resource(o).execute();
+		}
+
+		waitForSize(10, ourUpdatedObservations);
+		beforeReset();
+
+		Parameters response = ourClient
+			.operation()
+			.onInstance(subId)
+			.named(JpaConstants.OPERATION_TRIGGER_SUBSCRIPTION)
+			.withParameter(Parameters.class, ProviderConstants.SUBSCRIPTION_TRIGGERING_PARAM_SEARCH_URL, new StringType("Observation?"))
+			.execute();
+		String responseValue = response.getParameter().get(0).getValue().primitiveValue();
+		assertThat(responseValue, containsString("Subscription triggering job submitted as JOB ID"));
+
+		mySubscriptionTriggeringSvc.runDeliveryPass();
+
+		waitForSize(10, ourUpdatedObservations);
+		waitForSize(0, ourCreatedObservations);
+		for (Observation next : ourUpdatedObservations) {
+			assertEquals(Observation.ObservationStatus.FINAL, next.getStatus());
+		}
+	}
+
 	@Test
 	public void testTriggerUsingInvalidSearchUrl() {
 
@@ -0,0 +1,78 @@
+package ca.uhn.fhir.jpa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongHashSetTest {
+
+	@Test
+	public void testAddContainsRemove() {
+		LongHashSet set = new LongHashSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(1L));
+		assertFalse(set.add(1L));
+		assertTrue(set.add(0L));
+		assertTrue(set.add(-5L));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(0L));
+		assertTrue(set.contains(-5L));
+		assertFalse(set.contains(2L));
+
+		assertTrue(set.remove(0L));
+		assertFalse(set.remove(0L));
+		assertFalse(set.remove(2L));
+		assertEquals(2, set.size());
+
+		long[] values = set.toArray();
+		Arrays.sort(values);
+		assertEquals("[-5, 1]", Arrays.toString(values));
+
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(1L));
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		Random random = new Random(0);
+		LongHashSet set = new LongHashSet();
+		LongHashSet copy = null;
+		Set<Long> expected = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			// Mostly sequential values as with PIDs, plus some collisions and removals
+			long value = random.nextInt(20000);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(value), set.remove(value));
+			} else {
+				assertEquals(expected.add(value), set.add(value));
+			}
+			if (i == 50000) {
+				copy = new LongHashSet(set);
+			}
+		}
+
+		assertEquals(expected.size(), set.size());
+		for (long i = 0; i < 20000; i++) {
+			assertEquals(expected.contains(i), set.contains(i));
+		}
+		Set<Long> actual = new HashSet<>();
+		set.forEach(actual::add);
+		assertEquals(expected, actual);
+		assertEquals(expected, Arrays.stream(set.toArray()).boxed().collect(Collectors.toSet()));
+
+		// The copy isn't affected by later changes
+		assertTrue(copy.size() > 0);
+		copy.clear();
+		assertEquals(expected.size(), set.size());
+	}
+
+}
@@ -0,0 +1,111 @@
+package ca.uhn.fhir.jpa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongIntHashMapTest {
+
+	@Test
+	public void testPutGetRemove() {
+		LongIntHashMap map = new LongIntHashMap();
+		assertTrue(map.isEmpty());
+		map.put(1L, 10);
+		map.put(-5L, 20);
+		map.put(0L, 30);
+		assertEquals(3, map.size());
+		assertEquals(10, map.get(1L, -1));
+		assertEquals(20, map.get(-5L, -1));
+		assertEquals(30, map.get(0L, -1));
+		assertEquals(-1, map.get(2L, -1));
+		assertFalse(map.containsKey(2L));
+
+		// Replacing a value doesn't add an entry
+		map.put(1L, 11);
+		assertEquals(3, map.size());
+		assertEquals(11, map.get(1L, -1));
+
+		assertTrue(map.remove(0L));
+		assertFalse(map.remove(0L));
+		assertTrue(map.remove(1L));
+		assertFalse(map.remove(1L));
+		assertFalse(map.remove(2L));
+		assertEquals(1, map.size());
+		assertFalse(map.containsKey(0L));
+		assertEquals(-1, map.get(1L, -1));
+		assertEquals(20, map.get(-5L, -1));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertEquals(-1, map.get(-5L, -1));
+	}
+
+	@Test
+	public void testRemoveShiftsBackCollidingKeys() {
+		// The default map has 16 slots, find keys which all want the same one
+		int mask = 15;
+		List<Long> keys = new ArrayList<>();
+		for (long key = 1; keys.size() < 4; key++) {
+			if (LongHashSet.slot(key, mask) == LongHashSet.slot(1L, mask)) {
+				keys.add(key);
+			}
+		}
+
+		LongIntHashMap map = new LongIntHashMap();
+		for (int i = 0; i < keys.size(); i++) {
+			map.put(keys.get(i), i);
+		}
+
+		// Removing the first key of the probe chain must not hide the ones after it
+		assertTrue(map.remove(keys.get(0)));
+		assertEquals(-1, map.get(keys.get(0), -1));
+		assertEquals(1, map.get(keys.get(1), -1));
+		assertEquals(2, map.get(keys.get(2), -1));
+		assertEquals(3, map.get(keys.get(3), -1));
+
+		// Same in the middle of the chain
+		assertTrue(map.remove(keys.get(2)));
+		assertEquals(1, map.get(keys.get(1), -1));
+		assertEquals(-1, map.get(keys.get(2), -1));
+		assertEquals(3, map.get(keys.get(3), -1));
+		assertEquals(2, map.size());
+
+		// And the freed slots can be reused
+		map.put(keys.get(0), 100);
+		assertEquals(100, map.get(keys.get(0), -1));
+		assertEquals(3, map.get(keys.get(3), -1));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void testMatchesHashMap() {
+		Random random = new Random(0);
+		LongIntHashMap map = new LongIntHashMap();
+		Map<Long, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			// Mostly sequential keys as with PIDs, plus some collisions and removals
+			long key = random.nextInt(20000);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key) != null, map.remove(key));
+			} else {
+				map.put(key, i);
+				expected.put(key, i);
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (long i = 0; i < 20000; i++) {
+			assertEquals(expected.getOrDefault(i, -1).intValue(), map.get(i, -1));
+			assertEquals(expected.containsKey(i), map.containsKey(i));
+		}
+	}
+
+}
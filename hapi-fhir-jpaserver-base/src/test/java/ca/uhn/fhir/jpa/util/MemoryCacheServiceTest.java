@@ -0,0 +1,46 @@
+package ca.uhn.fhir.jpa.util;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.api.model.MemoryCacheSettings;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MemoryCacheServiceTest {
+
+	@Test
+	public void testStatsAreRecorded() {
+		MemoryCacheService svc = new MemoryCacheService();
+		svc.setDaoConfigForUnitTest(new DaoConfig());
+		svc.start();
+
+		assertNull(svc.getIfPresent(MemoryCacheService.CacheEnum.FORCED_ID, 1L));
+		assertEquals("A", svc.get(MemoryCacheService.CacheEnum.FORCED_ID, 1L, t -> "A"));
+		assertEquals("A", svc.get(MemoryCacheService.CacheEnum.FORCED_ID, 1L, t -> "B"));
+
+		CacheStats stats = svc.getStats(MemoryCacheService.CacheEnum.FORCED_ID);
+		assertEquals(1, stats.hitCount());
+		assertEquals(2, stats.missCount());
+		assertEquals(1, stats.loadSuccessCount());
+		assertEquals(1, svc.getEstimatedSize(MemoryCacheService.CacheEnum.FORCED_ID));
+	}
+
+	@Test
+	public void testSettingsAreAppliedPerCache() throws InterruptedException {
+		DaoConfig daoConfig = new DaoConfig();
+		daoConfig.setMemoryCacheSettings(MemoryCacheService.CacheEnum.FORCED_ID.name(), new MemoryCacheSettings().setExpireAfterWriteMillis(1));
+		MemoryCacheService svc = new MemoryCacheService();
+		svc.setDaoConfigForUnitTest(daoConfig);
+		svc.start();
+
+		svc.put(MemoryCacheService.CacheEnum.FORCED_ID, 1L, "A");
+		svc.put(MemoryCacheService.CacheEnum.PERSISTENT_ID, 1L, "A");
+		Thread.sleep(20);
+
+		assertNull(svc.getIfPresent(MemoryCacheService.CacheEnum.FORCED_ID, 1L));
+		assertEquals("A", svc.getIfPresent(MemoryCacheService.CacheEnum.PERSISTENT_ID, 1L));
+	}
+
+}
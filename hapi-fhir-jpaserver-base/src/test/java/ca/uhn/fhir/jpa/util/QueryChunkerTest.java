@@ -0,0 +1,55 @@
+package ca.uhn.fhir.jpa.util;
+
+import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MariaDB103Dialect;
+import org.hibernate.dialect.Oracle12cDialect;
+import org.hibernate.dialect.PostgreSQL10Dialect;
+import org.hibernate.dialect.SQLServer2012Dialect;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QueryChunkerTest {
+
+	@AfterEach
+	public void after() {
+		SearchBuilder.setMaxPageSize50ForTest(false);
+	}
+
+	@Test
+	public void testMaximumChunkSizeByDialect() {
+		assertEquals(SearchBuilder.MAXIMUM_PAGE_SIZE, QueryChunker.getMaximumChunkSize(null));
+		assertEquals(SearchBuilder.MAXIMUM_PAGE_SIZE, QueryChunker.getMaximumChunkSize(new H2Dialect()));
+		assertEquals(SearchBuilder.MAXIMUM_PAGE_SIZE, QueryChunker.getMaximumChunkSize(new Oracle12cDialect()));
+		assertEquals(QueryChunker.MAXIMUM_CHUNK_SIZE_LARGE, QueryChunker.getMaximumChunkSize(new PostgreSQL10Dialect()));
+		assertEquals(QueryChunker.MAXIMUM_CHUNK_SIZE_LARGE, QueryChunker.getMaximumChunkSize(new MariaDB103Dialect()));
+		assertEquals(QueryChunker.MAXIMUM_CHUNK_SIZE_SQL_SERVER, QueryChunker.getMaximumChunkSize(new SQLServer2012Dialect()));
+	}
+
+	@Test
+	public void testMaximumChunkSizeInTestMode() {
+		SearchBuilder.setMaxPageSize50ForTest(true);
+		assertEquals(SearchBuilder.MAXIMUM_PAGE_SIZE_FOR_TESTING, QueryChunker.getMaximumChunkSize(new PostgreSQL10Dialect()));
+	}
+
+	@Test
+	public void testChunkUsingDialect() {
+		List<Long> input = IntStream.range(0, 2500).mapToObj(t -> (long) t).collect(Collectors.toList());
+
+		List<Integer> sizes = new ArrayList<>();
+		new QueryChunker<Long>().chunk(input, new SQLServer2012Dialect(), t -> sizes.add(t.size()));
+		assertEquals("[1000, 1000, 500]", sizes.toString());
+
+		sizes.clear();
+		new QueryChunker<Long>().chunk(input, new H2Dialect(), t -> sizes.add(t.size()));
+		assertEquals("[800, 800, 800, 100]", sizes.toString());
+	}
+
+}
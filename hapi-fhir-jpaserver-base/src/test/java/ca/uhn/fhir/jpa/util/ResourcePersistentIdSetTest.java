@@ -0,0 +1,71 @@
+package ca.uhn.fhir.jpa.util;
+
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResourcePersistentIdSetTest {
+
+	@Test
+	public void testVersionlessAndVersionedPids() {
+		ResourcePersistentIdSet set = new ResourcePersistentIdSet();
+		assertTrue(set.add(1L));
+		assertFalse(set.add(new ResourcePersistentId(1L)));
+		assertTrue(set.add(new ResourcePersistentId(1L, 2L)));
+		assertFalse(set.add(new ResourcePersistentId(1L, 2L)));
+		assertTrue(set.add(new ResourcePersistentId(3L)));
+		assertEquals(3, set.size());
+
+		assertTrue(set.contains(1L));
+		assertTrue(set.contains(new ResourcePersistentId(1L)));
+		assertTrue(set.contains(new ResourcePersistentId(1L, 2L)));
+		assertFalse(set.contains(new ResourcePersistentId(1L, 3L)));
+		assertFalse(set.contains(new ResourcePersistentId(3L, 1L)));
+		assertFalse(set.contains("1"));
+
+		Set<ResourcePersistentId> expected = new HashSet<>(Arrays.asList(new ResourcePersistentId(1L), new ResourcePersistentId(1L, 2L), new ResourcePersistentId(3L)));
+		assertEquals(expected, set);
+		assertEquals(expected, new HashSet<>(set));
+
+		ResourcePersistentIdSet copy = new ResourcePersistentIdSet(set);
+		assertTrue(copy.remove(new ResourcePersistentId(1L, 2L)));
+		assertTrue(copy.remove(new ResourcePersistentId(3L)));
+		assertEquals(1, copy.size());
+		assertEquals(3, set.size());
+
+		assertTrue(set.removeAll(copy));
+		assertEquals(new HashSet<>(Arrays.asList(new ResourcePersistentId(1L, 2L), new ResourcePersistentId(3L))), set);
+		assertTrue(set.removeAll(Arrays.asList(new ResourcePersistentId(1L, 2L), new ResourcePersistentId(4L))));
+		assertEquals(1, set.size());
+
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.iterator().hasNext());
+	}
+
+	@Test
+	public void testAddAll() {
+		ResourcePersistentIdSet source = new ResourcePersistentIdSet();
+		source.add(1L);
+		source.add(new ResourcePersistentId(1L, 2L));
+
+		ResourcePersistentIdSet set = new ResourcePersistentIdSet();
+		set.add(3L);
+		assertTrue(set.addAll(source));
+		assertFalse(set.addAll(source));
+		assertTrue(set.addAll(Arrays.asList(new ResourcePersistentId(4L), new ResourcePersistentId(1L))));
+		assertEquals(new HashSet<>(Arrays.asList(new ResourcePersistentId(1L), new ResourcePersistentId(1L, 2L), new ResourcePersistentId(3L), new ResourcePersistentId(4L))), set);
+
+		// The sets don't share their versioned PIDs
+		source.clear();
+		assertEquals(4, set.size());
+	}
+
+}
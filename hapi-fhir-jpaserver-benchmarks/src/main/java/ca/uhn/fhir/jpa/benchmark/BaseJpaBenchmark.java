@@ -0,0 +1,126 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.partition.SystemRequestDetails;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for JMH benchmarks against a complete R4 JPA server. Subclasses are
+ * annotated with <code>@State</code> and populate the database in {@link #populate()}.
+ * <p>
+ * The iteration counts and the number of forks are fixed here so that results
+ * produced by different releases can be compared directly. They can still be
+ * overridden on the JMH command line for exploratory runs.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+public abstract class BaseJpaBenchmark {
+
+	/**
+	 * Seed used for all randomly generated data, so that every run uses the same data
+	 */
+	protected static final long RANDOM_SEED = 20210301L;
+
+	@Param({"H2"})
+	public BenchmarkDatabaseEnum myDatabase;
+
+	protected RequestDetails myRequestDetails;
+	protected IFhirResourceDao<Patient> myPatientDao;
+	protected IFhirResourceDao<Observation> myObservationDao;
+	protected IFhirSystemDao<Bundle, Meta> mySystemDao;
+	private AnnotationConfigApplicationContext myAppCtx;
+
+	@SuppressWarnings("unchecked")
+	@Setup(Level.Trial)
+	public void startServer() {
+		myAppCtx = new AnnotationConfigApplicationContext();
+		myAppCtx.registerBean(BenchmarkDatabaseEnum.class, () -> myDatabase);
+		myAppCtx.register(JpaBenchmarkConfig.class);
+		myAppCtx.refresh();
+
+		DaoRegistry daoRegistry = myAppCtx.getBean(DaoRegistry.class);
+		myPatientDao = daoRegistry.getResourceDao(Patient.class);
+		myObservationDao = daoRegistry.getResourceDao(Observation.class);
+		mySystemDao = myAppCtx.getBean(IFhirSystemDao.class);
+		myRequestDetails = new SystemRequestDetails();
+
+		populate();
+	}
+
+	/**
+	 * Returns a bean from the running server
+	 */
+	protected <T> T getBean(Class<T> theType) {
+		return myAppCtx.getBean(theType);
+	}
+
+	/**
+	 * Creates any data needed by the benchmark. Called once per trial, after the
+	 * server has started and before the warmup iterations.
+	 */
+	protected abstract void populate();
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		if (myAppCtx != null) {
+			myAppCtx.close();
+			myAppCtx = null;
+		}
+	}
+
+	/**
+	 * Performs a synchronous search and loads every resource in the results, which is
+	 * what a client sees as the latency of a search
+	 */
+	protected List<IBaseResource> searchAndLoad(IFhirResourceDao<?> theDao, SearchParameterMap theParams) {
+		theParams.setLoadSynchronous(true);
+		IBundleProvider outcome = theDao.search(theParams, myRequestDetails);
+		return outcome.getResources(0, outcome.size());
+	}
+
+}
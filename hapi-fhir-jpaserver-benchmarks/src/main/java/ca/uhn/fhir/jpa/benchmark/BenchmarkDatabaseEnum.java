@@ -0,0 +1,94 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL10Dialect;
+
+import java.sql.Driver;
+
+/**
+ * The databases that the JPA benchmarks can be run against. The embedded database
+ * is created in memory for each forked benchmark JVM, so every run starts from an
+ * empty schema.
+ */
+public enum BenchmarkDatabaseEnum {
+
+	/**
+	 * Embedded in-memory H2
+	 */
+	H2("jdbc:h2:mem:hapi_benchmark;DB_CLOSE_DELAY=-1", H2Dialect.class) {
+		@Override
+		Driver newDriver() {
+			return new org.h2.Driver();
+		}
+	},
+
+	/**
+	 * An external PostgreSQL server, or any server that is compatible with the
+	 * PostgreSQL driver and dialect. The connection is configured using the
+	 * {@link #URL_PROPERTY}, {@link #USERNAME_PROPERTY} and {@link #PASSWORD_PROPERTY}
+	 * system properties. The database should be empty before each run.
+	 */
+	POSTGRES("jdbc:postgresql://localhost:5432/hapi_benchmark", PostgreSQL10Dialect.class) {
+		@Override
+		Driver newDriver() {
+			return new org.postgresql.Driver();
+		}
+	};
+
+	public static final String URL_PROPERTY = "hapi.benchmark.jdbc.url";
+	public static final String USERNAME_PROPERTY = "hapi.benchmark.jdbc.username";
+	public static final String PASSWORD_PROPERTY = "hapi.benchmark.jdbc.password";
+
+	private final String myDefaultUrl;
+	private final Class<? extends Dialect> myDialect;
+
+	BenchmarkDatabaseEnum(String theDefaultUrl, Class<? extends Dialect> theDialect) {
+		myDefaultUrl = theDefaultUrl;
+		myDialect = theDialect;
+	}
+
+	abstract Driver newDriver();
+
+	public Class<? extends Dialect> getDialect() {
+		return myDialect;
+	}
+
+	public BasicDataSource newDataSource() {
+		BasicDataSource retVal = new BasicDataSource();
+		retVal.setDriver(newDriver());
+		if (this == POSTGRES) {
+			retVal.setUrl(System.getProperty(URL_PROPERTY, myDefaultUrl));
+			retVal.setUsername(System.getProperty(USERNAME_PROPERTY, "hapi"));
+			retVal.setPassword(System.getProperty(PASSWORD_PROPERTY, ""));
+		} else {
+			retVal.setUrl(myDefaultUrl);
+			retVal.setUsername("");
+			retVal.setPassword("");
+		}
+		retVal.setMaxTotal(20);
+		return retVal;
+	}
+
+}
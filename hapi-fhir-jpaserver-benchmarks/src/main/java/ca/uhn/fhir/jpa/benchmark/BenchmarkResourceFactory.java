@@ -0,0 +1,97 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+
+import java.util.Random;
+
+/**
+ * Generates realistic looking resources for the benchmarks. All values are derived
+ * from the supplied {@link Random}, so a given seed always produces the same data.
+ */
+public class BenchmarkResourceFactory {
+
+	public static final String IDENTIFIER_SYSTEM = "http://example.com/mrn";
+	public static final String LOINC_SYSTEM = "http://loinc.org";
+	/**
+	 * A small set of common vital sign codes, so that token searches match a
+	 * predictable fraction of the observations
+	 */
+	public static final String[] OBSERVATION_CODES = {"8867-4", "8480-6", "8462-4", "8310-5", "29463-7", "8302-2", "9279-1", "2708-6", "39156-5", "85354-9"};
+	public static final int FIRST_YEAR = 2000;
+	public static final int YEAR_COUNT = 20;
+
+	private static final String[] FAMILY_NAMES = {"Smith", "Jones", "Williams", "Brown", "Taylor", "Davies", "Wilson", "Evans", "Thomas", "Roberts"};
+	private static final String[] GIVEN_NAMES = {"Oliver", "Amelia", "George", "Isla", "Harry", "Ava", "Noah", "Mia", "Jack", "Emily"};
+
+	private final Random myRandom;
+
+	public BenchmarkResourceFactory(Random theRandom) {
+		myRandom = theRandom;
+	}
+
+	public Patient newPatient(int theIndex) {
+		Patient retVal = new Patient();
+		retVal.addIdentifier().setSystem(IDENTIFIER_SYSTEM).setValue("MRN" + theIndex);
+		retVal.addName()
+			.setFamily(FAMILY_NAMES[myRandom.nextInt(FAMILY_NAMES.length)])
+			.addGiven(GIVEN_NAMES[myRandom.nextInt(GIVEN_NAMES.length)]);
+		retVal.setGender(myRandom.nextBoolean() ? Enumerations.AdministrativeGender.MALE : Enumerations.AdministrativeGender.FEMALE);
+		retVal.setBirthDateElement(new DateType(1930 + myRandom.nextInt(90), myRandom.nextInt(12), 1 + myRandom.nextInt(28)));
+		retVal.setActive(true);
+		return retVal;
+	}
+
+	public Observation newObservation(Reference theSubject) {
+		String code = randomObservationCode();
+		Observation retVal = new Observation();
+		retVal.setStatus(Observation.ObservationStatus.FINAL);
+		retVal.getCode().addCoding().setSystem(LOINC_SYSTEM).setCode(code);
+		retVal.setSubject(theSubject);
+		retVal.setEffective(new DateTimeType(randomYear() + "-" + pad(1 + myRandom.nextInt(12)) + "-" + pad(1 + myRandom.nextInt(28)) + "T" + pad(myRandom.nextInt(24)) + ":00:00Z"));
+		retVal.setValue(new Quantity().setValue(myRandom.nextInt(200)).setSystem("http://unitsofmeasure.org").setCode("1"));
+		return retVal;
+	}
+
+	public String randomObservationCode() {
+		return OBSERVATION_CODES[myRandom.nextInt(OBSERVATION_CODES.length)];
+	}
+
+	public int randomYear() {
+		return FIRST_YEAR + myRandom.nextInt(YEAR_COUNT);
+	}
+
+	public int nextInt(int theBound) {
+		return myRandom.nextInt(theBound);
+	}
+
+	private static String pad(int theValue) {
+		return theValue < 10 ? "0" + theValue : Integer.toString(theValue);
+	}
+
+}
@@ -0,0 +1,114 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.config.BaseJavaConfigR4;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import org.hibernate.boot.archive.scan.internal.DisabledScanner;
+import org.hibernate.search.mapper.orm.cfg.HibernateOrmMapperSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * Minimal R4 JPA server configuration used by the benchmarks. Everything that is not
+ * needed to create, update and search for resources (fulltext indexing, subscriptions,
+ * etc.) is left disabled so that it does not add noise to the measurements.
+ * <p>
+ * The database is selected using a {@link BenchmarkDatabaseEnum} bean which must be
+ * registered in the context before it is refreshed.
+ * </p>
+ */
+@Configuration
+@EnableTransactionManagement()
+public class JpaBenchmarkConfig extends BaseJavaConfigR4 {
+
+	@Autowired
+	private BenchmarkDatabaseEnum myDatabase;
+
+	@Bean
+	public DaoConfig daoConfig() {
+		DaoConfig retVal = new DaoConfig();
+		retVal.setAllowMultipleDelete(true);
+		return retVal;
+	}
+
+	@Bean
+	public ModelConfig modelConfig() {
+		return daoConfig().getModelConfig();
+	}
+
+	@Bean
+	public PartitionSettings partitionSettings() {
+		return new PartitionSettings();
+	}
+
+	@Bean(destroyMethod = "close")
+	public DataSource dataSource() {
+		return myDatabase.newDataSource();
+	}
+
+	@Override
+	@Bean
+	public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+		LocalContainerEntityManagerFactoryBean retVal = super.entityManagerFactory();
+		retVal.setPersistenceUnitName("HAPI_PU");
+		retVal.setDataSource(dataSource());
+		retVal.setJpaProperties(jpaProperties());
+		return retVal;
+	}
+
+	private Properties jpaProperties() {
+		Properties extraProperties = new Properties();
+		extraProperties.put("hibernate.dialect", myDatabase.getDialect().getName());
+		extraProperties.put("hibernate.format_sql", "false");
+		extraProperties.put("hibernate.show_sql", "false");
+		extraProperties.put("hibernate.hbm2ddl.auto", "update");
+		extraProperties.put("hibernate.jdbc.batch_size", "20");
+		extraProperties.put("hibernate.cache.use_query_cache", "false");
+		extraProperties.put("hibernate.cache.use_second_level_cache", "false");
+		extraProperties.put("hibernate.cache.use_structured_entries", "false");
+		extraProperties.put("hibernate.cache.use_minimal_puts", "false");
+		extraProperties.put(HibernateOrmMapperSettings.ENABLED, "false");
+		// Entities are found by Spring, so Hibernate doesn't need to scan the (very large) benchmark jar
+		extraProperties.put("hibernate.archive.scanner", DisabledScanner.class.getName());
+		return extraProperties;
+	}
+
+	@Primary
+	@Bean
+	public JpaTransactionManager hapiTransactionManager(EntityManagerFactory entityManagerFactory) {
+		JpaTransactionManager retVal = new JpaTransactionManager();
+		retVal.setEntityManagerFactory(entityManagerFactory);
+		return retVal;
+	}
+
+}
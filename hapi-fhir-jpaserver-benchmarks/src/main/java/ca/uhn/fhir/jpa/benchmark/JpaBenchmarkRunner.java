@@ -0,0 +1,99 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.util.VersionUtil;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entry point for the benchmark jar. Accepts the standard JMH command line options
+ * (run with <code>-h</code> to list them), for example:
+ * <pre>
+ * java -jar hapi-fhir-jpaserver-benchmarks.jar SearchBenchmark -p myDatabase=H2
+ * java -Dhapi.benchmark.jdbc.url=jdbc:postgresql://dbhost/bench -jar hapi-fhir-jpaserver-benchmarks.jar -p myDatabase=POSTGRES
+ * </pre>
+ * <p>
+ * Unless a result file is given on the command line, a JSON report is written to
+ * <code>jmh-result-[version].json</code> in the {@link #OUTPUT_DIR_PROPERTY} directory (default
+ * <code>target/benchmarks</code>). Reports from two releases can be compared using any tool
+ * that reads JMH JSON results.
+ * </p>
+ */
+public class JpaBenchmarkRunner {
+
+	public static final String OUTPUT_DIR_PROPERTY = "hapi.benchmark.output.dir";
+	private static final Logger ourLog = LoggerFactory.getLogger(JpaBenchmarkRunner.class);
+
+	/**
+	 * Non instantiable
+	 */
+	private JpaBenchmarkRunner() {
+		// nothing
+	}
+
+	public static void main(String[] theArgs) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(theArgs);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+
+		if (commandLineOptions.getIncludes().isEmpty()) {
+			options.include(JpaBenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+		}
+
+		if (!commandLineOptions.getResult().hasValue()) {
+			File outputDir = new File(System.getProperty(OUTPUT_DIR_PROPERTY, "target/benchmarks"));
+			if (!outputDir.exists() && !outputDir.mkdirs()) {
+				throw new IllegalStateException("Unable to create directory: " + outputDir.getAbsolutePath());
+			}
+			File result = new File(outputDir, "jmh-result-" + VersionUtil.getVersion() + ".json");
+			ourLog.info("Benchmark results will be written to {}", result.getAbsolutePath());
+			options.result(result.getAbsolutePath());
+			options.resultFormat(ResultFormatType.JSON);
+		}
+
+		// The connection settings need to reach the forked benchmark JVMs
+		List<String> jvmArgs = new ArrayList<>(commandLineOptions.getJvmArgsPrepend().orElse(Collections.emptyList()));
+		for (String next : new String[]{BenchmarkDatabaseEnum.URL_PROPERTY, BenchmarkDatabaseEnum.USERNAME_PROPERTY, BenchmarkDatabaseEnum.PASSWORD_PROPERTY}) {
+			String value = System.getProperty(next);
+			if (value != null) {
+				jvmArgs.add("-D" + next + "=" + value);
+			}
+		}
+		if (!jvmArgs.isEmpty()) {
+			options.jvmArgsPrepend(jvmArgs.toArray(new String[0]));
+		}
+
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,145 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures search latency (including loading the matching resources) for the most
+ * common kinds of search parameter, which exercises <code>SearchBuilder</code> and
+ * <code>QueryStack</code>, as well as <code>_include</code> loading.
+ * <p>
+ * Each patient gets {@link #myObservationsPerPatient} observations spread across
+ * {@link BenchmarkResourceFactory#OBSERVATION_CODES} and
+ * {@link BenchmarkResourceFactory#YEAR_COUNT} years.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark extends BaseJpaBenchmark {
+
+	@Param({"200"})
+	public int myPatientCount;
+
+	@Param({"25"})
+	public int myObservationsPerPatient;
+
+	/**
+	 * The <code>_count</code> used for searches that can match a large number of resources
+	 */
+	@Param({"50"})
+	public int myPageSize;
+
+	private BenchmarkResourceFactory myResourceFactory;
+	private List<IIdType> myPatientIds;
+
+	@Override
+	protected void populate() {
+		myResourceFactory = new BenchmarkResourceFactory(new Random(RANDOM_SEED));
+		myPatientIds = new ArrayList<>(myPatientCount);
+		for (int i = 0; i < myPatientCount; i++) {
+			IIdType patientId = myPatientDao.create(myResourceFactory.newPatient(i), myRequestDetails).getId().toUnqualifiedVersionless();
+			myPatientIds.add(patientId);
+			for (int j = 0; j < myObservationsPerPatient; j++) {
+				myObservationDao.create(myResourceFactory.newObservation(new Reference(patientId)), myRequestDetails);
+			}
+		}
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchTokenSingleMatch() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam(BenchmarkResourceFactory.IDENTIFIER_SYSTEM, "MRN" + myResourceFactory.nextInt(myPatientCount)));
+		return searchAndLoad(myPatientDao, map);
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchToken() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Observation.SP_CODE, new TokenParam(BenchmarkResourceFactory.LOINC_SYSTEM, myResourceFactory.randomObservationCode()));
+		map.setCount(myPageSize);
+		return searchAndLoad(myObservationDao, map);
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchDate() {
+		int year = myResourceFactory.randomYear();
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Observation.SP_DATE, new DateRangeParam(
+			new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, year + "-01-01"),
+			new DateParam(ParamPrefixEnum.LESSTHAN, (year + 1) + "-01-01")));
+		map.setCount(myPageSize);
+		return searchAndLoad(myObservationDao, map);
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchTokenAndDate() {
+		int year = myResourceFactory.randomYear();
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Observation.SP_CODE, new TokenParam(BenchmarkResourceFactory.LOINC_SYSTEM, myResourceFactory.randomObservationCode()));
+		map.add(Observation.SP_DATE, new DateRangeParam(
+			new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, year + "-01-01"),
+			new DateParam(ParamPrefixEnum.LESSTHAN, (year + 1) + "-01-01")));
+		map.setCount(myPageSize);
+		return searchAndLoad(myObservationDao, map);
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchReference() {
+		IIdType patientId = myPatientIds.get(myResourceFactory.nextInt(myPatientIds.size()));
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Observation.SP_SUBJECT, new ReferenceParam(patientId.getValue()));
+		return searchAndLoad(myObservationDao, map);
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchWithInclude() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Observation.SP_CODE, new TokenParam(BenchmarkResourceFactory.LOINC_SYSTEM, myResourceFactory.randomObservationCode()));
+		map.addInclude(Observation.INCLUDE_SUBJECT);
+		map.setCount(myPageSize);
+		return searchAndLoad(myObservationDao, map);
+	}
+
+}
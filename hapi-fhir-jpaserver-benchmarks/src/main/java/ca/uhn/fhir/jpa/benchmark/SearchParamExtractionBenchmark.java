@@ -0,0 +1,110 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Questionnaire;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares serial and parallel search parameter extraction (see
+ * {@link ModelConfig#setSearchParamExtractionThreadCount(int)}) for a small resource and
+ * for a large Questionnaire. Only the extraction itself is measured, so no data is stored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchParamExtractionBenchmark extends BaseJpaBenchmark {
+
+	/**
+	 * The number of extraction threads, where <code>0</code> means serial extraction
+	 */
+	@Param({"0", "4"})
+	public int myExtractionThreadCount;
+
+	/**
+	 * The number of items in the large Questionnaire
+	 */
+	@Param({"500"})
+	public int myQuestionnaireItemCount;
+
+	private SearchParamExtractorService mySearchParamExtractorService;
+	private Observation myObservation;
+	private Questionnaire myQuestionnaire;
+
+	@Override
+	protected void populate() {
+		getBean(ModelConfig.class).setSearchParamExtractionThreadCount(myExtractionThreadCount);
+		mySearchParamExtractorService = getBean(SearchParamExtractorService.class);
+
+		BenchmarkResourceFactory resourceFactory = new BenchmarkResourceFactory(new Random(RANDOM_SEED));
+		myObservation = resourceFactory.newObservation(new Reference("Patient/123"));
+
+		myQuestionnaire = new Questionnaire();
+		myQuestionnaire.setUrl("http://example.com/Questionnaire/large");
+		myQuestionnaire.setName("LARGE");
+		myQuestionnaire.setTitle("A Large Questionnaire");
+		myQuestionnaire.addIdentifier().setSystem(BenchmarkResourceFactory.IDENTIFIER_SYSTEM).setValue("123");
+		for (int i = 0; i < myQuestionnaireItemCount; i++) {
+			Questionnaire.QuestionnaireItemComponent item = myQuestionnaire.addItem();
+			item.setLinkId("item" + i);
+			item.setText("Question " + i);
+			item.addCode().setSystem(BenchmarkResourceFactory.LOINC_SYSTEM).setCode(resourceFactory.randomObservationCode()).setDisplay("Code " + i);
+			item.addItem().setLinkId("item" + i + ".1").addCode().setSystem("http://snomed.info/sct").setCode("SUB" + i);
+		}
+	}
+
+	@Benchmark
+	public ResourceIndexedSearchParams extractObservation() {
+		return extract(myObservation);
+	}
+
+	@Benchmark
+	public ResourceIndexedSearchParams extractQuestionnaire() {
+		return extract(myQuestionnaire);
+	}
+
+	private ResourceIndexedSearchParams extract(Resource theResource) {
+		ResourceTable entity = new ResourceTable();
+		entity.setResourceType(theResource.fhirType());
+		ResourceIndexedSearchParams retVal = new ResourceIndexedSearchParams();
+		mySearchParamExtractorService.extractFromResource(RequestPartitionId.allPartitions(), myRequestDetails, retVal, entity, theResource, new TransactionDetails(), false);
+		return retVal;
+	}
+
+}
@@ -0,0 +1,124 @@
+package ca.uhn.fhir.jpa.benchmark;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server - Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the write path: resource creation, updates (which also exercise
+ * {@link ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService} and the
+ * index diffing in <code>BaseHapiFhirDao#updateEntity</code>) and transaction bundles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriteBenchmark extends BaseJpaBenchmark {
+
+	/**
+	 * The number of patients that the update benchmark cycles through
+	 */
+	@Param({"1000"})
+	public int myPatientCount;
+
+	/**
+	 * The number of observations in each transaction bundle (in addition to one patient)
+	 */
+	@Param({"20"})
+	public int myTransactionObservationCount;
+
+	private final AtomicInteger myCounter = new AtomicInteger();
+	private BenchmarkResourceFactory myResourceFactory;
+	private List<IIdType> myPatientIds;
+
+	@Override
+	protected void populate() {
+		myResourceFactory = new BenchmarkResourceFactory(new Random(RANDOM_SEED));
+		myPatientIds = new ArrayList<>(myPatientCount);
+		for (int i = 0; i < myPatientCount; i++) {
+			Patient patient = myResourceFactory.newPatient(i);
+			myPatientIds.add(myPatientDao.create(patient, myRequestDetails).getId().toUnqualifiedVersionless());
+		}
+	}
+
+	@Benchmark
+	public DaoMethodOutcome createPatient() {
+		Patient patient = myResourceFactory.newPatient(myPatientCount + myCounter.incrementAndGet());
+		return myPatientDao.create(patient, myRequestDetails);
+	}
+
+	@Benchmark
+	public DaoMethodOutcome createObservation() {
+		IIdType patientId = myPatientIds.get(myResourceFactory.nextInt(myPatientIds.size()));
+		Observation observation = myResourceFactory.newObservation(new Reference(patientId));
+		return myObservationDao.create(observation, myRequestDetails);
+	}
+
+	@Benchmark
+	public DaoMethodOutcome updatePatient() {
+		int index = myCounter.incrementAndGet();
+		Patient patient = myResourceFactory.newPatient(index);
+		patient.setId(myPatientIds.get(index % myPatientIds.size()));
+		return myPatientDao.update(patient, myRequestDetails);
+	}
+
+	@Benchmark
+	public Bundle transaction() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+
+		String patientFullUrl = "urn:uuid:" + UUID.randomUUID();
+		Patient patient = myResourceFactory.newPatient(myPatientCount + myCounter.incrementAndGet());
+		bundle.addEntry()
+			.setFullUrl(patientFullUrl)
+			.setResource(patient)
+			.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+
+		for (int i = 0; i < myTransactionObservationCount; i++) {
+			Observation observation = myResourceFactory.newObservation(new Reference(patientFullUrl));
+			bundle.addEntry()
+				.setFullUrl("urn:uuid:" + UUID.randomUUID())
+				.setResource(observation)
+				.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+		}
+
+		return mySystemDao.transaction(myRequestDetails, bundle);
+	}
+
+}
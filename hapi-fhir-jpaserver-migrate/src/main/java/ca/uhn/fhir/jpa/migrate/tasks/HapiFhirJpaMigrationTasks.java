@@ -72,6 +72,21 @@ public class HapiFhirJpaMigrationTasks extends BaseMigrationTasks<VersionEnum> {
 		init510(); // 20200516 - 20201028
 		init520(); // 20201029 -
 		init530();
+		init540();
+	}
+
+	private void init540() {
+		Builder version = forVersion(VersionEnum.V5_4_0);
+
+		//-- Add new Table, HFJ_SEARCH_RESULT_BLK
+		version.addIdGenerator("20210301.1", "SEQ_SEARCH_RES_BLK");
+		Builder.BuilderAddTableByColumns searchResBlk = version.addTableByColumns("20210301.2", "HFJ_SEARCH_RESULT_BLK", "PID");
+		searchResBlk.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+		searchResBlk.addColumn("SEARCH_PID").nonNullable().type(ColumnTypeEnum.LONG);
+		searchResBlk.addColumn("BLOCK_IDX").nonNullable().type(ColumnTypeEnum.INT);
+		searchResBlk.addColumn("RESULT_COUNT").nonNullable().type(ColumnTypeEnum.INT);
+		searchResBlk.addColumn("PIDS_DATA").nonNullable().type(ColumnTypeEnum.BLOB);
+		searchResBlk.addIndex("20210301.3", "IDX_SEARCHRESBLK_IDX").unique(true).withColumns("SEARCH_PID", "BLOCK_IDX");
 	}
 
 	private void init530() {
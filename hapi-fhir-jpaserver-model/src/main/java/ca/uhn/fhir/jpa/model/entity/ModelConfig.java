@@ -98,6 +98,8 @@ public class ModelConfig {
 	private Set<String> myAutoVersionReferenceAtPaths = Collections.emptySet();
 	private Map<String, Set<String>> myTypeToAutoVersionReferenceAtPaths = Collections.emptyMap();
 	private boolean myRespectVersionsForSearchIncludes;
+	private int mySearchParamExtractionThreadCount = 0;
+	private boolean myResourceChangeNotificationsEnabled = false;
 
 	/**
 	 * Constructor
@@ -730,6 +732,85 @@ public class ModelConfig {
 		myRespectVersionsForSearchIncludes = theRespectVersionsForSearchIncludes;
 	}
 	
+	/**
+	 * This setting controls the number of threads used to extract search index values from a
+	 * resource as it is being stored. When set to a value greater than 1, the independent
+	 * families of search parameters (strings, tokens, dates, numbers, quantities, URIs,
+	 * coordinates and references) are extracted concurrently on a shared pool of this size,
+	 * which reduces the write latency for very large resources such as big Questionnaire
+	 * or CodeSystem resources. The extracted indexes are identical either way.
+	 * <p>
+	 * The default value is <code>0</code>, meaning that all search parameters are extracted
+	 * on the request thread.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public int getSearchParamExtractionThreadCount() {
+		return mySearchParamExtractionThreadCount;
+	}
+
+	/**
+	 * This setting controls the number of threads used to extract search index values from a
+	 * resource as it is being stored. When set to a value greater than 1, the independent
+	 * families of search parameters (strings, tokens, dates, numbers, quantities, URIs,
+	 * coordinates and references) are extracted concurrently on a shared pool of this size,
+	 * which reduces the write latency for very large resources such as big Questionnaire
+	 * or CodeSystem resources. The extracted indexes are identical either way.
+	 * <p>
+	 * The default value is <code>0</code>, meaning that all search parameters are extracted
+	 * on the request thread. Note that the pool is created using this value the first time it
+	 * is needed, so changing the value after that point only enables or disables its use.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setSearchParamExtractionThreadCount(int theSearchParamExtractionThreadCount) {
+		mySearchParamExtractionThreadCount = Math.max(theSearchParamExtractionThreadCount, 0);
+	}
+
+	/**
+	 * If enabled, registered resource change listeners (such as the ones used to keep the active
+	 * subscriptions and search parameters up to date) are notified of changes to the resource types
+	 * they watch as soon as the transaction containing the change commits, instead of finding out
+	 * about the change when their cache is next polled. Notifications are delivered through the
+	 * {@literal IResourceChangeMessageBroker}, which by default only reaches the local server. Clustered
+	 * deployments should supply a broker implementation that publishes to all servers in the cluster.
+	 * <p>
+	 * Only the changed resources are reloaded when a notification is received, and the full reload
+	 * of each cache then only happens at the remote refresh interval the listener was registered with.
+	 * </p>
+	 * <p>
+	 * The default value is <code>false</code>.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public boolean isResourceChangeNotificationsEnabled() {
+		return myResourceChangeNotificationsEnabled;
+	}
+
+	/**
+	 * If enabled, registered resource change listeners (such as the ones used to keep the active
+	 * subscriptions and search parameters up to date) are notified of changes to the resource types
+	 * they watch as soon as the transaction containing the change commits, instead of finding out
+	 * about the change when their cache is next polled. Notifications are delivered through the
+	 * {@literal IResourceChangeMessageBroker}, which by default only reaches the local server. Clustered
+	 * deployments should supply a broker implementation that publishes to all servers in the cluster.
+	 * <p>
+	 * Only the changed resources are reloaded when a notification is received, and the full reload
+	 * of each cache then only happens at the remote refresh interval the listener was registered with.
+	 * </p>
+	 * <p>
+	 * The default value is <code>false</code>.
+	 * </p>
+	 *
+	 * @since 5.4.0
+	 */
+	public void setResourceChangeNotificationsEnabled(boolean theResourceChangeNotificationsEnabled) {
+		myResourceChangeNotificationsEnabled = theResourceChangeNotificationsEnabled;
+	}
+
 	private static void validateTreatBaseUrlsAsLocal(String theUrl) {
 		Validate.notBlank(theUrl, "Base URL must not be null or empty");
 
@@ -158,6 +158,14 @@ public class JpaConstants {
 	 * Operation name for the "$export-poll-status" operation
 	 */
 	public static final String OPERATION_EXPORT_POLL_STATUS = "$export-poll-status";
+	/**
+	 * Operation name for the "$import" operation
+	 */
+	public static final String OPERATION_IMPORT = "$import";
+	/**
+	 * Operation name for the "$import-poll-status" operation
+	 */
+	public static final String OPERATION_IMPORT_POLL_STATUS = "$import-poll-status";
 	/**
 	 * Operation name for the "$lastn" operation
 	 */
@@ -194,6 +202,19 @@ public class JpaConstants {
 	 */
 	public static final String PARAM_EXPORT_MDM = "_mdm";
 
+	/**
+	 * Parameter for the $import operation
+	 */
+	public static final String PARAM_IMPORT_INPUT_FORMAT = "inputFormat";
+	/**
+	 * Parameter for the $import operation
+	 */
+	public static final String PARAM_IMPORT_INPUT = "input";
+	/**
+	 * Parameter for the $import-poll-status operation
+	 */
+	public static final String PARAM_IMPORT_POLL_STATUS_JOB_ID = "_jobId";
+
 	/**
 	 * Parameter for delete to indicate the deleted resources should also be expunged
 	 */
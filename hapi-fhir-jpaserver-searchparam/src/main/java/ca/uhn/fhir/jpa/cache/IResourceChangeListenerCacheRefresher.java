@@ -20,6 +20,10 @@ package ca.uhn.fhir.jpa.cache;
  * #L%
  */
 
+import org.hl7.fhir.instance.model.api.IIdType;
+
+import java.util.Collection;
+
 /**
  * This is an internal service and is not intended to be used outside this package.  Implementers should only directly
  * call the {@link IResourceChangeListenerRegistry}.
@@ -41,4 +45,14 @@ public interface IResourceChangeListenerCacheRefresher {
 	 * @return the number of resources that have been created, updated and deleted since the last time the cache was refreshed
 	 */
 	ResourceChangeResult refreshCacheAndNotifyListener(IResourceChangeListenerCache theEntry);
+
+	/**
+	 * Reload only the given resources into the cache in this entry and notify the entry's listener if they changed.
+	 * This has no effect if the cache hasn't been loaded yet.
+	 * @param theEntry the {@link IResourceChangeListenerCache} with the cache and the listener
+	 * @param theResourceIds the versionless ids of the resources that changed
+	 * @return the number of these resources that have been created, updated and deleted since the last time the cache was refreshed
+	 * @since 5.4.0
+	 */
+	ResourceChangeResult refreshCacheDeltaAndNotifyListener(IResourceChangeListenerCache theEntry, Collection<IIdType> theResourceIds);
 }
@@ -80,4 +80,11 @@ public interface IResourceChangeListenerRegistry {
 
 	void requestRefreshIfWatching(IBaseResource theResource);
 
+	/**
+	 * @param theResourceName the type of resource (e.g. "Subscription" or "SearchParameter")
+	 * @return true if any registered cache is watching resources of this type
+	 * @since 5.4.0
+	 */
+	boolean isWatchingResourceType(String theResourceName);
+
 }
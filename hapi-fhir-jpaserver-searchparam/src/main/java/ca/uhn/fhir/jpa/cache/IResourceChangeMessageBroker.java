@@ -0,0 +1,49 @@
+package ca.uhn.fhir.jpa.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR Search Parameters
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.function.Consumer;
+
+/**
+ * Delivers {@link ResourceChangeMessage} notifications to the {@link IResourceChangeListenerCache} caches. Messages
+ * are only published when {@link ca.uhn.fhir.jpa.model.entity.ModelConfig#isResourceChangeNotificationsEnabled()} is set.
+ * <p>
+ * The default implementation is {@link LocalResourceChangeMessageBroker}, which only delivers messages within the
+ * current JVM. Servers running in a cluster should replace it with an implementation that forwards messages to every
+ * server in the cluster (e.g. using a topic on their existing message broker). Messages must also be delivered to the
+ * server that published them.
+ * </p>
+ *
+ * @since 5.4.0
+ */
+public interface IResourceChangeMessageBroker {
+
+	/**
+	 * Send a message to all subscribers on all servers
+	 */
+	void publish(ResourceChangeMessage theMessage);
+
+	/**
+	 * Register a handler that will be called for every message published on any server
+	 */
+	void subscribe(Consumer<ResourceChangeMessage> theHandler);
+
+}
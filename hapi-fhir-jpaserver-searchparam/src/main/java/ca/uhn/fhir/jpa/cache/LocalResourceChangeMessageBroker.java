@@ -0,0 +1,49 @@
+package ca.uhn.fhir.jpa.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR Search Parameters
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An {@link IResourceChangeMessageBroker} that delivers messages to the handlers registered
+ * in this JVM, on the thread that publishes them.
+ *
+ * @since 5.4.0
+ */
+public class LocalResourceChangeMessageBroker implements IResourceChangeMessageBroker {
+
+	private final List<Consumer<ResourceChangeMessage>> myHandlers = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void publish(ResourceChangeMessage theMessage) {
+		for (Consumer<ResourceChangeMessage> next : myHandlers) {
+			next.accept(theMessage);
+		}
+	}
+
+	@Override
+	public void subscribe(Consumer<ResourceChangeMessage> theHandler) {
+		myHandlers.add(theHandler);
+	}
+
+}
@@ -28,6 +28,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +39,8 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
 
 @Component
 @Scope("prototype")
@@ -57,6 +60,7 @@ public class ResourceChangeListenerCache implements IResourceChangeListenerCache
 	private final SearchParameterMap mySearchParameterMap;
 	private final ResourceVersionCache myResourceVersionCache = new ResourceVersionCache();
 	private final long myRemoteRefreshIntervalMs;
+	private final Set<IIdType> myPendingResourceIds = new HashSet<>();
 
 	private boolean myInitialized = false;
 	private Instant myNextRefreshTime = Instant.MIN;
@@ -95,6 +99,43 @@ public class ResourceChangeListenerCache implements IResourceChangeListenerCache
 		}
 	}
 
+	/**
+	 * Remember that a resource of our type has changed, so that it is reloaded by the next call to
+	 * {@link #refreshPendingResources()}
+	 */
+	public void addPendingResourceId(IIdType theResourceId) {
+		synchronized (myPendingResourceIds) {
+			myPendingResourceIds.add(theResourceId.toUnqualifiedVersionless());
+		}
+	}
+
+	/**
+	 * Reload the resources passed to {@link #addPendingResourceId(IIdType)} since the last call, in the current thread
+	 */
+	public ResourceChangeResult refreshPendingResources() {
+		Set<IIdType> resourceIds;
+		synchronized (myPendingResourceIds) {
+			if (myPendingResourceIds.isEmpty()) {
+				return new ResourceChangeResult();
+			}
+			resourceIds = new HashSet<>(myPendingResourceIds);
+			myPendingResourceIds.clear();
+		}
+
+		Retrier<ResourceChangeResult> refreshCacheRetrier = new Retrier<>(() -> {
+			synchronized (this) {
+				return myResourceChangeListenerCacheRefresher.refreshCacheDeltaAndNotifyListener(this, resourceIds);
+			}
+		}, MAX_RETRIES);
+		try {
+			return refreshCacheRetrier.runWithRetry();
+		} catch (RuntimeException e) {
+			// Fall back to reloading everything so these changes aren't lost
+			requestRefresh();
+			throw e;
+		}
+	}
+
 	public boolean matches(IBaseResource theResource) {
 		InMemoryMatchResult result = mySearchParamMatcher.match(mySearchParameterMap, theResource);
 		if (!result.supported()) {
@@ -199,6 +240,9 @@ public class ResourceChangeListenerCache implements IResourceChangeListenerCache
 	public void clearForUnitTest() {
 		requestRefresh();
 		myResourceVersionCache.clear();
+		synchronized (myPendingResourceIds) {
+			myPendingResourceIds.clear();
+		}
 	}
 
 	@Override
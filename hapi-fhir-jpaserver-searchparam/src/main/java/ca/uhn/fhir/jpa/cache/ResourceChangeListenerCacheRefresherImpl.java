@@ -24,8 +24,13 @@ import ca.uhn.fhir.jpa.model.sched.HapiJob;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
 import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.quartz.JobExecutionContext;
 import org.slf4j.Logger;
@@ -34,9 +39,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This service refreshes the {@link IResourceChangeListenerCache} caches and notifies their listener when
@@ -46,6 +57,10 @@ import java.util.List;
  * Every time a chair passes the bottom it checks to see if it's time to refresh that seat.  If so,
  * the Ferris Wheel stops, removes the riders, and loads a fresh cache for that chair, and calls the listener
  * if any entries in the new cache are different from the last time that cache was loaded.
+ *
+ * When {@link ca.uhn.fhir.jpa.model.entity.ModelConfig#isResourceChangeNotificationsEnabled() resource change notifications}
+ * are enabled, this service also receives a {@link ResourceChangeMessage} for every committed change to a watched resource
+ * type, and promptly reloads just the changed resources in a background thread instead of waiting for the wheel to turn.
  */
 @Service
 public class ResourceChangeListenerCacheRefresherImpl implements IResourceChangeListenerCacheRefresher {
@@ -55,13 +70,21 @@ public class ResourceChangeListenerCacheRefresherImpl implements IResourceChange
 	 * All cache entries are checked at this interval to see if they need to be refreshed
 	 */
 	static long LOCAL_REFRESH_INTERVAL_MS = 10 * DateUtils.MILLIS_PER_SECOND;
+	/**
+	 * The maximum number of changed resources that are reloaded in a single query
+	 */
+	private static final int MAX_CHANGED_RESOURCES_PER_QUERY = 500;
 
+	private final AtomicBoolean myPendingRefreshScheduled = new AtomicBoolean(false);
 	@Autowired
 	private ISchedulerService mySchedulerService;
 	@Autowired
 	private IResourceVersionSvc myResourceVersionSvc;
 	@Autowired
 	private ResourceChangeListenerRegistryImpl myResourceChangeListenerRegistry;
+	@Autowired
+	private IResourceChangeMessageBroker myResourceChangeMessageBroker;
+	private ThreadPoolExecutor myPendingRefreshExecutor;
 
 	@PostConstruct
 	public void start() {
@@ -69,6 +92,27 @@ public class ResourceChangeListenerCacheRefresherImpl implements IResourceChange
 		jobDetail.setId(getClass().getName());
 		jobDetail.setJobClass(Job.class);
 		mySchedulerService.scheduleLocalJob(LOCAL_REFRESH_INTERVAL_MS, jobDetail);
+
+		BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern("resource_change_refresh-%d")
+			.daemon(true)
+			.build();
+		myPendingRefreshExecutor = new ThreadPoolExecutor(
+			1,
+			1,
+			0L,
+			TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>(),
+			threadFactory,
+			new ThreadPoolExecutor.DiscardPolicy());
+		myResourceChangeMessageBroker.subscribe(this::handleResourceChangeMessage);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (myPendingRefreshExecutor != null) {
+			myPendingRefreshExecutor.shutdownNow();
+		}
 	}
 
 	public static class Job implements HapiJob {
@@ -92,6 +136,49 @@ public class ResourceChangeListenerCacheRefresherImpl implements IResourceChange
 		return retval;
 	}
 
+	/**
+	 * Queue the changed resource on every cache watching its resource type, and schedule those caches
+	 * to be refreshed in the background. Multiple messages that arrive while a refresh is already
+	 * scheduled are handled by that same refresh.
+	 */
+	void handleResourceChangeMessage(ResourceChangeMessage theMessage) {
+		boolean watching = false;
+		Iterator<ResourceChangeListenerCache> iterator = myResourceChangeListenerRegistry.iterator();
+		while (iterator.hasNext()) {
+			ResourceChangeListenerCache entry = iterator.next();
+			if (entry.getResourceName().equals(theMessage.getResourceType())) {
+				entry.addPendingResourceId(theMessage.getResourceId());
+				watching = true;
+			}
+		}
+
+		if (watching && myPendingRefreshScheduled.compareAndSet(false, true)) {
+			myPendingRefreshExecutor.execute(() -> {
+				try {
+					refreshPendingResourcesAndNotifyListeners();
+				} catch (Exception e) {
+					ourLog.error("Failed to refresh changed resources", e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reload the resources that changed since the last call for every cache, and notify their listeners
+	 * @return an aggregate of all changes sent to all listeners
+	 */
+	public ResourceChangeResult refreshPendingResourcesAndNotifyListeners() {
+		// Clear the flag first so that a message arriving while we refresh schedules another pass
+		myPendingRefreshScheduled.set(false);
+		ResourceChangeResult retval = new ResourceChangeResult();
+		Iterator<ResourceChangeListenerCache> iterator = myResourceChangeListenerRegistry.iterator();
+		while (iterator.hasNext()) {
+			ResourceChangeListenerCache entry = iterator.next();
+			retval = retval.plus(entry.refreshPendingResources());
+		}
+		return retval;
+	}
+
 	@VisibleForTesting
 	public ResourceChangeResult forceRefreshAllCachesForUnitTest() {
 		ResourceChangeResult retval = new ResourceChangeResult();
@@ -106,12 +193,7 @@ public class ResourceChangeListenerCacheRefresherImpl implements IResourceChange
 	@Override
 	public ResourceChangeResult refreshCacheAndNotifyListener(IResourceChangeListenerCache theCache) {
 		ResourceChangeResult retVal = new ResourceChangeResult();
-		if (mySchedulerService.isStopping()) {
-			ourLog.info("Scheduler service is stopping, aborting cache refresh");
-			return retVal;
-		}
-		if (!myResourceChangeListenerRegistry.contains(theCache)) {
-			ourLog.warn("Requesting cache refresh for unregistered listener {}.  Aborting.", theCache);
+		if (!canRefresh(theCache)) {
 			return retVal;
 		}
 		SearchParameterMap searchParamMap = theCache.getSearchParameterMap();
@@ -121,6 +203,46 @@ public class ResourceChangeListenerCacheRefresherImpl implements IResourceChange
 		return retVal;
 	}
 
+	@Override
+	public ResourceChangeResult refreshCacheDeltaAndNotifyListener(IResourceChangeListenerCache theCache, Collection<IIdType> theResourceIds) {
+		ResourceChangeResult retVal = new ResourceChangeResult();
+		if (theResourceIds.isEmpty() || !canRefresh(theCache)) {
+			return retVal;
+		}
+		if (!theCache.isInitialized()) {
+			// The initial load of the cache will pick up these changes
+			return retVal;
+		}
+
+		ResourceChangeListenerCache cache = (ResourceChangeListenerCache) theCache;
+		List<IIdType> createdIds = new ArrayList<>();
+		List<IIdType> updatedIds = new ArrayList<>();
+		List<IIdType> deletedIds = new ArrayList<>();
+		for (List<IIdType> nextChunk : Lists.partition(new ArrayList<>(theResourceIds), MAX_CHANGED_RESOURCES_PER_QUERY)) {
+			SearchParameterMap searchParamMap = SerializationUtils.clone(theCache.getSearchParameterMap());
+			TokenOrListParam idParam = new TokenOrListParam();
+			nextChunk.forEach(id -> idParam.add(id.getIdPart()));
+			searchParamMap.add(IAnyResource.SP_RES_ID, idParam);
+
+			ResourceVersionMap newResourceVersionMap = myResourceVersionSvc.getVersionMap(theCache.getResourceName(), searchParamMap);
+			applyChanges(cache.getResourceVersionCache(), newResourceVersionMap, nextChunk, createdIds, updatedIds, deletedIds);
+		}
+
+		return notifyListenerOfChanges(cache.getResourceChangeListener(), createdIds, updatedIds, deletedIds);
+	}
+
+	private boolean canRefresh(IResourceChangeListenerCache theCache) {
+		if (mySchedulerService.isStopping()) {
+			ourLog.info("Scheduler service is stopping, aborting cache refresh");
+			return false;
+		}
+		if (!myResourceChangeListenerRegistry.contains(theCache)) {
+			ourLog.warn("Requesting cache refresh for unregistered listener {}.  Aborting.", theCache);
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Notify a listener with all matching resources if it hasn't been initialized yet, otherwise only notify it if
 	 * any resources have changed
@@ -144,30 +266,38 @@ public class ResourceChangeListenerCacheRefresherImpl implements IResourceChange
 	}
 
 	private ResourceChangeResult compareLastVersionMapToNewVersionMapAndNotifyListenerOfChanges(IResourceChangeListener theListener, ResourceVersionCache theOldResourceVersionCache, ResourceVersionMap theNewResourceVersionMap) {
-		// If the new ResourceVersionMap does not have the old key - delete it
-		List<IIdType> deletedIds = new ArrayList<>();
-		theOldResourceVersionCache.keySet()
-			.forEach(id -> {
-				if (!theNewResourceVersionMap.containsKey(id)) {
-					deletedIds.add(id);
-				}
-			});
-		deletedIds.forEach(theOldResourceVersionCache::removeResourceId);
-
 		List<IIdType> createdIds = new ArrayList<>();
 		List<IIdType> updatedIds = new ArrayList<>();
+		List<IIdType> deletedIds = new ArrayList<>();
+		applyChanges(theOldResourceVersionCache, theNewResourceVersionMap, new ArrayList<>(theOldResourceVersionCache.keySet()), createdIds, updatedIds, deletedIds);
+		return notifyListenerOfChanges(theListener, createdIds, updatedIds, deletedIds);
+	}
+
+	/**
+	 * @param theCheckedIds the ids that were looked for when loading theNewResourceVersionMap. Any of these that are
+	 *                      in the cache but not in the new map have been deleted (or no longer match the search parameter map).
+	 */
+	private void applyChanges(ResourceVersionCache theOldResourceVersionCache, ResourceVersionMap theNewResourceVersionMap, Collection<IIdType> theCheckedIds, List<IIdType> theCreatedIds, List<IIdType> theUpdatedIds, List<IIdType> theDeletedIds) {
+		// If the new ResourceVersionMap does not have the old key - delete it
+		for (IIdType id : theCheckedIds) {
+			if (!theNewResourceVersionMap.containsKey(id) && theOldResourceVersionCache.removeResourceId(id) != null) {
+				theDeletedIds.add(id);
+			}
+		}
 
 		for (IIdType id : theNewResourceVersionMap.keySet()) {
 			String previousValue = theOldResourceVersionCache.put(id, theNewResourceVersionMap.get(id));
 			IIdType newId = id.withVersion(theNewResourceVersionMap.get(id));
 			if (previousValue == null) {
-				createdIds.add(newId);
+				theCreatedIds.add(newId);
 			} else if (!theNewResourceVersionMap.get(id).equals(previousValue)) {
-				updatedIds.add(newId);
+				theUpdatedIds.add(newId);
 			}
 		}
+	}
 
-		IResourceChangeEvent resourceChangeEvent = ResourceChangeEvent.fromCreatedUpdatedDeletedResourceIds(createdIds, updatedIds, deletedIds);
+	private ResourceChangeResult notifyListenerOfChanges(IResourceChangeListener theListener, List<IIdType> theCreatedIds, List<IIdType> theUpdatedIds, List<IIdType> theDeletedIds) {
+		IResourceChangeEvent resourceChangeEvent = ResourceChangeEvent.fromCreatedUpdatedDeletedResourceIds(theCreatedIds, theUpdatedIds, theDeletedIds);
 		if (!resourceChangeEvent.isEmpty()) {
 			theListener.handleChange(resourceChangeEvent);
 		}
@@ -140,6 +140,16 @@ public class ResourceChangeListenerRegistryImpl implements IResourceChangeListen
 		}
 	}
 
+	@Override
+	public boolean isWatchingResourceType(String theResourceName) {
+		for (ResourceChangeListenerCache entry : myListenerEntries) {
+			if (theResourceName.equals(entry.getResourceName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	@VisibleForTesting
 	public void clearListenersForUnitTest() {
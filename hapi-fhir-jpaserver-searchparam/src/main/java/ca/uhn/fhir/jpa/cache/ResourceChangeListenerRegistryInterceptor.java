@@ -20,12 +20,18 @@ package ca.uhn.fhir.jpa.cache;
  * #L%
  */
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.Hook;
 import ca.uhn.fhir.interceptor.api.IInterceptorService;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.rest.server.messaging.BaseResourceMessage;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -34,6 +40,11 @@ import javax.annotation.PreDestroy;
  * This interceptor watches all resource changes on the server and compares them to the {@link IResourceChangeListenerCache}
  * entries.  If the resource matches the resource type and search parameter map of that entry, then the corresponding cache
  * will be expired so it is refreshed and listeners are notified of that change within {@link ResourceChangeListenerCacheRefresherImpl#LOCAL_REFRESH_INTERVAL_MS}.
+ * <p>
+ * If {@link ModelConfig#isResourceChangeNotificationsEnabled() resource change notifications} are enabled, a
+ * {@link ResourceChangeMessage} is instead published through the {@link IResourceChangeMessageBroker} once the
+ * transaction commits, for every change to a resource type that has a registered cache.
+ * </p>
  */
 @Service
 public class ResourceChangeListenerRegistryInterceptor {
@@ -41,6 +52,12 @@ public class ResourceChangeListenerRegistryInterceptor {
 	private IInterceptorService myInterceptorBroadcaster;
 	@Autowired
 	private IResourceChangeListenerRegistry myResourceChangeListenerRegistry;
+	@Autowired
+	private IResourceChangeMessageBroker myResourceChangeMessageBroker;
+	@Autowired
+	private ModelConfig myModelConfig;
+	@Autowired
+	private FhirContext myFhirContext;
 
 	@PostConstruct
 	public void start() {
@@ -54,23 +71,52 @@ public class ResourceChangeListenerRegistryInterceptor {
 
 	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
 	public void created(IBaseResource theResource) {
-		handle(theResource);
+		handle(theResource, BaseResourceMessage.OperationTypeEnum.CREATE);
 	}
 
 	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
 	public void deleted(IBaseResource theResource) {
-		handle(theResource);
+		handle(theResource, BaseResourceMessage.OperationTypeEnum.DELETE);
 	}
 
 	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
 	public void updated(IBaseResource theResource) {
-		handle(theResource);
+		handle(theResource, BaseResourceMessage.OperationTypeEnum.UPDATE);
 	}
 
-	private void handle(IBaseResource theResource) {
+	private void handle(IBaseResource theResource, BaseResourceMessage.OperationTypeEnum theOperationType) {
 		if (theResource == null) {
 			return;
 		}
-		myResourceChangeListenerRegistry.requestRefreshIfWatching(theResource);
+		if (myModelConfig.isResourceChangeNotificationsEnabled()) {
+			publishAfterCommit(theResource, theOperationType);
+		} else {
+			myResourceChangeListenerRegistry.requestRefreshIfWatching(theResource);
+		}
+	}
+
+	private void publishAfterCommit(IBaseResource theResource, BaseResourceMessage.OperationTypeEnum theOperationType) {
+		IIdType resourceId = theResource.getIdElement();
+		if (resourceId == null || resourceId.isEmpty() || !resourceId.hasIdPart()) {
+			return;
+		}
+		String resourceName = myFhirContext.getResourceType(theResource);
+		// An update can also move a resource out of a cache's search parameter map, so we don't filter
+		// on the map here. The cache reloads the resource and finds out whether it still matches.
+		if (!myResourceChangeListenerRegistry.isWatchingResourceType(resourceName)) {
+			return;
+		}
+
+		ResourceChangeMessage message = new ResourceChangeMessage(resourceId.withResourceType(resourceName), theOperationType);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					myResourceChangeMessageBroker.publish(message);
+				}
+			});
+		} else {
+			myResourceChangeMessageBroker.publish(message);
+		}
 	}
 }
@@ -0,0 +1,79 @@
+package ca.uhn.fhir.jpa.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR Search Parameters
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.model.api.IModelJson;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.server.messaging.BaseResourceMessage;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.hl7.fhir.instance.model.api.IIdType;
+
+/**
+ * A notification that a resource was created, updated or deleted. These are sent through the
+ * {@link IResourceChangeMessageBroker} after the transaction containing the change has committed,
+ * so that the {@link IResourceChangeListenerCache} caches on every server can reload the changed resource.
+ *
+ * @since 5.4.0
+ */
+public class ResourceChangeMessage implements IModelJson {
+
+	@JsonProperty("resourceId")
+	private String myResourceId;
+
+	@JsonProperty("operationType")
+	private BaseResourceMessage.OperationTypeEnum myOperationType;
+
+	/**
+	 * Constructor
+	 */
+	public ResourceChangeMessage() {
+		super();
+	}
+
+	/**
+	 * Constructor
+	 */
+	public ResourceChangeMessage(IIdType theResourceId, BaseResourceMessage.OperationTypeEnum theOperationType) {
+		myResourceId = theResourceId.toUnqualifiedVersionless().getValue();
+		myOperationType = theOperationType;
+	}
+
+	public IIdType getResourceId() {
+		return new IdDt(myResourceId);
+	}
+
+	public String getResourceType() {
+		return getResourceId().getResourceType();
+	}
+
+	public BaseResourceMessage.OperationTypeEnum getOperationType() {
+		return myOperationType;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+			.append("myResourceId", myResourceId)
+			.append("myOperationType", myOperationType)
+			.toString();
+	}
+}
@@ -24,10 +24,13 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.cache.IResourceChangeListener;
 import ca.uhn.fhir.jpa.cache.IResourceChangeListenerCacheRefresher;
 import ca.uhn.fhir.jpa.cache.IResourceChangeListenerRegistry;
+import ca.uhn.fhir.jpa.cache.IResourceChangeMessageBroker;
+import ca.uhn.fhir.jpa.cache.LocalResourceChangeMessageBroker;
 import ca.uhn.fhir.jpa.cache.ResourceChangeListenerCache;
 import ca.uhn.fhir.jpa.cache.ResourceChangeListenerCacheFactory;
 import ca.uhn.fhir.jpa.cache.ResourceChangeListenerCacheRefresherImpl;
 import ca.uhn.fhir.jpa.cache.ResourceChangeListenerRegistryImpl;
+import ca.uhn.fhir.jpa.cache.ResourceChangeListenerRegistryInterceptor;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
@@ -120,6 +123,19 @@ public class SearchParamConfig {
 		return new ResourceChangeListenerCacheRefresherImpl();
 	}
 
+	@Bean
+	ResourceChangeListenerRegistryInterceptor resourceChangeListenerRegistryInterceptor() {
+		return new ResourceChangeListenerRegistryInterceptor();
+	}
+
+	/**
+	 * Override this bean to deliver resource change notifications to all servers in a cluster
+	 */
+	@Bean
+	IResourceChangeMessageBroker resourceChangeMessageBroker() {
+		return new LocalResourceChangeMessageBroker();
+	}
+
 	@Bean
     ResourceChangeListenerCacheFactory registeredResourceListenerFactory() {
 		return new ResourceChangeListenerCacheFactory();
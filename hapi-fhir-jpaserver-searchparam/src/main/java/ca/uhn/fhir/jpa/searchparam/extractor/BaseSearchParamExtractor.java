@@ -42,11 +42,14 @@ import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamUri;
 import ca.uhn.fhir.jpa.model.util.UcumServiceUtil;
 import ca.uhn.fhir.jpa.searchparam.SearchParamConstants;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.jpa.searchparam.registry.ReadOnlySearchParamCache;
 import ca.uhn.fhir.model.primitive.BoundCodeDt;
 import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.HapiExtensions;
 import ca.uhn.fhir.util.StringUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -90,6 +93,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	public static final Set<String> COORDS_INDEX_PATHS;
 	private static final Pattern SPLIT = Pattern.compile("\\||( or )");
 	private static final Pattern SPLIT_R4 = Pattern.compile("\\|");
+	private static final int MAX_PARSED_PATHS = 10000;
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseSearchParamExtractor.class);
 
 	static {
@@ -148,6 +152,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	private BaseRuntimeChildDefinition myCodingDisplayValueChild;
 	private BaseRuntimeChildDefinition myContactPointSystemValueChild;
 	private BaseRuntimeChildDefinition myPatientCommunicationLanguageValueChild;
+	private volatile Cache<String, IPathEvaluator> myParsedPaths = newParsedPathCache();
 
 	/**
 	 * Constructor
@@ -506,9 +511,8 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 				}
 
 				nextPath = trim(nextPath);
-				IValueExtractor allValuesFunc = getPathValueExtractor(theResource, nextPath);
 				try {
-					allValues = allValuesFunc.get();
+					allValues = getParsedPath(nextPath).evaluate(theResource);
 				} catch (Exception e) {
 					String msg = getContext().getLocalizer().getMessage(BaseSearchParamExtractor.class, "failedToExtractPaths", nextPath, e.toString());
 					throw new InternalErrorException(msg, e);
@@ -532,6 +536,73 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 
 	protected abstract IValueExtractor getPathValueExtractor(IBaseResource theResource, String theSinglePath);
 
+	/**
+	 * Prepares a single search parameter path (i.e. one that has already been split into
+	 * its alternatives) for evaluation. Parsed paths are cached, so subclasses should
+	 * override this method to do any expensive parsing up front. The default implementation
+	 * evaluates the path using {@link #getPathValueExtractor(IBaseResource, String)}.
+	 */
+	protected IPathEvaluator parsePath(String theSinglePath) {
+		return theResource -> getPathValueExtractor(theResource, theSinglePath).get();
+	}
+
+	private IPathEvaluator getParsedPath(String theSinglePath) {
+		return myParsedPaths.get(theSinglePath, this::newPathEvaluator);
+	}
+
+	private IPathEvaluator newPathEvaluator(String theSinglePath) {
+		if (getContext().getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.DSTU3)) {
+			SimpleResourcePath simplePath = SimpleResourcePath.parse(getContext(), theSinglePath);
+			if (simplePath != null) {
+				// A path for another resource type (e.g. Patient.name when indexing a Practitioner) never matches
+				return theResource -> {
+					if (simplePath.getResourceName().equals(getContext().getResourceType(theResource))) {
+						return simplePath.evaluate(theResource);
+					}
+					return Collections.emptyList();
+				};
+			}
+		}
+		return parsePath(theSinglePath);
+	}
+
+	/**
+	 * Replaces the cache of parsed paths with the paths used by the given search parameters,
+	 * so that paths belonging to search parameters that no longer exist are discarded and
+	 * new ones don't need to be parsed while a resource is being indexed.
+	 */
+	void handleActiveSearchParamsChanged(ReadOnlySearchParamCache theActiveSearchParams) {
+		Cache<String, IPathEvaluator> parsedPaths = newParsedPathCache();
+		theActiveSearchParams.getSearchParamStream().forEach(nextSearchParam -> {
+			String nextPathUnsplit = nextSearchParam.getPath();
+			if (isBlank(nextPathUnsplit)) {
+				return;
+			}
+			for (String nextPath : split(nextPathUnsplit)) {
+				nextPath = trim(nextPath);
+				if (isBlank(nextPath) || parsedPaths.getIfPresent(nextPath) != null) {
+					continue;
+				}
+				try {
+					parsedPaths.put(nextPath, newPathEvaluator(nextPath));
+				} catch (Exception e) {
+					// This will be reported if the path is ever evaluated
+					ourLog.debug("Failed to parse search parameter path {}: {}", nextPath, e.toString());
+				}
+			}
+		});
+		ourLog.debug("Parsed {} search parameter paths", parsedPaths.estimatedSize());
+		myParsedPaths = parsedPaths;
+	}
+
+	/**
+	 * Paths used by active search parameters are added up front, and any other paths are
+	 * added as they are evaluated. The least recently used paths are evicted beyond the limit.
+	 */
+	private static Cache<String, IPathEvaluator> newParsedPathCache() {
+		return Caffeine.newBuilder().maximumSize(MAX_PARSED_PATHS).build();
+	}
+
 	protected FhirContext getContext() {
 		return myContext;
 	}
@@ -1169,6 +1240,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 		BaseRuntimeElementCompositeDefinition<?> patientCommunicationDefinition = (BaseRuntimeElementCompositeDefinition<?>) patientCommunicationValueChild.getChildByName("communication");
 		myPatientCommunicationLanguageValueChild = patientCommunicationDefinition.getChildByName("language");
 
+		mySearchParamRegistry.addActiveSearchParamsChangeListener(this::handleActiveSearchParamsChanged);
 	}
 
 	@FunctionalInterface
@@ -1178,6 +1250,13 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 
 	}
 
+	@FunctionalInterface
+	public interface IPathEvaluator {
+
+		List<? extends IBase> evaluate(IBaseResource theResource) throws FHIRException;
+
+	}
+
 	@FunctionalInterface
 	private interface IExtractor<T> {
 
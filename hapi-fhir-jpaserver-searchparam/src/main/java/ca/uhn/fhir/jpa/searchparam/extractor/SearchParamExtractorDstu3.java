@@ -28,6 +28,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.hl7.fhir.dstu3.context.IWorkerContext;
 import org.hl7.fhir.dstu3.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.dstu3.model.Base;
+import org.hl7.fhir.dstu3.model.ExpressionNode;
 import org.hl7.fhir.dstu3.utils.FHIRPathEngine;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -72,10 +73,17 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 	@Override
 	@PostConstruct
 	public void start() {
-		super.start();
+		// The path cache is populated as soon as the superclass registers with the search parameter registry
 		if (myFhirPathEngine == null) {
 			initFhirPathEngine();
 		}
+		super.start();
+	}
+
+	@Override
+	protected IPathEvaluator parsePath(String theSinglePath) {
+		ExpressionNode parsed = myFhirPathEngine.parse(theSinglePath);
+		return theResource -> new ArrayList<IBase>(myFhirPathEngine.evaluate((Base) theResource, parsed));
 	}
 
 	public void initFhirPathEngine() {
@@ -32,6 +32,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.context.IWorkerContext;
 import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.ExpressionNode;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
@@ -79,10 +80,17 @@ public class SearchParamExtractorR4 extends BaseSearchParamExtractor implements
 	@Override
 	@PostConstruct
 	public void start() {
-		super.start();
+		// The path cache is populated as soon as the superclass registers with the search parameter registry
 		if (myFhirPathEngine == null) {
 			initFhirPath();
 		}
+		super.start();
+	}
+
+	@Override
+	protected IPathEvaluator parsePath(String theSinglePath) {
+		ExpressionNode parsed = myFhirPathEngine.parse(theSinglePath);
+		return theResource -> new ArrayList<IBase>(myFhirPathEngine.evaluate((Base) theResource, parsed));
 	}
 
 	public void initFhirPath() {
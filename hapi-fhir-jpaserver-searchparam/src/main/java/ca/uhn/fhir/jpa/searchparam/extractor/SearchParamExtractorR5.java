@@ -26,10 +26,12 @@ import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.exceptions.PathEngineException;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.context.IWorkerContext;
 import org.hl7.fhir.r5.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r5.model.Base;
+import org.hl7.fhir.r5.model.ExpressionNode;
 import org.hl7.fhir.r5.model.IdType;
 import org.hl7.fhir.r5.model.Resource;
 import org.hl7.fhir.r5.model.ResourceType;
@@ -38,6 +40,7 @@ import org.hl7.fhir.r5.model.ValueSet;
 import org.hl7.fhir.r5.utils.FHIRPathEngine;
 
 import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -65,10 +68,17 @@ public class SearchParamExtractorR5 extends BaseSearchParamExtractor implements
 	@Override
 	@PostConstruct
 	public void start() {
-		super.start();
+		// The path cache is populated as soon as the superclass registers with the search parameter registry
 		if (myFhirPathEngine == null) {
 			initFhirPath();
 		}
+		super.start();
+	}
+
+	@Override
+	protected IPathEvaluator parsePath(String theSinglePath) {
+		ExpressionNode parsed = myFhirPathEngine.parse(theSinglePath);
+		return theResource -> new ArrayList<IBase>(myFhirPathEngine.evaluate((Base) theResource, parsed));
 	}
 
 	public void initFhirPath() {
@@ -50,26 +50,37 @@ import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
 import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hl7.fhir.instance.model.api.IBaseReference;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.NotNull;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public class SearchParamExtractorService {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchParamExtractorService.class);
+	private static final int QUEUE_SIZE_PER_THREAD = 100;
 
 	@Autowired
 	private ISearchParamExtractor mySearchParamExtractor;
@@ -86,6 +97,7 @@ public class SearchParamExtractorService {
 	private PartitionSettings myPartitionSettings;
 	@Autowired(required = false)
 	private IResourceLinkResolver myResourceLinkResolver;
+	private ThreadPoolExecutor myExecutor;
 
 
 	/**
@@ -95,51 +107,69 @@ public class SearchParamExtractorService {
 	public void extractFromResource(RequestPartitionId theRequestPartitionId, RequestDetails theRequestDetails, ResourceIndexedSearchParams theParams, ResourceTable theEntity, IBaseResource theResource, TransactionDetails theTransactionDetails, boolean theFailOnInvalidReference) {
 		IBaseResource resource = normalizeResource(theResource);
 
+		/*
+		 * The reference extraction is started first if we're extracting in parallel, since
+		 * resolving the references is the only step that needs to happen on this thread
+		 */
+		boolean parallel = myModelConfig.getSearchParamExtractionThreadCount() > 1;
+		Supplier<ISearchParamExtractor.SearchParamSet<PathAndRef>> refs = startExtraction(parallel, () -> mySearchParamExtractor.extractResourceLinks(resource));
+
 		// All search parameter types except Reference
-		extractSearchIndexParameters(theRequestDetails, theParams, resource, theEntity);
+		extractSearchIndexParameters(theRequestDetails, theParams, resource, theEntity, parallel);
 
 		// Reference search parameters
-		extractResourceLinks(theRequestPartitionId, theParams, theEntity, resource, theTransactionDetails, theFailOnInvalidReference, theRequestDetails);
+		extractResourceLinks(theRequestPartitionId, theParams, theEntity, resource, refs.get(), theTransactionDetails, theFailOnInvalidReference, theRequestDetails);
 
 		theParams.setUpdatedTime(theTransactionDetails.getTransactionDate());
 	}
 
-	private void extractSearchIndexParameters(RequestDetails theRequestDetails, ResourceIndexedSearchParams theParams, IBaseResource theResource, ResourceTable theEntity) {
-		
+	private void extractSearchIndexParameters(RequestDetails theRequestDetails, ResourceIndexedSearchParams theParams, IBaseResource theResource, ResourceTable theEntity, boolean theParallel) {
+
+		/*
+		 * If we're extracting in parallel, all of the extractions are started here and
+		 * the results are merged below in the same order as a serial extraction would
+		 * produce them. Otherwise, each extraction happens when its result is requested.
+		 */
+		Supplier<ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamString>> strings = startExtraction(theParallel, () -> extractSearchParamStrings(theResource));
+		Supplier<ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamNumber>> numbers = startExtraction(theParallel, () -> extractSearchParamNumber(theResource));
+		Supplier<ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamQuantity>> quantities = startExtraction(theParallel, () -> extractSearchParamQuantity(theResource));
+		Supplier<ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamQuantityNormalized>> quantitiesNormalized = null;
+		if (myModelConfig.getNormalizedQuantitySearchLevel().equals(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_STORAGE_SUPPORTED) || myModelConfig.getNormalizedQuantitySearchLevel().equals(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_SEARCH_SUPPORTED)) {
+			quantitiesNormalized = startExtraction(theParallel, () -> extractSearchParamQuantityNormalized(theResource));
+		}
+		Supplier<ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamDate>> dates = startExtraction(theParallel, () -> extractSearchParamDates(theResource));
+		Supplier<ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamUri>> uris = startExtraction(theParallel, () -> extractSearchParamUri(theResource));
+		Supplier<ISearchParamExtractor.SearchParamSet<BaseResourceIndexedSearchParam>> tokens = startExtraction(theParallel, () -> extractSearchParamTokens(theResource));
+		Supplier<ISearchParamExtractor.SearchParamSet<BaseResourceIndexedSearchParam>> specials = startExtraction(theParallel, () -> extractSearchParamSpecial(theResource));
+
 		// Strings
-		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamString> strings = extractSearchParamStrings(theResource);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, strings);
-		theParams.myStringParams.addAll(strings);
+		handleWarnings(theRequestDetails, myInterceptorBroadcaster, strings.get());
+		theParams.myStringParams.addAll(strings.get());
 
 		// Numbers
-		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamNumber> numbers = extractSearchParamNumber(theResource);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, numbers);
-		theParams.myNumberParams.addAll(numbers);
+		handleWarnings(theRequestDetails, myInterceptorBroadcaster, numbers.get());
+		theParams.myNumberParams.addAll(numbers.get());
 
 		// Quantities
-		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamQuantity> quantities = extractSearchParamQuantity(theResource);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, quantities);
-		theParams.myQuantityParams.addAll(quantities);
+		handleWarnings(theRequestDetails, myInterceptorBroadcaster, quantities.get());
+		theParams.myQuantityParams.addAll(quantities.get());
 
-		if (myModelConfig.getNormalizedQuantitySearchLevel().equals(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_STORAGE_SUPPORTED) || myModelConfig.getNormalizedQuantitySearchLevel().equals(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_SEARCH_SUPPORTED)) {
-			ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamQuantityNormalized> quantitiesNormalized = extractSearchParamQuantityNormalized(theResource);
-			handleWarnings(theRequestDetails, myInterceptorBroadcaster, quantitiesNormalized);
-			theParams.myQuantityNormalizedParams.addAll(quantitiesNormalized);
+		if (quantitiesNormalized != null) {
+			handleWarnings(theRequestDetails, myInterceptorBroadcaster, quantitiesNormalized.get());
+			theParams.myQuantityNormalizedParams.addAll(quantitiesNormalized.get());
 		}
-		
+
 		// Dates
-		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamDate> dates = extractSearchParamDates(theResource);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, dates);
-		theParams.myDateParams.addAll(dates);
+		handleWarnings(theRequestDetails, myInterceptorBroadcaster, dates.get());
+		theParams.myDateParams.addAll(dates.get());
 
 		// URIs
-		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamUri> uris = extractSearchParamUri(theResource);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, uris);
-		theParams.myUriParams.addAll(uris);
+		handleWarnings(theRequestDetails, myInterceptorBroadcaster, uris.get());
+		theParams.myUriParams.addAll(uris.get());
 
 		// Tokens (can result in both Token and String, as we index the display name for
 		// the types: Coding, CodeableConcept)
-		for (BaseResourceIndexedSearchParam next : extractSearchParamTokens(theResource)) {
+		for (BaseResourceIndexedSearchParam next : tokens.get()) {
 			if (next instanceof ResourceIndexedSearchParamToken) {
 				theParams.myTokenParams.add((ResourceIndexedSearchParamToken) next);
 			} else if (next instanceof ResourceIndexedSearchParamCoords) {
@@ -150,7 +180,7 @@ public class SearchParamExtractorService {
 		}
 
 		// Specials
-		for (BaseResourceIndexedSearchParam next : extractSearchParamSpecial(theResource)) {
+		for (BaseResourceIndexedSearchParam next : specials.get()) {
 			if (next instanceof ResourceIndexedSearchParamCoords) {
 				theParams.myCoordsParams.add((ResourceIndexedSearchParamCoords) next);
 			}
@@ -168,6 +198,61 @@ public class SearchParamExtractorService {
 
 	}
 
+	/**
+	 * If <code>theParallel</code> is <code>true</code>, starts the given extraction on the extraction
+	 * pool and returns a supplier that waits for its result. Otherwise, returns a supplier that
+	 * performs the extraction on the calling thread the first time it is invoked.
+	 */
+	private <T> Supplier<T> startExtraction(boolean theParallel, Supplier<T> theExtraction) {
+		if (!theParallel) {
+			return Suppliers.memoize(theExtraction::get);
+		}
+		Future<T> future = getExecutor().submit(theExtraction::get);
+		return Suppliers.memoize(() -> awaitExtraction(future));
+	}
+
+	private static <T> T awaitExtraction(Future<T> theFuture) {
+		try {
+			return theFuture.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException("Interrupted while extracting search parameters", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new InternalErrorException("Failed to extract search parameters: " + e.getCause(), e.getCause());
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (myExecutor == null) {
+			int threadCount = myModelConfig.getSearchParamExtractionThreadCount();
+			ourLog.info("Starting search parameter extraction pool with {} threads", threadCount);
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("searchparam_extract-%d")
+				.daemon(true)
+				.build();
+			myExecutor = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(threadCount * QUEUE_SIZE_PER_THREAD),
+				threadFactory,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return myExecutor;
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myExecutor != null) {
+			myExecutor.shutdownNow();
+			myExecutor = null;
+		}
+	}
+
 	/**
 	 * This is a bit hacky, but if someone has manually populated a resource (ie. my working directly with the model
 	 * as opposed to by parsing a serialized instance) it's possible that they have put in contained resources
@@ -183,13 +268,12 @@ public class SearchParamExtractorService {
 		return theResource;
 	}
 
-	private void extractResourceLinks(RequestPartitionId theRequestPartitionId, ResourceIndexedSearchParams theParams, ResourceTable theEntity, IBaseResource theResource, TransactionDetails theTransactionDetails, boolean theFailOnInvalidReference, RequestDetails theRequest) {
+	private void extractResourceLinks(RequestPartitionId theRequestPartitionId, ResourceIndexedSearchParams theParams, ResourceTable theEntity, IBaseResource theResource, ISearchParamExtractor.SearchParamSet<PathAndRef> theRefs, TransactionDetails theTransactionDetails, boolean theFailOnInvalidReference, RequestDetails theRequest) {
 		String resourceName = myContext.getResourceType(theResource);
 
-		ISearchParamExtractor.SearchParamSet<PathAndRef> refs = mySearchParamExtractor.extractResourceLinks(theResource);
-		SearchParamExtractorService.handleWarnings(theRequest, myInterceptorBroadcaster, refs);
+		SearchParamExtractorService.handleWarnings(theRequest, myInterceptorBroadcaster, theRefs);
 
-		for (PathAndRef nextPathAndRef : refs) {
+		for (PathAndRef nextPathAndRef : theRefs) {
 			RuntimeSearchParam searchParam = mySearchParamRegistry.getActiveSearchParam(resourceName, nextPathAndRef.getSearchParamName());
 			extractResourceLinks(theRequestPartitionId, theParams, theEntity, theTransactionDetails, searchParam, nextPathAndRef, theFailOnInvalidReference, theRequest);
 		}
@@ -0,0 +1,120 @@
+package ca.uhn.fhir.jpa.searchparam.extractor;
+
+/*
+ * #%L
+ * HAPI FHIR Search Parameters
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeDeclaredChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.parser.DataFormatException;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A search parameter path that only navigates through declared children of a resource,
+ * e.g. <code>Patient.name</code> or <code>Observation.code.coding</code>. These paths make
+ * up most of the built-in search parameters, and they are evaluated using the child
+ * accessors of the model definitions instead of going through the FHIRPath engine.
+ */
+class SimpleResourcePath implements BaseSearchParamExtractor.IPathEvaluator {
+
+	private static final Pattern SIMPLE_PATH = Pattern.compile("[A-Z][a-zA-Z]*(\\.[a-z][a-zA-Z]*)+");
+
+	private final String myResourceName;
+	private final List<BaseRuntimeChildDefinition> myChildren;
+
+	private SimpleResourcePath(String theResourceName, List<BaseRuntimeChildDefinition> theChildren) {
+		myResourceName = theResourceName;
+		myChildren = theChildren;
+	}
+
+	@Override
+	public List<? extends IBase> evaluate(IBaseResource theResource) {
+		List<IBase> values = Collections.singletonList(theResource);
+		for (BaseRuntimeChildDefinition nextChild : myChildren) {
+			List<IBase> nextValues = new ArrayList<>();
+			for (IBase nextValue : values) {
+				nextValues.addAll(nextChild.getAccessor().getValues(nextValue));
+			}
+			if (nextValues.isEmpty()) {
+				return nextValues;
+			}
+			values = nextValues;
+		}
+		return values;
+	}
+
+	String getResourceName() {
+		return myResourceName;
+	}
+
+	/**
+	 * @return Returns <code>null</code> if the path uses anything other than plain navigation
+	 * through declared children (e.g. functions, choice types or extensions), in which case it
+	 * needs to be evaluated by the FHIRPath engine
+	 */
+	@Nullable
+	static SimpleResourcePath parse(FhirContext theContext, String thePath) {
+		if (!SIMPLE_PATH.matcher(thePath).matches()) {
+			return null;
+		}
+
+		String[] parts = thePath.split("\\.");
+		RuntimeResourceDefinition resourceDef;
+		try {
+			resourceDef = theContext.getResourceDefinition(parts[0]);
+		} catch (DataFormatException e) {
+			// e.g. "Resource" or "DomainResource"
+			return null;
+		}
+
+		List<BaseRuntimeChildDefinition> children = new ArrayList<>(parts.length - 1);
+		BaseRuntimeElementCompositeDefinition<?> currentDef = resourceDef;
+		for (int i = 1; i < parts.length; i++) {
+			if (currentDef == null) {
+				return null;
+			}
+			BaseRuntimeChildDefinition child = currentDef.getChildByName(parts[i]);
+			if (!(child instanceof BaseRuntimeDeclaredChildDefinition) || child instanceof RuntimeChildChoiceDefinition) {
+				return null;
+			}
+			children.add(child);
+
+			BaseRuntimeElementDefinition<?> childDef = child.getChildByName(parts[i]);
+			currentDef = null;
+			if (childDef instanceof BaseRuntimeElementCompositeDefinition && !(childDef instanceof RuntimeResourceDefinition)) {
+				currentDef = (BaseRuntimeElementCompositeDefinition<?>) childDef;
+			}
+		}
+
+		return new SimpleResourcePath(resourceDef.getName(), Collections.unmodifiableList(children));
+	}
+
+}
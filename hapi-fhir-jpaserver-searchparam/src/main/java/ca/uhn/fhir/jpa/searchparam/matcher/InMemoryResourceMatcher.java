@@ -39,6 +39,9 @@ import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.util.MetaUtil;
 import ca.uhn.fhir.util.UrlUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
 import org.hl7.fhir.dstu3.model.Location;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -46,12 +49,17 @@ import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public class InMemoryResourceMatcher {
 
+	static final int MAX_PARSED_CRITERIA = 1000;
+
 	@Autowired
 	private MatchUrlService myMatchUrlService;
 	@Autowired
@@ -61,6 +69,14 @@ public class InMemoryResourceMatcher {
 	@Autowired
 	FhirContext myFhirContext;
 
+	private final Cache<String, ParsedCriteria> myParsedCriteria = Caffeine.newBuilder().maximumSize(MAX_PARSED_CRITERIA).build();
+
+	@PostConstruct
+	public void start() {
+		// The parsed criteria hold resolved search parameters, so they are discarded whenever those change
+		mySearchParamRegistry.addActiveSearchParamsChangeListener(t -> myParsedCriteria.invalidateAll());
+	}
+
 	/**
 	 * This method is called in two different scenarios.  With a null theResource, it determines whether database matching might be required.
 	 * Otherwise, it tries to perform the match in-memory, returning UNSUPPORTED if it's not possible.
@@ -68,6 +84,11 @@ public class InMemoryResourceMatcher {
 	 * Note that there will be cases where it returns UNSUPPORTED with a null resource, but when a non-null resource it returns supported and no match.
 	 * This is because an earlier parameter may be matchable in-memory in which case processing stops and we never get to the parameter
 	 * that would have required a database call.
+	 * </p>
+	 * <p>
+	 * The parsed form of each criteria string is cached, since the same subscription criteria are
+	 * typically tested against every resource that is modified.
+	 * </p>
 	 */
 
 	public InMemoryMatchResult match(String theCriteria, IBaseResource theResource, ResourceIndexedSearchParams theSearchParams) {
@@ -77,14 +98,38 @@ public class InMemoryResourceMatcher {
 		} else {
 			resourceDefinition = myFhirContext.getResourceDefinition(theResource);
 		}
+		ParsedCriteria parsedCriteria = getParsedCriteria(theCriteria, resourceDefinition);
+		if (parsedCriteria.getSearchParameterMap() == null) {
+			return InMemoryMatchResult.unsupportedFromReason(InMemoryMatchResult.PARSE_FAIL);
+		}
+		return match(parsedCriteria.getSearchParameterMap(), theResource, resourceDefinition, theSearchParams, parsedCriteria.getActiveSearchParams());
+	}
+
+	private ParsedCriteria getParsedCriteria(String theCriteria, RuntimeResourceDefinition theResourceDefinition) {
+		String key = theResourceDefinition.getName() + " " + theCriteria;
+		return myParsedCriteria.get(key, t -> parseCriteria(theCriteria, theResourceDefinition));
+	}
+
+	private ParsedCriteria parseCriteria(String theCriteria, RuntimeResourceDefinition theResourceDefinition) {
 		SearchParameterMap searchParameterMap;
 		try {
-			searchParameterMap = myMatchUrlService.translateMatchUrl(theCriteria, resourceDefinition);
+			searchParameterMap = myMatchUrlService.translateMatchUrl(theCriteria, theResourceDefinition);
 		} catch (UnsupportedOperationException e) {
-			return InMemoryMatchResult.unsupportedFromReason(InMemoryMatchResult.PARSE_FAIL);
+			return new ParsedCriteria(null, Collections.emptyMap());
 		}
 		searchParameterMap.clean();
-		return match(searchParameterMap, theResource, resourceDefinition, theSearchParams);
+
+		Map<String, RuntimeSearchParam> activeSearchParams = new HashMap<>();
+		for (String nextParamName : searchParameterMap.keySet()) {
+			activeSearchParams.put(nextParamName, mySearchParamRegistry.getActiveSearchParam(theResourceDefinition.getName(), nextParamName));
+		}
+		return new ParsedCriteria(searchParameterMap, activeSearchParams);
+	}
+
+	@VisibleForTesting
+	long getParsedCriteriaCountForUnitTest() {
+		myParsedCriteria.cleanUp();
+		return myParsedCriteria.estimatedSize();
 	}
 
 	/**
@@ -109,6 +154,14 @@ public class InMemoryResourceMatcher {
 
 	@Nonnull
 	public InMemoryMatchResult match(SearchParameterMap theSearchParameterMap, IBaseResource theResource, RuntimeResourceDefinition theResourceDefinition, ResourceIndexedSearchParams theSearchParams) {
+		return match(theSearchParameterMap, theResource, theResourceDefinition, theSearchParams, null);
+	}
+
+	/**
+	 * @param theActiveSearchParams The search parameter definitions for the parameters in <code>theSearchParameterMap</code>, or <code>null</code> if they should be looked up in the registry
+	 */
+	@Nonnull
+	private InMemoryMatchResult match(SearchParameterMap theSearchParameterMap, IBaseResource theResource, RuntimeResourceDefinition theResourceDefinition, ResourceIndexedSearchParams theSearchParams, Map<String, RuntimeSearchParam> theActiveSearchParams) {
 		if (theSearchParameterMap.getLastUpdated() != null) {
 			return InMemoryMatchResult.unsupportedFromParameterAndReason(Constants.PARAM_LASTUPDATED, InMemoryMatchResult.STANDARD_PARAMETER);
 		}
@@ -119,7 +172,7 @@ public class InMemoryResourceMatcher {
 		for (Map.Entry<String, List<List<IQueryParameterType>>> entry : theSearchParameterMap.entrySet()) {
 			String theParamName = entry.getKey();
 			List<List<IQueryParameterType>> theAndOrParams = entry.getValue();
-			InMemoryMatchResult result = matchIdsWithAndOr(theParamName, theAndOrParams, theResourceDefinition, theResource, theSearchParams);
+			InMemoryMatchResult result = matchIdsWithAndOr(theParamName, theAndOrParams, theResourceDefinition, theResource, theSearchParams, theActiveSearchParams);
 			if (!result.matched()) {
 				return result;
 			}
@@ -128,7 +181,7 @@ public class InMemoryResourceMatcher {
 	}
 
 	// This method is modelled from SearchBuilder.searchForIdsWithAndOr()
-	private InMemoryMatchResult matchIdsWithAndOr(String theParamName, List<List<IQueryParameterType>> theAndOrParams, RuntimeResourceDefinition theResourceDefinition, IBaseResource theResource, ResourceIndexedSearchParams theSearchParams) {
+	private InMemoryMatchResult matchIdsWithAndOr(String theParamName, List<List<IQueryParameterType>> theAndOrParams, RuntimeResourceDefinition theResourceDefinition, IBaseResource theResource, ResourceIndexedSearchParams theSearchParams, Map<String, RuntimeSearchParam> theActiveSearchParams) {
 		if (theAndOrParams.isEmpty()) {
 			return InMemoryMatchResult.successfulMatch();
 		}
@@ -150,7 +203,12 @@ public class InMemoryResourceMatcher {
 		}
 
 		String resourceName = theResourceDefinition.getName();
-		RuntimeSearchParam paramDef = mySearchParamRegistry.getActiveSearchParam(resourceName, theParamName);
+		RuntimeSearchParam paramDef;
+		if (theActiveSearchParams != null) {
+			paramDef = theActiveSearchParams.get(theParamName);
+		} else {
+			paramDef = mySearchParamRegistry.getActiveSearchParam(resourceName, theParamName);
+		}
 		InMemoryMatchResult checkUnsupportedResult = checkUnsupportedPrefixes(theParamName, paramDef, theAndOrParams);
 		if (!checkUnsupportedResult.supported()) {
 			return checkUnsupportedResult;
@@ -292,4 +350,29 @@ public class InMemoryResourceMatcher {
 		}
 		return false;
 	}
+
+	/**
+	 * A parsed criteria string. The contents are never modified once created.
+	 */
+	private static class ParsedCriteria {
+
+		private final SearchParameterMap mySearchParameterMap;
+		private final Map<String, RuntimeSearchParam> myActiveSearchParams;
+
+		/**
+		 * @param theSearchParameterMap <code>null</code> if the criteria could not be parsed
+		 */
+		ParsedCriteria(SearchParameterMap theSearchParameterMap, Map<String, RuntimeSearchParam> theActiveSearchParams) {
+			mySearchParameterMap = theSearchParameterMap;
+			myActiveSearchParams = theActiveSearchParams;
+		}
+
+		SearchParameterMap getSearchParameterMap() {
+			return mySearchParameterMap;
+		}
+
+		Map<String, RuntimeSearchParam> getActiveSearchParams() {
+			return myActiveSearchParams;
+		}
+	}
 }
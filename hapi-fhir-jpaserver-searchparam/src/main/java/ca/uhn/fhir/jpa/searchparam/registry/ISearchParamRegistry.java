@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface ISearchParamRegistry {
 
@@ -81,4 +82,15 @@ public interface ISearchParamRegistry {
 	default Collection<String> getValidSearchParameterNamesIncludingMeta(String theResourceName) {
 		return getActiveSearchParams().getValidSearchParameterNamesIncludingMeta(theResourceName);
 	}
+
+	/**
+	 * Registers a listener that is invoked with the new active search parameters every time they
+	 * are rebuilt, e.g. because a SearchParameter resource was created, updated or deleted. If the
+	 * active search parameters have already been loaded, the listener is also invoked immediately.
+	 *
+	 * @since 5.4.0
+	 */
+	default void addActiveSearchParamsChangeListener(Consumer<ReadOnlySearchParamCache> theListener) {
+		// nothing by default
+	}
 }
@@ -54,6 +54,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -81,6 +83,7 @@ public class SearchParamRegistryImpl implements ISearchParamRegistry, IResourceC
 	@Autowired
 	private IInterceptorService myInterceptorBroadcaster;
 	private IResourceChangeListenerCache myResourceChangeListenerCache;
+	private final List<Consumer<ReadOnlySearchParamCache>> myActiveSearchParamsChangeListeners = new CopyOnWriteArrayList<>();
 
 	@Override
 	public RuntimeSearchParam getActiveSearchParam(String theResourceName, String theParamName) {
@@ -146,6 +149,11 @@ public class SearchParamRegistryImpl implements ISearchParamRegistry, IResourceC
 
 		myJpaSearchParamCache.populateActiveSearchParams(myInterceptorBroadcaster, myPhoneticEncoder, myActiveSearchParams);
 		ourLog.debug("Refreshed search parameter cache in {}ms", sw.getMillis());
+
+		ReadOnlySearchParamCache activeSearchParams = ReadOnlySearchParamCache.fromRuntimeSearchParamCache(searchParams);
+		for (Consumer<ReadOnlySearchParamCache> next : myActiveSearchParamsChangeListeners) {
+			next.accept(activeSearchParams);
+		}
 	}
 
 	private ReadOnlySearchParamCache getBuiltInSearchParams() {
@@ -262,6 +270,15 @@ public class SearchParamRegistryImpl implements ISearchParamRegistry, IResourceC
 		myActiveSearchParams.getSearchParamStream().forEach(searchParam -> myJpaSearchParamCache.setPhoneticEncoder(myPhoneticEncoder, searchParam));
 	}
 
+	@Override
+	public void addActiveSearchParamsChangeListener(Consumer<ReadOnlySearchParamCache> theListener) {
+		myActiveSearchParamsChangeListeners.add(theListener);
+		RuntimeSearchParamCache activeSearchParams = myActiveSearchParams;
+		if (activeSearchParams != null) {
+			theListener.accept(ReadOnlySearchParamCache.fromRuntimeSearchParamCache(activeSearchParams));
+		}
+	}
+
 	@Override
 	public void handleChange(IResourceChangeEvent theResourceChangeEvent) {
 		if (theResourceChangeEvent.isEmpty()) {
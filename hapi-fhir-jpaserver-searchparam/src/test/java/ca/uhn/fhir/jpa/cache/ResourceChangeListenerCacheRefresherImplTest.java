@@ -43,6 +43,11 @@ class ResourceChangeListenerCacheRefresherImplTest {
 	@Configuration
 	@Import(RegisteredResourceListenerFactoryConfig.class)
 	static class SpringContext {
+		@Bean
+		IResourceChangeMessageBroker resourceChangeMessageBroker() {
+			return new LocalResourceChangeMessageBroker();
+		}
+
 		@Bean
 		IResourceChangeListenerCacheRefresher resourceChangeListenerCacheRefresher() {
 		return new ResourceChangeListenerCacheRefresherImpl();
@@ -1,26 +1,40 @@
 package ca.uhn.fhir.jpa.cache;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.rest.server.messaging.BaseResourceMessage;
+import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
 class ResourceChangeListenerRegistryInterceptorTest {
 	@Autowired
 	ResourceChangeListenerRegistryInterceptor myResourceChangeListenerRegistryInterceptor;
+	@Autowired
+	ModelConfig myModelConfig;
 
 	@MockBean
 	private IInterceptorService myInterceptorBroadcaster;
 	@MockBean
 	private IResourceChangeListenerRegistry myResourceChangeListenerRegistry;
+	@MockBean
+	private IResourceChangeMessageBroker myResourceChangeMessageBroker;
 
 	@Configuration
 	static class SpringContext {
@@ -28,6 +42,21 @@ class ResourceChangeListenerRegistryInterceptorTest {
 		public ResourceChangeListenerRegistryInterceptor resourceChangeListenerRegistryInterceptor() {
 			return new ResourceChangeListenerRegistryInterceptor();
 		}
+
+		@Bean
+		public ModelConfig modelConfig() {
+			return new ModelConfig();
+		}
+
+		@Bean
+		public FhirContext fhirContext() {
+			return FhirContext.forR4();
+		}
+	}
+
+	@AfterEach
+	public void after() {
+		myModelConfig.setResourceChangeNotificationsEnabled(new ModelConfig().isResourceChangeNotificationsEnabled());
 	}
 
 	@Test
@@ -36,4 +65,33 @@ class ResourceChangeListenerRegistryInterceptorTest {
 		myResourceChangeListenerRegistryInterceptor.created(patient);
 		verify(myResourceChangeListenerRegistry).requestRefreshIfWatching(patient);
 	}
+
+	@Test
+	public void testNotificationPublished() {
+		myModelConfig.setResourceChangeNotificationsEnabled(true);
+		when(myResourceChangeListenerRegistry.isWatchingResourceType("Patient")).thenReturn(true);
+
+		Patient patient = new Patient();
+		patient.setId("Patient/123/_history/2");
+		myResourceChangeListenerRegistryInterceptor.updated(patient);
+
+		ArgumentCaptor<ResourceChangeMessage> captor = ArgumentCaptor.forClass(ResourceChangeMessage.class);
+		verify(myResourceChangeMessageBroker).publish(captor.capture());
+		assertEquals("Patient/123", captor.getValue().getResourceId().getValue());
+		assertEquals("Patient", captor.getValue().getResourceType());
+		assertEquals(BaseResourceMessage.OperationTypeEnum.UPDATE, captor.getValue().getOperationType());
+		verify(myResourceChangeListenerRegistry, never()).requestRefreshIfWatching(any());
+	}
+
+	@Test
+	public void testNotificationNotPublishedForUnwatchedType() {
+		myModelConfig.setResourceChangeNotificationsEnabled(true);
+		when(myResourceChangeListenerRegistry.isWatchingResourceType("Patient")).thenReturn(true);
+
+		Observation observation = new Observation();
+		observation.setId("Observation/123");
+		myResourceChangeListenerRegistryInterceptor.created(observation);
+
+		verify(myResourceChangeMessageBroker, never()).publish(any());
+	}
 }
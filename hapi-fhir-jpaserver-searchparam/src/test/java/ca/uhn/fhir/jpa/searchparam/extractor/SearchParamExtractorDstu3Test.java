@@ -30,6 +30,7 @@ import org.hl7.fhir.dstu3.model.Encounter;
 import org.hl7.fhir.dstu3.model.Location;
 import org.hl7.fhir.dstu3.model.Observation;
 import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
 import org.hl7.fhir.dstu3.model.Questionnaire;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
@@ -158,6 +159,26 @@ public class SearchParamExtractorDstu3Test {
 	}
 
 
+	@Test
+	public void testPathForOtherResourceTypeIsIgnored() {
+
+		MySearchParamRegistry searchParamRegistry = new MySearchParamRegistry();
+		SearchParamExtractorDstu3 extractor = new SearchParamExtractorDstu3(new ModelConfig(), new PartitionSettings(), ourCtx, searchParamRegistry);
+		extractor.start();
+
+		searchParamRegistry.addSearchParam(new RuntimeSearchParam("foo", "foo", "Patient.name.family | Practitioner.name.family", RestSearchParameterTypeEnum.STRING, Sets.newHashSet(), Sets.newHashSet(), RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE));
+		Practitioner resource = new Practitioner();
+		resource.addName().setFamily("smith");
+		List<String> strings = extractor.extractSearchParamStrings(resource)
+			.stream()
+			.filter(t -> t.getParamName().equals("foo"))
+			.map(ResourceIndexedSearchParamString::getValueNormalized)
+			.collect(Collectors.toList());
+		assertThat(strings, Matchers.contains("SMITH"));
+
+	}
+
+
 	@Test
 	public void testInvalidType() {
 
@@ -0,0 +1,102 @@
+package ca.uhn.fhir.jpa.searchparam.extractor;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.utils.FHIRPathEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SimpleResourcePathTest {
+
+	private static final FhirContext ourCtx = FhirContext.forCached(FhirVersionEnum.R4);
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"Observation.value",
+		"Observation.value.as(Quantity)",
+		"Observation.extension('http://foo')",
+		"Patient.name[0]",
+		"Patient.foo",
+		"Resource.id",
+		"Patient.managingOrganization.reference.foo",
+		"Patient.deceased"
+	})
+	public void testParseNotSimple(String thePath) {
+		assertNull(SimpleResourcePath.parse(ourCtx, thePath));
+	}
+
+	@Test
+	public void testEvaluateMatchesFhirPath() {
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("http://foo").setValue("123");
+		patient.addIdentifier().setValue("456");
+		patient.addName().setFamily("FAMILY1").addGiven("GIVEN1").addGiven("GIVEN2");
+		patient.addName().addGiven("GIVEN3");
+		patient.addName();
+		patient.setActive(true);
+		patient.getManagingOrganization().setReference("Organization/123");
+		patient.addContact().addTelecom().setValue("555-1234");
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+		obs.addComponent().getCode().addCoding().setCode("A");
+		obs.addComponent().setValue(new Quantity(2));
+		obs.setSubject(new Reference("Patient/123"));
+
+		FHIRPathEngine fhirPathEngine = new FHIRPathEngine(new HapiWorkerContext(ourCtx, ourCtx.getValidationSupport()));
+		int count = 0;
+		for (Resource next : new Resource[]{patient, obs}) {
+			for (RuntimeSearchParam nextSearchParam : ourCtx.getResourceDefinition(next).getSearchParams()) {
+				for (String nextPath : nextSearchParam.getPath().split("\\|")) {
+					nextPath = nextPath.trim();
+					SimpleResourcePath simplePath = SimpleResourcePath.parse(ourCtx, nextPath);
+					if (simplePath == null) {
+						continue;
+					}
+					count++;
+					List<Base> expected = fhirPathEngine.evaluate(next, nextPath);
+					List<? extends IBase> actual = simplePath.evaluate(next);
+					assertEquals(expected.size(), actual.size(), nextPath);
+					for (int i = 0; i < expected.size(); i++) {
+						assertSame(expected.get(i), actual.get(i), nextPath);
+					}
+				}
+			}
+		}
+		assertEquals(true, count > 20, "Only found " + count + " simple paths");
+	}
+
+	@Test
+	public void testEvaluateNestedResource() {
+		SimpleResourcePath path = SimpleResourcePath.parse(ourCtx, "Bundle.entry.resource");
+		assertNotNull(path);
+		assertEquals("Bundle", path.getResourceName());
+
+		Bundle bundle = new Bundle();
+		bundle.addEntry().setResource(new Patient().setActiveElement(new BooleanType(true)));
+		bundle.addEntry();
+		List<? extends IBase> values = path.evaluate(bundle);
+		assertEquals(1, values.size());
+		assertSame(bundle.getEntryFirstRep().getResource(), values.get(0));
+	}
+
+}
@@ -310,6 +310,30 @@ public class InMemoryResourceMatcherR5Test {
 	}
 
 
+	@Test
+	public void testParsedCriteriaAreReused() {
+		String criteria = "Observation?date=gt" + EARLY_DATE;
+		long initialCount = myInMemoryResourceMatcher.getParsedCriteriaCountForUnitTest();
+
+		assertTrue(myInMemoryResourceMatcher.canBeEvaluatedInMemory(criteria).supported());
+		assertTrue(myInMemoryResourceMatcher.match(criteria, myObservation, mySearchParams).matched());
+		assertTrue(myInMemoryResourceMatcher.match(criteria, myObservation, mySearchParams).matched());
+		assertEquals(initialCount + 1, myInMemoryResourceMatcher.getParsedCriteriaCountForUnitTest());
+
+		InMemoryMatchResult result = myInMemoryResourceMatcher.match("Observation?date=gt" + LATE_DATE, myObservation, mySearchParams);
+		assertTrue(result.supported());
+		assertFalse(result.matched());
+		assertEquals(initialCount + 2, myInMemoryResourceMatcher.getParsedCriteriaCountForUnitTest());
+	}
+
+	@Test
+	public void testParsedCriteriaCacheIsBounded() {
+		for (int i = 0; i < InMemoryResourceMatcher.MAX_PARSED_CRITERIA + 10; i++) {
+			assertTrue(myInMemoryResourceMatcher.match("Observation?code=" + i, myObservation, mySearchParams).supported());
+		}
+		assertEquals(InMemoryResourceMatcher.MAX_PARSED_CRITERIA, myInMemoryResourceMatcher.getParsedCriteriaCountForUnitTest());
+	}
+
 	private ResourceIndexedSearchParams extractDateSearchParam(Observation theObservation) {
 		ResourceIndexedSearchParams retval = new ResourceIndexedSearchParams();
 		BaseDateTimeType dateValue = (BaseDateTimeType) theObservation.getEffective();
@@ -4,7 +4,9 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.interceptor.api.IInterceptorService;
 import ca.uhn.fhir.jpa.cache.IResourceChangeListenerRegistry;
+import ca.uhn.fhir.jpa.cache.IResourceChangeMessageBroker;
 import ca.uhn.fhir.jpa.cache.IResourceVersionSvc;
+import ca.uhn.fhir.jpa.cache.LocalResourceChangeMessageBroker;
 import ca.uhn.fhir.jpa.cache.ResourceChangeListenerCacheRefresherImpl;
 import ca.uhn.fhir.jpa.cache.ResourceChangeListenerRegistryImpl;
 import ca.uhn.fhir.jpa.cache.ResourceChangeResult;
@@ -129,6 +131,11 @@ public class SearchParamRegistryImplTest {
 			return new ResourceChangeListenerRegistryImpl();
 		}
 
+		@Bean
+		IResourceChangeMessageBroker resourceChangeMessageBroker() {
+			return new LocalResourceChangeMessageBroker();
+		}
+
 		@Bean
 		ResourceChangeListenerCacheRefresherImpl resourceChangeListenerCacheRefresher() {
 			return new ResourceChangeListenerCacheRefresherImpl();
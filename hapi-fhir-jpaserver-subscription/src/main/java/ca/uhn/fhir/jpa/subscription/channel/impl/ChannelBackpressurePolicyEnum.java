@@ -0,0 +1,50 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Determines what a {@link RingBufferChannel} does when a message is sent while the
+ * ring buffer is full.
+ */
+public enum ChannelBackpressurePolicyEnum {
+
+	/**
+	 * The sending thread waits until space becomes available. This is the behaviour of
+	 * {@link LinkedBlockingChannelFactory}, and is the default.
+	 */
+	BLOCK,
+
+	/**
+	 * The message is discarded and a warning is logged. This guarantees that a slow consumer
+	 * can never delay the sending thread, at the cost of losing messages.
+	 */
+	DROP,
+
+	/**
+	 * The message is placed on a bounded in-memory overflow queue which consumers drain once the
+	 * ring buffer is empty. No messages are lost, and the sending thread is not delayed until the
+	 * overflow queue is also full, at which point it waits as it would with {@link #BLOCK}.
+	 *
+	 * @see RingBufferChannelFactory#setMaximumOverflowSize(int)
+	 */
+	SPILL
+
+}
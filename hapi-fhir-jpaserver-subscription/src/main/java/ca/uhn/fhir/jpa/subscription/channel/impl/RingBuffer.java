@@ -0,0 +1,154 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer / multi-consumer ring buffer.
+ * <p>
+ * Each slot carries a sequence number which tells producers and consumers whether the
+ * slot is free to be written or ready to be read, so the only contention between threads
+ * is a single compare-and-set on the head (consumers) or tail (producers) counter. No
+ * nodes are allocated when publishing an element, unlike {@link java.util.concurrent.LinkedBlockingQueue}.
+ * </p>
+ * <p>
+ * The capacity is always a power of two.
+ * </p>
+ */
+public class RingBuffer<T> {
+
+	private final int myCapacity;
+	private final int myMask;
+	private final AtomicReferenceArray<T> myElements;
+	private final AtomicLongArray mySequences;
+	private final AtomicLong myHead = new AtomicLong(0);
+	private final AtomicLong myTail = new AtomicLong(0);
+
+	/**
+	 * Constructor
+	 *
+	 * @param theMinimumCapacity The minimum capacity. This will be rounded up to the next power of two.
+	 */
+	public RingBuffer(int theMinimumCapacity) {
+		Validate.isTrue(theMinimumCapacity > 0, "Capacity must be greater than 0");
+		Validate.isTrue(theMinimumCapacity <= (1 << 30), "Capacity must not be greater than 2^30");
+		int capacity = 1;
+		while (capacity < theMinimumCapacity) {
+			capacity <<= 1;
+		}
+		myCapacity = capacity;
+		myMask = capacity - 1;
+		myElements = new AtomicReferenceArray<>(capacity);
+		mySequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			mySequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Adds an element to the buffer
+	 *
+	 * @return Returns <code>false</code> if the buffer is full
+	 */
+	public boolean offer(T theElement) {
+		Validate.notNull(theElement, "theElement must not be null");
+		while (true) {
+			long tail = myTail.get();
+			int index = (int) (tail & myMask);
+			long diff = mySequences.get(index) - tail;
+			if (diff == 0) {
+				if (myTail.compareAndSet(tail, tail + 1)) {
+					myElements.set(index, theElement);
+					mySequences.set(index, tail + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+			// Otherwise another producer claimed this slot first, so try again
+		}
+	}
+
+	/**
+	 * Removes and returns the next element from the buffer
+	 *
+	 * @return Returns <code>null</code> if the buffer is empty
+	 */
+	public T poll() {
+		while (true) {
+			long head = myHead.get();
+			int index = (int) (head & myMask);
+			long diff = mySequences.get(index) - (head + 1);
+			if (diff == 0) {
+				if (myHead.compareAndSet(head, head + 1)) {
+					T retVal = myElements.get(index);
+					myElements.set(index, null);
+					mySequences.set(index, head + myCapacity);
+					return retVal;
+				}
+			} else if (diff < 0) {
+				return null;
+			}
+			// Otherwise another consumer claimed this slot first, so try again
+		}
+	}
+
+	/**
+	 * Removes up to <code>theMaxElements</code> elements from the buffer and adds them to the given list
+	 *
+	 * @return The number of elements that were drained
+	 */
+	public int drainTo(List<? super T> theTarget, int theMaxElements) {
+		int count = 0;
+		while (count < theMaxElements) {
+			T next = poll();
+			if (next == null) {
+				break;
+			}
+			theTarget.add(next);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns an estimate of the number of elements in the buffer
+	 */
+	public int size() {
+		long size = myTail.get() - myHead.get();
+		return (int) Math.max(0, Math.min(size, myCapacity));
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int getCapacity() {
+		return myCapacity;
+	}
+
+}
@@ -0,0 +1,429 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelProducer;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelReceiver;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.util.ErrorHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * In-JVM channel which hands messages to its consumer threads through a lock-free
+ * {@link RingBuffer}. Each consumer thread drains up to a batch of messages at a time
+ * and delivers them to every subscribed handler.
+ * <p>
+ * What happens when the buffer is full is determined by the channel's
+ * {@link ChannelBackpressurePolicyEnum}, and what idle threads do is determined by its
+ * {@link RingBufferWaitStrategyEnum}.
+ * </p>
+ * <p>
+ * As with {@link LinkedBlockingChannel}, any {@link ExecutorChannelInterceptor} registered on the
+ * channel is invoked before and after each message is handled (including when the handler fails).
+ * A failure in a handler is then passed to the channel's {@link ErrorHandler}.
+ * </p>
+ *
+ * @see RingBufferChannelFactory
+ */
+public class RingBufferChannel extends AbstractSubscribableChannel implements IChannelProducer, IChannelReceiver {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(RingBufferChannel.class);
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final long BLOCKING_MAX_WAIT_MILLIS = 100;
+
+	private final String myName;
+	private final RingBuffer<Message<?>> myRingBuffer;
+	private final ConcurrentLinkedQueue<Message<?>> myOverflow = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger myOverflowSize = new AtomicInteger(0);
+	private final int myMaximumOverflowSize;
+	private final ErrorHandler myErrorHandler;
+	private final int myBatchSize;
+	private final RingBufferWaitStrategyEnum myWaitStrategy;
+	private final ChannelBackpressurePolicyEnum myBackpressurePolicy;
+	private final List<Thread> myConsumerThreads = new ArrayList<>();
+	private final ReentrantLock myLock = new ReentrantLock();
+	private final Condition myNotEmpty = myLock.newCondition();
+	private final Condition myNotFull = myLock.newCondition();
+	private final AtomicInteger myWaitingConsumers = new AtomicInteger(0);
+	private final AtomicInteger myWaitingProducers = new AtomicInteger(0);
+	private final AtomicLong myDroppedCount = new AtomicLong(0);
+	private volatile boolean myStopped;
+
+	/**
+	 * Constructor
+	 */
+	public RingBufferChannel(String theName, int theRingSize, int theBatchSize, int theConcurrentConsumers, RingBufferWaitStrategyEnum theWaitStrategy, ChannelBackpressurePolicyEnum theBackpressurePolicy, int theMaximumOverflowSize, ErrorHandler theErrorHandler, ThreadFactory theThreadFactory) {
+		Validate.isTrue(theBatchSize > 0, "Batch size must be greater than 0");
+		Validate.isTrue(theConcurrentConsumers > 0, "Concurrent consumers must be greater than 0");
+		Validate.isTrue(theMaximumOverflowSize >= 0, "Maximum overflow size must not be negative");
+		Validate.notNull(theWaitStrategy, "theWaitStrategy must not be null");
+		Validate.notNull(theBackpressurePolicy, "theBackpressurePolicy must not be null");
+		Validate.notNull(theErrorHandler, "theErrorHandler must not be null");
+
+		myName = theName;
+		myRingBuffer = new RingBuffer<>(theRingSize);
+		myBatchSize = theBatchSize;
+		myWaitStrategy = theWaitStrategy;
+		myBackpressurePolicy = theBackpressurePolicy;
+		myMaximumOverflowSize = theMaximumOverflowSize;
+		myErrorHandler = theErrorHandler;
+
+		for (int i = 0; i < theConcurrentConsumers; i++) {
+			Thread thread = theThreadFactory.newThread(this::consume);
+			myConsumerThreads.add(thread);
+			thread.start();
+		}
+	}
+
+	@Override
+	protected boolean sendInternal(Message<?> theMessage, long theTimeout) {
+		Validate.isTrue(!myStopped, "Channel %s has been destroyed", myName);
+
+		boolean accepted;
+		if (myOverflowSize.get() > 0) {
+			// Keep FIFO order while there are spilled messages waiting to be delivered
+			accepted = false;
+		} else {
+			accepted = myRingBuffer.offer(theMessage);
+		}
+
+		if (!accepted) {
+			switch (myBackpressurePolicy) {
+				case DROP:
+					long dropped = myDroppedCount.incrementAndGet();
+					ourLog.warn("Channel {} is full ({} elements), dropping message. {} messages have been dropped so far.", myName, myRingBuffer.getCapacity(), dropped);
+					return false;
+				case SPILL:
+					if (!spill(theMessage, theTimeout)) {
+						return false;
+					}
+					break;
+				case BLOCK:
+				default:
+					if (!publishBlocking(theMessage, theTimeout)) {
+						return false;
+					}
+					break;
+			}
+		}
+
+		signalConsumers();
+		return true;
+	}
+
+	private boolean publishBlocking(Message<?> theMessage, long theTimeout) {
+		ourLog.info("Note: Channel {} is full ({} elements), waiting for a slot to become available!", myName, myRingBuffer.getCapacity());
+		long start = System.nanoTime();
+		long deadline = theTimeout >= 0 ? start + TimeUnit.MILLISECONDS.toNanos(theTimeout) : Long.MAX_VALUE;
+		int idleCount = 0;
+		while (!myRingBuffer.offer(theMessage)) {
+			if (myStopped || Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			if (System.nanoTime() - deadline > 0) {
+				ourLog.warn("Timed out after {}ms waiting for a slot in channel {}", theTimeout, myName);
+				return false;
+			}
+			if (myWaitStrategy == RingBufferWaitStrategyEnum.BLOCKING) {
+				awaitSignal(myNotFull, myWaitingProducers, () -> myRingBuffer.size() < myRingBuffer.getCapacity());
+			} else {
+				idleCount = idle(idleCount);
+			}
+		}
+		ourLog.info("Slot become available after {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return true;
+	}
+
+	/**
+	 * Adds the message to the overflow queue. If the overflow queue is also full, the sending
+	 * thread waits for consumers to make room in it, as it would with {@link ChannelBackpressurePolicyEnum#BLOCK}.
+	 * Messages are never moved from the overflow queue back to the ring buffer, so waiting for
+	 * room in the overflow queue (rather than in the ring buffer) preserves FIFO order.
+	 */
+	private boolean spill(Message<?> theMessage, long theTimeout) {
+		if (reserveOverflowSlot()) {
+			myOverflow.add(theMessage);
+			return true;
+		}
+
+		ourLog.info("Note: Channel {} is full ({} elements) and so is its overflow queue ({} elements), waiting for a slot to become available!", myName, myRingBuffer.getCapacity(), myMaximumOverflowSize);
+		long start = System.nanoTime();
+		long deadline = theTimeout >= 0 ? start + TimeUnit.MILLISECONDS.toNanos(theTimeout) : Long.MAX_VALUE;
+		int idleCount = 0;
+		while (!reserveOverflowSlot()) {
+			if (myStopped || Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			if (System.nanoTime() - deadline > 0) {
+				ourLog.warn("Timed out after {}ms waiting for a slot in channel {}", theTimeout, myName);
+				return false;
+			}
+			if (myWaitStrategy == RingBufferWaitStrategyEnum.BLOCKING) {
+				awaitSignal(myNotFull, myWaitingProducers, () -> myOverflowSize.get() < myMaximumOverflowSize);
+			} else {
+				idleCount = idle(idleCount);
+			}
+		}
+		myOverflow.add(theMessage);
+		ourLog.info("Slot become available after {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return true;
+	}
+
+	private boolean reserveOverflowSlot() {
+		while (true) {
+			int size = myOverflowSize.get();
+			if (size >= myMaximumOverflowSize) {
+				return false;
+			}
+			if (myOverflowSize.compareAndSet(size, size + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void consume() {
+		List<Message<?>> batch = new ArrayList<>(myBatchSize);
+		int idleCount = 0;
+		while (!myStopped) {
+			int count = myRingBuffer.drainTo(batch, myBatchSize);
+			if (count == 0) {
+				count = drainOverflow(batch);
+			}
+			if (count > 0 && myWaitingProducers.get() > 0) {
+				signal(myNotFull);
+			}
+
+			if (count == 0) {
+				if (myWaitStrategy == RingBufferWaitStrategyEnum.BLOCKING) {
+					awaitSignal(myNotEmpty, myWaitingConsumers, () -> !isEmpty());
+				} else {
+					idleCount = idle(idleCount);
+				}
+				continue;
+			}
+
+			idleCount = 0;
+			for (Message<?> next : batch) {
+				deliver(next);
+			}
+			batch.clear();
+		}
+	}
+
+	private int drainOverflow(List<Message<?>> theBatch) {
+		int count = 0;
+		while (count < myBatchSize) {
+			Message<?> next = myOverflow.poll();
+			if (next == null) {
+				break;
+			}
+			myOverflowSize.decrementAndGet();
+			theBatch.add(next);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Delivers the message to each subscriber, applying any {@link ExecutorChannelInterceptor}s
+	 * in the same way as {@link org.springframework.messaging.support.ExecutorSubscribableChannel}
+	 */
+	private void deliver(Message<?> theMessage) {
+		for (MessageHandler next : getSubscribers()) {
+			try {
+				deliver(theMessage, next);
+			} catch (MessagingException e) {
+				handleError(e);
+			} catch (Throwable t) {
+				// e.g. an Error from the handler, which would otherwise kill the consumer thread
+				ourLog.error("Failure in channel {} while delivering message to handler {}", myName, next, t);
+			}
+		}
+	}
+
+	private void handleError(MessagingException theException) {
+		try {
+			myErrorHandler.handleError(theException);
+		} catch (Throwable t) {
+			ourLog.error("Failure in error handler for channel {}", myName, t);
+		}
+	}
+
+	private void deliver(Message<?> theMessage, MessageHandler theHandler) {
+		List<ExecutorChannelInterceptor> interceptors = getExecutorInterceptors();
+		Message<?> message = theMessage;
+		int interceptorIndex = -1;
+		try {
+			for (ExecutorChannelInterceptor next : interceptors) {
+				message = next.beforeHandle(message, this, theHandler);
+				if (message == null) {
+					triggerAfterMessageHandled(theMessage, theHandler, interceptors, interceptorIndex, null);
+					return;
+				}
+				interceptorIndex++;
+			}
+			theHandler.handleMessage(message);
+			triggerAfterMessageHandled(message, theHandler, interceptors, interceptorIndex, null);
+		} catch (Exception e) {
+			triggerAfterMessageHandled(message, theHandler, interceptors, interceptorIndex, e);
+			if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			throw new MessageDeliveryException(message, "Failure in channel " + myName + " while delivering message to handler " + theHandler, e);
+		}
+	}
+
+	private void triggerAfterMessageHandled(Message<?> theMessage, MessageHandler theHandler, List<ExecutorChannelInterceptor> theInterceptors, int theLastIndex, Exception theException) {
+		for (int i = theLastIndex; i >= 0; i--) {
+			try {
+				theInterceptors.get(i).afterMessageHandled(theMessage, this, theHandler, theException);
+			} catch (Throwable t) {
+				ourLog.error("Exception from afterMessageHandled in {}", theInterceptors.get(i), t);
+			}
+		}
+	}
+
+	private List<ExecutorChannelInterceptor> getExecutorInterceptors() {
+		List<ExecutorChannelInterceptor> retVal = new ArrayList<>();
+		for (ChannelInterceptor next : getInterceptors()) {
+			if (next instanceof ExecutorChannelInterceptor) {
+				retVal.add((ExecutorChannelInterceptor) next);
+			}
+		}
+		return retVal;
+	}
+
+	private void signalConsumers() {
+		if (myWaitStrategy == RingBufferWaitStrategyEnum.BLOCKING && myWaitingConsumers.get() > 0) {
+			signal(myNotEmpty);
+		}
+	}
+
+	private void signal(Condition theCondition) {
+		myLock.lock();
+		try {
+			theCondition.signalAll();
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits on the given condition until it is signalled. The waiter count is incremented before
+	 * the state is checked under the lock, and threads that change the state only signal if there
+	 * are waiters, so either the check sees the change or the signal is sent after the wait begins.
+	 * The wait is still bounded by {@link #BLOCKING_MAX_WAIT_MILLIS} as a safety net.
+	 *
+	 * @param theReady Returns <code>true</code> if the waiting thread can proceed without waiting
+	 */
+	private void awaitSignal(Condition theCondition, AtomicInteger theWaiterCount, BooleanSupplier theReady) {
+		theWaiterCount.incrementAndGet();
+		myLock.lock();
+		try {
+			if (!theReady.getAsBoolean() && !myStopped) {
+				theCondition.await(BLOCKING_MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			myLock.unlock();
+			theWaiterCount.decrementAndGet();
+		}
+	}
+
+	private int idle(int theIdleCount) {
+		if (theIdleCount < SPIN_TRIES) {
+			// spin
+		} else if (theIdleCount < SPIN_TRIES + YIELD_TRIES || myWaitStrategy == RingBufferWaitStrategyEnum.YIELDING) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(SLEEP_NANOS);
+		}
+		return theIdleCount + 1;
+	}
+
+	private boolean isEmpty() {
+		return myRingBuffer.isEmpty() && myOverflowSize.get() == 0;
+	}
+
+	/**
+	 * Returns the number of messages waiting to be delivered
+	 */
+	public int getQueueSizeForUnitTest() {
+		return myRingBuffer.size() + myOverflowSize.get();
+	}
+
+	/**
+	 * Returns the number of messages that have been discarded because the channel was full
+	 * (only applies if the backpressure policy is {@link ChannelBackpressurePolicyEnum#DROP})
+	 */
+	public long getDroppedCount() {
+		return myDroppedCount.get();
+	}
+
+	public ChannelBackpressurePolicyEnum getBackpressurePolicy() {
+		return myBackpressurePolicy;
+	}
+
+	public void clearInterceptorsForUnitTest() {
+		while (getInterceptors().size() > 0) {
+			removeInterceptor(0);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return myName;
+	}
+
+	@Override
+	public void destroy() {
+		myStopped = true;
+		signal(myNotEmpty);
+		signal(myNotFull);
+		for (Thread next : myConsumerThreads) {
+			next.interrupt();
+		}
+		myConsumerThreads.clear();
+	}
+}
@@ -0,0 +1,205 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelConsumerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelProducerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelFactory;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelProducer;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelReceiver;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelSettings;
+import ca.uhn.fhir.jpa.subscription.channel.subscription.IChannelNamer;
+import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionConstants;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ErrorHandler;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An alternative to {@link LinkedBlockingChannelFactory} which creates {@link RingBufferChannel} channels.
+ * <p>
+ * Unlike {@link LinkedBlockingChannelFactory}, which blocks the sending thread whenever a channel's queue
+ * is full, the behaviour for a full channel can be chosen using a {@link ChannelBackpressurePolicyEnum}. A
+ * default policy applies to all channels, and it can be overridden for individual channels. Since every
+ * subscription has its own delivery channel (see {@link ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionDeliveryChannelNamer}),
+ * this allows a different policy to be used for each subscription.
+ * </p>
+ * <p>
+ * To use this factory, create a <code>@Primary @Bean</code> of type {@link IChannelFactory} (see
+ * {@link ca.uhn.fhir.jpa.subscription.channel.config.SubscriptionChannelConfig}).
+ * </p>
+ */
+public class RingBufferChannelFactory implements IChannelFactory {
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	public static final int DEFAULT_MAXIMUM_OVERFLOW_SIZE = 10 * SubscriptionConstants.DELIVERY_EXECUTOR_QUEUE_SIZE;
+	private static final Logger ourLog = LoggerFactory.getLogger(RingBufferChannelFactory.class);
+
+	private final Map<String, RingBufferChannel> myChannels = new ConcurrentHashMap<>();
+	private final Map<String, ChannelBackpressurePolicyEnum> myBackpressurePolicies = new ConcurrentHashMap<>();
+	private final IChannelNamer myChannelNamer;
+	private int myRingSize = SubscriptionConstants.DELIVERY_EXECUTOR_QUEUE_SIZE;
+	private int myBatchSize = DEFAULT_BATCH_SIZE;
+	private RingBufferWaitStrategyEnum myWaitStrategy = RingBufferWaitStrategyEnum.BLOCKING;
+	private ChannelBackpressurePolicyEnum myDefaultBackpressurePolicy = ChannelBackpressurePolicyEnum.BLOCK;
+	private int myMaximumOverflowSize = DEFAULT_MAXIMUM_OVERFLOW_SIZE;
+	private ErrorHandler myErrorHandler = t -> ourLog.error("Failure while delivering message", t);
+
+	public RingBufferChannelFactory(IChannelNamer theChannelNamer) {
+		myChannelNamer = theChannelNamer;
+	}
+
+	@Override
+	public IChannelReceiver getOrCreateReceiver(String theChannelName, Class<?> theMessageType, ChannelConsumerSettings theChannelSettings) {
+		return getOrCreateChannel(theChannelName, theChannelSettings.getConcurrentConsumers(), theChannelSettings);
+	}
+
+	@Override
+	public IChannelProducer getOrCreateProducer(String theChannelName, Class<?> theMessageType, ChannelProducerSettings theChannelSettings) {
+		return getOrCreateChannel(theChannelName, theChannelSettings.getConcurrentConsumers(), theChannelSettings);
+	}
+
+	@Override
+	public IChannelNamer getChannelNamer() {
+		return myChannelNamer;
+	}
+
+	private RingBufferChannel getOrCreateChannel(String theChannelName, int theConcurrentConsumers, IChannelSettings theChannelSettings) {
+		final String channelName = myChannelNamer.getChannelName(theChannelName, theChannelSettings);
+
+		return myChannels.computeIfAbsent(channelName, t -> {
+
+			ThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern(channelName + "-%d")
+				.daemon(false)
+				.priority(Thread.NORM_PRIORITY)
+				.build();
+
+			ChannelBackpressurePolicyEnum policy = getBackpressurePolicy(theChannelName);
+			return new RingBufferChannel(channelName, myRingSize, myBatchSize, theConcurrentConsumers, myWaitStrategy, policy, myMaximumOverflowSize, myErrorHandler, threadFactory);
+
+		});
+	}
+
+	/**
+	 * Returns the backpressure policy that will be used for a channel with the given name
+	 *
+	 * @param theChannelName The channel name, as passed to {@link #getOrCreateProducer(String, Class, ChannelProducerSettings)}
+	 *                       (i.e. before it has been qualified by the {@link IChannelNamer})
+	 */
+	public ChannelBackpressurePolicyEnum getBackpressurePolicy(String theChannelName) {
+		return myBackpressurePolicies.getOrDefault(theChannelName, myDefaultBackpressurePolicy);
+	}
+
+	/**
+	 * Sets the backpressure policy for an individual channel. This must be called before the channel
+	 * is first created in order to take effect.
+	 *
+	 * @param theChannelName The channel name, as passed to {@link #getOrCreateProducer(String, Class, ChannelProducerSettings)}
+	 *                       (i.e. before it has been qualified by the {@link IChannelNamer})
+	 * @param thePolicy      The policy, or <code>null</code> to use the default policy
+	 */
+	public RingBufferChannelFactory setBackpressurePolicy(String theChannelName, ChannelBackpressurePolicyEnum thePolicy) {
+		Validate.notBlank(theChannelName, "theChannelName must not be blank");
+		if (thePolicy == null) {
+			myBackpressurePolicies.remove(theChannelName);
+		} else {
+			myBackpressurePolicies.put(theChannelName, thePolicy);
+		}
+		return this;
+	}
+
+	/**
+	 * The backpressure policy used by channels which do not have their own policy. Default is
+	 * {@link ChannelBackpressurePolicyEnum#BLOCK}.
+	 */
+	public RingBufferChannelFactory setDefaultBackpressurePolicy(ChannelBackpressurePolicyEnum theDefaultBackpressurePolicy) {
+		Validate.notNull(theDefaultBackpressurePolicy, "theDefaultBackpressurePolicy must not be null");
+		myDefaultBackpressurePolicy = theDefaultBackpressurePolicy;
+		return this;
+	}
+
+	/**
+	 * The minimum number of messages each channel can hold (this is rounded up to the next power
+	 * of two). Default is {@link SubscriptionConstants#DELIVERY_EXECUTOR_QUEUE_SIZE}.
+	 */
+	public RingBufferChannelFactory setRingSize(int theRingSize) {
+		Validate.isTrue(theRingSize > 0, "Ring size must be greater than 0");
+		myRingSize = theRingSize;
+		return this;
+	}
+
+	/**
+	 * The maximum number of messages a consumer thread takes from the ring buffer at once. Default
+	 * is {@link #DEFAULT_BATCH_SIZE}.
+	 */
+	public RingBufferChannelFactory setBatchSize(int theBatchSize) {
+		Validate.isTrue(theBatchSize > 0, "Batch size must be greater than 0");
+		myBatchSize = theBatchSize;
+		return this;
+	}
+
+	/**
+	 * What consumer threads do while waiting for messages. Default is {@link RingBufferWaitStrategyEnum#BLOCKING}.
+	 */
+	public RingBufferChannelFactory setWaitStrategy(RingBufferWaitStrategyEnum theWaitStrategy) {
+		Validate.notNull(theWaitStrategy, "theWaitStrategy must not be null");
+		myWaitStrategy = theWaitStrategy;
+		return this;
+	}
+
+	/**
+	 * The maximum number of messages each channel using the {@link ChannelBackpressurePolicyEnum#SPILL}
+	 * policy holds in its overflow queue, in addition to the messages in its ring buffer. Once the
+	 * overflow queue is full, sending threads wait for room. Default is {@link #DEFAULT_MAXIMUM_OVERFLOW_SIZE}.
+	 */
+	public RingBufferChannelFactory setMaximumOverflowSize(int theMaximumOverflowSize) {
+		Validate.isTrue(theMaximumOverflowSize >= 0, "Maximum overflow size must not be negative");
+		myMaximumOverflowSize = theMaximumOverflowSize;
+		return this;
+	}
+
+	/**
+	 * Receives the exception (a {@link org.springframework.messaging.MessageDeliveryException} wrapping the
+	 * original failure) whenever a subscriber fails to handle a message. The default handler logs the failure.
+	 */
+	public RingBufferChannelFactory setErrorHandler(ErrorHandler theErrorHandler) {
+		Validate.notNull(theErrorHandler, "theErrorHandler must not be null");
+		myErrorHandler = theErrorHandler;
+		return this;
+	}
+
+	@PreDestroy
+	public void stop() {
+		for (RingBufferChannel next : new ArrayList<>(myChannels.values())) {
+			next.destroy();
+		}
+		myChannels.clear();
+	}
+
+}
@@ -0,0 +1,48 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Determines what a {@link RingBufferChannel} consumer thread does while it is waiting for
+ * messages to arrive, and what a producer does while it is waiting for space in the buffer
+ * when the {@link ChannelBackpressurePolicyEnum#BLOCK} policy is in use.
+ */
+public enum RingBufferWaitStrategyEnum {
+
+	/**
+	 * Threads park until they are signalled. This uses the least CPU but has the highest latency
+	 * when a message arrives at an idle channel. This is the default.
+	 */
+	BLOCKING,
+
+	/**
+	 * Threads spin briefly, then yield, and then sleep for short intervals. This is a good compromise
+	 * between CPU use and latency for bursty workloads.
+	 */
+	SLEEPING,
+
+	/**
+	 * Threads spin briefly and then yield. This gives the lowest latency but keeps a core busy for
+	 * each idle consumer, so it should only be used when there are spare cores.
+	 */
+	YIELDING
+
+}
@@ -28,6 +28,9 @@ import org.springframework.messaging.MessagingException;
 
 import javax.annotation.Nonnull;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -119,28 +122,34 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 	private void doMatchActiveSubscriptionsAndDeliver(ResourceModifiedMessage theMsg) {
 		IIdType resourceId = theMsg.getId(myFhirContext);
 
-		Collection<ActiveSubscription> subscriptions = mySubscriptionRegistry.getAll();
+		Collection<ActiveSubscription> subscriptions = getCandidateSubscriptions(theMsg, resourceId);
 
 		ourLog.trace("Testing {} subscriptions for applicability", subscriptions.size());
 		boolean resourceMatched = false;
 
-		for (ActiveSubscription nextActiveSubscription : subscriptions) {
-
-			String nextSubscriptionId = getId(nextActiveSubscription);
+		/*
+		 * Many subscriptions commonly share the exact same criteria, so we only evaluate
+		 * each distinct criteria string once per message
+		 */
+		Map<String, InMemoryMatchResult> criteriaToMatchResult = new HashMap<>();
 
-			if (isNotBlank(theMsg.getSubscriptionId())) {
-				if (!theMsg.getSubscriptionId().equals(nextSubscriptionId)) {
-					// TODO KHS we should use a hash to look it up instead of this full table scan
-					ourLog.debug("Ignoring subscription {} because it is not {}", nextSubscriptionId, theMsg.getSubscriptionId());
-					continue;
-				}
-			}
+		for (ActiveSubscription nextActiveSubscription : subscriptions) {
 
-			if (!validCriteria(nextActiveSubscription, resourceId)) {
+			String criteriaString = nextActiveSubscription.getCriteriaString();
+			if (StringUtils.isBlank(criteriaString)) {
 				continue;
 			}
 
-			InMemoryMatchResult matchResult = mySubscriptionMatcher.match(nextActiveSubscription.getSubscription(), theMsg);
+			InMemoryMatchResult matchResult = criteriaToMatchResult.get(criteriaString);
+			if (matchResult == null && theMsg.isSubscriptionCriteriaAlreadyMatched() && isNotBlank(theMsg.getSubscriptionId())) {
+				// The triggering service has already tested this resource against the criteria
+				matchResult = InMemoryMatchResult.successfulMatch();
+				criteriaToMatchResult.put(criteriaString, matchResult);
+			}
+			if (matchResult == null) {
+				matchResult = mySubscriptionMatcher.match(nextActiveSubscription.getSubscription(), theMsg);
+				criteriaToMatchResult.put(criteriaString, matchResult);
+			}
 			if (!matchResult.matched()) {
 				continue;
 			}
@@ -211,32 +220,32 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 		}
 	}
 
-	private String getId(ActiveSubscription theActiveSubscription) {
-		return theActiveSubscription.getId();
-	}
-
-	private boolean validCriteria(ActiveSubscription theActiveSubscription, IIdType theResourceId) {
-		String criteriaString = theActiveSubscription.getCriteriaString();
-		String subscriptionId = getId(theActiveSubscription);
+	/**
+	 * Returns the subscriptions that could possibly apply to the given resource, using the
+	 * resource type index in the registry instead of testing the criteria of every
+	 * registered subscription. If the message targets a specific subscription, that
+	 * subscription is looked up directly, but is still skipped if its criteria target
+	 * a different resource type.
+	 */
+	private Collection<ActiveSubscription> getCandidateSubscriptions(ResourceModifiedMessage theMsg, IIdType theResourceId) {
 		String resourceType = theResourceId.getResourceType();
 
-		if (StringUtils.isBlank(criteriaString)) {
-			return false;
-		}
-
-		// see if the criteria matches the created object
-		ourLog.trace("Checking subscription {} for {} with criteria {}", subscriptionId, resourceType, criteriaString);
-		String criteriaResource = criteriaString;
-		int index = criteriaResource.indexOf("?");
-		if (index != -1) {
-			criteriaResource = criteriaResource.substring(0, criteriaResource.indexOf("?"));
+		if (isNotBlank(theMsg.getSubscriptionId())) {
+			ActiveSubscription subscription = mySubscriptionRegistry.get(theMsg.getSubscriptionId());
+			if (subscription == null) {
+				ourLog.debug("Ignoring message for subscription {} because it is not registered", theMsg.getSubscriptionId());
+				return Collections.emptyList();
+			}
+			if (resourceType != null && !resourceType.equals(subscription.getCriteriaResourceType())) {
+				ourLog.trace("Skipping subscription {} for {} because it does not match the criteria {}", theMsg.getSubscriptionId(), resourceType, subscription.getCriteriaString());
+				return Collections.emptyList();
+			}
+			return Collections.singletonList(subscription);
 		}
 
-		if (resourceType != null && !criteriaResource.equals(resourceType)) {
-			ourLog.trace("Skipping subscription search for {} because it does not match the criteria {}", resourceType, criteriaString);
-			return false;
+		if (resourceType == null) {
+			return mySubscriptionRegistry.getAll();
 		}
-
-		return true;
+		return mySubscriptionRegistry.getAllMatchingResourceType(resourceType);
 	}
 }
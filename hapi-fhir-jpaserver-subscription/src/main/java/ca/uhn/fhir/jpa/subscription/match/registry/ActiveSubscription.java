@@ -51,6 +51,14 @@ public class ActiveSubscription {
 		return mySubscription.getCriteriaString();
 	}
 
+	/**
+	 * Returns the resource type targeted by the subscription criteria (e.g. <code>Observation</code>
+	 * for <code>Observation?code=foo</code>), or <code>null</code> if the criteria are blank
+	 */
+	public String getCriteriaResourceType() {
+		return ActiveSubscriptionCache.extractCriteriaResourceType(getCriteriaString());
+	}
+
 	public void setSubscription(CanonicalSubscription theCanonicalizedSubscription) {
 		mySubscription = theCanonicalizedSubscription;
 	}
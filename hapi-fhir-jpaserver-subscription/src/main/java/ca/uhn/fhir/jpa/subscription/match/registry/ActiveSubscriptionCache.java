@@ -20,6 +20,7 @@ package ca.uhn.fhir.jpa.subscription.match.registry;
  * #L%
  */
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +32,8 @@ class ActiveSubscriptionCache {
 	private static final Logger ourLog = LoggerFactory.getLogger(ActiveSubscriptionCache.class);
 
 	private final Map<String, ActiveSubscription> myCache = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, ActiveSubscription>> myResourceTypeToSubscriptions = new ConcurrentHashMap<>();
+	private final Map<String, String> myIdToIndexedResourceType = new ConcurrentHashMap<>();
 
 	public ActiveSubscription get(String theIdPart) {
 		return myCache.get(theIdPart);
@@ -40,12 +43,31 @@ class ActiveSubscriptionCache {
 		return Collections.unmodifiableCollection(myCache.values());
 	}
 
+	/**
+	 * Returns only the subscriptions whose criteria target the given resource type
+	 * (e.g. <code>Observation?code=foo</code> for <code>Observation</code>). Subscriptions
+	 * with blank criteria are never returned.
+	 */
+	public Collection<ActiveSubscription> getAllMatchingResourceType(String theResourceType) {
+		Map<String, ActiveSubscription> subscriptions = myResourceTypeToSubscriptions.get(theResourceType);
+		if (subscriptions == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableCollection(subscriptions.values());
+	}
+
 	public int size() {
 		return myCache.size();
 	}
 
-	public void put(String theSubscriptionId, ActiveSubscription theActiveSubscription) {
+	/**
+	 * Adds the subscription to the cache, or re-indexes it if it is already present (e.g. because
+	 * its criteria have changed)
+	 */
+	public synchronized void put(String theSubscriptionId, ActiveSubscription theActiveSubscription) {
 		myCache.put(theSubscriptionId, theActiveSubscription);
+		removeFromResourceTypeIndex(theSubscriptionId);
+		addToResourceTypeIndex(theSubscriptionId, theActiveSubscription);
 	}
 
 	public synchronized ActiveSubscription remove(String theSubscriptionId) {
@@ -57,9 +79,50 @@ class ActiveSubscriptionCache {
 		}
 
 		myCache.remove(theSubscriptionId);
+		removeFromResourceTypeIndex(theSubscriptionId);
 		return activeSubscription;
 	}
 
+	private void addToResourceTypeIndex(String theSubscriptionId, ActiveSubscription theActiveSubscription) {
+		String resourceType = extractCriteriaResourceType(theActiveSubscription.getCriteriaString());
+		if (resourceType == null) {
+			return;
+		}
+		myIdToIndexedResourceType.put(theSubscriptionId, resourceType);
+		myResourceTypeToSubscriptions
+			.computeIfAbsent(resourceType, t -> new ConcurrentHashMap<>())
+			.put(theSubscriptionId, theActiveSubscription);
+	}
+
+	private void removeFromResourceTypeIndex(String theSubscriptionId) {
+		String resourceType = myIdToIndexedResourceType.remove(theSubscriptionId);
+		if (resourceType == null) {
+			return;
+		}
+		Map<String, ActiveSubscription> subscriptions = myResourceTypeToSubscriptions.get(resourceType);
+		if (subscriptions != null) {
+			subscriptions.remove(theSubscriptionId);
+			if (subscriptions.isEmpty()) {
+				myResourceTypeToSubscriptions.remove(resourceType);
+			}
+		}
+	}
+
+	/**
+	 * Returns the resource type portion of a criteria string (the part before the <code>?</code>),
+	 * or <code>null</code> if the criteria are blank
+	 */
+	static String extractCriteriaResourceType(String theCriteria) {
+		if (StringUtils.isBlank(theCriteria)) {
+			return null;
+		}
+		int index = theCriteria.indexOf('?');
+		if (index != -1) {
+			return theCriteria.substring(0, index);
+		}
+		return theCriteria;
+	}
+
 	List<String> markAllSubscriptionsNotInCollectionForDeletionAndReturnIdsToDelete(Collection<String> theAllIds) {
 		List<String> retval = new ArrayList<>();
 		for (String next : new ArrayList<>(myCache.keySet())) {
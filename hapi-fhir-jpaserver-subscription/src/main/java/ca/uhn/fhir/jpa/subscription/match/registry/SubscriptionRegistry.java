@@ -73,6 +73,13 @@ public class SubscriptionRegistry {
 		return myActiveSubscriptionCache.getAll();
 	}
 
+	/**
+	 * Returns the active subscriptions whose criteria apply to the given resource type
+	 */
+	public Collection<ActiveSubscription> getAllMatchingResourceType(String theResourceType) {
+		return myActiveSubscriptionCache.getAllMatchingResourceType(theResourceType);
+	}
+
 	private Optional<CanonicalSubscription> hasSubscription(IIdType theId) {
 		Validate.notNull(theId);
 		Validate.notBlank(theId.getIdPart());
@@ -167,6 +174,8 @@ public class SubscriptionRegistry {
 		Validate.notNull(activeSubscription);
 		CanonicalSubscription canonicalized = mySubscriptionCanonicalizer.canonicalize(theSubscription);
 		activeSubscription.setSubscription(canonicalized);
+		// Re-index in case the criteria now target a different resource type
+		myActiveSubscriptionCache.put(theId.getIdPart(), activeSubscription);
 
 		// Interceptor call: SUBSCRIPTION_AFTER_ACTIVE_SUBSCRIPTION_REGISTERED
 		HookParams params = new HookParams()
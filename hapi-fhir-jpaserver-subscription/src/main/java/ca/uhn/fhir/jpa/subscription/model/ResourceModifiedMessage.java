@@ -40,6 +40,14 @@ public class ResourceModifiedMessage extends BaseResourceModifiedMessage {
 	@JsonProperty(value = "subscriptionId", required = false)
 	private String mySubscriptionId;
 
+	/**
+	 * This will only be set if the resource is being triggered for a specific
+	 * subscription, and the sender has already verified that the resource matches
+	 * the subscription criteria
+	 */
+	@JsonProperty(value = "subscriptionCriteriaAlreadyMatched", required = false)
+	private boolean mySubscriptionCriteriaAlreadyMatched;
+
 	/**
 	 * Constructor
 	 */
@@ -64,6 +72,14 @@ public class ResourceModifiedMessage extends BaseResourceModifiedMessage {
 		mySubscriptionId = theSubscriptionId;
 	}
 
+	public boolean isSubscriptionCriteriaAlreadyMatched() {
+		return mySubscriptionCriteriaAlreadyMatched;
+	}
+
+	public void setSubscriptionCriteriaAlreadyMatched(boolean theSubscriptionCriteriaAlreadyMatched) {
+		mySubscriptionCriteriaAlreadyMatched = theSubscriptionCriteriaAlreadyMatched;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this)
@@ -33,7 +33,10 @@ import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.IResourceModifiedConsumer;
+import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionCanonicalizer;
+import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
+import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.dstu2.valueset.ResourceTypeEnum;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
@@ -65,6 +68,7 @@ import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -76,8 +80,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static ca.uhn.fhir.rest.server.provider.ProviderConstants.SUBSCRIPTION_TRIGGERING_PARAM_RESOURCE_ID;
+import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.substringBefore;
 
 public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc {
 	private static final Logger ourLog = LoggerFactory.getLogger(SubscriptionTriggeringSvcImpl.class);
@@ -99,6 +105,8 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 	private ExecutorService myExecutorService;
 	@Autowired
 	private ISchedulerService mySchedulerService;
+	@Autowired
+	private SubscriptionCanonicalizer mySubscriptionCanonicalizer;
 
 	@Override
 	public IBaseParameters triggerSubscription(List<IPrimitiveType<String>> theResourceIds, List<IPrimitiveType<String>> theSearchUrls, @IdParam IIdType theSubscriptionId) {
@@ -223,14 +231,16 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 
 			IFhirResourceDao<?> callingDao = myDaoRegistry.getResourceDao(resourceType);
 			SearchParameterMap params = myMatchUrlService.translateMatchUrl(queryPart, resourceDef);
+			boolean criteriaApplied = isBulkMatchingApplicable(theJobDetails, resourceType) && addSubscriptionCriteria(theJobDetails.getSubscriptionCriteria(), resourceDef, params);
 
-			ourLog.info("Triggering job[{}] is starting a search for {}", theJobDetails.getJobId(), nextSearchUrl);
+			ourLog.info("Triggering job[{}] is starting a search for {}{}", theJobDetails.getJobId(), nextSearchUrl, criteriaApplied ? " restricted to the subscription criteria" : "");
 
 			IBundleProvider search = mySearchCoordinatorSvc.registerSearch(callingDao, params, resourceType, new CacheControlDirective(), null, RequestPartitionId.allPartitions());
 			theJobDetails.setCurrentSearchUuid(search.getUuid());
 			theJobDetails.setCurrentSearchResourceType(resourceType);
 			theJobDetails.setCurrentSearchCount(params.getCount());
 			theJobDetails.setCurrentSearchLastUploadedIndex(-1);
+			theJobDetails.setCurrentSearchMatchesSubscriptionCriteria(criteriaApplied);
 		}
 
 		// If we have an active search going, submit resources from it
@@ -252,7 +262,7 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 
 			for (ResourcePersistentId next : resourceIds) {
 				IBaseResource nextResource = resourceDao.readByPid(next);
-				Future<Void> future = submitResource(theJobDetails.getSubscriptionId(), nextResource);
+				Future<Void> future = submitResource(theJobDetails.getSubscriptionId(), nextResource, theJobDetails.isCurrentSearchMatchesSubscriptionCriteria());
 				futures.add(Pair.of(nextResource.getIdElement().getIdPart(), future));
 				totalSubmitted++;
 				highestIndexSubmitted++;
@@ -270,12 +280,66 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 				theJobDetails.setCurrentSearchUuid(null);
 				theJobDetails.setCurrentSearchLastUploadedIndex(-1);
 				theJobDetails.setCurrentSearchCount(null);
+				theJobDetails.setCurrentSearchMatchesSubscriptionCriteria(false);
 			}
 		}
 
 		ourLog.info("Subscription trigger job[{}] triggered {} resources in {}ms ({} res / second)", theJobDetails.getJobId(), totalSubmitted, sw.getMillis(), sw.getThroughput(totalSubmitted, TimeUnit.SECONDS));
 	}
 
+	/**
+	 * Bulk matching is only used when the job targets a single subscription whose criteria
+	 * apply to the type of resource being returned by the search
+	 */
+	private boolean isBulkMatchingApplicable(SubscriptionTriggeringJobDetails theJobDetails, String theSearchResourceType) {
+		if (!myDaoConfig.isBulkSubscriptionTriggeringEnabled() || isBlank(theJobDetails.getSubscriptionId())) {
+			return false;
+		}
+
+		if (theJobDetails.getSubscriptionCriteria() == null) {
+			IIdType subscriptionId = new IdType(ResourceTypeEnum.SUBSCRIPTION.getCode(), theJobDetails.getSubscriptionId());
+			IBaseResource subscription = myDaoRegistry.getSubscriptionDao().read(subscriptionId);
+			CanonicalSubscription canonicalSubscription = mySubscriptionCanonicalizer.canonicalize(subscription);
+			theJobDetails.setSubscriptionCriteria(defaultString(canonicalSubscription.getCriteriaString()));
+		}
+
+		String criteriaResourceType = substringBefore(theJobDetails.getSubscriptionCriteria(), "?");
+		return isNotBlank(criteriaResourceType) && criteriaResourceType.equals(theSearchResourceType);
+	}
+
+	/**
+	 * Adds the subscription criteria to the triggering search (each criteria parameter is ANDed
+	 * with the search's own parameters), so that the search only returns resources that match
+	 * the subscription and resources that don't match are never loaded. Returns <code>false</code>
+	 * without modifying the search if the criteria can't be combined with it.
+	 */
+	private boolean addSubscriptionCriteria(String theCriteria, RuntimeResourceDefinition theResourceDef, SearchParameterMap theParams) {
+		String queryPart = theCriteria.contains("?") ? theCriteria.substring(theCriteria.indexOf('?')) : "";
+		SearchParameterMap criteriaParams = myMatchUrlService.translateMatchUrl(queryPart, theResourceDef);
+
+		if (criteriaParams.getLastUpdated() != null && theParams.getLastUpdated() != null) {
+			return false;
+		}
+		if (criteriaParams.getNearDistanceParam() != null || criteriaParams.getEverythingMode() != null) {
+			return false;
+		}
+
+		if (criteriaParams.getLastUpdated() != null) {
+			theParams.setLastUpdated(criteriaParams.getLastUpdated());
+		}
+		for (Map.Entry<String, List<List<IQueryParameterType>>> next : criteriaParams.entrySet()) {
+			List<List<IQueryParameterType>> andList = theParams.get(next.getKey());
+			if (andList == null) {
+				theParams.put(next.getKey(), new ArrayList<>(next.getValue()));
+			} else {
+				List<List<IQueryParameterType>> combined = new ArrayList<>(andList);
+				combined.addAll(next.getValue());
+				theParams.put(next.getKey(), combined);
+			}
+		}
+		return true;
+	}
+
 	private boolean validateFuturesAndReturnTrueIfWeShouldAbort(List<Pair<String, Future<Void>>> theIdToFutures) {
 
 		for (Pair<String, Future<Void>> next : theIdToFutures) {
@@ -304,11 +368,16 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 	}
 
 	private Future<Void> submitResource(String theSubscriptionId, IBaseResource theResourceToTrigger) {
+		return submitResource(theSubscriptionId, theResourceToTrigger, false);
+	}
+
+	private Future<Void> submitResource(String theSubscriptionId, IBaseResource theResourceToTrigger, boolean theCriteriaAlreadyMatched) {
 
 		ourLog.info("Submitting resource {} to subscription {}", theResourceToTrigger.getIdElement().toUnqualifiedVersionless().getValue(), theSubscriptionId);
 
 		ResourceModifiedMessage msg = new ResourceModifiedMessage(myFhirContext, theResourceToTrigger, ResourceModifiedMessage.OperationTypeEnum.UPDATE);
 		msg.setSubscriptionId(theSubscriptionId);
+		msg.setSubscriptionCriteriaAlreadyMatched(theCriteriaAlreadyMatched);
 
 		return myExecutorService.submit(() -> {
 			for (int i = 0; ; i++) {
@@ -414,12 +483,14 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 
 		private String myJobId;
 		private String mySubscriptionId;
+		private String mySubscriptionCriteria;
 		private List<String> myRemainingResourceIds;
 		private List<String> myRemainingSearchUrls;
 		private String myCurrentSearchUuid;
 		private Integer myCurrentSearchCount;
 		private String myCurrentSearchResourceType;
 		private int myCurrentSearchLastUploadedIndex;
+		private boolean myCurrentSearchMatchesSubscriptionCriteria;
 
 		Integer getCurrentSearchCount() {
 			return myCurrentSearchCount;
@@ -453,6 +524,22 @@ public class SubscriptionTriggeringSvcImpl implements ISubscriptionTriggeringSvc
 			mySubscriptionId = theSubscriptionId;
 		}
 
+		boolean isCurrentSearchMatchesSubscriptionCriteria() {
+			return myCurrentSearchMatchesSubscriptionCriteria;
+		}
+
+		void setCurrentSearchMatchesSubscriptionCriteria(boolean theCurrentSearchMatchesSubscriptionCriteria) {
+			myCurrentSearchMatchesSubscriptionCriteria = theCurrentSearchMatchesSubscriptionCriteria;
+		}
+
+		String getSubscriptionCriteria() {
+			return mySubscriptionCriteria;
+		}
+
+		void setSubscriptionCriteria(String theSubscriptionCriteria) {
+			mySubscriptionCriteria = theSubscriptionCriteria;
+		}
+
 		List<String> getRemainingResourceIds() {
 			return myRemainingResourceIds;
 		}
@@ -0,0 +1,291 @@
+package ca.uhn.fhir.jpa.subscription.channel.impl;
+
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelConsumerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.ChannelProducerSettings;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelProducer;
+import ca.uhn.fhir.jpa.subscription.channel.api.IChannelReceiver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.GenericMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RingBufferChannelTest {
+
+	private final RingBufferChannelFactory myFactory = new RingBufferChannelFactory((theNameComponent, theChannelSettings) -> theNameComponent);
+	private final CountDownLatch myReleaseLatch = new CountDownLatch(1);
+
+	@AfterEach
+	public void after() {
+		myReleaseLatch.countDown();
+		myFactory.stop();
+	}
+
+	@Test
+	public void testRingBuffer() {
+		RingBuffer<String> buffer = new RingBuffer<>(3);
+		assertEquals(4, buffer.getCapacity());
+		assertTrue(buffer.isEmpty());
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer("" + i));
+		}
+		assertFalse(buffer.offer("4"));
+		assertEquals(4, buffer.size());
+
+		assertEquals("0", buffer.poll());
+		assertTrue(buffer.offer("4"));
+
+		List<String> drained = new ArrayList<>();
+		assertEquals(3, buffer.drainTo(drained, 3));
+		assertThat(drained, contains("1", "2", "3"));
+		assertEquals("4", buffer.poll());
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void testDeliverMessages() {
+		List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		IChannelReceiver receiver = myFactory.getOrCreateReceiver("CHANNEL", String.class, new ChannelConsumerSettings());
+		receiver.subscribe(t -> received.add(t.getPayload()));
+
+		IChannelProducer producer = myFactory.getOrCreateProducer("CHANNEL", String.class, new ChannelProducerSettings());
+		assertSame(receiver, producer);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(producer.send(new GenericMessage<>("" + i)));
+		}
+
+		await().until(() -> received.size() == 1000);
+	}
+
+	@Test
+	public void testDropWhenFull() {
+		myFactory
+			.setRingSize(4)
+			.setBackpressurePolicy("CHANNEL", ChannelBackpressurePolicyEnum.DROP);
+		RingBufferChannel channel = createChannelWithStuckConsumer();
+
+		int accepted = 0;
+		for (int i = 0; i < 10; i++) {
+			if (channel.send(new GenericMessage<>("" + i))) {
+				accepted++;
+			}
+		}
+
+		assertEquals(4, accepted);
+		assertEquals(6, channel.getDroppedCount());
+	}
+
+	@Test
+	public void testSpillWhenFull() {
+		myFactory
+			.setRingSize(4)
+			.setBackpressurePolicy("CHANNEL", ChannelBackpressurePolicyEnum.SPILL);
+		List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		RingBufferChannel channel = createChannelWithStuckConsumer();
+		channel.subscribe(t -> received.add(t.getPayload()));
+
+		List<String> sent = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			assertTrue(channel.send(new GenericMessage<>("" + i)));
+			sent.add("" + i);
+		}
+		assertEquals(20, channel.getQueueSizeForUnitTest());
+
+		myReleaseLatch.countDown();
+		await().until(() -> received.size() == 20);
+		assertEquals(sent, received);
+		assertEquals(0, channel.getQueueSizeForUnitTest());
+	}
+
+	@Test
+	public void testSpillBlocksWhenOverflowIsFull() {
+		myFactory
+			.setRingSize(4)
+			.setMaximumOverflowSize(6)
+			.setBackpressurePolicy("CHANNEL", ChannelBackpressurePolicyEnum.SPILL);
+		List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		RingBufferChannel channel = createChannelWithStuckConsumer();
+		channel.subscribe(t -> received.add(t.getPayload()));
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(channel.send(new GenericMessage<>("" + i)));
+		}
+		assertEquals(10, channel.getQueueSizeForUnitTest());
+		assertFalse(channel.send(new GenericMessage<>("10"), 100));
+		assertEquals(10, channel.getQueueSizeForUnitTest());
+
+		myReleaseLatch.countDown();
+		assertTrue(channel.send(new GenericMessage<>("11"), TimeUnit.SECONDS.toMillis(10)));
+		await().until(() -> received.size() == 11);
+		assertEquals("11", received.get(10));
+	}
+
+	@Test
+	public void testHandlerFailureIsPassedToInterceptorsAndErrorHandler() {
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		List<Exception> interceptorExceptions = Collections.synchronizedList(new ArrayList<>());
+		myFactory.setErrorHandler(errors::add);
+
+		RingBufferChannel channel = (RingBufferChannel) myFactory.getOrCreateReceiver("CHANNEL", String.class, new ChannelConsumerSettings());
+		channel.addInterceptor(new ExecutorChannelInterceptor() {
+			@Override
+			public void afterMessageHandled(Message<?> theMessage, MessageChannel theChannel, MessageHandler theHandler, Exception theException) {
+				if (theException != null) {
+					interceptorExceptions.add(theException);
+				}
+			}
+		});
+		List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		channel.subscribe(t -> {
+			throw new IllegalStateException("FAILED " + t.getPayload());
+		});
+		channel.subscribe(t -> received.add(t.getPayload()));
+
+		assertTrue(channel.send(new GenericMessage<>("A")));
+
+		await().until(() -> errors.size() == 1 && received.size() == 1);
+		assertThat(errors.get(0), instanceOf(MessageDeliveryException.class));
+		assertEquals("FAILED A", errors.get(0).getCause().getMessage());
+		assertEquals(1, interceptorExceptions.size());
+		assertEquals("FAILED A", interceptorExceptions.get(0).getMessage());
+	}
+
+	@Test
+	public void testHandlerErrorDoesNotStopConsumer() {
+		List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		RingBufferChannel channel = (RingBufferChannel) myFactory.getOrCreateReceiver("CHANNEL", String.class, new ChannelConsumerSettings().setConcurrentConsumers(1));
+		channel.subscribe(t -> {
+			if ("A".equals(t.getPayload())) {
+				throw new AssertionError("FAILED A");
+			}
+			received.add(t.getPayload());
+		});
+
+		assertTrue(channel.send(new GenericMessage<>("A")));
+		assertTrue(channel.send(new GenericMessage<>("B")));
+
+		await().until(() -> received.size() == 1);
+		assertEquals("B", received.get(0));
+	}
+
+	@Test
+	public void testConcurrentProducersAndConsumersBlock() throws InterruptedException {
+		myFactory.setRingSize(8);
+		sendConcurrentlyAndAwaitDelivery("CHANNEL");
+	}
+
+	@Test
+	public void testConcurrentProducersAndConsumersSpill() throws InterruptedException {
+		myFactory
+			.setRingSize(8)
+			.setMaximumOverflowSize(16)
+			.setBackpressurePolicy("CHANNEL", ChannelBackpressurePolicyEnum.SPILL);
+		sendConcurrentlyAndAwaitDelivery("CHANNEL");
+	}
+
+	/**
+	 * Several producers send to a small buffer, so producers and consumers are constantly
+	 * waiting for each other. A missed signal would stall a thread until its wait times out,
+	 * which would make this take far longer than the deadline.
+	 */
+	private void sendConcurrentlyAndAwaitDelivery(String theChannelName) throws InterruptedException {
+		int producerCount = 4;
+		int messagesPerProducer = 5000;
+		Set<Object> received = ConcurrentHashMap.newKeySet();
+		AtomicInteger receivedCount = new AtomicInteger();
+		RingBufferChannel channel = (RingBufferChannel) myFactory.getOrCreateReceiver(theChannelName, String.class, new ChannelConsumerSettings().setConcurrentConsumers(4));
+		channel.subscribe(t -> {
+			received.add(t.getPayload());
+			receivedCount.incrementAndGet();
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(producerCount);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int producer = 0; producer < producerCount; producer++) {
+				int finalProducer = producer;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < messagesPerProducer; i++) {
+						assertTrue(channel.send(new GenericMessage<>(finalProducer + "-" + i), TimeUnit.SECONDS.toMillis(30)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> next : futures) {
+				next.get(60, TimeUnit.SECONDS);
+			}
+		} catch (ExecutionException | TimeoutException e) {
+			throw new AssertionError(e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		await().atMost(60, TimeUnit.SECONDS).until(() -> receivedCount.get() == producerCount * messagesPerProducer);
+		assertEquals(producerCount * messagesPerProducer, received.size());
+		assertEquals(0, channel.getQueueSizeForUnitTest());
+	}
+
+	@Test
+	public void testBlockWhenFullTimesOut() {
+		myFactory.setRingSize(4);
+		RingBufferChannel channel = createChannelWithStuckConsumer();
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(channel.send(new GenericMessage<>("" + i)));
+		}
+		assertFalse(channel.send(new GenericMessage<>("4"), 100));
+
+		myReleaseLatch.countDown();
+		assertTrue(channel.send(new GenericMessage<>("6"), TimeUnit.SECONDS.toMillis(10)));
+	}
+
+	/**
+	 * Creates a channel with a single consumer which blocks on the first message
+	 * until {@link #myReleaseLatch} is released
+	 */
+	private RingBufferChannel createChannelWithStuckConsumer() {
+		RingBufferChannel channel = (RingBufferChannel) myFactory.getOrCreateReceiver("CHANNEL", String.class, new ChannelConsumerSettings().setConcurrentConsumers(1));
+		CountDownLatch firstMessageLatch = new CountDownLatch(1);
+		channel.subscribe(t -> {
+			firstMessageLatch.countDown();
+			try {
+				myReleaseLatch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		channel.send(new GenericMessage<>("FIRST"));
+		await().until(() -> firstMessageLatch.getCount() == 0);
+		return channel;
+	}
+
+}
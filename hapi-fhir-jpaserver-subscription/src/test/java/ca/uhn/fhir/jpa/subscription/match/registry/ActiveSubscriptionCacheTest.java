@@ -103,4 +103,32 @@ public class ActiveSubscriptionCacheTest {
 		assertFalse(activeSub2.isFlagForDeletion());
 	}
 
+	@Test
+	public void resourceTypeIndex() {
+		ActiveSubscriptionCache activeSubscriptionCache = new ActiveSubscriptionCache();
+		ActiveSubscription activeSub1 = buildActiveSubscription(ID1, "Observation?code=foo");
+		ActiveSubscription activeSub2 = buildActiveSubscription(ID2, "Patient");
+		activeSubscriptionCache.put(ID1, activeSub1);
+		activeSubscriptionCache.put(ID2, activeSub2);
+
+		assertThat(activeSubscriptionCache.getAllMatchingResourceType("Observation"), containsInAnyOrder(activeSub1));
+		assertThat(activeSubscriptionCache.getAllMatchingResourceType("Patient"), containsInAnyOrder(activeSub2));
+		assertEquals(0, activeSubscriptionCache.getAllMatchingResourceType("Encounter").size());
+
+		// Changing the criteria and re-putting moves the subscription to the new type
+		activeSub1.getSubscription().setCriteriaString("Encounter?status=finished");
+		activeSubscriptionCache.put(ID1, activeSub1);
+		assertEquals(0, activeSubscriptionCache.getAllMatchingResourceType("Observation").size());
+		assertThat(activeSubscriptionCache.getAllMatchingResourceType("Encounter"), containsInAnyOrder(activeSub1));
+
+		activeSubscriptionCache.remove(ID2);
+		assertEquals(0, activeSubscriptionCache.getAllMatchingResourceType("Patient").size());
+	}
+
+	private ActiveSubscription buildActiveSubscription(String theId, String theCriteria) {
+		ActiveSubscription retVal = buildActiveSubscription(theId);
+		retVal.getSubscription().setCriteriaString(theCriteria);
+		return retVal;
+	}
+
 }
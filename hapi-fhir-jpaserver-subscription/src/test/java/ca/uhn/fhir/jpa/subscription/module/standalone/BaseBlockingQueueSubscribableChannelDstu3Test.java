@@ -58,7 +58,7 @@ public abstract class BaseBlockingQueueSubscribableChannelDstu3Test extends Base
 	protected static ObservationListener ourObservationListener;
 
 	@Autowired
-	FhirContext myFhirContext;
+	protected FhirContext myFhirContext;
 
 	// Caused by: java.lang.IllegalStateException: Unable to register mock bean org.springframework.messaging.MessageHandler expected a single matching bean to replace but found [subscriptionActivatingSubscriber, subscriptionDeliveringEmailSubscriber, subscriptionDeliveringRestHookSubscriber, subscriptionMatchingSubscriber, subscriptionRegisteringSubscriber]
 	
@@ -75,7 +75,7 @@ public abstract class BaseBlockingQueueSubscribableChannelDstu3Test extends Base
 	@Autowired
 	SubscriptionChannelFactory mySubscriptionChannelFactory;
 	@Autowired
-	IInterceptorService myInterceptorRegistry;
+	protected IInterceptorService myInterceptorRegistry;
 	@Autowired
 	protected SubscriptionRegistry mySubscriptionRegistry;
 	@Autowired
@@ -126,11 +126,15 @@ public abstract class BaseBlockingQueueSubscribableChannelDstu3Test extends Base
 
 	public <T extends IBaseResource> T sendResource(T theResource) throws InterruptedException {
 		ResourceModifiedMessage msg = new ResourceModifiedMessage(myFhirContext, theResource, ResourceModifiedMessage.OperationTypeEnum.CREATE);
-		ResourceModifiedJsonMessage message = new ResourceModifiedJsonMessage(msg);
+		sendMessage(msg);
+		return theResource;
+	}
+
+	protected void sendMessage(ResourceModifiedMessage theMessage) throws InterruptedException {
+		ResourceModifiedJsonMessage message = new ResourceModifiedJsonMessage(theMessage);
 		mySubscriptionMatchingPost.setExpectedCount(1);
 		ourSubscribableChannel.send(message);
 		mySubscriptionMatchingPost.awaitExpected();
-		return theResource;
 	}
 
 	protected Subscription sendSubscription(String theCriteria, String thePayload, String theEndpoint) throws InterruptedException {
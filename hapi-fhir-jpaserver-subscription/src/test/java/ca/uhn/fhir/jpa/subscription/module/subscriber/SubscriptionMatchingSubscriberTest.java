@@ -1,7 +1,12 @@
 package ca.uhn.fhir.jpa.subscription.module.subscriber;
 
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.subscription.model.ResourceModifiedMessage;
 import ca.uhn.fhir.jpa.subscription.module.standalone.BaseBlockingQueueSubscribableChannelDstu3Test;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.test.concurrency.PointcutLatch;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Subscription;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,4 +82,27 @@ public class SubscriptionMatchingSubscriberTest extends BaseBlockingQueueSubscri
 
 		assertEquals(0, ourContentTypes.size());
 	}
+
+	@Test
+	public void testTargetedMessageForResourceOfAnotherTypeIsNotDelivered() throws Exception {
+		String payload = "application/fhir+json";
+
+		Subscription subscription = sendSubscription("Observation?status=final", payload, ourListenerServerBase);
+		assertEquals(1, mySubscriptionRegistry.size());
+
+		PointcutLatch didNotMatchLatch = new PointcutLatch(Pointcut.SUBSCRIPTION_RESOURCE_DID_NOT_MATCH_ANY_SUBSCRIPTIONS);
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.SUBSCRIPTION_RESOURCE_DID_NOT_MATCH_ANY_SUBSCRIPTIONS, didNotMatchLatch);
+
+		Patient patient = new Patient();
+		patient.setId("Patient/123");
+		ResourceModifiedMessage msg = new ResourceModifiedMessage(myFhirContext, patient, ResourceModifiedMessage.OperationTypeEnum.MANUALLY_TRIGGERED);
+		msg.setSubscriptionId(subscription.getIdElement().getIdPart());
+		msg.setSubscriptionCriteriaAlreadyMatched(true);
+
+		didNotMatchLatch.setExpectedCount(1);
+		sendMessage(msg);
+		didNotMatchLatch.awaitExpected();
+
+		assertEquals(0, ourContentTypes.size());
+	}
 }
@@ -1013,11 +1013,13 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 			 * Notify interceptors about the incoming request
 			 * *************************/
 
-			HookParams preProcessedParams = new HookParams();
-			preProcessedParams.add(HttpServletRequest.class, theRequest);
-			preProcessedParams.add(HttpServletResponse.class, theResponse);
-			if (!myInterceptorService.callHooks(Pointcut.SERVER_INCOMING_REQUEST_PRE_PROCESSED, preProcessedParams)) {
-				return;
+			if (myInterceptorService.hasHooks(Pointcut.SERVER_INCOMING_REQUEST_PRE_PROCESSED)) {
+				HookParams preProcessedParams = new HookParams();
+				preProcessedParams.add(HttpServletRequest.class, theRequest);
+				preProcessedParams.add(HttpServletResponse.class, theResponse);
+				if (!myInterceptorService.callHooks(Pointcut.SERVER_INCOMING_REQUEST_PRE_PROCESSED, preProcessedParams)) {
+					return;
+				}
 			}
 
 			String requestPath = getRequestPath(requestFullPath, servletContextPath, servletPath);
@@ -1064,13 +1066,15 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 			requestDetails.setRestOperationType(operation);
 
 			// Handle server interceptors
-			HookParams postProcessedParams = new HookParams();
-			postProcessedParams.add(RequestDetails.class, requestDetails);
-			postProcessedParams.add(ServletRequestDetails.class, requestDetails);
-			postProcessedParams.add(HttpServletRequest.class, theRequest);
-			postProcessedParams.add(HttpServletResponse.class, theResponse);
-			if (!myInterceptorService.callHooks(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED, postProcessedParams)) {
-				return;
+			if (myInterceptorService.hasHooks(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)) {
+				HookParams postProcessedParams = new HookParams();
+				postProcessedParams.add(RequestDetails.class, requestDetails);
+				postProcessedParams.add(ServletRequestDetails.class, requestDetails);
+				postProcessedParams.add(HttpServletRequest.class, theRequest);
+				postProcessedParams.add(HttpServletResponse.class, theResponse);
+				if (!myInterceptorService.callHooks(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED, postProcessedParams)) {
+					return;
+				}
 			}
 
 			/*
@@ -1084,10 +1088,12 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 			try (Closeable outputStreamOrWriter = (Closeable) resourceMethod.invokeServer(this, requestDetails)) {
 
 				// Invoke interceptors
-				HookParams hookParams = new HookParams();
-				hookParams.add(RequestDetails.class, requestDetails);
-				hookParams.add(ServletRequestDetails.class, requestDetails);
-				myInterceptorService.callHooks(Pointcut.SERVER_PROCESSING_COMPLETED_NORMALLY, hookParams);
+				if (myInterceptorService.hasHooks(Pointcut.SERVER_PROCESSING_COMPLETED_NORMALLY)) {
+					HookParams hookParams = new HookParams();
+					hookParams.add(RequestDetails.class, requestDetails);
+					hookParams.add(ServletRequestDetails.class, requestDetails);
+					myInterceptorService.callHooks(Pointcut.SERVER_PROCESSING_COMPLETED_NORMALLY, hookParams);
+				}
 
 				ourLog.trace("Done writing to stream: {}", outputStreamOrWriter);
 			}
@@ -1174,10 +1180,12 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 
 		} finally {
 
-			HookParams params = new HookParams();
-			params.add(RequestDetails.class, requestDetails);
-			params.addIfMatchesType(ServletRequestDetails.class, requestDetails);
-			myInterceptorService.callHooks(Pointcut.SERVER_PROCESSING_COMPLETED, params);
+			if (myInterceptorService.hasHooks(Pointcut.SERVER_PROCESSING_COMPLETED)) {
+				HookParams params = new HookParams();
+				params.add(RequestDetails.class, requestDetails);
+				params.addIfMatchesType(ServletRequestDetails.class, requestDetails);
+				myInterceptorService.callHooks(Pointcut.SERVER_PROCESSING_COMPLETED, params);
+			}
 
 		}
 	}
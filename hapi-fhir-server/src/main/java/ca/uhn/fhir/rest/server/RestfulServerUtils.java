@@ -1008,14 +1008,68 @@ public class RestfulServerUtils {
 				throw new InternalErrorException(e);
 			}
 		} else {
-			FhirVersionEnum forVersion = theResource.getStructureFhirVersionEnum();
-			IParser parser = getNewParser(theServer.getFhirContext(), forVersion, theRequestDetails);
-			parser.encodeResourceToWriter(theResource, writer);
+			String preEncodedJson = (String) theResource.getUserData(Constants.RESOURCE_PRE_ENCODED_JSON);
+			if (preEncodedJson != null && isPreEncodedJsonResponsePermitted(theRequestDetails) && !isPreEncodedJsonAffectedByServerBaseUrl(preEncodedJson, theRequestDetails)) {
+				writer.write(preEncodedJson);
+			} else {
+				FhirVersionEnum forVersion = theResource.getStructureFhirVersionEnum();
+				IParser parser = getNewParser(theServer.getFhirContext(), forVersion, theRequestDetails);
+				parser.encodeResourceToWriter(theResource, writer);
+			}
 		}
 
 		return response.sendWriterResponse(theStatusCode, contentType, charset, writer);
 	}
 
+	/**
+	 * Returns <code>true</code> if a resource body that was encoded ahead of time (see
+	 * {@link Constants#RESOURCE_PRE_ENCODED_JSON}) may be sent as-is in response to the given
+	 * request. This is the case if the client wants JSON, the request doesn't ask for anything
+	 * that changes how the resource is encoded (pretty printing, <code>_summary</code>,
+	 * <code>_elements</code>, etc.), and no interceptor is registered that could inspect or
+	 * modify the outgoing resource.
+	 *
+	 * @since 5.4.0
+	 */
+	public static boolean isPreEncodedJsonResponsePermitted(RequestDetails theRequestDetails) {
+		IRestfulServerDefaults server = theRequestDetails.getServer();
+		if (server == null) {
+			return false;
+		}
+		if (server.getFhirContext().getNarrativeGenerator() != null) {
+			return false;
+		}
+		if (server.getInterceptorService() != null && server.getInterceptorService().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return false;
+		}
+		if (determineResponseEncodingWithDefault(theRequestDetails).getEncoding() != EncodingEnum.JSON) {
+			return false;
+		}
+		if (prettyPrintResponse(server, theRequestDetails)) {
+			return false;
+		}
+		if (!determineSummaryMode(theRequestDetails).equals(Collections.singleton(SummaryEnum.FALSE))) {
+			return false;
+		}
+		return ElementsParameter.getElementsValueOrNull(theRequestDetails, false) == null &&
+			ElementsParameter.getElementsValueOrNull(theRequestDetails, true) == null;
+	}
+
+	/**
+	 * The response parser is given the server base URL (see {@link #configureResponseParser(RequestDetails, IParser)}),
+	 * which it uses to make references to the server's own base URL relative, and to expand extension URLs
+	 * starting with "/". A pre-encoded body containing either of these can't be sent as-is.
+	 *
+	 * @since 5.4.0
+	 */
+	public static boolean isPreEncodedJsonAffectedByServerBaseUrl(String thePreEncodedJson, RequestDetails theRequestDetails) {
+		String serverBase = theRequestDetails.getFhirServerBase();
+		if (isBlank(serverBase)) {
+			return false;
+		}
+		return thePreEncodedJson.contains(serverBase) || thePreEncodedJson.contains("\"url\":\"/");
+	}
+
 	public static String createEtag(String theVersionId) {
 		return "W/\"" + theVersionId + '"';
 	}
@@ -230,12 +230,12 @@ public abstract class BaseMethodBinding<T> {
 			populateActionRequestDetailsForInterceptor(theRequest, details, theMethodParams);
 
 			// Interceptor invoke: SERVER_INCOMING_REQUEST_PRE_HANDLED
-			HookParams preHandledParams = new HookParams();
-			preHandledParams.add(RestOperationTypeEnum.class, theRequest.getRestOperationType());
-			preHandledParams.add(RequestDetails.class, theRequest);
-			preHandledParams.addIfMatchesType(ServletRequestDetails.class, theRequest);
-			preHandledParams.add(ActionRequestDetails.class, details);
-			if (theRequest.getInterceptorBroadcaster() != null) {
+			if (theRequest.getInterceptorBroadcaster() != null && theRequest.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)) {
+				HookParams preHandledParams = new HookParams();
+				preHandledParams.add(RestOperationTypeEnum.class, theRequest.getRestOperationType());
+				preHandledParams.add(RequestDetails.class, theRequest);
+				preHandledParams.addIfMatchesType(ServletRequestDetails.class, theRequest);
+				preHandledParams.add(ActionRequestDetails.class, details);
 				theRequest
 					.getInterceptorBroadcaster()
 					.callHooks(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED, preHandledParams);
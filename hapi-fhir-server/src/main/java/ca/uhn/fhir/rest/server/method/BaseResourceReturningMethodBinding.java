@@ -423,6 +423,10 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 	}
 
 	public static boolean callOutgoingResponseHook(RequestDetails theRequest, ResponseDetails theResponseDetails) {
+		if (theRequest.getInterceptorBroadcaster() == null || !theRequest.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return true;
+		}
+
 		HttpServletRequest servletRequest = null;
 		HttpServletResponse servletResponse = null;
 		if (theRequest instanceof ServletRequestDetails) {
@@ -437,12 +441,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		responseParams.add(ResponseDetails.class, theResponseDetails);
 		responseParams.add(HttpServletRequest.class, servletRequest);
 		responseParams.add(HttpServletResponse.class, servletResponse);
-		if (theRequest.getInterceptorBroadcaster() != null) {
-			if (!theRequest.getInterceptorBroadcaster().callHooks(Pointcut.SERVER_OUTGOING_RESPONSE, responseParams)) {
-				return false;
-			}
-		}
-		return true;
+		return theRequest.getInterceptorBroadcaster().callHooks(Pointcut.SERVER_OUTGOING_RESPONSE, responseParams);
 	}
 
 	public static void callOutgoingFailureOperationOutcomeHook(RequestDetails theRequestDetails, IBaseOperationOutcome theOperationOutcome) {
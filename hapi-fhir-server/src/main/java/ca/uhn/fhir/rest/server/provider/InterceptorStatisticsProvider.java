@@ -0,0 +1,122 @@
+package ca.uhn.fhir.rest.server.provider;
+
+
+/*-
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2021 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.HookMetricsKey;
+import ca.uhn.fhir.interceptor.executor.InMemoryInterceptorMetrics;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * This class implements the <code>$interceptor-stats</code> system operation, which reports
+ * how often each interceptor hook method has been invoked and how long those invocations
+ * have taken, and the <code>$interceptor-stats-reset</code> system operation, which also
+ * clears the statistics. The hooks that have taken the most time in total are listed first.
+ * <p>
+ * The statistics are collected by an {@link InMemoryInterceptorMetrics} instance which must
+ * also be supplied to every interceptor service that should be measured, e.g.:
+ * </p>
+ * <pre>
+ * InMemoryInterceptorMetrics metrics = new InMemoryInterceptorMetrics();
+ * ((InterceptorService) restfulServer.getInterceptorService()).setInterceptorMetrics(metrics);
+ * restfulServer.registerProvider(new InterceptorStatisticsProvider(fhirContext, metrics));
+ * </pre>
+ *
+ * @since 5.4.0
+ */
+public class InterceptorStatisticsProvider {
+
+	private final FhirContext myFhirContext;
+	private final InMemoryInterceptorMetrics myInterceptorMetrics;
+
+	/**
+	 * Constructor
+	 */
+	public InterceptorStatisticsProvider(FhirContext theFhirContext, InMemoryInterceptorMetrics theInterceptorMetrics) {
+		Validate.notNull(theFhirContext);
+		Validate.notNull(theInterceptorMetrics);
+		myFhirContext = theFhirContext;
+		myInterceptorMetrics = theInterceptorMetrics;
+	}
+
+	/**
+	 * Returns the statistics for every hook method that has been invoked
+	 */
+	@Operation(name = ProviderConstants.OPERATION_INTERCEPTOR_STATS, idempotent = true)
+	public IBaseParameters interceptorStats() {
+		return toParameters(myInterceptorMetrics.getStatistics());
+	}
+
+	/**
+	 * Returns the statistics for every hook method that has been invoked, and then clears them. Since
+	 * this changes the state of the server, it can only be invoked using an HTTP POST.
+	 */
+	@Operation(name = ProviderConstants.OPERATION_INTERCEPTOR_STATS_RESET)
+	public IBaseParameters interceptorStatsReset() {
+		IBaseParameters retVal = toParameters(myInterceptorMetrics.getStatistics());
+		myInterceptorMetrics.clear();
+		return retVal;
+	}
+
+	private IBaseParameters toParameters(List<InMemoryInterceptorMetrics.HookStatistics> theStatistics) {
+		IBaseParameters retVal = ParametersUtil.newInstance(myFhirContext);
+
+		for (InMemoryInterceptorMetrics.HookStatistics next : theStatistics) {
+			HookMetricsKey key = next.getKey();
+			IBase hook = ParametersUtil.addParameterToParameters(myFhirContext, retVal, ProviderConstants.OPERATION_INTERCEPTOR_STATS_OUT_PARAM_HOOK);
+			ParametersUtil.addPartCode(myFhirContext, hook, "pointcut", key.getPointcut().name());
+			ParametersUtil.addPartString(myFhirContext, hook, "interceptor", key.getInterceptorClassName());
+			ParametersUtil.addPartString(myFhirContext, hook, "method", key.getMethodName());
+			addPartDecimal(hook, "invocations", BigDecimal.valueOf(next.getInvocationCount()));
+			addPartDecimal(hook, "exceptions", BigDecimal.valueOf(next.getExceptionCount()));
+			addPartDecimal(hook, "totalMillis", toMillis(next.getTotalNanos()));
+			addPartDecimal(hook, "meanMillis", toMillis(next.getMeanNanos()));
+			addPartDecimal(hook, "p50Millis", toMillis(next.getPercentileNanos(50)));
+			addPartDecimal(hook, "p95Millis", toMillis(next.getPercentileNanos(95)));
+			addPartDecimal(hook, "p99Millis", toMillis(next.getPercentileNanos(99)));
+			addPartDecimal(hook, "maxMillis", toMillis(next.getMaxNanos()));
+		}
+
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addPartDecimal(IBase theParameter, String theName, BigDecimal theValue) {
+		IPrimitiveType<BigDecimal> value = (IPrimitiveType<BigDecimal>) myFhirContext.getElementDefinition("decimal").newInstance();
+		value.setValue(theValue);
+		ParametersUtil.addPart(myFhirContext, theParameter, theName, value);
+	}
+
+	private static BigDecimal toMillis(long theNanos) {
+		return BigDecimal.valueOf(theNanos, 6).setScale(3, RoundingMode.HALF_UP);
+	}
+
+}
@@ -92,6 +92,13 @@ public class ProviderConstants {
    public static final String OPERATION_MDM_CLEAR_OUT_PARAM_DELETED_COUNT = "deleted";
 	public static final String MDM_BATCH_RUN_RESOURCE_TYPE = "resourceType";
 
+	/**
+	 * Operation name: interceptor statistics
+	 */
+	public static final String OPERATION_INTERCEPTOR_STATS = "$interceptor-stats";
+	public static final String OPERATION_INTERCEPTOR_STATS_RESET = "$interceptor-stats-reset";
+	public static final String OPERATION_INTERCEPTOR_STATS_OUT_PARAM_HOOK = "hook";
+
 	/**
 	 * CQL Operations
 	 */
@@ -0,0 +1,191 @@
+package ca.uhn.fhir.parser;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.test.BaseTest;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Device;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonStreamingParserR4Test extends BaseTest {
+	private static final Logger ourLog = LoggerFactory.getLogger(JsonStreamingParserR4Test.class);
+	private static final FhirContext ourCtx = FhirContext.forR4();
+	private static final FhirContext ourStreamingCtx = FhirContext.forR4();
+
+	static {
+		ourStreamingCtx.getParserOptions().setUseStreamingJsonParser(true);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"/bundle-circ-ref.json", "/bundle-with-two-patient-resources.json", "/entities-from-cerner.json"})
+	public void testParseMatchesTreeParse(String theClasspath) throws IOException {
+		String input = loadResource(theClasspath);
+		assertParsesTheSame(input);
+	}
+
+	@Test
+	public void testParseBundleWithContainedResources() {
+		Organization org = new Organization();
+		org.setId("#org");
+		org.setName("ORG");
+		Patient patient = new Patient();
+		patient.setId("Patient/123");
+		patient.getContained().add(org);
+		patient.getManagingOrganization().setReference("#org");
+		patient.addName().setFamily("FAMILY").addGiven("GIVEN1").addGiven("GIVEN2");
+		Observation obs = new Observation();
+		obs.setValue(new Quantity().setValue(1.5).setUnit("mg"));
+		Parameters parameters = new Parameters();
+		parameters.addParameter().setName("resource").setResource(new Patient().setActive(true));
+
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+		bundle.addEntry().setFullUrl("http://example.com/Patient/123").setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/123");
+		bundle.addEntry().setFullUrl("urn:uuid:0c6c7ac4-9b17-4bd6-a0b2-fa23a8a02e34").setResource(obs).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+		bundle.addEntry().setResource(parameters);
+		String input = ourCtx.newJsonParser().encodeResourceToString(bundle);
+
+		Bundle parsed = assertParsesTheSame(input);
+		Patient parsedPatient = (Patient) parsed.getEntry().get(0).getResource();
+		assertEquals("http://example.com/Patient/123", parsedPatient.getIdElement().getValue());
+		assertEquals("ORG", ((Organization) parsedPatient.getManagingOrganization().getResource()).getName());
+		assertEquals("GIVEN2", parsedPatient.getNameFirstRep().getGiven().get(1).getValue());
+		assertEquals("urn:uuid:0c6c7ac4-9b17-4bd6-a0b2-fa23a8a02e34", parsed.getEntry().get(1).getResource().getIdElement().getValue());
+		assertTrue(((Patient) ((Parameters) parsed.getEntry().get(2).getResource()).getParameterFirstRep().getResource()).getActive());
+	}
+
+	@Test
+	public void testParsePrimitiveAlternates() {
+		String input = "{" +
+			"\"_birthDate\":{\"id\":\"bd\",\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"BEFORE\"}]}," +
+			"\"resourceType\":\"Patient\"," +
+			"\"birthDate\":\"2020-01-01\"," +
+			"\"name\":[{\"given\":[\"G1\",null,\"G3\"],\"_given\":[null,{\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"NULL\"}]},{\"id\":\"g3\"}]}]," +
+			"\"active\":true," +
+			"\"_active\":{\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"AFTER\"}]}," +
+			"\"_gender\":{\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"NO_VALUE\"}]}" +
+			"}";
+
+		Patient patient = assertParsesTheSame(input);
+		assertEquals("2020-01-01", patient.getBirthDateElement().getValueAsString());
+		assertEquals("bd", patient.getBirthDateElement().getId());
+		assertEquals("BEFORE", patient.getBirthDateElement().getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		assertEquals("AFTER", patient.getActiveElement().getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		assertNull(patient.getGenderElement().getValue());
+		assertEquals("NO_VALUE", patient.getGenderElement().getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		assertEquals(3, patient.getNameFirstRep().getGiven().size());
+		assertNull(patient.getNameFirstRep().getGiven().get(1).getValue());
+		assertEquals("NULL", patient.getNameFirstRep().getGiven().get(1).getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		assertEquals("g3", patient.getNameFirstRep().getGiven().get(2).getId());
+	}
+
+	@Test
+	public void testParseObjectAlternatesAfterElement() {
+		String input = "{" +
+			"\"resourceType\":\"Patient\"," +
+			"\"maritalStatus\":{\"text\":\"MARRIED\"}," +
+			"\"_maritalStatus\":{\"id\":\"ms\",\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"SINGLE\"}]}," +
+			"\"name\":[{\"family\":\"F1\"},{\"family\":\"F2\"}]," +
+			"\"_name\":[null,{\"id\":\"n2\",\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"ARRAY\"}]}]" +
+			"}";
+
+		Patient patient = assertParsesTheSame(input);
+		assertEquals("MARRIED", patient.getMaritalStatus().getText());
+		assertEquals("ms", patient.getMaritalStatus().getId());
+		assertEquals("SINGLE", patient.getMaritalStatus().getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		assertEquals(2, patient.getName().size());
+		assertNull(patient.getName().get(0).getId());
+		assertEquals("n2", patient.getName().get(1).getId());
+		assertEquals("F2", patient.getName().get(1).getFamily());
+		assertEquals("ARRAY", patient.getName().get(1).getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+	}
+
+	@Test
+	public void testParseDecimalKeepsPrecision() {
+		String input = "{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":1.50000,\"unit\":\"mg\"},\"component\":[{\"valueInteger\":2}]}";
+
+		Observation obs = assertParsesTheSame(input);
+		assertEquals("1.50000", obs.getValueQuantity().getValueElement().getValueAsString());
+		assertEquals("2", obs.getComponentFirstRep().getValueIntegerType().getValueAsString());
+	}
+
+	@Test
+	public void testParseResourceTypeNotFirst() {
+		String input = "{\"id\":\"123\",\"contained\":[{\"id\":\"org\",\"name\":\"ORG\",\"resourceType\":\"Organization\"}]," +
+			"\"managingOrganization\":{\"reference\":\"#org\"},\"resourceType\":\"Patient\"}";
+
+		Patient patient = assertParsesTheSame(input);
+		assertEquals("ORG", ((Organization) patient.getManagingOrganization().getResource()).getName());
+
+		input = "{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":{\"active\":true,\"resourceType\":\"Patient\"}}]}";
+		Bundle bundle = assertParsesTheSame(input);
+		assertTrue(((Patient) bundle.getEntryFirstRep().getResource()).getActive());
+	}
+
+	@Test
+	public void testParseErrors() {
+		IParser parser = ourStreamingCtx.newJsonParser();
+
+		DataFormatException e = assertThrows(DataFormatException.class, () -> parser.parseResource("{\"id\":\"123\"}"));
+		assertEquals("Invalid JSON content detected, missing required element: 'resourceType'", e.getMessage());
+
+		e = assertThrows(DataFormatException.class, () -> parser.parseResource("{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":{\"id\":\"123\"}}]}"));
+		assertEquals("Missing required element 'resourceType' from JSON resource object, unable to parse", e.getMessage());
+
+		e = assertThrows(DataFormatException.class, () -> parser.parseResource("FOO"));
+		assertEquals("Failed to parse JSON encoded FHIR content: Content does not appear to be FHIR JSON, first non-whitespace character was: 'F' (must be '{')", e.getMessage());
+
+		e = assertThrows(DataFormatException.class, () -> parser.parseResource("{\"resourceType\":\"Patient\",\"active\":true"));
+		assertThat(e.getMessage(), containsString("Failed to parse JSON encoded FHIR content: Unexpected end-of-input"));
+
+		e = assertThrows(DataFormatException.class, () -> parser.parseResource("{\"resourceType\":\"Patient\"}{}"));
+		assertThat(e.getMessage(), containsString("Trailing token"));
+
+		e = assertThrows(DataFormatException.class, () -> parser.parseResource(Patient.class, "{\"resourceType\":\"Patient\",\"extension\":{\"url\":\"http://foo\"}}"));
+		assertEquals("Syntax error parsing JSON FHIR structure: Expected ARRAY at element 'extension', found 'OBJECT'", e.getMessage());
+	}
+
+	@Test
+	public void testParseWithStrictErrorHandler() {
+		String input = "{\"resourceType\":\"Patient\",\"name\":{\"family\":\"FAMILY\"}}";
+
+		IParser parser = ourStreamingCtx.newJsonParser().setParserErrorHandler(new StrictErrorHandler());
+		DataFormatException e = assertThrows(DataFormatException.class, () -> parser.parseResource(Patient.class, input));
+		assertThat(e.getMessage(), containsString("Found incorrect type for element name - Expected ARRAY and found OBJECT"));
+
+		Patient patient = ourStreamingCtx.newJsonParser().parseResource(Patient.class, input);
+		assertEquals("FAMILY", patient.getNameFirstRep().getFamily());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends IBaseResource> T assertParsesTheSame(String theInput) {
+		IBaseResource expected = ourCtx.newJsonParser().parseResource(theInput);
+		IBaseResource actual = ourStreamingCtx.newJsonParser().parseResource(theInput);
+
+		String expectedEncoded = ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(expected);
+		String actualEncoded = ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(actual);
+		ourLog.debug("Encoded: {}", actualEncoded);
+		assertEquals(expectedEncoded, actualEncoded);
+		assertEquals(expected.getIdElement().getValue(), actual.getIdElement().getValue());
+		return (T) actual;
+	}
+
+}
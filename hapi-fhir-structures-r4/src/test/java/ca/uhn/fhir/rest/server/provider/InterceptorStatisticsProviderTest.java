@@ -0,0 +1,135 @@
+package ca.uhn.fhir.rest.server.provider;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.executor.InMemoryInterceptorMetrics;
+import ca.uhn.fhir.interceptor.executor.InterceptorService;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.MethodNotAllowedException;
+import ca.uhn.fhir.test.utilities.server.HashMapResourceProviderExtension;
+import ca.uhn.fhir.test.utilities.server.RestfulServerExtension;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class InterceptorStatisticsProviderTest {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(InterceptorStatisticsProviderTest.class);
+	private static final FhirContext ourCtx = FhirContext.forR4();
+	private static final InMemoryInterceptorMetrics ourMetrics = new InMemoryInterceptorMetrics();
+	@RegisterExtension
+	public static RestfulServerExtension ourServerRule = new RestfulServerExtension(ourCtx, new InterceptorStatisticsProvider(ourCtx, ourMetrics));
+	@RegisterExtension
+	public HashMapResourceProviderExtension<Patient> myPatientProviderRule = new HashMapResourceProviderExtension<>(ourServerRule, Patient.class);
+	private final MyInterceptor myInterceptor = new MyInterceptor();
+
+	@BeforeEach
+	public void before() {
+		((InterceptorService) ourServerRule.getRestfulServer().getInterceptorService()).setInterceptorMetrics(ourMetrics);
+		ourServerRule.getRestfulServer().registerInterceptor(myInterceptor);
+		ourMetrics.clear();
+	}
+
+	@AfterEach
+	public void after() {
+		ourServerRule.getRestfulServer().unregisterInterceptor(myInterceptor);
+		((InterceptorService) ourServerRule.getRestfulServer().getInterceptorService()).setInterceptorMetrics(null);
+	}
+
+	@Test
+	public void testInterceptorStats() {
+		for (int i = 0; i < 3; i++) {
+			ourServerRule.getFhirClient().create().resource(new Patient().setActive(true)).execute();
+		}
+
+		Parameters outcome = ourServerRule
+			.getFhirClient()
+			.operation()
+			.onServer()
+			.named(ProviderConstants.OPERATION_INTERCEPTOR_STATS)
+			.withNoParameters(Parameters.class)
+			.useHttpGet()
+			.execute();
+		ourLog.info(ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(outcome));
+
+		List<Parameters.ParametersParameterComponent> hooks = outcome
+			.getParameter()
+			.stream()
+			.filter(t -> t.getPartFirstRep().getValue().primitiveValue().equals(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED.name()))
+			.collect(Collectors.toList());
+		assertEquals(1, hooks.size());
+		Parameters.ParametersParameterComponent hook = hooks.get(0);
+		assertThat(hook.getPart().stream().map(Parameters.ParametersParameterComponent::getName).collect(Collectors.toList()),
+			contains("pointcut", "interceptor", "method", "invocations", "exceptions", "totalMillis", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"));
+		assertEquals(MyInterceptor.class.getName(), hook.getPart().get(1).getValue().primitiveValue());
+		assertEquals("incomingRequestPostProcessed", hook.getPart().get(2).getValue().primitiveValue());
+		// The three creates, and the $interceptor-stats request itself
+		assertEquals(4, ((DecimalType) hook.getPart().get(3).getValue()).getValueAsInteger());
+		assertEquals(0, ((DecimalType) hook.getPart().get(4).getValue()).getValueAsInteger());
+		assertTrue(((DecimalType) hook.getPart().get(6).getValue()).getValue().doubleValue() >= 0);
+	}
+
+	@Test
+	public void testInterceptorStatsWithReset() {
+		ourServerRule.getFhirClient().create().resource(new Patient().setActive(true)).execute();
+
+		Parameters outcome = ourServerRule
+			.getFhirClient()
+			.operation()
+			.onServer()
+			.named(ProviderConstants.OPERATION_INTERCEPTOR_STATS_RESET)
+			.withNoParameters(Parameters.class)
+			.execute();
+		assertEquals(1, outcome.getParameter().size());
+
+		// Only hooks invoked after the reset are counted
+		ourServerRule.getFhirClient().create().resource(new Patient().setActive(true)).execute();
+		assertThat(ourMetrics.getStatistics().stream().map(t -> t.getInvocationCount()).collect(Collectors.toList()), contains(1L));
+	}
+
+	@Test
+	public void testInterceptorStatsResetRejectsGet() {
+		ourServerRule.getFhirClient().create().resource(new Patient().setActive(true)).execute();
+
+		try {
+			ourServerRule
+				.getFhirClient()
+				.operation()
+				.onServer()
+				.named(ProviderConstants.OPERATION_INTERCEPTOR_STATS_RESET)
+				.withNoParameters(Parameters.class)
+				.useHttpGet()
+				.execute();
+			fail();
+		} catch (MethodNotAllowedException e) {
+			// good
+		}
+		assertEquals(1, ourMetrics.getStatistics().size());
+	}
+
+	public static class MyInterceptor {
+
+		@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+		public void incomingRequestPostProcessed(RequestDetails theRequestDetails) {
+			// nothing
+		}
+
+	}
+
+}